@@ -0,0 +1,5 @@
+-- Supports AppointmentDaoImpl.getConflictingAppointments:
+--   WHERE Customer_ID = ? AND Start < ? AND End > ? AND Appointment_ID <> ?
+-- The equality column comes first so MySQL seeks straight to one customer's appointments and range-scans Start;
+-- End is in the index so the overlap test is resolved without reading the table rows.
+CREATE INDEX idx_appointments_customer_start_end ON appointments (Customer_ID, `Start`, `End`);
@@ -0,0 +1,5 @@
+-- Supports the keyset pages of AppointmentDaoImpl.getAppointmentsPageAfter/Before, which seek on
+-- (Start, Appointment_ID) and ORDER BY the same pair. InnoDB appends the primary key to every secondary index, so an
+-- index on Start is ordered by (Start, Appointment_ID) and each page is a short index range scan.
+-- The same index serves the Start range of AppointmentDaoImpl.getAppointmentsBetween (the Month and Week filters).
+CREATE INDEX idx_appointments_start ON appointments (`Start`);
@@ -0,0 +1,4 @@
+-- Passwords are stored as PBKDF2 hashes (utils.PasswordHasher), e.g. pbkdf2$210000$<salt>$<hash>, which are longer
+-- than the plain-text passwords they replace. Plain-text passwords are rehashed by UserDaoImpl.authenticate on the
+-- user's next successful login.
+ALTER TABLE users MODIFY Password VARCHAR(255);
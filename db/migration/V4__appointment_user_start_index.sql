@@ -0,0 +1,5 @@
+-- Supports AppointmentDaoImpl.getUpcomingAppointmentsByUserId:
+--   WHERE User_ID = ? AND Start >= ? AND Start <= ? ORDER BY Start
+-- The equality column comes first so MySQL seeks straight to one user's appointments and range-scans only the
+-- window, already in Start order, instead of reading the user's whole history.
+CREATE INDEX idx_appointments_user_start ON appointments (User_ID, `Start`);
@@ -0,0 +1,42 @@
+-- Recurring appointments (DAO.AppointmentSeriesDaoImpl). A series is stored once, as its first occurrence plus a
+-- recurrence rule, and is expanded only for the window being shown, so a weekly check-in adds one row instead of one
+-- row per week.
+--   Frequency        DAILY, WEEKLY or MONTHLY.
+--   Interval_Count   every how many days, weeks or months the appointment repeats.
+--   Until            the latest start of an occurrence, or NULL.
+--   Occurrence_Count the number of occurrences, or NULL. With both NULL the series repeats indefinitely.
+CREATE TABLE appointment_series (
+    Series_ID        INT          NOT NULL AUTO_INCREMENT,
+    Title            VARCHAR(50),
+    Description      VARCHAR(50),
+    Location         VARCHAR(50),
+    Type             VARCHAR(50),
+    `Start`          DATETIME     NOT NULL,
+    `End`            DATETIME     NOT NULL,
+    Frequency        VARCHAR(10)  NOT NULL,
+    Interval_Count   INT          NOT NULL DEFAULT 1,
+    Until            DATETIME,
+    Occurrence_Count INT,
+    Create_Date      DATETIME,
+    Created_By       VARCHAR(50),
+    Last_Update      TIMESTAMP,
+    Last_Updated_By  VARCHAR(50),
+    Customer_ID      INT          NOT NULL,
+    User_ID          INT          NOT NULL,
+    Contact_ID       INT          NOT NULL,
+    PRIMARY KEY (Series_ID),
+    INDEX idx_appointment_series_customer_start (Customer_ID, `Start`),
+    INDEX idx_appointment_series_start (`Start`),
+    CONSTRAINT fk_appointment_series_customer FOREIGN KEY (Customer_ID) REFERENCES customers (Customer_ID),
+    CONSTRAINT fk_appointment_series_user FOREIGN KEY (User_ID) REFERENCES users (User_ID),
+    CONSTRAINT fk_appointment_series_contact FOREIGN KEY (Contact_ID) REFERENCES contacts (Contact_ID)
+);
+
+-- Occurrences cancelled from a series, by their start.
+CREATE TABLE appointment_series_exceptions (
+    Series_ID        INT      NOT NULL,
+    Occurrence_Start DATETIME NOT NULL,
+    PRIMARY KEY (Series_ID, Occurrence_Start),
+    CONSTRAINT fk_appointment_series_exceptions_series FOREIGN KEY (Series_ID)
+        REFERENCES appointment_series (Series_ID) ON DELETE CASCADE
+);
@@ -0,0 +1,22 @@
+-- Change feed (utils.ChangePoller). Each client asks every few seconds for the rows changed since its watermark:
+--   WHERE Last_Update > ?
+-- These indexes make that a range scan of the last few seconds instead of a full table scan per client per tick.
+CREATE INDEX idx_appointments_last_update ON appointments (Last_Update);
+CREATE INDEX idx_customers_last_update ON customers (Last_Update);
+
+-- A deleted row leaves no Last_Update behind, so the triggers below record one tombstone per deleted appointment or
+-- customer. Clients read the tombstones by Tombstone_ID, which the server assigns and which does not depend on any
+-- client's clock. Tombstones older than the longest client session can be deleted.
+CREATE TABLE deleted_rows (
+    Tombstone_ID BIGINT      NOT NULL AUTO_INCREMENT,
+    Table_Name   VARCHAR(32) NOT NULL,
+    Row_ID       INT         NOT NULL,
+    Deleted_At   DATETIME    NOT NULL,
+    PRIMARY KEY (Tombstone_ID)
+);
+
+CREATE TRIGGER trg_appointments_tombstone AFTER DELETE ON appointments FOR EACH ROW
+    INSERT INTO deleted_rows (Table_Name, Row_ID, Deleted_At) VALUES ('appointments', OLD.Appointment_ID, UTC_TIMESTAMP());
+
+CREATE TRIGGER trg_customers_tombstone AFTER DELETE ON customers FOR EACH ROW
+    INSERT INTO deleted_rows (Table_Name, Row_ID, Deleted_At) VALUES ('customers', OLD.Customer_ID, UTC_TIMESTAMP());
@@ -0,0 +1,7 @@
+-- Optimistic concurrency (DAO.OptimisticLockException). Every update of an appointment or customer is made
+--   UPDATE ... SET ..., Version = Version + 1 WHERE <id> = ? AND Version = ?
+-- with the version the editor read, so an update made from a stale copy changes no row and is reported as a conflict
+-- instead of silently overwriting the other user's edit. Last_Update is not used for this: it is written from each
+-- client's clock and stored to the second.
+ALTER TABLE appointments ADD COLUMN Version INT NOT NULL DEFAULT 0;
+ALTER TABLE customers ADD COLUMN Version INT NOT NULL DEFAULT 0;
@@ -0,0 +1,29 @@
+-- Bounds the series queries of DAO.AppointmentSeriesDaoImpl on both sides. A series is read for a window only if its
+-- first occurrence starts before the window ends and its last occurrence ends after the window starts:
+--   WHERE ... Start < ? AND (Last_End IS NULL OR Last_End > ?)
+-- Without the second condition every series that ever started was read and expanded, including ones that ended
+-- years ago.
+--   Last_End the end of the last occurrence, or NULL if the series repeats indefinitely. Cancelling an occurrence
+--            does not change it, so it may be later than the last occurrence actually held.
+ALTER TABLE appointment_series ADD COLUMN Last_End DATETIME;
+
+-- The last start is the earlier of Until and the start of occurrence Occurrence_Count - 1, counted the way
+-- Model.RecurrenceRule.occurrence does; DATE_ADD clamps the day of month the same way LocalDateTime.plusMonths does.
+UPDATE appointment_series
+SET Last_End = TIMESTAMPADD(SECOND, TIMESTAMPDIFF(SECOND, `Start`, `End`), CASE
+        WHEN Occurrence_Count IS NULL THEN Until
+        WHEN Until IS NOT NULL AND Until < CASE Frequency
+            WHEN 'DAILY' THEN DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count DAY)
+            WHEN 'WEEKLY' THEN DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count WEEK)
+            ELSE DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count MONTH) END THEN Until
+        WHEN Frequency = 'DAILY' THEN DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count DAY)
+        WHEN Frequency = 'WEEKLY' THEN DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count WEEK)
+        ELSE DATE_ADD(`Start`, INTERVAL (Occurrence_Count - 1) * Interval_Count MONTH)
+    END);
+
+-- The owner column comes first so each query seeks to one customer's, contact's or user's series and range-scans
+-- the ones still running (Last_End IS NULL sorts first, then the ones ending after the window starts).
+CREATE INDEX idx_appointment_series_customer_last_end ON appointment_series (Customer_ID, Last_End);
+CREATE INDEX idx_appointment_series_contact_last_end ON appointment_series (Contact_ID, Last_End);
+CREATE INDEX idx_appointment_series_user_last_end ON appointment_series (User_ID, Last_End);
+CREATE INDEX idx_appointment_series_last_end ON appointment_series (Last_End);
@@ -0,0 +1,14 @@
+-- Retention of the change feed tombstones (DAO.ChangeFeedDaoImpl.keepAlive). Every polling client records here, about
+-- once a minute, the latest tombstone ID it has read. A client reads tombstones from its watermark minus a short
+-- lookback, so the tombstones below the oldest watermark of the live clients, minus the same lookback, will not be
+-- read again and are deleted:
+--   DELETE FROM deleted_rows WHERE Tombstone_ID <= (SELECT MIN(Tombstone_Watermark) FROM change_feed_clients) - ?
+-- A client that has not reported for scheduler.changes.clientTimeoutSeconds is no longer live and its row is deleted
+-- first; if it reports again it reloads the appointments instead of trusting a feed it may have missed tombstones of.
+CREATE TABLE change_feed_clients (
+    Client_ID           VARCHAR(36) NOT NULL,
+    Tombstone_Watermark BIGINT      NOT NULL,
+    Last_Seen           DATETIME    NOT NULL,
+    PRIMARY KEY (Client_ID),
+    INDEX idx_change_feed_clients_last_seen (Last_Seen)
+);
@@ -1,32 +1,42 @@
 package Controller;
 
+import DAO.AppointmentChangeBus;
+import DAO.AppointmentChangeSet;
+import DAO.AppointmentConflictIndex;
 import DAO.AppointmentDaoImpl;
-import DAO.ContactDaoImpl;
+import DAO.AppointmentSeriesDaoImpl;
+import DAO.Repositories;
 import Model.Appointment;
 import Model.Contact;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.control.Alert;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import utils.AppointmentImporter;
+import utils.DaoExecutor;
+import utils.TableViewPager;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.function.Consumer;
 
 import static utils.utils.*;
 
@@ -48,6 +58,38 @@ public class Appointments implements Initializable {
      * The observable list of Appointment objects used in the Appointments object.
      */
     ObservableList<Model.Appointment> Appointments = FXCollections.observableArrayList();
+    /**
+     * The number of appointments fetched per page when all appointments are shown.
+     */
+    private static final int PAGE_SIZE = 100;
+    /**
+     * The maximum number of appointments kept in memory when all appointments are shown.
+     */
+    private static final int MAXIMUM_ROWS = 500;
+    /**
+     * The maximum number of row errors listed after an import.
+     */
+    private static final int IMPORT_ERRORS_SHOWN = 20;
+    /**
+     * Loads all appointments page by page as the user scrolls.
+     */
+    private TableViewPager<Appointment> pager;
+    /**
+     * The month or week query in flight; choosing another filter cancels it.
+     */
+    private final DaoExecutor.LatestRequest filterRequest = new DaoExecutor.LatestRequest();
+    /**
+     * Applies the changes of every appointment write to the list shown. The bus holds it weakly, so it is kept here.
+     */
+    private final Consumer<AppointmentChangeSet> changeListener = this::onAppointmentsChanged;
+    /**
+     * The start of the week or month shown, or null when all appointments are shown.
+     */
+    private LocalDateTime viewFrom;
+    /**
+     * The end of the week or month shown, exclusive, or null when all appointments are shown.
+     */
+    private LocalDateTime viewTo;
     /**
      * The week radio button.
      */
@@ -129,38 +171,27 @@ public class Appointments implements Initializable {
     ObservableList<Contact> Contacts = FXCollections.observableArrayList();
 
     /**
-     * Checks if a new appointment overlaps with an existing appointment for the same customer.
+     * Checks if a new appointment overlaps with an existing appointment for the same customer. Once the in-memory
+     * AppointmentConflictIndex has been loaded the check is answered from it; until then an indexed range query asks
+     * the database for the customer's conflicting rows only, so a save never pulls the whole appointments table.
+     * The customer's recurring series are checked against their rules, without expanding them. It reads the database,
+     * so it is called from a {@link DaoExecutor} thread.
      *
      * @param customerID       The ID of the customer for whom the new appointment is being created.
      * @param appointmentID    The ID of the new appointment.
      * @param appointmentStart The start time of the new appointment.
      * @param appointmentEnd   The end time of the new appointment.
      * @return True if there is an overlap, false otherwise.
-     * @throws Exception If there is an error retrieving the list of existing appointments.
-     */
-    public static boolean hasOverlap(int customerID, int appointmentID, LocalDateTime appointmentStart, LocalDateTime appointmentEnd) throws Exception {
-        ObservableList<Appointment> allAppointments;
-        try {
-            allAppointments = AppointmentDaoImpl.getAllAppointments();
-        } catch (SQLException ex) {
-            showAlert(Alert.AlertType.ERROR, "Error", "Error retrieving appointments", ex.getMessage());
-            throw new Exception(ex);
+     * @throws SQLException If there is an error retrieving the list of existing appointments.
+     */
+    public static boolean hasOverlap(int customerID, int appointmentID, LocalDateTime appointmentStart, LocalDateTime appointmentEnd) throws SQLException {
+        if (AppointmentSeriesDaoImpl.hasCustomerConflict(customerID, appointmentStart, appointmentEnd)) {
+            return true;
         }
-        allAppointments.sort(Comparator.comparing(Appointment::getStart)); // Sort by start time
-        LocalDateTime checkApptStart;
-        LocalDateTime checkApptEnd;
-
-        for (Appointment a : allAppointments) {
-            checkApptStart = a.getStart();
-            checkApptEnd = a.getEnd();
-            // Check if appointments overlap
-            if (customerID == a.getCustomerId() && appointmentID != a.getAppointmentId() &&
-                    ((appointmentStart.isBefore(checkApptEnd) && appointmentEnd.isAfter(checkApptStart)) ||
-                            (appointmentStart.isEqual(checkApptStart) && appointmentEnd.isEqual(checkApptEnd)))) {
-                return true;
-            }
+        if (AppointmentConflictIndex.isLoaded()) {
+            return AppointmentConflictIndex.hasCustomerConflict(customerID, appointmentID, appointmentStart, appointmentEnd);
         }
-        return false;
+        return !Repositories.appointments().getConflictingAppointments(customerID, appointmentID, appointmentStart, appointmentEnd).isEmpty();
     }
 
 
@@ -179,8 +210,8 @@ public class Appointments implements Initializable {
     /**
      * Deletes the selected appointment after displaying a confirmation dialog box.
      * <p>
-     * If the user confirms the deletion, the appointment will be deleted from the database and the appointment table<br>
-     * will be updated. If the user cancels the deletion, the confirmation dialog box will be closed and no action will be taken.
+     * If the user confirms the deletion, the appointment will be deleted from the database in the background and the<br>
+     * appointment table will be updated. If the user cancels the deletion, the confirmation dialog box will be closed and no action will be taken.
      * LAMBDA expressions execute if the user confirms the deletion, and closes the dialog if the user clicks on cancel button.
      *
      * @param event The ActionEvent that triggered this method.
@@ -193,19 +224,23 @@ public class Appointments implements Initializable {
         } else {
             showConfirmationAlert("Confirmation", "Are you sure you want to cancel this appointment?", null,
                     () -> {
-                        try {
-                            int canceledApptID = appointmentTable.getSelectionModel().getSelectedItem().getAppointmentId();
-                            String canceledApptType = appointmentTable.getSelectionModel().getSelectedItem().getType();
-                            AppointmentDaoImpl.deleteAppointmentByApptId(appointmentTable.getSelectionModel().getSelectedItem().getAppointmentId());
-                            showAlert(Alert.AlertType.INFORMATION, "Warning", "Appointment Canceled", canceledApptType +
-                                    " appointment ID # " + canceledApptID + " successfully canceled.");
-                            Appointments = AppointmentDaoImpl.getAllAppointments();
-                            appointmentTable.setItems(Appointments);
-                            appointmentTable.refresh();
-                        } catch (Exception e) {
-                            showAlert(Alert.AlertType.ERROR, "Error", "Error deleting appointment", "An error occurred while deleting the appointment.");
-                            e.printStackTrace();
-                        }
+                        Appointment canceledAppt = appointmentTable.getSelectionModel().getSelectedItem();
+                        DaoExecutor.run(() -> {
+                            if (canceledAppt.isOccurrence()) {
+                                AppointmentSeriesDaoImpl.cancelOccurrence(canceledAppt.getSeriesId(), canceledAppt.getStart());
+                            } else {
+                                Repositories.appointments().deleteAppointmentByApptId(canceledAppt.getAppointmentId());
+                            }
+                            return canceledAppt;
+                        }, canceled -> showAlert(Alert.AlertType.INFORMATION, "Warning", "Appointment Canceled",
+                                canceled.isOccurrence()
+                                        ? canceled.getType() + " appointment of series # " + canceled.getSeriesId() + " on "
+                                        + canceled.getStart() + " successfully canceled."
+                                        : canceled.getType() + " appointment ID # " + canceled.getAppointmentId() + " successfully canceled."),
+                                e -> {
+                                    showAlert(Alert.AlertType.ERROR, "Error", "Error deleting appointment", "An error occurred while deleting the appointment.");
+                                    e.printStackTrace();
+                                });
                     },
                     () -> {
                         // Do nothing and simply close the confirmation dialog.
@@ -227,75 +262,156 @@ public class Appointments implements Initializable {
         Appointment selectedAppointment = appointmentTable.getSelectionModel().getSelectedItem();
         if (selectedAppointment == null) {
             showAlert(Alert.AlertType.WARNING, "Warning", "No appointment selected", "");
+        } else if (selectedAppointment.isOccurrence()) {
+            showAlert(Alert.AlertType.WARNING, "Warning", "Recurring appointment selected",
+                    "An occurrence of a recurring appointment cannot be modified on its own. Cancel it and add a single appointment instead.");
         } else {
             AppointmentsModify.passedinSelectedAppointment(selectedAppointment);
             switchToScene(event, "/view/AppointmentsModify.fxml", null);
         }
     }
 
+    /**
+     * Imports appointments in bulk from a CSV or JSON file chosen by the user. The file is validated and written in
+     * the background by the {@link AppointmentImporter}; the number of appointments imported and the first rows that
+     * were not are then shown. The imported appointments reach the table as change sets, like any other write.
+     *
+     * @param event the action event triggered by the Import button.
+     */
+    @FXML
+    void onActionImportAppointments(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Appointments");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV or JSON files", "*.csv", "*.json"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(((Node) event.getSource()).getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        String userName = Login.currentUser.getUserName();
+        DaoExecutor.run(() -> AppointmentImporter.importFile(file.toPath(), userName), report -> {
+            StringBuilder content = new StringBuilder();
+            List<AppointmentImporter.RowError> errors = report.getErrors();
+            for (int i = 0; i < Math.min(errors.size(), IMPORT_ERRORS_SHOWN); i++) {
+                content.append(errors.get(i)).append('\n');
+            }
+            if (errors.size() > IMPORT_ERRORS_SHOWN) {
+                content.append("... and ").append(errors.size() - IMPORT_ERRORS_SHOWN).append(" more.");
+            }
+            showAlert(errors.isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, "Import",
+                    report.getImportedCount() + " of " + report.getRowCount() + " appointments imported",
+                    content.toString());
+        }, e -> showAlert(Alert.AlertType.ERROR, "Error", "Error importing appointments", e.getMessage()));
+    }
+
     /**
      * When the "All" radio button is selected, the "Week" and "Month" radio buttons are deselected, and the Appointments
-     * list is cleared and repopulated with all appointments from the database.
+     * list is reloaded with the first page of all appointments; further pages are loaded as the user scrolls. A month
+     * or week query still in flight is cancelled.
      *
      * @param event The event that triggered the action.
-     * @throws Exception If there is an error retrieving the list of appointments from the database.
      */
     @FXML
-    void onActionAll(ActionEvent event) throws Exception {
+    void onActionAll(ActionEvent event) {
         weekRadioButton.setSelected(false);
         monthRadioButton.setSelected(false);
-        Appointments.clear();
-        Appointments.addAll(AppointmentDaoImpl.getAllAppointments());
+        filterRequest.cancel();
+        viewFrom = null;
+        viewTo = null;
+        pager.reset();
     }
 
 
     /**
      * When the month radio button is selected, the other two radio buttons are deselected, the appointments list is
-     * cleared, and the appointments list is populated with the appointments for the current month.
+     * cleared, and the appointments for the current month are loaded in the background.
      *
      * @param event The event that triggered the action.
-     * @throws Exception If there is an error retrieving the list of appointments from the database.
      */
     @FXML
-    void onActionMonth(ActionEvent event) throws Exception {
+    void onActionMonth(ActionEvent event) {
         allRadioButton.setSelected(false);
         weekRadioButton.setSelected(false);
+        pager.deactivate();
         Appointments.clear();
-        Appointments.addAll(AppointmentDaoImpl.getCurrentMonthAppointments());
+        viewFrom = AppointmentDaoImpl.getCurrentMonthStart();
+        viewTo = viewFrom.plusMonths(1);
+        filterRequest.submit(Repositories.appointments()::getCurrentMonthAppointments, Appointments::setAll,
+                e -> showAlert(Alert.AlertType.ERROR, "Error", "Error loading appointments", e.getMessage()));
     }
 
 
     /**
      * When the user clicks the "Week" radio button, the "All" and "Month" radio buttons are deselected, the Appointments
-     * list is cleared, and the Appointments list is populated with the current week's appointments.
+     * list is cleared, and the current week's appointments are loaded in the background.
      *
      * @param event The event that triggered the action.
-     * @throws Exception If there is an error retrieving the list of appointments from the database.
      */
     @FXML
-    void onActionWeek(ActionEvent event) throws Exception {
+    void onActionWeek(ActionEvent event) {
         allRadioButton.setSelected(false);
         monthRadioButton.setSelected(false);
+        pager.deactivate();
         Appointments.clear();
-        Appointments.addAll(AppointmentDaoImpl.getCurrentWeekAppointments());
+        viewFrom = AppointmentDaoImpl.getCurrentWeekStart();
+        viewTo = viewFrom.plusWeeks(1);
+        filterRequest.submit(Repositories.appointments()::getCurrentWeekAppointments, Appointments::setAll,
+                e -> showAlert(Alert.AlertType.ERROR, "Error", "Error loading appointments", e.getMessage()));
+    }
+
+
+    /**
+     * Applies the changes of an appointment write to the list shown, with the fewest edits, so the table keeps its
+     * selection and scroll position. Runs on the JavaFX Application Thread.
+     *
+     * @param changes the changes of one write.
+     */
+    private void onAppointmentsChanged(AppointmentChangeSet changes) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> onAppointmentsChanged(changes));
+            return;
+        }
+        changes.applyTo(Appointments, this::isInView);
     }
 
+    /**
+     * Tells whether an appointment belongs in the list shown: whether it starts in the week or month shown or, when
+     * all appointments are shown, whether it sorts within the pages loaded. Occurrences of series are not paged.
+     *
+     * @param appointment an added or updated appointment.
+     * @return true if the appointment belongs in the list.
+     */
+    private boolean isInView(Appointment appointment) {
+        if (pager.isActive()) {
+            if (appointment.isOccurrence()) {
+                return false;
+            }
+            if (Appointments.isEmpty()) {
+                return !pager.hasMoreBefore() && !pager.hasMoreAfter();
+            }
+            return (!pager.hasMoreBefore() || AppointmentChangeSet.START_ORDER.compare(Appointments.get(0), appointment) <= 0)
+                    && (!pager.hasMoreAfter() || AppointmentChangeSet.START_ORDER.compare(appointment,
+                    Appointments.get(Appointments.size() - 1)) <= 0);
+        }
+        return viewFrom != null && !appointment.getStart().isBefore(viewFrom) && appointment.getStart().isBefore(viewTo);
+    }
 
     /**
      * Initializes the appointment table view by setting the cell value factories and populating it with data.
      * <p>
-     * This method sets the cell value factories for each column of the appointment table view, and populates the table with data
-     * retrieved from the database.
+     * This method sets the cell value factories for each column of the appointment table view, and populates the table with the
+     * first page of appointments retrieved from the database; later pages are fetched as the user scrolls.
      * LAMBDA expressions are used to create callbacks for the start and end date/time columns, which
      * formats the date/time to a user-friendly string. The contact name is retrieved using the contact ID associated with each
-     * appointment, and is set as the value of the contact name column using a lambda expression.
+     * appointment, and is set as the value of the contact name column using a lambda expression. The contacts are read in
+     * the background; the contact name column is filled in once they arrive.
      * <p>
      * The use of lambda expressions in this method provides a concise and efficient way to create callbacks for each cell value
      * factory, and makes the code more readable by reducing the need for boilerplate code.
      *
      * @param url            the location used to resolve relative paths for the root object or null if the location is not known
      * @param resourceBundle the resources used to localize the root object or null if the root object was not localized
-     * @throws RuntimeException if there is an exception while getting the contact list from the database
      */
 
     @Override
@@ -313,11 +429,10 @@ public class Appointments implements Initializable {
         customerId.setCellValueFactory(new PropertyValueFactory<>("customerId"));
         userId.setCellValueFactory(new PropertyValueFactory<>("userId"));
 
-        try {
-            Contacts = ContactDaoImpl.getAllContacts();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        DaoExecutor.run(Repositories.contacts()::getAllContacts, contacts -> {
+            Contacts = contacts;
+            appointmentTable.refresh();
+        }, Throwable::printStackTrace);
         // The code is setting the value of the contactName column to the contactName associated with the
         // appointment's contactId.
         contactName.setCellValueFactory(param -> {
@@ -332,12 +447,11 @@ public class Appointments implements Initializable {
             }
             return new SimpleStringProperty(contactName);
         });
-        try {
-            Appointments.addAll(AppointmentDaoImpl.getAllAppointments());
-        } catch (Exception ex) {
-            Logger.getLogger(Appointments.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        appointmentTable.setItems(Appointments);
+        pager = new TableViewPager<>(appointmentTable, Appointments,
+                Repositories.appointments()::getAppointmentsPageAfter,
+                Repositories.appointments()::getAppointmentsPageBefore, PAGE_SIZE, MAXIMUM_ROWS);
+        pager.reset();
         allRadioButton.setSelected(true);
+        AppointmentChangeBus.subscribe(changeListener);
     }
 }
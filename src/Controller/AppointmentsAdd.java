@@ -1,16 +1,20 @@
 package Controller;
 
-import DAO.AppointmentDaoImpl;
-import DAO.ContactDaoImpl;
-import DAO.CustomerDaoImpl;
-import DAO.UserDaoImpl;
+import DAO.AppointmentSeriesDaoImpl;
+import DAO.Repositories;
+import Model.Appointment;
+import Model.AppointmentSeries;
 import Model.Contact;
 import Model.Customer;
+import Model.RecurrenceRule;
 import Model.User;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
+import utils.DaoExecutor;
+import utils.FreeSlotFinder;
 import utils.TimeComboBoxUtils;
 
 import java.io.IOException;
@@ -19,7 +23,9 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 
 import static utils.utils.showAlert;
 import static utils.utils.switchToScene;
@@ -55,6 +61,15 @@ public class AppointmentsAdd implements Initializable {
      * The combo box that allows the user to select an end time.
      */
     public ComboBox<ZonedDateTime> endTimeComboBox;
+    /**
+     * The free slots of the selected customer, contact and user, or null until they are needed or after a selection
+     * changes.
+     */
+    private FreeSlotFinder slotFinder;
+    /**
+     * The free slot search in flight; a new search, e.g. after another customer is selected, cancels it.
+     */
+    private final DaoExecutor.LatestRequest slotRequest = new DaoExecutor.LatestRequest();
     /**
      * The text field that allows the user to enter a location.
      */
@@ -80,6 +95,17 @@ public class AppointmentsAdd implements Initializable {
      */
     @FXML
     private DatePicker appointmentAddDatePicker;
+    /**
+     * The combo box that allows the user to make the appointment repeat; no selection adds a single appointment.
+     */
+    @FXML
+    private ComboBox<RecurrenceRule.Frequency> repeatCombo;
+    /**
+     * The date picker object that allows the user to select the last day a recurring appointment can occur on; no
+     * date makes it repeat indefinitely.
+     */
+    @FXML
+    private DatePicker repeatUntilDatePicker;
 
 
     /**
@@ -100,7 +126,9 @@ public class AppointmentsAdd implements Initializable {
      * location, type, contact, customer, user, start time, and end time fields are empty. If any of those fields are
      * empty, show an alert. If none of those fields are empty, check if the appointment overlaps with an existing
      * appointment. If the appointment overlaps with an existing appointment, show an alert. If the appointment does not
-     * overlap with an existing appointment, add the appointment to the database.
+     * overlap with an existing appointment, add the appointment to the database. If a repeat frequency is selected, a
+     * recurring series is saved instead, once its occurrences are checked for overlaps. The overlap check and the save
+     * run in the background.
      *
      * @param event The event that triggered the method.
      * @throws Exception If the FXML file cannot be found or if the SQL query cannot be executed.
@@ -108,11 +136,6 @@ public class AppointmentsAdd implements Initializable {
 
     @FXML
     void onActionSave(ActionEvent event) throws Exception {
-        int customerId = 0;
-        int userId = 0;
-        int contactId = 0;
-        LocalDateTime startDateTime = null;
-        LocalDateTime endDateTime = null;
         try {
             if (appointmentAddDatePicker.getValue() == null) {
                 showAlert(Alert.AlertType.WARNING, "Validation Error", "Date Field Empty",
@@ -157,19 +180,35 @@ public class AppointmentsAdd implements Initializable {
                     showAlert(Alert.AlertType.WARNING, "Validation Error", "End Time Field Empty",
                             "The end time field cannot be empty. Please select an end time.");
                 } else {
-                    contactId = contactCombo.getValue().getContactId();
-                    userId = userCombo.getValue().getUserId();
-                    customerId = customerCombo.getValue().getCustomerId();
-                    startDateTime = startTimeComboBox.getSelectionModel().getSelectedItem().toLocalDateTime();
-                    endDateTime = endTimeComboBox.getSelectionModel().getSelectedItem().toLocalDateTime();
-                    if (Appointments.hasOverlap(customerId, 0, startDateTime, endDateTime)) {
-                        showAlert(Alert.AlertType.WARNING, "Validation Error", "Appointment Overlap Error",
-                                "The appointment overlaps with an existing appointment. Please select a different time.");
-                    } else {
-                        AppointmentDaoImpl.addAppointment(title, description, location,
-                                type, startDateTime, endDateTime, createDate, createdBy, lastUpdate,
+                    int contactId = contactCombo.getValue().getContactId();
+                    int userId = userCombo.getValue().getUserId();
+                    int customerId = customerCombo.getValue().getCustomerId();
+                    LocalDateTime startDateTime = startTimeComboBox.getSelectionModel().getSelectedItem().toLocalDateTime();
+                    LocalDateTime endDateTime = endTimeComboBox.getSelectionModel().getSelectedItem().toLocalDateTime();
+                    if (repeatCombo.getValue() != null) {
+                        AppointmentSeries series = new AppointmentSeries(0, title, description, location, type,
+                                startDateTime, endDateTime, new RecurrenceRule(repeatCombo.getValue(), 1,
+                                repeatUntilDatePicker.getValue() == null ? null : repeatUntilDatePicker.getValue().atTime(23, 59),
+                                null), createDate.toLocalDateTime(), createdBy, lastUpdate.toLocalDateTime(),
                                 lastUpdateBy, customerId, userId, contactId);
-                        switchToScene(event, "/view/MainMenu.fxml", "Appointments");
+                        saveSeries(event, series);
+                    } else {
+                        DaoExecutor.run(() -> {
+                            if (Appointments.hasOverlap(customerId, 0, startDateTime, endDateTime)) {
+                                return false;
+                            }
+                            Repositories.appointments().addAppointment(title, description, location,
+                                    type, startDateTime, endDateTime, createDate, createdBy, lastUpdate,
+                                    lastUpdateBy, customerId, userId, contactId);
+                            return true;
+                        }, saved -> {
+                            if (saved) {
+                                switchToScene(event, "/view/MainMenu.fxml", "Appointments");
+                            } else {
+                                showAlert(Alert.AlertType.WARNING, "Validation Error", "Appointment Overlap Error",
+                                        "The appointment overlaps with an existing appointment. Please select a different time.");
+                            }
+                        }, this::saveFailed);
                     }
                 }
             }
@@ -180,27 +219,107 @@ public class AppointmentsAdd implements Initializable {
 
 
     /**
-     * Initializes the user, customer, and contact combo boxes with data from their respective DAO classes.
-     * Also initializes the start and end time combo boxes by calling their respective initialization methods.
+     * Saves a recurring appointment after checking that its repeat date is not before its first occurrence and that
+     * none of its occurrences overlaps another appointment of the customer. The check and the save run in the
+     * background.
+     *
+     * @param event  the event that triggered the save.
+     * @param series the recurring appointment.
+     */
+    private void saveSeries(ActionEvent event, AppointmentSeries series) {
+        LocalDateTime until = series.getRule().getUntil();
+        if (until != null && until.isBefore(series.getStart())) {
+            showAlert(Alert.AlertType.WARNING, "Validation Error", "Repeat Date Error",
+                    "The repeat until date cannot be before the start date.");
+            return;
+        }
+        DaoExecutor.run(() -> {
+            List<Appointment> conflicts = AppointmentSeriesDaoImpl.findConflicts(series);
+            if (conflicts.isEmpty()) {
+                AppointmentSeriesDaoImpl.addSeries(series);
+            }
+            return conflicts;
+        }, conflicts -> {
+            if (conflicts.isEmpty()) {
+                switchToScene(event, "/view/MainMenu.fxml", "Appointments");
+            } else {
+                showAlert(Alert.AlertType.WARNING, "Validation Error", "Appointment Overlap Error",
+                        "The recurring appointment overlaps with " + conflicts.size() + " existing appointment(s), the first on "
+                                + conflicts.get(0).getStart() + ". Please select a different time.");
+            }
+        }, this::saveFailed);
+    }
+
+    /**
+     * Reports an appointment that could not be checked or saved.
+     *
+     * @param error the cause of the failure.
+     */
+    private void saveFailed(Throwable error) {
+        showAlert(Alert.AlertType.ERROR, "Error", "Error saving appointment", error.getMessage());
+        error.printStackTrace();
+    }
+
+    /**
+     * Hands the free slots of the selected customer, contact and user for a date to an action. When the cached ones do
+     * not cover the date, they are read from the conflict index for the next few weeks in the background, and the
+     * action runs on the JavaFX Application Thread once they arrive.
+     *
+     * @param date   the selected date.
+     * @param action fills the time combo boxes with the free slots, or with every time if they cannot be read (null).
+     */
+    private void withSlotFinder(LocalDate date, Consumer<FreeSlotFinder> action) {
+        if (slotFinder != null && slotFinder.covers(date)) {
+            action.accept(slotFinder);
+            return;
+        }
+        Integer customerId = customerCombo.getValue() == null ? null : customerCombo.getValue().getCustomerId();
+        Integer contactId = contactCombo.getValue() == null ? null : contactCombo.getValue().getContactId();
+        Integer userId = userCombo.getValue() == null ? null : userCombo.getValue().getUserId();
+        slotRequest.submit(() -> FreeSlotFinder.forAttendees(customerId, contactId, userId, 0, date,
+                date.plusDays(FreeSlotFinder.DEFAULT_HORIZON_DAYS - 1)), finder -> {
+            slotFinder = finder;
+            action.accept(finder);
+        }, e -> {
+            e.printStackTrace();
+            action.accept(null);
+        });
+    }
+
+    /**
+     * Drops the cached free slots and lists the start times of the selected date again for the new selection.
+     */
+    private void attendeesChanged() {
+        slotFinder = null;
+        LocalDate selectedDate = appointmentAddDatePicker.getValue();
+        if (selectedDate != null) {
+            withSlotFinder(selectedDate, finder -> {
+                TimeComboBoxUtils.initializeStartTimeComboBox(startTimeComboBox, selectedDate, finder);
+                endTimeComboBox.getItems().clear();
+            });
+        }
+    }
+
+    /**
+     * Initializes the user, customer, and contact combo boxes with data from their respective DAO classes, read in the
+     * background. Also initializes the start and end time combo boxes by calling their respective initialization methods.
      *
      * @param url            - The location used to resolve relative paths for the root object, or null if the location is not known.
      * @param resourceBundle - The resources used to localize the root object, or null if the root object was not localized.
      */
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            userCombo.setItems(UserDaoImpl.getAllUsers());
-            customerCombo.setItems(CustomerDaoImpl.getAllCustomers());
-            contactCombo.setItems(ContactDaoImpl.getAllContacts());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        DaoExecutor.run(Repositories.users()::getAllUsers, userCombo::setItems, Throwable::printStackTrace);
+        DaoExecutor.run(Repositories.customers()::getAllCustomers, customerCombo::setItems, Throwable::printStackTrace);
+        DaoExecutor.run(Repositories.contacts()::getAllContacts, contactCombo::setItems, Throwable::printStackTrace);
+        repeatCombo.setItems(FXCollections.observableArrayList(RecurrenceRule.Frequency.values()));
         try {
             appointmentAddDatePicker.setOnAction(event -> {
                 // Get the selected date from the datepicker
                 LocalDate selectedDate = appointmentAddDatePicker.getValue();
                 if (selectedDate != null) {
                     // Update the start and end comboboxes based on the selected date
-                    TimeComboBoxUtils.initializeStartTimeComboBox(startTimeComboBox, selectedDate);
+                    withSlotFinder(selectedDate, finder ->
+                            TimeComboBoxUtils.initializeStartTimeComboBox(startTimeComboBox, selectedDate, finder));
                     // Update the end combobox when the start combobox selection changes
                     startTimeComboBox.setOnAction(event2 -> {
                         // Get the selected start time from the start combobox
@@ -208,11 +327,16 @@ public class AppointmentsAdd implements Initializable {
                         System.out.println("Start time: " + startTimeComboBox.getSelectionModel().getSelectedItem());
                         if (selectedStartTime != null) {
                             // Update the end combobox based on the selected start time and date
-                            TimeComboBoxUtils.initializeEndTimeComboBox(endTimeComboBox, selectedDate, selectedStartTime);
+                            withSlotFinder(selectedDate, finder -> TimeComboBoxUtils.initializeEndTimeComboBox(
+                                    endTimeComboBox, selectedDate, selectedStartTime, finder));
                         }
                     });
                 }
             });
+            // Only free times are listed, so they are listed again when a different customer, contact or user is selected
+            customerCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
+            contactCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
+            userCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
             endTimeComboBox.setOnAction(event2 -> System.out.println("End time: " + endTimeComboBox.getSelectionModel().getSelectedItem()));
         } catch (Exception e) {
             e.printStackTrace();
@@ -1,17 +1,19 @@
 package Controller;
 
-import DAO.AppointmentDaoImpl;
-import DAO.ContactDaoImpl;
-import DAO.CustomerDaoImpl;
-import DAO.UserDaoImpl;
+import DAO.OptimisticLockException;
+import DAO.Repositories;
 import Model.Appointment;
 import Model.Contact;
 import Model.Customer;
 import Model.User;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
+import utils.DaoExecutor;
+import utils.FieldMerger;
+import utils.FreeSlotFinder;
 import utils.TimeComboBoxUtils;
 
 import java.io.IOException;
@@ -21,7 +23,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
 import static utils.utils.showAlert;
 import static utils.utils.switchToScene;
@@ -38,6 +44,23 @@ public class AppointmentsModify implements Initializable {
      * The appointment to be modified.
      */
     private static Appointment selectedAppointment;
+    /**
+     * Merges an edit into the appointment as another user saved it meanwhile. The start and end are one field, so a
+     * merge cannot pair one user's start with the other's end.
+     */
+    private static final FieldMerger<Appointment> MERGER = new FieldMerger<Appointment>()
+            .field("Title", Appointment::getTitle, Appointment::setTitle)
+            .field("Description", Appointment::getDescription, Appointment::setDescription)
+            .field("Location", Appointment::getLocation, Appointment::setLocation)
+            .field("Type", Appointment::getType, Appointment::setType)
+            .field("Time", appointment -> List.of(appointment.getStart(), appointment.getEnd()),
+                    (appointment, time) -> {
+                        appointment.setStart(time.get(0));
+                        appointment.setEnd(time.get(1));
+                    })
+            .field("Customer ID", Appointment::getCustomerId, Appointment::setCustomerId)
+            .field("User ID", Appointment::getUserId, Appointment::setUserId)
+            .field("Contact ID", Appointment::getContactId, Appointment::setContactId);
     /**
      * The appointment ID label.
      */
@@ -94,6 +117,15 @@ public class AppointmentsModify implements Initializable {
      */
     @FXML
     private ComboBox<User> appointmentModifyUserIDCombo;
+    /**
+     * The free slots of the selected customer, contact and user, or null until they are needed or after a selection
+     * changes.
+     */
+    private FreeSlotFinder slotFinder;
+    /**
+     * The free slot search in flight; a new search, e.g. after another customer is selected, cancels it.
+     */
+    private final DaoExecutor.LatestRequest slotRequest = new DaoExecutor.LatestRequest();
 
 
     /**
@@ -112,7 +144,7 @@ public class AppointmentsModify implements Initializable {
      * This method saves the modified appointment. It validates the data entered by the user.<br>
      * If the date field is not empty, and all other fields are not empty, and the start and end times are not empty, and
      * the appointment does not overlap with an existing appointment, then modify the appointment. It loads the Main Menu
-     * screen. It switches to the Appointments tab.
+     * screen. It switches to the Appointments tab. The overlap check and the save run in the background.
      *
      * @param event The event that triggered the method.
      * @throws IOException If the FXML file cannot be found.
@@ -172,15 +204,11 @@ public class AppointmentsModify implements Initializable {
                         showAlert(Alert.AlertType.WARNING, "Validation Error", "Date Time Fields Empty",
                                 "The date time fields cannot be empty. Please select a start and end time.");
                     } else {
-                        if (Appointments.hasOverlap(customerID, appointmentID, startDateTime, endDateTime)) {
-                            showAlert(Alert.AlertType.WARNING, "Validation Error", "Appointment Overlap Error",
-                                    "The appointment overlaps with an existing appointment. Please select a different time.");
-                        } else {
-                            AppointmentDaoImpl.modifyAppointment(appointmentID, appointmentTitle, appointmentDescription,
-                                    appointmentLocation, appointmentType, startDateTime, endDateTime, lastUpdate,
-                                    lastUpdateBy, customerID, userID, contactID);
-                            switchToScene(event, "/view/MainMenu.fxml", "Appointments");
-                        }
+                        Appointment mine = new Appointment(appointmentID, appointmentTitle, appointmentDescription,
+                                appointmentLocation, appointmentType, startDateTime, endDateTime, null, null,
+                                lastUpdate.toLocalDateTime(), lastUpdateBy, customerID, userID, contactID);
+                        saveIfFree(event, mine, mine, selectedAppointment.getVersion(),
+                                "The appointment overlaps with an existing appointment. Please select a different time.");
                     }
                 }
             }
@@ -189,6 +217,82 @@ public class AppointmentsModify implements Initializable {
         }
     }
 
+    /**
+     * Saves an appointment in the background if it does not overlap another appointment of its customer and is still
+     * stored as it was read. If another user saved it meanwhile, the stored version is read and
+     * {@link #resolveConflict} asks what to do.
+     *
+     * @param event          the event that triggered the save.
+     * @param mine           the appointment as edited.
+     * @param toSave         the appointment to save: the edit, or the edit merged into another user's version.
+     * @param version        the version the appointment to save is based on.
+     * @param overlapMessage the message shown if the appointment overlaps another one.
+     */
+    private void saveIfFree(ActionEvent event, Appointment mine, Appointment toSave, int version, String overlapMessage) {
+        DaoExecutor.run(() -> {
+            if (Appointments.hasOverlap(toSave.getCustomerId(), toSave.getAppointmentId(), toSave.getStart(), toSave.getEnd())) {
+                return false;
+            }
+            Repositories.appointments().modifyAppointment(toSave.getAppointmentId(), toSave.getTitle(),
+                    toSave.getDescription(), toSave.getLocation(), toSave.getType(), toSave.getStart(),
+                    toSave.getEnd(), Timestamp.valueOf(mine.getLastUpdate()), mine.getLastUpdatedBy(),
+                    toSave.getCustomerId(), toSave.getUserId(), toSave.getContactId(), version);
+            return true;
+        }, saved -> {
+            if (saved) {
+                switchToScene(event, "/view/MainMenu.fxml", "Appointments");
+            } else {
+                showAlert(Alert.AlertType.WARNING, "Validation Error", "Appointment Overlap Error", overlapMessage);
+            }
+        }, error -> {
+            if (error instanceof OptimisticLockException) {
+                DaoExecutor.run(() -> Repositories.appointments().getAppointmentById(mine.getAppointmentId()),
+                        theirs -> resolveConflict(event, mine, theirs), this::saveFailed);
+            } else {
+                saveFailed(error);
+            }
+        });
+    }
+
+    /**
+     * Handles an edit that another user saved over meanwhile: asks whether to merge the edit into their version, which
+     * is then saved in the same way, or to discard it and show theirs.
+     *
+     * @param event  the event that triggered the save.
+     * @param mine   the appointment as edited.
+     * @param theirs the appointment as the other user saved it, or null if they deleted it.
+     */
+    private void resolveConflict(ActionEvent event, Appointment mine, Appointment theirs) {
+        if (theirs == null) {
+            showAlert(Alert.AlertType.WARNING, "Edit Conflict", "Appointment Deleted",
+                    "Another user deleted this appointment while you were editing it.");
+            switchToScene(event, "/view/MainMenu.fxml", "Appointments");
+            return;
+        }
+        switch (FieldMerger.askResolution("appointment", theirs.getLastUpdatedBy(),
+                MERGER.getConflicts(selectedAppointment, mine, theirs))) {
+            case DISCARD:
+                selectedAppointment = theirs;
+                switchToScene(event, "/view/AppointmentsModify.fxml", null);
+                return;
+            case CANCEL:
+                return;
+            default:
+                saveIfFree(event, mine, MERGER.merge(selectedAppointment, mine, theirs), theirs.getVersion(),
+                        "The merged appointment overlaps with an existing appointment. Please select a different time.");
+        }
+    }
+
+    /**
+     * Reports an appointment that could not be checked, saved or read again.
+     *
+     * @param error the cause of the failure.
+     */
+    private void saveFailed(Throwable error) {
+        showAlert(Alert.AlertType.ERROR, "Error", "Error saving appointment", error.getMessage());
+        error.printStackTrace();
+    }
+
     /**
      * This method passed the appointment selected on the Appointments table view to be updated in the fields on the AppointmentsModify window.
      *
@@ -199,6 +303,48 @@ public class AppointmentsModify implements Initializable {
     }
 
 
+    /**
+     * Hands the free slots of the selected customer, contact and user for a date to an action. When the cached ones do
+     * not cover the date, they are read from the conflict index for the next few weeks in the background, and the
+     * action runs on the JavaFX Application Thread once they arrive. The time of the appointment being modified counts
+     * as free.
+     *
+     * @param date   the selected date.
+     * @param action fills the time combo boxes with the free slots, or with every time if they cannot be read (null).
+     */
+    private void withSlotFinder(LocalDate date, Consumer<FreeSlotFinder> action) {
+        if (slotFinder != null && slotFinder.covers(date)) {
+            action.accept(slotFinder);
+            return;
+        }
+        Integer customerId = appointmentModifyCustomerIDCombo.getValue() == null ? null : appointmentModifyCustomerIDCombo.getValue().getCustomerId();
+        Integer contactId = appointmentModifyContactCombo.getValue() == null ? null : appointmentModifyContactCombo.getValue().getContactId();
+        Integer userId = appointmentModifyUserIDCombo.getValue() == null ? null : appointmentModifyUserIDCombo.getValue().getUserId();
+        int appointmentId = selectedAppointment.getAppointmentId();
+        slotRequest.submit(() -> FreeSlotFinder.forAttendees(customerId, contactId, userId, appointmentId, date,
+                date.plusDays(FreeSlotFinder.DEFAULT_HORIZON_DAYS - 1)), finder -> {
+            slotFinder = finder;
+            action.accept(finder);
+        }, e -> {
+            e.printStackTrace();
+            action.accept(null);
+        });
+    }
+
+    /**
+     * Drops the cached free slots and lists the start times of the selected date again for the new selection.
+     */
+    private void attendeesChanged() {
+        slotFinder = null;
+        LocalDate selectedDate = appointmentModifyDatePicker.getValue();
+        if (selectedDate != null) {
+            withSlotFinder(selectedDate, finder -> {
+                TimeComboBoxUtils.initializeStartTimeComboBox(appointmentModifyStartCombo, selectedDate, finder);
+                appointmentModifyEndCombo.getItems().clear();
+            });
+        }
+    }
+
     /**
      * This function initializes the appointment modify screen with the selected appointment's information, and
      * initializes the start and end time combo boxes based on the selected appointment's start and end time.
@@ -212,16 +358,22 @@ public class AppointmentsModify implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            appointmentModifyContactCombo.setValue(ContactDaoImpl.getContactFromContactID(selectedAppointment.getContactId()));
-            appointmentModifyContactCombo.setItems(ContactDaoImpl.getAllContacts());
-            appointmentModifyCustomerIDCombo.setValue(CustomerDaoImpl.getCustomerByCustomerId(selectedAppointment.getCustomerId()));
-            appointmentModifyCustomerIDCombo.setItems(CustomerDaoImpl.getAllCustomers());
-            appointmentModifyUserIDCombo.setValue(UserDaoImpl.getUserFromUserID(selectedAppointment.getUserId()));
-            appointmentModifyUserIDCombo.setItems(UserDaoImpl.getAllUsers());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        CompletableFuture<ObservableList<Contact>> contacts = DaoExecutor.supplyAsync(Repositories.contacts()::getAllContacts);
+        CompletableFuture<ObservableList<Customer>> customers = DaoExecutor.supplyAsync(Repositories.customers()::getAllCustomers);
+        CompletableFuture<ObservableList<User>> users = DaoExecutor.supplyAsync(Repositories.users()::getAllUsers);
+        DaoExecutor.onFxThread(CompletableFuture.allOf(contacts, customers, users), loaded -> {
+            appointmentModifyContactCombo.setItems(contacts.join());
+            appointmentModifyContactCombo.setValue(find(contacts.join(), Contact::getContactId, selectedAppointment.getContactId()));
+            appointmentModifyCustomerIDCombo.setItems(customers.join());
+            appointmentModifyCustomerIDCombo.setValue(find(customers.join(), Customer::getCustomerId, selectedAppointment.getCustomerId()));
+            appointmentModifyUserIDCombo.setItems(users.join());
+            appointmentModifyUserIDCombo.setValue(find(users.join(), User::getUserId, selectedAppointment.getUserId()));
+            initializeTimes();
+            // Only free times are listed, so they are listed again when a different customer, contact or user is selected
+            appointmentModifyCustomerIDCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
+            appointmentModifyContactCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
+            appointmentModifyUserIDCombo.valueProperty().addListener((observable, oldValue, newValue) -> attendeesChanged());
+        }, Throwable::printStackTrace);
         appointmentModifyIDLabel.setText(Integer.toString(selectedAppointment.getAppointmentId()));
         appointmentModifyTitleLabel.setText(selectedAppointment.getTitle());
         appointmentModifyDescriptionLabel.setText(selectedAppointment.getDescription());
@@ -229,19 +381,14 @@ public class AppointmentsModify implements Initializable {
         appointmentModifyTypeLabel.setText(selectedAppointment.getType());
         appointmentModifyDatePicker.setValue(selectedAppointment.getStart().toLocalDate());
 
-        // Initialize the start and end time combo boxes based on the selected appointment's start and end time
-        TimeComboBoxUtils.initializeStartTimeComboBox(appointmentModifyStartCombo, selectedAppointment.getStart().toLocalDate());
-        TimeComboBoxUtils.initializeEndTimeComboBox(appointmentModifyEndCombo, selectedAppointment.getStart().toLocalDate(), selectedAppointment.getStart().atZone(ZoneId.systemDefault()));
-
-        appointmentModifyStartCombo.setValue(selectedAppointment.getStart().atZone(ZoneId.systemDefault()));
-        appointmentModifyEndCombo.setValue(selectedAppointment.getEnd().atZone(ZoneId.systemDefault()));
-
         appointmentModifyStartCombo.setOnAction(event2 -> {
             // Get the selected start time from the start combobox
             ZonedDateTime selectedStartTime = appointmentModifyStartCombo.getSelectionModel().getSelectedItem();
             if (selectedStartTime != null) {
                 // Update the end combobox based on the selected start time and date
-                TimeComboBoxUtils.initializeEndTimeComboBox(appointmentModifyEndCombo, appointmentModifyDatePicker.getValue(), selectedStartTime);
+                LocalDate selectedDate = appointmentModifyDatePicker.getValue();
+                withSlotFinder(selectedDate, finder -> TimeComboBoxUtils.initializeEndTimeComboBox(appointmentModifyEndCombo,
+                        selectedDate, selectedStartTime, finder));
             }
         });
         try {
@@ -250,21 +397,55 @@ public class AppointmentsModify implements Initializable {
                 LocalDate selectedDate = appointmentModifyDatePicker.getValue();
                 if (selectedDate != null) {
                     // Update the start and end comboboxes based on the selected date
-                    TimeComboBoxUtils.initializeStartTimeComboBox(appointmentModifyStartCombo, selectedDate);
+                    withSlotFinder(selectedDate, finder ->
+                            TimeComboBoxUtils.initializeStartTimeComboBox(appointmentModifyStartCombo, selectedDate, finder));
                     // Update the end combobox when the start combobox selection changes
                     appointmentModifyStartCombo.setOnAction(event2 -> {
                         // Get the selected start time from the start combobox
                         ZonedDateTime selectedStartTime = appointmentModifyStartCombo.getSelectionModel().getSelectedItem();
                         if (selectedStartTime != null) {
                             // Update the end combobox based on the selected start time and date
-                            TimeComboBoxUtils.initializeEndTimeComboBox(appointmentModifyEndCombo, selectedDate, selectedStartTime);
+                            withSlotFinder(selectedDate, finder -> TimeComboBoxUtils.initializeEndTimeComboBox(
+                                    appointmentModifyEndCombo, selectedDate, selectedStartTime, finder));
                         }
                     });
                 }
             });
-
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Initializes the start and end time combo boxes based on the selected appointment's start and end time, once the
+     * customer, contact and user of the appointment are selected and their free slots have been read.
+     */
+    private void initializeTimes() {
+        LocalDate date = selectedAppointment.getStart().toLocalDate();
+        withSlotFinder(date, finder -> {
+            TimeComboBoxUtils.initializeStartTimeComboBox(appointmentModifyStartCombo, date, finder);
+            TimeComboBoxUtils.initializeEndTimeComboBox(appointmentModifyEndCombo, date,
+                    selectedAppointment.getStart().atZone(ZoneId.systemDefault()), finder);
+            appointmentModifyStartCombo.setValue(selectedAppointment.getStart().atZone(ZoneId.systemDefault()));
+            appointmentModifyEndCombo.setValue(selectedAppointment.getEnd().atZone(ZoneId.systemDefault()));
+        });
+    }
+
+    /**
+     * Finds an item of a combo box by its ID.
+     *
+     * @param items  the items of the combo box.
+     * @param id     returns the ID of an item.
+     * @param wanted the ID to find.
+     * @param <T>    the type of the items.
+     * @return the item with the ID, or null if there is none.
+     */
+    private static <T> T find(List<T> items, ToIntFunction<T> id, int wanted) {
+        for (T item : items) {
+            if (id.applyAsInt(item) == wanted) {
+                return item;
+            }
+        }
+        return null;
+    }
 }
@@ -1,9 +1,9 @@
 package Controller;
 
-import DAO.AppointmentDaoImpl;
-import DAO.CustomerDaoImpl;
-import Model.Appointment;
+import DAO.AppointmentSeriesDaoImpl;
+import DAO.Repositories;
 import Model.Customer;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -11,17 +11,22 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import utils.ChangePoller;
+import utils.DaoExecutor;
+import utils.TableViewPager;
 
 import java.io.IOException;
 import java.net.URL;
-import java.sql.SQLException;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 import static utils.utils.*;
 
@@ -37,6 +42,22 @@ public class Customers implements Initializable {
      * List of customers to be displayed in the customer table.
      */
     ObservableList<Model.Customer> CustomerList = FXCollections.observableArrayList();
+    /**
+     * The number of customers fetched per page.
+     */
+    private static final int PAGE_SIZE = 100;
+    /**
+     * The maximum number of customers kept in memory.
+     */
+    private static final int MAXIMUM_ROWS = 500;
+    /**
+     * Loads the customers page by page as the user scrolls.
+     */
+    private TableViewPager<Customer> pager;
+    /**
+     * Applies the customers other users change to the list; held here since the {@link ChangePoller} holds it weakly.
+     */
+    private final BiConsumer<List<Customer>, Set<Integer>> customerListener = this::onCustomersChanged;
     /**
      * The Customers table.
      */
@@ -106,66 +127,66 @@ public class Customers implements Initializable {
     }
 
     /**
-     * If a customer is selected, confirm that the user wants to delete the customer, then if the customer has
-     * appointments, confirm that the user wants to delete the appointments, then delete the appointments, then delete the
-     * customer
+     * If customers are selected, confirm that the user wants to delete them, then if they have appointments or
+     * recurring series, confirm that the user wants to delete those too, then delete the customers with their
+     * appointments and series in one transaction. Several customers can be selected and deleted at once. The
+     * appointments and series are counted and the customers deleted in the background.
      *
      * @param event The event that triggered the method.
-     *              {@code @LAMBDA} expression used to delete the customer and appointments. It facilitates the use of the foreach
-     *              loop to delete the appointments inside a try/catch block to catch any SQLExceptions.
-     * @throws Exception If the customer cannot be deleted.
+     *              {@code @LAMBDA} expressions run the deletion when the user confirms each dialog.
      */
     @FXML
-    void onActionDeleteCustomer(ActionEvent event) throws Exception {
-        Customer selectedCustomer = CustomerTable.getSelectionModel().getSelectedItem();
+    void onActionDeleteCustomer(ActionEvent event) {
+        List<Customer> selectedCustomers = new ArrayList<>(CustomerTable.getSelectionModel().getSelectedItems());
 
-        if (selectedCustomer == null) {
+        if (selectedCustomers.isEmpty()) {
             showAlert(Alert.AlertType.WARNING, "Warning Dialog", "ERROR: No customer selected", null);
             return;
         }
-        showConfirmationAlert("Confirmation Dialog", "Are you sure you want to delete this customer?",
+        String header = selectedCustomers.size() == 1 ? "Are you sure you want to delete this customer?"
+                : "Are you sure you want to delete these " + selectedCustomers.size() + " customers?";
+        showConfirmationAlert("Confirmation Dialog", header,
                 null,
                 () -> {
-                    try {
-                        ObservableList<Appointment> apptsList = AppointmentDaoImpl.getAppointmentsByCustomerId(selectedCustomer.getCustomerId());
-                        if (!apptsList.isEmpty()) {
-                            showConfirmationAlert("Confirmation Dialog", "Must delete all appointments first. Are you sure you want to delete all appointments for this customer?",
+                    List<Integer> customerIds = new ArrayList<>();
+                    for (Customer customer : selectedCustomers) {
+                        customerIds.add(customer.getCustomerId());
+                    }
+                    DaoExecutor.run(() -> new int[]{Repositories.appointments().countAppointmentsByCustomerIds(customerIds),
+                            AppointmentSeriesDaoImpl.countSeriesByCustomerIds(customerIds)}, counts -> {
+                        if (counts[0] > 0 || counts[1] > 0) {
+                            String what = counts[1] == 0 ? counts[0] + " appointments"
+                                    : counts[0] + " appointments and " + counts[1] + " recurring series";
+                            showConfirmationAlert("Confirmation Dialog", "Must delete all appointments first. Are you sure you want to delete all "
+                                            + what + " for " + (customerIds.size() == 1 ? "this customer?" : "these customers?"),
                                     null,
-                                    () -> {
-                                        apptsList.forEach(appointment -> {
-                                            try {
-                                                AppointmentDaoImpl.deleteAppointment(appointment);
-                                            } catch (SQLException e) {
-                                                showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error deleting appointment", e.getMessage());
-                                            }
-                                        });
-                                        deleteCustomer(selectedCustomer);
-                                    },
+                                    () -> deleteCustomers(selectedCustomers, customerIds),
                                     null);
                         } else {
-                            deleteCustomer(selectedCustomer);
+                            deleteCustomers(selectedCustomers, customerIds);
                         }
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
+                    }, e -> showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error counting appointments", e.getMessage()));
                 },
                 null);
     }
 
     /**
-     * The function takes a customer object as a parameter, and then calls the deleteCustomer function in the
-     * CustomerDaoImpl class. If the function is successful, it will show an information dialog box, and if it fails, it
-     * will show an error dialog box
+     * Deletes customers with their appointments through CustomerRepository.deleteCustomers, in one transaction, in the
+     * background. If the deletion is successful, it removes the customers from the table and shows an information dialog box, and if
+     * it fails, it shows an error dialog box; nothing is deleted then.
      *
-     * @param customer The customer object to be deleted.
-     */
-    private void deleteCustomer(Customer customer) {
-        try {
-            CustomerDaoImpl.deleteCustomerById(customer);
-            showAlert(Alert.AlertType.INFORMATION, "Information Dialog", "Customer has been successfully deleted", null);
-        } catch (SQLException e) {
-            showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error deleting customer", e.getMessage());
-        }
+     * @param customers   The customers to be deleted.
+     * @param customerIds The IDs of the customers.
+     */
+    private void deleteCustomers(List<Customer> customers, List<Integer> customerIds) {
+        DaoExecutor.run(() -> {
+            Repositories.customers().deleteCustomers(customerIds);
+            return null;
+        }, deleted -> {
+            CustomerList.removeAll(customers);
+            showAlert(Alert.AlertType.INFORMATION, "Information Dialog", customers.size() == 1
+                    ? "Customer has been successfully deleted" : customers.size() + " customers have been successfully deleted", null);
+        }, e -> showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error deleting customer", e.getMessage()));
     }
 
     /**
@@ -188,8 +209,8 @@ public class Customers implements Initializable {
 
     /**
      * Theis function is the initialize function. It is called when the FXML file is loaded. It sets the cell value
-     * factory for each column in the Customers table view. It also sets the items in the table view to the list of
-     * customers returned by the getAllCustomers function in the CustomerDaoImpl class.
+     * factory for each column in the Customers table view. It also loads the first page of customers into the table
+     * view; later pages are fetched from the CustomerDaoImpl class as the user scrolls.
      *
      * @param url            The location used to resolve relative paths for the root object, or null if the location is not known.
      * @param resourceBundle This is a ResourceBundle object that contains the resources for the application.
@@ -206,11 +227,68 @@ public class Customers implements Initializable {
         Create_By.setCellValueFactory(new PropertyValueFactory<>("createdBy"));
         Last_Updated_By.setCellValueFactory(new PropertyValueFactory<>("lastUpdateBy"));
         Division_ID.setCellValueFactory(new PropertyValueFactory<>("divisionId"));
-        try {
-            CustomerList.addAll(CustomerDaoImpl.getAllCustomers());
-        } catch (Exception ex) {
-            Logger.getLogger(Customers.class.getName()).log(Level.SEVERE, null, ex);
+        pager = new TableViewPager<>(CustomerTable, CustomerList, Repositories.customers()::getCustomersPageAfter,
+                Repositories.customers()::getCustomersPageBefore, PAGE_SIZE, MAXIMUM_ROWS);
+        CustomerTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        pager.reset();
+        ChangePoller.getInstance().subscribeCustomers(customerListener);
+    }
+
+    /**
+     * Applies the customers other users changed to the list, which is sorted by customer ID, on the FX thread: deleted
+     * rows are removed, changed rows replaced in place and new rows inserted if they fall within the pages loaded.
+     *
+     * @param changed    the customers added or updated, as they are now stored.
+     * @param deletedIds the IDs of the customers deleted.
+     */
+    private void onCustomersChanged(List<Customer> changed, Set<Integer> deletedIds) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> onCustomersChanged(changed, deletedIds));
+            return;
+        }
+        if (!deletedIds.isEmpty()) {
+            CustomerList.removeIf(customer -> deletedIds.contains(customer.getCustomerId()));
+        }
+        for (Customer customer : changed) {
+            int index = indexOf(customer.getCustomerId());
+            if (index >= 0) {
+                CustomerList.set(index, customer);
+            } else if (isInView(customer.getCustomerId())) {
+                CustomerList.add(-index - 1, customer);
+            }
+        }
+    }
+
+    /**
+     * @param customerId a customer ID.
+     * @return the index of the customer in the list or, if it is not there, (-(insertion point) - 1).
+     */
+    private int indexOf(int customerId) {
+        int low = 0;
+        int high = CustomerList.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = CustomerList.get(mid).getCustomerId();
+            if (midId < customerId) {
+                low = mid + 1;
+            } else if (midId > customerId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param customerId the ID of a new customer.
+     * @return true if the customer sorts within the pages loaded, rather than in a page not loaded.
+     */
+    private boolean isInView(int customerId) {
+        if (CustomerList.isEmpty()) {
+            return !pager.hasMoreBefore() && !pager.hasMoreAfter();
         }
-        CustomerTable.setItems(CustomerList);
+        return (!pager.hasMoreBefore() || CustomerList.get(0).getCustomerId() <= customerId)
+                && (!pager.hasMoreAfter() || customerId <= CustomerList.get(CustomerList.size() - 1).getCustomerId());
     }
 }
\ No newline at end of file
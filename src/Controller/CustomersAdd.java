@@ -1,8 +1,6 @@
 package Controller;
 
-import DAO.CountryDaoImpl;
-import DAO.CustomerDaoImpl;
-import DAO.FirstLevelDivisionDaoImpl;
+import DAO.Repositories;
 import Model.Country;
 import Model.FirstLevelDivision;
 import javafx.event.ActionEvent;
@@ -11,6 +9,7 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextField;
+import utils.DaoExecutor;
 
 import java.io.IOException;
 import java.net.URL;
@@ -39,6 +38,10 @@ public class CustomersAdd implements Initializable {
      * The divisionCombo variable is used to store the division combo box.
      */
     public ComboBox<FirstLevelDivision> divisionCombo;
+    /**
+     * The divisions query in flight; choosing another country cancels it.
+     */
+    private final DaoExecutor.LatestRequest divisionRequest = new DaoExecutor.LatestRequest();
     /**
      * The customersAddNameLabel variable is used to store the customer name text field.
      */
@@ -63,7 +66,8 @@ public class CustomersAdd implements Initializable {
 
     /**
      * The function checks if the customer information fields are empty, if they are, it will display an error message.
-     * If they are not empty, it will add the customer to the database. It will then switch to the Customers screen.
+     * If they are not empty, it will add the customer to the database in the background. It will then switch to the
+     * Customers screen.
      *
      * @param event The event that triggered the method.
      * @throws IOException  If the FXML file cannot be found.
@@ -96,9 +100,14 @@ public class CustomersAdd implements Initializable {
                 showAlert(Alert.AlertType.WARNING, "Warning Dialog", "ERROR: The country must not be empty", null);
             } else {
                 int divisionId = D.getDivisionId();
-                CustomerDaoImpl.addCustomer(customerName, customerAddress, postalCode, customerPhone, createDate,
-                        createdBy, lastUpdate, lastUpdateBy, divisionId);
-                switchToScene(event, "/view/MainMenu.fxml", "Customers");
+                DaoExecutor.run(() -> {
+                    Repositories.customers().addCustomer(customerName, customerAddress, postalCode, customerPhone, createDate,
+                            createdBy, lastUpdate, lastUpdateBy, divisionId);
+                    return null;
+                }, added -> switchToScene(event, "/view/MainMenu.fxml", "Customers"), e -> {
+                    showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error adding customer", e.getMessage());
+                    e.printStackTrace();
+                });
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -118,15 +127,15 @@ public class CustomersAdd implements Initializable {
 
     /**
      * This is the method to set the divisionCombo combo box. It gets the divisionId from the countryCombo combo box
-     * and uses it to get the division name from the FirstLevelDivisionDaoImpl class.
+     * and uses it to get the division name from the FirstLevelDivisionDaoImpl class, in the background.
      *
      * @param event The event that triggered the method.
-     * @throws SQLException If the SQL query cannot be executed.
      */
     @FXML
-    void OnActionCountryCombo(ActionEvent event) throws SQLException {
+    void OnActionCountryCombo(ActionEvent event) {
         Country C = countryCombo.getValue();
-        divisionCombo.setItems(FirstLevelDivisionDaoImpl.getDiv(C.getCountryId()));
+        divisionRequest.submit(() -> Repositories.divisions().getDiv(C.getCountryId()), divisionCombo::setItems,
+                Throwable::printStackTrace);
     }
 
     /**
@@ -150,10 +159,6 @@ public class CustomersAdd implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            countryCombo.setItems(CountryDaoImpl.getAllCountries());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        DaoExecutor.run(Repositories.countries()::getAllCountries, countryCombo::setItems, Throwable::printStackTrace);
     }
 }
\ No newline at end of file
@@ -1,8 +1,7 @@
 package Controller;
 
-import DAO.CountryDaoImpl;
-import DAO.CustomerDaoImpl;
-import DAO.FirstLevelDivisionDaoImpl;
+import DAO.OptimisticLockException;
+import DAO.Repositories;
 import Model.Country;
 import Model.Customer;
 import Model.FirstLevelDivision;
@@ -13,6 +12,8 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import utils.DaoExecutor;
+import utils.FieldMerger;
 
 import java.io.IOException;
 import java.net.URL;
@@ -37,6 +38,15 @@ public class CustomersModify implements Initializable {
      * The selectedCustomer variable is used to store the customer that was selected in the Customers screen.
      */
     private static Customer selectedCustomer;
+    /**
+     * Merges an edit into the customer as another user saved it meanwhile.
+     */
+    private static final FieldMerger<Customer> MERGER = new FieldMerger<Customer>()
+            .field("Name", Customer::getCustomerName, Customer::setCustomerName)
+            .field("Address", Customer::getCustomerAddress, Customer::setCustomerAddress)
+            .field("Postal Code", Customer::getPostalCode, Customer::setPostalCode)
+            .field("Phone", Customer::getCustomerPhone, Customer::setCustomerPhone)
+            .field("Division ID", Customer::getDivisionId, Customer::setDivisionId);
     /**
      * The selectedCountryID variable is used to store the country ID of the customer.
      */
@@ -80,6 +90,10 @@ public class CustomersModify implements Initializable {
      */
     @FXML
     private TextField customersModifyPostalLabel;
+    /**
+     * The divisions query in flight; choosing another country cancels it.
+     */
+    private final DaoExecutor.LatestRequest divisionRequest = new DaoExecutor.LatestRequest();
 
 
     /**
@@ -97,7 +111,7 @@ public class CustomersModify implements Initializable {
     /**
      * This function is called when the user clicks the "Save" button. It checks if the customer information fields are
      * empty, if they are, it will display an error message. If they are not empty, it will modify the customer in the
-     * database. It will then switch to the Customers screen.
+     * database in the background. It will then switch to the Customers screen.
      *
      * @param event The event that triggered the method.
      * @throws IOException  If the FXML file cannot be found.
@@ -129,26 +143,90 @@ public class CustomersModify implements Initializable {
                 showAlert(Alert.AlertType.WARNING, "Warning Dialog", "ERROR: The country must not be empty", "Please select a country");
             } else {
                 int divisionId = D.getDivisionId();
-                CustomerDaoImpl.modifyCustomer(customerID, customerName, customerAddress, postalCode, customerPhone, lastUpdate, lastUpdateBy, divisionId);
-                switchToScene(event, "/view/MainMenu.fxml", "Customers");
+                Customer mine = new Customer(customerID, customerName, customerAddress, postalCode, customerPhone,
+                        null, null, lastUpdate.toLocalDateTime(), lastUpdateBy, divisionId);
+                save(event, mine, mine, selectedCustomer.getVersion());
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Saves a customer in the background if it is still stored as it was read. If another user saved it meanwhile,
+     * the stored version is read and {@link #resolveConflict} asks what to do.
+     *
+     * @param event   the event that triggered the save.
+     * @param mine    the customer as edited.
+     * @param toSave  the customer to save: the edit, or the edit merged into another user's version.
+     * @param version the version the customer to save is based on.
+     */
+    private void save(ActionEvent event, Customer mine, Customer toSave, int version) {
+        DaoExecutor.run(() -> {
+            Repositories.customers().modifyCustomer(toSave.getCustomerId(), toSave.getCustomerName(),
+                    toSave.getCustomerAddress(), toSave.getPostalCode(), toSave.getCustomerPhone(),
+                    Timestamp.valueOf(mine.getLastUpdate()), mine.getLastUpdateBy(), toSave.getDivisionId(), version);
+            return null;
+        }, saved -> switchToScene(event, "/view/MainMenu.fxml", "Customers"), error -> {
+            if (error instanceof OptimisticLockException) {
+                DaoExecutor.run(() -> Repositories.customers().getCustomerByCustomerId(mine.getCustomerId()),
+                        theirs -> resolveConflict(event, mine, theirs), this::saveFailed);
+            } else {
+                saveFailed(error);
+            }
+        });
+    }
+
+    /**
+     * Handles an edit that another user saved over meanwhile: asks whether to merge the edit into their version, which
+     * is then saved in the same way, or to discard it and show theirs.
+     *
+     * @param event  the event that triggered the save.
+     * @param mine   the customer as edited.
+     * @param theirs the customer as the other user saved it, or null if they deleted it.
+     */
+    private void resolveConflict(ActionEvent event, Customer mine, Customer theirs) {
+        if (theirs == null) {
+            showAlert(Alert.AlertType.WARNING, "Edit Conflict", "Customer Deleted",
+                    "Another user deleted this customer while you were editing it.");
+            switchToScene(event, "/view/MainMenu.fxml", "Customers");
+            return;
+        }
+        switch (FieldMerger.askResolution("customer", theirs.getLastUpdateBy(),
+                MERGER.getConflicts(selectedCustomer, mine, theirs))) {
+            case DISCARD:
+                selectedCustomer = theirs;
+                switchToScene(event, "/view/CustomersModify.fxml", null);
+                return;
+            case CANCEL:
+                return;
+            default:
+                save(event, mine, MERGER.merge(selectedCustomer, mine, theirs), theirs.getVersion());
+        }
+    }
+
+    /**
+     * Reports a customer that could not be saved or read again.
+     *
+     * @param error the cause of the failure.
+     */
+    private void saveFailed(Throwable error) {
+        showAlert(Alert.AlertType.ERROR, "Error Dialog", "Error saving customer", error.getMessage());
+        error.printStackTrace();
+    }
+
     /**
      * This method is called when the user selects a country from the country combo box. It will populate the division
-     * combo box with the divisions from the selected country.
+     * combo box with the divisions from the selected country, read in the background.
      *
      * @param event The event that triggered the method.
-     * @throws SQLException If the SQL query cannot be executed.
      */
     @FXML
-    void onActionCountryCombo(ActionEvent event) throws SQLException {
+    void onActionCountryCombo(ActionEvent event) {
         divisionCombo.setValue(null);
         Country C = countryCombo.getValue();
-        divisionCombo.setItems(FirstLevelDivisionDaoImpl.getDiv(C.getCountryId()));
+        divisionRequest.submit(() -> Repositories.divisions().getDiv(C.getCountryId()), divisionCombo::setItems,
+                Throwable::printStackTrace);
     }
 
 
@@ -164,7 +242,7 @@ public class CustomersModify implements Initializable {
 
     /**
      * This method is called when the user clicks the Modify button in the Customers screen. It will populate the
-     * country and division combo boxes with data from the database. It will also populate the text fields with the
+     * country and division combo boxes with data from the database, read in the background. It will also populate the text fields with the
      * customer information from the selected customer.
      *
      * @param url            The location used to resolve relative paths for the root object, or null if the location is not known.
@@ -172,19 +250,19 @@ public class CustomersModify implements Initializable {
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            divisionCombo.setValue(FirstLevelDivisionDaoImpl.getFirstLvlDivByDivID(selectedCustomer.getDivisionId()));
-            FirstLevelDivision selectedDivision = FirstLevelDivisionDaoImpl.getDivision(divisionCombo.getValue());
-            assert selectedDivision != null;
+        DaoExecutor.run(Repositories.countries()::getAllCountries, countryCombo::setItems, Throwable::printStackTrace);
+        DaoExecutor.run(() -> Repositories.divisions().getFirstLvlDivByDivID(selectedCustomer.getDivisionId()), selectedDivision -> {
             selectedCountryID = selectedDivision.getCountryId();
-            selectedCountry = CountryDaoImpl.getCountryFromCountryID(selectedCountryID);
-            countryCombo.setValue(selectedCountry);
-            Country C = countryCombo.getValue();
-            divisionCombo.setItems(FirstLevelDivisionDaoImpl.getDiv(C.getCountryId()));
-            countryCombo.setItems(CountryDaoImpl.getAllCountries());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+            DaoExecutor.run(() -> Repositories.countries().getCountryFromCountryID(selectedCountryID), country -> {
+                selectedCountry = country;
+                // Selecting the country clears the division, so the division is selected once its country's divisions are listed
+                countryCombo.setValue(selectedCountry);
+                divisionRequest.submit(() -> Repositories.divisions().getDiv(selectedCountryID), divisions -> {
+                    divisionCombo.setItems(divisions);
+                    divisionCombo.setValue(selectedDivision);
+                }, Throwable::printStackTrace);
+            }, Throwable::printStackTrace);
+        }, Throwable::printStackTrace);
         customersModifyIDLabel.setText(Integer.toString(selectedCustomer.getCustomerId()));
         customersModifyNameLabel.setText(selectedCustomer.getCustomerName());
         customersModifyAddressLabel.setText(selectedCustomer.getCustomerAddress());
@@ -1,7 +1,6 @@
 package Controller;
 
-import DAO.AppointmentDaoImpl;
-import DAO.UserDaoImpl;
+import DAO.Repositories;
 import Model.Appointment;
 import Model.User;
 import javafx.collections.FXCollections;
@@ -17,13 +16,17 @@ import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
+import utils.AuditLogWriter;
+import utils.ChangePoller;
+import utils.DaoExecutor;
 import utils.JDBC;
+import utils.LoginActivityStore;
+import utils.LoginRateLimiter;
+import utils.ReminderService;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.URL;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -45,6 +48,11 @@ public class Login implements Initializable {
      * This is the current user.
      */
     public static User currentUser;
+    /**
+     * Where log in attempts come from, for the {@link LoginRateLimiter}. The application runs on the user's desktop,
+     * so every attempt made in this process comes from the operating system account running it.
+     */
+    private static final String LOGIN_SOURCE = System.getProperty("user.name", "local");
     /**
      * This is the current language.
      */
@@ -131,7 +139,11 @@ public class Login implements Initializable {
     void onActionExit(ActionEvent event) {
         showConfirmationAlert(myBundle.getString("ExitButton"), myBundle.getString("Exit"), null,
                 () -> {
-                    JDBC.closeConnection();
+                    if (Repositories.isEmbedded()) {
+                        Repositories.close();
+                    } else {
+                        JDBC.closeConnection();
+                    }
                     System.exit(0);
                 },
                 null
@@ -142,43 +154,118 @@ public class Login implements Initializable {
      * This method handles the log in button action event. Validates the user's input username and password, writes a login activity
      * record to a file, and displays a warning alert if the input is invalid or if the login fails. If the login is
      * successful, sets the global username variable, checks for any upcoming appointments for the user, writes a login
-     * activity record indicating a successful login, and switches to the main menu scene.
+     * activity record indicating a successful login, and switches to the main menu scene.<br>
+     * The database checks run in the background; the log in button is disabled until they finish so the attempt cannot
+     * be submitted twice. Attempts rejected by the {@link LoginRateLimiter} are logged as failed and never reach the
+     * database.
      *
      * @param event the action event triggered by the log in button.
-     * @throws Exception if an error occurs while checking for upcoming appointments or switching to the main menu screen.
      */
     @FXML
-    void onActionLogIn(ActionEvent event) throws Exception {
+    void onActionLogIn(ActionEvent event) {
         String userName = logInUsernameTextField.getText().trim();
         String password = logInPasswordTextField.getText().trim();
-        try {
-            if (userName.isEmpty() || password.isEmpty() || !UserDaoImpl.validateUserName(userName) || !UserDaoImpl.validatePassword(password)) {
-                writeLoginActivity(userName, false);
-                showAlert(Alert.AlertType.ERROR, "LOGINERROR", "LOGINERROR", "", myBundle);
-            } else if (UserDaoImpl.validateLogIn(userName, password)) {
-                currentUser = UserDaoImpl.getUser(userName);
-                checkUpcomingAppointments();
-                writeLoginActivity(userName, true);
-                switchToScene(event, "/view/MainMenu.fxml", "Customers");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (logInButton.isDisabled()) {
+            return;
+        }
+        LoginRateLimiter limiter = LoginRateLimiter.getInstance();
+        LoginRateLimiter.Decision decision = limiter.tryAcquire(userName, LOGIN_SOURCE);
+        if (!decision.isAllowed()) {
             writeLoginActivity(userName, false);
+            long seconds = Math.max(1, (decision.getRetryAfter().toMillis() + 999) / 1000);
+            showAlert(Alert.AlertType.ERROR, "LOGINERROR", "LOGINERROR",
+                    String.format(myBundle.getString("LoginThrottled"), seconds), myBundle);
+            return;
+        }
+        logInButton.setDisable(true);
+        DaoExecutor.run(() -> attemptLogIn(userName, password),
+                attempt -> {
+                    logInButton.setDisable(false);
+                    try {
+                        if (!attempt.inputValid) {
+                            limiter.recordFailure(userName);
+                            writeLoginActivity(userName, false);
+                            showAlert(Alert.AlertType.ERROR, "LOGINERROR", "LOGINERROR", "", myBundle);
+                        } else if (attempt.user != null) {
+                            limiter.recordSuccess(userName);
+                            currentUser = attempt.user;
+                            checkUpcomingAppointments(attempt.appointments);
+                            ReminderService.getInstance().start(currentUser.getUserId(), this::showReminder);
+                            ChangePoller.getInstance().start();
+                            writeLoginActivity(userName, true);
+                            switchToScene(event, "/view/MainMenu.fxml", "Customers");
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                },
+                error -> {
+                    logInButton.setDisable(false);
+                    error.printStackTrace();
+                    writeLoginActivity(userName, false);
+                });
+    }
+
+    /**
+     * Runs the database part of a log in attempt: one authentication query, then the user's appointments starting in
+     * the next 15 minutes. Called on a background thread.
+     *
+     * @param userName the username entered.
+     * @param password the password entered.
+     * @return the outcome of the attempt.
+     * @throws Exception if the database cannot be read.
+     */
+    private static LoginAttempt attemptLogIn(String userName, String password) throws Exception {
+        if (userName.isEmpty() || password.isEmpty()) {
+            return new LoginAttempt(false, null, null);
+        }
+        User user = Repositories.users().authenticate(userName, password);
+        if (user == null) {
+            return new LoginAttempt(false, null, null);
         }
+        LocalDateTime now = LocalDateTime.now();
+        return new LoginAttempt(true, user,
+                Repositories.appointments().getUpcomingAppointmentsByUserId(user.getUserId(), now, now.plusMinutes(15)));
     }
 
     /**
-     * Writes login activity to a file with the given user name and success status.
+     * The outcome of the database part of a log in attempt.
+     */
+    private static class LoginAttempt {
+        /**
+         * False if the username or password was empty or did not match.
+         */
+        private final boolean inputValid;
+        /**
+         * The user logged in, or null if the credentials did not match.
+         */
+        private final User user;
+        /**
+         * The appointments of the user logged in that start in the next 15 minutes, or null.
+         */
+        private final ObservableList<Appointment> appointments;
+
+        /**
+         * @param inputValid   false if the username or password was empty or did not match.
+         * @param user         the user logged in, or null.
+         * @param appointments the appointments of the user logged in, or null.
+         */
+        private LoginAttempt(boolean inputValid, User user, ObservableList<Appointment> appointments) {
+            this.inputValid = inputValid;
+            this.user = user;
+            this.appointments = appointments;
+        }
+    }
+
+    /**
+     * Writes login activity to a file with the given user name and success status. The line is queued on the
+     * {@link AuditLogWriter#loginActivity() login activity log} and written in the background, and the attempt is
+     * recorded in the {@link LoginActivityStore} for querying.
      *
      * @param userName the username to include in the login activity message
      * @param success  the success status of the login attempt
-     * @throws IOException if there is an error writing to the file
      */
-    private void writeLoginActivity(String userName, boolean success) throws IOException {
-        String filename = "login_activity.txt";
-        File file = new File(filename);
-        FileWriter fileWriter = new FileWriter(file, true);
-        PrintWriter outputFile = new PrintWriter(fileWriter);
+    private void writeLoginActivity(String userName, boolean success) {
         LocalDateTime now = LocalDateTime.now();
         ZonedDateTime utcNow = now.atZone(ZoneId.of("Etc/UTC"));
         String message;
@@ -187,8 +274,16 @@ public class Login implements Initializable {
         } else {
             message = "User " + userName + " failed login at " + utcNow;
         }
-        outputFile.println(message);
-        outputFile.close();
+        AuditLogWriter.loginActivity().append(message);
+        LoginActivityStore.Outcome outcome = success ? LoginActivityStore.Outcome.SUCCESS : LoginActivityStore.Outcome.FAILURE;
+        Instant time = utcNow.toInstant();
+        DaoExecutor.supplyAsync(() -> {
+            LoginActivityStore.getInstance().record(userName, outcome, time);
+            return null;
+        }).exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
     }
 
     /**
@@ -196,28 +291,35 @@ public class Login implements Initializable {
      * If there are any appointments within the next 15 minutes, a warning dialog is displayed with the appointment information.
      * If there are no upcoming appointments, a warning dialog is displayed indicating so.
      *
-     * @throws Exception if there is an error while retrieving appointments data from the database.
+     * @param appointments the appointments of the logged in user starting in the next 15 minutes, read from the database
+     *                     during the log in attempt.
      */
-    private void checkUpcomingAppointments() throws Exception {
-        int userID = UserDaoImpl.getUserIDFromUserName(currentUser.getUserName());
+    private void checkUpcomingAppointments(ObservableList<Appointment> appointments) {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime plus15 = now.plusMinutes(15); //To check for appointments within 15 minutes.
         ObservableList<Appointment> apptsIn15 = FXCollections.observableArrayList();
-        ObservableList<Appointment> appointments = AppointmentDaoImpl.getAppointmentByUserId(userID);
-        if (!appointments.isEmpty()) {
-            for (Appointment appointment : appointments) {
-                if ((appointment.getStart().isEqual(now)) || appointment.getStart().isAfter(now) &&
-                        (appointment.getStart().isBefore(plus15)) || appointment.getStart().isEqual(plus15)) {
-                    apptsIn15.add(appointment);
-                    showAlert(Alert.AlertType.INFORMATION, "ReminderAppt", "Attention", (myBundle.getString("ReminderAppt")
-                            + appointment.getAppointmentId() + " " + myBundle.getString("At")
-                            + appointment.getStart() + " " + myBundle.getString("StartsSoon")), myBundle);
-                }
-            }
-            if (apptsIn15.isEmpty()) {
-                showAlert(Alert.AlertType.INFORMATION, "NoAppointments", "NoAppointments", "", myBundle);
+        for (Appointment appointment : appointments) {
+            if ((appointment.getStart().isEqual(now)) || appointment.getStart().isAfter(now) &&
+                    (appointment.getStart().isBefore(plus15)) || appointment.getStart().isEqual(plus15)) {
+                apptsIn15.add(appointment);
+                showReminder(appointment);
             }
         }
+        if (apptsIn15.isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "NoAppointments", "NoAppointments", "", myBundle);
+        }
+    }
+
+    /**
+     * Shows the reminder of an appointment that starts within 15 minutes. Called by the {@link ReminderService} while
+     * the user is logged in.
+     *
+     * @param appointment the appointment that starts soon.
+     */
+    private void showReminder(Appointment appointment) {
+        showAlert(Alert.AlertType.INFORMATION, "ReminderAppt", "Attention", (myBundle.getString("ReminderAppt")
+                + appointment.getAppointmentId() + " " + myBundle.getString("At")
+                + appointment.getStart() + " " + myBundle.getString("StartsSoon")), myBundle);
     }
 
     /**
@@ -311,16 +413,11 @@ public class Login implements Initializable {
  *
  * @param logInUsernameTextField the text field for the username
  * @param logInPasswordTextField the text field for the password
- * @throws Exception if an error occurs while calling onActionLogIn method
  */
         Stream.of(logInUsernameTextField, logInPasswordTextField)
                 .forEach(textField -> textField.setOnKeyPressed(event -> {
                     if (event.getCode() == KeyCode.ENTER) {
-                        try {
-                            onActionLogIn(new ActionEvent(logInButton, null));
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
+                        onActionLogIn(new ActionEvent(logInButton, null));
                     }
                 }));
     }
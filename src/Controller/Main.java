@@ -1,11 +1,18 @@
 package Controller;
 
+import DAO.Repositories;
+import utils.AuditLogWriter;
+import utils.DaoExecutor;
 import utils.JDBC;
+import utils.LoginActivityStore;
+import utils.ChangePoller;
+import utils.ReminderService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import java.io.IOException;
 import java.util.ResourceBundle;
 
 /**
@@ -41,13 +48,37 @@ public class Main extends Application {
      */
     ResourceBundle myBundle = ResourceBundle.getBundle("bundle/lang");
 
-    /** This method establishes the initial database connection and launches the app.
+    /** This method establishes the initial database connection, or opens the embedded store, and launches the app.
      * @param args The command line arguments.
      */
     public static void main(String[] args) {
-        JDBC.startConnection();
+        if (Repositories.isEmbedded()) {
+            try {
+                Repositories.open();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        } else {
+            JDBC.startConnection();
+        }
+        try {
+            // Opened before the first login so a first-run import of login_activity.txt cannot race new attempts.
+            LoginActivityStore.getInstance();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         //Locale.setDefault(new Locale("FR"));
         launch(args);
-        JDBC.closeConnection();
+        ReminderService.getInstance().shutdown();
+        ChangePoller.getInstance().shutdown();
+        DaoExecutor.shutdown();
+        AuditLogWriter.closeAll();
+        LoginActivityStore.closeInstance();
+        if (Repositories.isEmbedded()) {
+            Repositories.close();
+        } else {
+            JDBC.closeConnection();
+        }
     }
 }
\ No newline at end of file
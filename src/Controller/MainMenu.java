@@ -11,6 +11,8 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
+import utils.ChangePoller;
+import utils.ReminderService;
 
 import java.io.IOException;
 import java.net.URL;
@@ -141,6 +143,8 @@ public class MainMenu implements Initializable {
      */
     @FXML
     void onActionLogOut(ActionEvent event) throws IOException {
+        ReminderService.getInstance().stop();
+        ChangePoller.getInstance().stop();
         stage = (Stage) ((Button) event.getSource()).getScene().getWindow();
         scene = FXMLLoader.load(getClass().getResource("/view/LogIn.fxml"));
         stage.setScene(new Scene(scene));
@@ -1,9 +1,8 @@
 package Controller;
 
 import DAO.AppointmentDaoImpl;
-import DAO.ContactDaoImpl;
-import DAO.CountryDaoImpl;
-import DAO.CustomerDaoImpl;
+import DAO.AppointmentSeriesDaoImpl;
+import DAO.Repositories;
 import Model.Appointment;
 import Model.AppointmentType;
 import Model.Contact;
@@ -18,9 +17,11 @@ import javafx.scene.Parent;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
+import utils.DaoExecutor;
 
 import java.net.URL;
-import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.ResourceBundle;
@@ -48,6 +49,11 @@ public class Reports implements Initializable {
      * @deprecated This variable is no longer used.
      */
     Parent scene;
+    /**
+     * The number of weeks ahead, from today, for which the occurrences of recurring series are added to a contact's
+     * schedule.
+     */
+    private static final int SERIES_SCHEDULE_WEEKS = 12;
     /**
      * A variable that is used to store the list of appointments.
      */
@@ -142,31 +148,44 @@ public class Reports implements Initializable {
      */
     @FXML
     private TableColumn<Appointment, Integer> userId;
+    /**
+     * The customer count query in flight; selecting another country cancels it.
+     */
+    private final DaoExecutor.LatestRequest countryRequest = new DaoExecutor.LatestRequest();
+    /**
+     * The type and month count query in flight; changing the selection cancels it.
+     */
+    private final DaoExecutor.LatestRequest typeMonthRequest = new DaoExecutor.LatestRequest();
+    /**
+     * The contact schedule query in flight; selecting another contact cancels it.
+     */
+    private final DaoExecutor.LatestRequest contactRequest = new DaoExecutor.LatestRequest();
 
 
     /**
      * When the user selects a country from the countryCombo, the function gets the countryId of the selected country and
      * passes it to the countCustomers() function in the CustomerDaoImpl class. The countCustomers() function returns the
-     * number of customers in the selected country and the function sets the customersTotalLabel to the number of customers
+     * number of customers in the selected country and the function sets the customersTotalLabel to the number of customers.
+     * The count runs in the background.
      *
      * @param event The event that triggered the method.
-     * @throws SQLException If the SQL query is invalid.
      */
     @FXML
-    void onActionCountryCombo(ActionEvent event) throws SQLException {
+    void onActionCountryCombo(ActionEvent event) {
         Country selectedCountry = countryCombo.getValue();
         int selectedCountryID = selectedCountry.getCountryId();
-        customersTotalLabel.setText(String.valueOf(CustomerDaoImpl.countCustomers(selectedCountryID)));
+        countryRequest.submit(() -> Repositories.customers().countCustomers(selectedCountryID),
+                count -> customersTotalLabel.setText(String.valueOf(count)),
+                this::showLoadError);
     }
 
     /**
      * If the user selects a month and a type, then the function will call the validateSelection function
      *
      * @param event The event that triggered the method.
-     * @throws SQLException If the SQL query is invalid.
      */
     @FXML
-    void onActionTypeCombo(ActionEvent event) throws SQLException {
+    void onActionTypeCombo(ActionEvent event) {
         AppointmentType selectedType = typeCombo.getValue();
         String selectedMonth = monthCombo.getValue();
         validateSelection(selectedType, selectedMonth);
@@ -176,10 +195,9 @@ public class Reports implements Initializable {
      * If the user selects a month from the monthCombo, then the function will validate the selection
      *
      * @param event The event that triggered the method.
-     * @throws SQLException If the SQL query is invalid.
      */
     @FXML
-    void onActionMonthCombo(ActionEvent event) throws SQLException {
+    void onActionMonthCombo(ActionEvent event) {
         AppointmentType selectedType = typeCombo.getValue();
         String selectedMonth = monthCombo.getValue();
         validateSelection(selectedType, selectedMonth);
@@ -189,13 +207,12 @@ public class Reports implements Initializable {
      * Validates the selected appointment type and month. If either is null, an error
      * alert is displayed and the method returns without running the countMonthType method.
      * Otherwise, it counts the number of appointments of the selected type in the selected
-     * month, and sets the appointmentsTotalLabel to display the count.
+     * month in the background, and sets the appointmentsTotalLabel to display the count.
      *
      * @param selectedType  The selected appointment type.
      * @param selectedMonth The selected month.
-     * @throws SQLException If an error occurs while querying the database.
      */
-    private void validateSelection(AppointmentType selectedType, String selectedMonth) throws SQLException {
+    private void validateSelection(AppointmentType selectedType, String selectedMonth) {
         if (selectedType == null || selectedMonth == null) {
             String message = selectedType == null
                     ? "Please select a type from the dropdown menu."
@@ -204,15 +221,17 @@ public class Reports implements Initializable {
             return;
         }
 
-        int count = AppointmentDaoImpl.countMonthType(selectedType, selectedMonth);
-        appointmentsTotalLabel.setText(String.valueOf(count));
+        typeMonthRequest.submit(() -> AppointmentDaoImpl.countMonthType(selectedType, selectedMonth),
+                count -> appointmentsTotalLabel.setText(String.valueOf(count)),
+                this::showLoadError);
     }
 
     /**
      * This is the method to display the appointments for the selected contact when the user selects a contact from the contactCombo combo box.
+     * The appointments are loaded in the background; a contact chosen while the previous one is still loading replaces it.
+     * Recurring series are expanded for the next {@value #SERIES_SCHEDULE_WEEKS} weeks only.
      *
      * @param event the user selects a contact from the contactCombo combo box
-     * @throws SQLException If the SQL query is invalid.
      */
     @FXML
     void onActionContactCombo(ActionEvent event) {
@@ -220,30 +239,38 @@ public class Reports implements Initializable {
         Contact selectedContact = contactCombo.getValue();
         int selectedContactID = selectedContact.getContactId();
 
-        try {
-            Appointment.addAll(AppointmentDaoImpl.getAppointmentsByContactId(selectedContactID));
-        } catch (Exception ex) {
-            Logger.getLogger(Appointments.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        contactRequest.submit(() -> {
+                    ObservableList<Model.Appointment> schedule = Repositories.appointments().getAppointmentsByContactId(selectedContactID);
+                    LocalDateTime today = LocalDate.now().atStartOfDay();
+                    schedule.addAll(AppointmentSeriesDaoImpl.getContactOccurrencesBetween(selectedContactID, today,
+                            today.plusWeeks(SERIES_SCHEDULE_WEEKS)));
+                    return schedule;
+                }, Appointment::setAll,
+                ex -> Logger.getLogger(Appointments.class.getName()).log(Level.SEVERE, null, ex));
+    }
+
+    /**
+     * Shows an error dialog for a report query that failed.
+     *
+     * @param error the cause of the failure.
+     */
+    private void showLoadError(Throwable error) {
+        showAlert(Alert.AlertType.ERROR, "Error", "Error loading report", error.getMessage());
     }
 
     /**
      * This is the method to set the combo boxes and set the AppointmentTable from the Appointments table in the database.
+     * The combo box items are loaded in the background so the screen opens without waiting for the database.
      *
      * @param url            The location used to resolve relative paths for the root object, or null if the location is not known.
      * @param resourceBundle The resources used to localize the root object, or null if the root object was not localized.
-     * @throws SQLException If the SQL query is invalid.
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        try {
-            contactCombo.setItems(ContactDaoImpl.getAllContacts());
-            countryCombo.setItems(CountryDaoImpl.getAllCountries());
-            typeCombo.setItems(AppointmentDaoImpl.typeAppt());
-            monthCombo.setItems(Months);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        DaoExecutor.run(Repositories.contacts()::getAllContacts, contactCombo::setItems, Throwable::printStackTrace);
+        DaoExecutor.run(Repositories.countries()::getAllCountries, countryCombo::setItems, Throwable::printStackTrace);
+        DaoExecutor.run(AppointmentDaoImpl::typeAppt, typeCombo::setItems, Throwable::printStackTrace);
+        monthCombo.setItems(Months);
 
         appointmentId.setCellValueFactory(new PropertyValueFactory<>("appointmentId"));
         title.setCellValueFactory(new PropertyValueFactory<>("title"));
@@ -0,0 +1,69 @@
+package DAO;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class hands the {@link AppointmentChangeSet} of every appointment write to the screens showing appointments.
+ * Change sets are published by the DAOs on the thread that made the write, after it committed; listeners that touch
+ * JavaFX controls must move to the JavaFX Application Thread themselves.<br>
+ * Listeners are held weakly, since a controller is dropped whenever another scene is shown and has no hook to
+ * unsubscribe: a subscriber keeps the listener in a field for as long as it wants to be called.
+ */
+public class AppointmentChangeBus {
+    /**
+     * The logger used to report listener errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(AppointmentChangeBus.class.getName());
+    /**
+     * The listeners.
+     */
+    private static final List<WeakReference<Consumer<AppointmentChangeSet>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Subscribes a listener to every change set published from now on.
+     *
+     * @param listener the listener, held weakly.
+     */
+    public static void subscribe(Consumer<AppointmentChangeSet> listener) {
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * Unsubscribes a listener.
+     *
+     * @param listener the listener.
+     */
+    public static void unsubscribe(Consumer<AppointmentChangeSet> listener) {
+        listeners.removeIf(reference -> reference.get() == null || reference.get() == listener);
+    }
+
+    /**
+     * Hands a change set to every listener, on the calling thread. A listener that throws is logged and does not stop
+     * the others.
+     *
+     * @param changes the changes of one write.
+     */
+    public static void publish(AppointmentChangeSet changes) {
+        boolean collected = false;
+        for (WeakReference<Consumer<AppointmentChangeSet>> reference : listeners) {
+            Consumer<AppointmentChangeSet> listener = reference.get();
+            if (listener == null) {
+                collected = true;
+                continue;
+            }
+            try {
+                listener.accept(changes);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error applying " + changes, e);
+            }
+        }
+        if (collected) {
+            listeners.removeIf(reference -> reference.get() == null);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package DAO;
+
+import Model.Appointment;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * This class describes what one write of the appointment DAOs changed: the appointments added, the appointments
+ * updated, as they are now stored, and the appointments and series removed. The DAOs publish one change set per write
+ * on the {@link AppointmentChangeBus}, and a screen applies it to the list its table shows with
+ * {@link #applyTo}, editing only the rows that changed instead of reading and rendering the whole list again.<br>
+ * Appointments are matched by {@link #keyOf key}: the appointment ID, or for an occurrence of a series, which has no
+ * ID, the series ID and start. Adding a series publishes nothing, since its occurrences only exist for the window a
+ * screen reads.
+ */
+public class AppointmentChangeSet {
+    /**
+     * The order the lists of appointments are kept in: by start, then appointment ID.
+     */
+    public static final Comparator<Appointment> START_ORDER =
+            Comparator.comparing(Appointment::getStart).thenComparingInt(Appointment::getAppointmentId);
+
+    /**
+     * The appointments added.
+     */
+    private final List<Appointment> added;
+    /**
+     * The appointments updated, as they are now stored.
+     */
+    private final List<Appointment> updated;
+    /**
+     * The keys of the appointments and occurrences removed.
+     */
+    private final Set<Object> removedKeys;
+    /**
+     * The IDs of the series removed with all their occurrences.
+     */
+    private final Set<Integer> removedSeriesIds;
+
+    /**
+     * @param added            the appointments added.
+     * @param updated          the appointments updated, as they are now stored.
+     * @param removedKeys      the keys of the appointments and occurrences removed.
+     * @param removedSeriesIds the IDs of the series removed.
+     */
+    private AppointmentChangeSet(List<Appointment> added, List<Appointment> updated, Set<Object> removedKeys,
+                                 Set<Integer> removedSeriesIds) {
+        this.added = added;
+        this.updated = updated;
+        this.removedKeys = removedKeys;
+        this.removedSeriesIds = removedSeriesIds;
+    }
+
+    /**
+     * @param appointments the appointments added, with their generated IDs.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet added(Collection<Appointment> appointments) {
+        return new AppointmentChangeSet(new ArrayList<>(appointments), List.of(), Set.of(), Set.of());
+    }
+
+    /**
+     * @param appointment the appointment updated, as it is now stored.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet updated(Appointment appointment) {
+        return new AppointmentChangeSet(List.of(), List.of(appointment), Set.of(), Set.of());
+    }
+
+    /**
+     * @param appointmentIds the IDs of the appointments removed.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet removed(Collection<Integer> appointmentIds) {
+        return new AppointmentChangeSet(List.of(), List.of(), new HashSet<>(appointmentIds), Set.of());
+    }
+
+    /**
+     * Describes changes made by other clients, read from the change feed, where an added appointment cannot be told
+     * from an updated one: all are updated, and {@link #applyTo} inserts those it does not find.
+     *
+     * @param appointments   the appointments added or updated, as they are now stored.
+     * @param appointmentIds the IDs of the appointments removed.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet changed(Collection<Appointment> appointments, Collection<Integer> appointmentIds) {
+        return new AppointmentChangeSet(List.of(), new ArrayList<>(appointments), new HashSet<>(appointmentIds), Set.of());
+    }
+
+    /**
+     * @param seriesId        the ID of the series.
+     * @param occurrenceStart the start of the occurrence cancelled.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet occurrenceRemoved(int seriesId, LocalDateTime occurrenceStart) {
+        return new AppointmentChangeSet(List.of(), List.of(), Set.of(occurrenceKey(seriesId, occurrenceStart)), Set.of());
+    }
+
+    /**
+     * @param seriesIds the IDs of the series removed with all their occurrences.
+     * @return the change set.
+     */
+    public static AppointmentChangeSet seriesRemoved(Collection<Integer> seriesIds) {
+        return new AppointmentChangeSet(List.of(), List.of(), Set.of(), new HashSet<>(seriesIds));
+    }
+
+    /**
+     * @return the appointments added.
+     */
+    public List<Appointment> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * @return the appointments updated, as they are now stored.
+     */
+    public List<Appointment> getUpdated() {
+        return Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * @return the keys of the appointments and occurrences removed; see {@link #keyOf}.
+     */
+    public Set<Object> getRemovedKeys() {
+        return Collections.unmodifiableSet(removedKeys);
+    }
+
+    /**
+     * @return the IDs of the series removed with all their occurrences.
+     */
+    public Set<Integer> getRemovedSeriesIds() {
+        return Collections.unmodifiableSet(removedSeriesIds);
+    }
+
+    /**
+     * Returns the key appointments are matched by: the appointment ID, or the series ID and start for an occurrence.
+     *
+     * @param appointment an appointment or occurrence.
+     * @return its key.
+     */
+    public static Object keyOf(Appointment appointment) {
+        return appointment.isOccurrence() ? occurrenceKey(appointment.getSeriesId(), appointment.getStart())
+                : Integer.valueOf(appointment.getAppointmentId());
+    }
+
+    /**
+     * @param seriesId        the ID of the series.
+     * @param occurrenceStart the start of the occurrence.
+     * @return the key of the occurrence.
+     */
+    private static Object occurrenceKey(int seriesId, LocalDateTime occurrenceStart) {
+        return List.of(seriesId, occurrenceStart);
+    }
+
+    /**
+     * Applies the changes to a list sorted in {@link #START_ORDER} with the fewest edits: removed rows are removed,
+     * an updated row is replaced in place, or moved if its start changed, and added rows are inserted where they sort.
+     * Rows that are not changed are left alone, so the table keeps its selection and scroll position and only renders
+     * the changed rows.<br>
+     * The positions are found by binary search in {@link #START_ORDER}, so the list must be the backing list a screen
+     * keeps in that order, never the items of a table the user can sort by another column. A table shows the backing
+     * list through a {@link javafx.collections.transformation.SortedList} bound to its comparator, as
+     * {@link utils.TableViewPager} does, and the sorted view follows the edits made here in whatever order the user
+     * chose.
+     *
+     * @param list   the backing list, sorted in {@link #START_ORDER}.
+     * @param inView tells whether an added or updated appointment belongs in the list, e.g. whether it starts in the
+     *               week shown; an updated one that no longer does is removed.
+     */
+    public void applyTo(ObservableList<Appointment> list, Predicate<Appointment> inView) {
+        Map<Object, Appointment> replacements = new HashMap<>();
+        for (Appointment appointment : updated) {
+            replacements.put(keyOf(appointment), appointment);
+        }
+        List<Appointment> toInsert = new ArrayList<>();
+        if (!removedKeys.isEmpty() || !removedSeriesIds.isEmpty() || !replacements.isEmpty()) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                Appointment row = list.get(i);
+                Object key = keyOf(row);
+                Appointment replacement = replacements.remove(key);
+                if (removedKeys.contains(key) || (row.isOccurrence() && removedSeriesIds.contains(row.getSeriesId()))) {
+                    list.remove(i);
+                } else if (replacement != null) {
+                    if (!inView.test(replacement)) {
+                        list.remove(i);
+                    } else if (isInPlace(list, i, replacement)) {
+                        list.set(i, replacement);
+                    } else {
+                        list.remove(i);
+                        toInsert.add(replacement);
+                    }
+                }
+            }
+        }
+        for (Appointment replacement : replacements.values()) {
+            if (inView.test(replacement)) {
+                toInsert.add(replacement);
+            }
+        }
+        for (Appointment appointment : added) {
+            if (inView.test(appointment)) {
+                toInsert.add(appointment);
+            }
+        }
+        for (Appointment appointment : toInsert) {
+            int index = Collections.binarySearch(list, appointment, START_ORDER);
+            list.add(index < 0 ? -index - 1 : index, appointment);
+        }
+    }
+
+    /**
+     * @param list        the sorted list.
+     * @param index       the index of the row being replaced.
+     * @param replacement the row replacing it.
+     * @return true if the replacement sorts between the rows around the index.
+     */
+    private static boolean isInPlace(List<Appointment> list, int index, Appointment replacement) {
+        return (index == 0 || START_ORDER.compare(list.get(index - 1), replacement) <= 0)
+                && (index == list.size() - 1 || START_ORDER.compare(replacement, list.get(index + 1)) <= 0);
+    }
+
+    @Override
+    public String toString() {
+        return "AppointmentChangeSet{added=" + added.size() + ", updated=" + updated.size() + ", removed="
+                + removedKeys.size() + ", removedSeries=" + removedSeriesIds.size() + "}";
+    }
+}
@@ -0,0 +1,358 @@
+package DAO;
+
+import Model.Appointment;
+import utils.IntervalTree;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class is an in-memory index of appointment times used to answer scheduling conflict questions without going
+ * back to the database. It keeps one {@link IntervalTree} per customer, per contact and per user, so checking whether
+ * a customer is already booked, or listing a contact's or user's calendar for a time range, costs O(log n + k).<br>
+ * The index is loaded from the database the first time it is needed and is then kept up to date by the write methods
+ * of {@link AppointmentDaoImpl}. The index is dropped when a write cannot be reflected in it, which the
+ * {@link AppointmentTypeRollup} misses as well; dropping the index therefore drops the rollup too.
+ */
+public class AppointmentConflictIndex {
+    /**
+     * Guards the index; queries share the read lock, updates take the write lock.
+     */
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * The indexed appointments by appointment ID.
+     */
+    private static final Map<Integer, Appointment> appointmentsById = new HashMap<>();
+    /**
+     * The appointment intervals of each customer.
+     */
+    private static final Map<Integer, IntervalTree<Appointment>> customerCalendars = new HashMap<>();
+    /**
+     * The appointment intervals of each contact.
+     */
+    private static final Map<Integer, IntervalTree<Appointment>> contactCalendars = new HashMap<>();
+    /**
+     * The appointment intervals of each user.
+     */
+    private static final Map<Integer, IntervalTree<Appointment>> userCalendars = new HashMap<>();
+    /**
+     * True once the index has been loaded from the database.
+     */
+    private static volatile boolean loaded;
+    /**
+     * The writes made while the index is being loaded, by appointment ID (null for a deletion). The database read of
+     * a load may or may not see them, so they are replayed over the loaded appointments. Null when no load is running.
+     * Guarded by the write lock.
+     */
+    private static Map<Integer, Appointment> pendingChanges;
+    /**
+     * The number of loads in progress. Guarded by the write lock.
+     */
+    private static int loadsInProgress;
+    /**
+     * Incremented by {@link #invalidate()}, so a load that started before the index was dropped does not install
+     * appointments read before the drop. Guarded by the write lock.
+     */
+    private static long generation;
+
+    /**
+     * @return true if the index has been loaded and is being kept up to date.
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads the index from the database if it has not been loaded yet. The appointments are read without holding the
+     * lock; writes made in the meantime are recorded and replayed over them, so none is lost.
+     *
+     * @throws SQLException if the appointments cannot be read.
+     */
+    public static void ensureLoaded() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        long loadGeneration;
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (loadsInProgress++ == 0) {
+                pendingChanges = new LinkedHashMap<>();
+            }
+            loadGeneration = generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Appointment> appointments = null;
+        try {
+            appointments = Repositories.appointments().getAllAppointments();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (appointments != null && !loaded && loadGeneration == generation) {
+                    clear();
+                    for (Appointment appointment : appointments) {
+                        add(appointment);
+                    }
+                    for (Map.Entry<Integer, Appointment> change : pendingChanges.entrySet()) {
+                        removeById(change.getKey());
+                        if (change.getValue() != null) {
+                            add(change.getValue());
+                        }
+                    }
+                    loaded = true;
+                }
+                if (--loadsInProgress == 0) {
+                    pendingChanges = null;
+                } else if (loaded) {
+                    pendingChanges.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (!loaded) {
+            // The index was dropped while this load was reading; read it again.
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Drops the index, and the {@link AppointmentTypeRollup}, which has missed the same writes. Both are reloaded from
+     * the database the next time they are needed.
+     */
+    public static void invalidate() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            loaded = false;
+            clear();
+            if (pendingChanges != null) {
+                pendingChanges.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        AppointmentTypeRollup.invalidate();
+    }
+
+    /**
+     * Adds an appointment to the index, replacing the indexed version with the same appointment ID. While the index
+     * is being loaded the change is recorded and replayed after the load; otherwise nothing is done if the index has
+     * not been loaded.
+     *
+     * @param appointment the new or modified appointment.
+     * @return the indexed version it replaced, or null if there was none or the index is not loaded.
+     */
+    public static Appointment put(Appointment appointment) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                Appointment previous = removeById(appointment.getAppointmentId());
+                add(appointment);
+                return previous;
+            }
+            if (pendingChanges != null) {
+                pendingChanges.put(appointment.getAppointmentId(), appointment);
+            }
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an appointment from the index. While the index is being loaded the change is recorded and replayed
+     * after the load; otherwise nothing is done if the index has not been loaded.
+     *
+     * @param appointmentId the ID of the deleted appointment.
+     * @return the indexed version removed, or null if there was none or the index is not loaded.
+     */
+    public static Appointment remove(int appointmentId) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return removeById(appointmentId);
+            }
+            if (pendingChanges != null) {
+                pendingChanges.put(appointmentId, null);
+            }
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a customer has an appointment, other than the given one, that overlaps the given time range.
+     *
+     * @param customerId    the ID of the customer.
+     * @param appointmentId the ID of the appointment being saved, ignored in the check (0 for a new appointment).
+     * @param start         the start of the range.
+     * @param end           the end of the range.
+     * @return true if the customer is already booked during the range.
+     * @throws SQLException if the index has to be loaded and the appointments cannot be read.
+     */
+    public static boolean hasCustomerConflict(int customerId, int appointmentId, LocalDateTime start, LocalDateTime end) throws SQLException {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            IntervalTree<Appointment> calendar = customerCalendars.get(customerId);
+            return calendar != null && calendar.overlapsAny(toKey(start), toKey(end), appointmentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a customer's appointments that overlap the given time range, ordered by start.
+     *
+     * @param customerId the ID of the customer.
+     * @param start      the start of the range.
+     * @param end        the end of the range.
+     * @return the overlapping appointments.
+     * @throws SQLException if the index has to be loaded and the appointments cannot be read.
+     */
+    public static List<Appointment> getCustomerAppointments(int customerId, LocalDateTime start, LocalDateTime end) throws SQLException {
+        return find(customerCalendars, customerId, start, end);
+    }
+
+    /**
+     * Returns a contact's appointments that overlap the given time range, ordered by start.
+     *
+     * @param contactId the ID of the contact.
+     * @param start     the start of the range.
+     * @param end       the end of the range.
+     * @return the overlapping appointments.
+     * @throws SQLException if the index has to be loaded and the appointments cannot be read.
+     */
+    public static List<Appointment> getContactAppointments(int contactId, LocalDateTime start, LocalDateTime end) throws SQLException {
+        return find(contactCalendars, contactId, start, end);
+    }
+
+    /**
+     * Returns a user's appointments that overlap the given time range, ordered by start.
+     *
+     * @param userId the ID of the user.
+     * @param start  the start of the range.
+     * @param end    the end of the range.
+     * @return the overlapping appointments.
+     * @throws SQLException if the index has to be loaded and the appointments cannot be read.
+     */
+    public static List<Appointment> getUserAppointments(int userId, LocalDateTime start, LocalDateTime end) throws SQLException {
+        return find(userCalendars, userId, start, end);
+    }
+
+    /**
+     * Looks up the appointments of one calendar that overlap a time range.
+     *
+     * @param calendars the calendars to search.
+     * @param ownerId   the ID of the customer, contact or user that owns the calendar.
+     * @param start     the start of the range.
+     * @param end       the end of the range.
+     * @return the overlapping appointments.
+     * @throws SQLException if the index has to be loaded and the appointments cannot be read.
+     */
+    private static List<Appointment> find(Map<Integer, IntervalTree<Appointment>> calendars, int ownerId,
+                                          LocalDateTime start, LocalDateTime end) throws SQLException {
+        ensureLoaded();
+        List<Appointment> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            IntervalTree<Appointment> calendar = calendars.get(ownerId);
+            if (calendar != null) {
+                calendar.findOverlapping(toKey(start), toKey(end), result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Adds an appointment to every calendar it belongs to. The caller holds the write lock.
+     *
+     * @param appointment the appointment to add.
+     */
+    private static void add(Appointment appointment) {
+        appointmentsById.put(appointment.getAppointmentId(), appointment);
+        insert(customerCalendars, appointment.getCustomerId(), appointment);
+        insert(contactCalendars, appointment.getContactId(), appointment);
+        insert(userCalendars, appointment.getUserId(), appointment);
+    }
+
+    /**
+     * Removes an appointment from every calendar it belongs to. The caller holds the write lock.
+     *
+     * @param appointmentId the ID of the appointment to remove.
+     * @return the appointment removed, or null if it was not indexed.
+     */
+    private static Appointment removeById(int appointmentId) {
+        Appointment previous = appointmentsById.remove(appointmentId);
+        if (previous != null) {
+            delete(customerCalendars, previous.getCustomerId(), previous);
+            delete(contactCalendars, previous.getContactId(), previous);
+            delete(userCalendars, previous.getUserId(), previous);
+        }
+        return previous;
+    }
+
+    /**
+     * Adds an appointment to one calendar.
+     *
+     * @param calendars   the calendars to update.
+     * @param ownerId     the ID of the calendar owner.
+     * @param appointment the appointment to add.
+     */
+    private static void insert(Map<Integer, IntervalTree<Appointment>> calendars, int ownerId, Appointment appointment) {
+        calendars.computeIfAbsent(ownerId, id -> new IntervalTree<>())
+                .insert(toKey(appointment.getStart()), toKey(appointment.getEnd()), appointment.getAppointmentId(), appointment);
+    }
+
+    /**
+     * Removes an appointment from one calendar, dropping the calendar when it becomes empty.
+     *
+     * @param calendars   the calendars to update.
+     * @param ownerId     the ID of the calendar owner.
+     * @param appointment the appointment to remove.
+     */
+    private static void delete(Map<Integer, IntervalTree<Appointment>> calendars, int ownerId, Appointment appointment) {
+        IntervalTree<Appointment> calendar = calendars.get(ownerId);
+        if (calendar != null) {
+            calendar.remove(toKey(appointment.getStart()), appointment.getAppointmentId());
+            if (calendar.isEmpty()) {
+                calendars.remove(ownerId);
+            }
+        }
+    }
+
+    /**
+     * Empties every map of the index. The caller holds the write lock.
+     */
+    private static void clear() {
+        appointmentsById.clear();
+        customerCalendars.clear();
+        contactCalendars.clear();
+        userCalendars.clear();
+    }
+
+    /**
+     * Converts a date and time into the ordering key used by the interval trees.
+     *
+     * @param dateTime the date and time.
+     * @return the number of seconds since the epoch, reading the date and time as UTC.
+     */
+    private static long toKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+}
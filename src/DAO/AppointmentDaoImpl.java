@@ -5,9 +5,22 @@ import Model.AppointmentType;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import utils.JDBC;
+import utils.ReminderService;
 
 import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.time.temporal.WeekFields;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * This class creates the Appointment database methods.
@@ -30,25 +43,7 @@ public class AppointmentDaoImpl {
              PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
             stmt.setInt(1, userID);
             try (ResultSet result = stmt.executeQuery()) {
-                while (result.next()) {
-                    int appointmentID = result.getInt("Appointment_ID");
-                    String title = result.getString("Title");
-                    String description = result.getString("Description");
-                    String location = result.getString("Location");
-                    String type = result.getString("Type");
-                    LocalDateTime start = result.getTimestamp("Start").toLocalDateTime();
-                    LocalDateTime end = result.getTimestamp("End").toLocalDateTime();
-                    LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                    String createdBy = result.getString("Created_By");
-                    LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                    String lastUpdatedBy = result.getString("Last_Updated_By");
-                    int customerID = result.getInt("Customer_ID");
-                    int contactID = result.getInt("Contact_ID");
-
-                    Appointment appointment = new Appointment(appointmentID, title, description, location, type, start,
-                            end, createDate, createdBy, lastUpdate, lastUpdatedBy, customerID, userID, contactID);
-                    userIDAppointments.add(appointment);
-                }
+                RowMappers.APPOINTMENT.mapAll(result, userIDAppointments);
             }
         } catch (SQLException e) {
             System.out.println("Error retrieving appointments by user ID: " + e.getMessage());
@@ -57,6 +52,35 @@ public class AppointmentDaoImpl {
         return userIDAppointments;
     }
 
+    /**
+     * Returns the appointments of a user that start in the closed window [from, to], ordered by start. Only the window
+     * is read, with a range scan of the (User_ID, Start) index, so the cost does not grow with the user's history.
+     *
+     * @param userID the ID of the user.
+     * @param from   the inclusive start of the window, in the user's time zone.
+     * @param to     the inclusive end of the window, in the user's time zone.
+     * @return the user's appointments that start in the window.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static ObservableList<Appointment> getUpcomingAppointmentsByUserId(int userID, LocalDateTime from,
+                                                                           LocalDateTime to) throws SQLException {
+        ObservableList<Appointment> appointments = FXCollections.observableArrayList();
+        String sqlStatement = "SELECT * FROM appointments WHERE User_ID = ? AND Start >= ? AND Start <= ? ORDER BY Start";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            stmt.setInt(1, userID);
+            stmt.setTimestamp(2, Timestamp.valueOf(from));
+            stmt.setTimestamp(3, Timestamp.valueOf(to));
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMappers.APPOINTMENT.mapAll(result, appointments);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error retrieving upcoming appointments by user ID: " + e.getMessage());
+            throw e;
+        }
+        return appointments;
+    }
+
     /**
      * This method takes a customer ID as a parameter and returns an ObservableList of Appointments that are associated
      * with that customer ID
@@ -72,26 +96,7 @@ public class AppointmentDaoImpl {
              PreparedStatement statement = connection.prepareStatement(sqlStatement)) {
             statement.setInt(1, customerId);
             ResultSet result = statement.executeQuery();
-            while (result.next()) {
-                int appointmentId = result.getInt("Appointment_ID");
-                String title = result.getString("Title");
-                String description = result.getString("Description");
-                String location = result.getString("Location");
-                String type = result.getString("Type");
-                LocalDateTime start = result.getTimestamp("Start").toLocalDateTime();
-                LocalDateTime end = result.getTimestamp("End").toLocalDateTime();
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int customerIdResult = result.getInt("Customer_ID");
-                int userId = result.getInt("User_ID");
-                int contactId = result.getInt("Contact_ID");
-
-                Appointment appointmentResult = new Appointment(appointmentId, title, description, location, type,
-                        start, end, createDate, createdBy, lastUpdate, lastUpdatedBy, customerIdResult, userId, contactId);
-                appointmentsByCustomerId.add(appointmentResult);
-            }
+            RowMappers.APPOINTMENT.mapAll(result, appointmentsByCustomerId);
         } catch (SQLException ex) {
             ex.printStackTrace();
             throw ex;
@@ -109,29 +114,10 @@ public class AppointmentDaoImpl {
     public static ObservableList<Appointment> getAllAppointments() throws SQLException {
         ObservableList<Appointment> allAppointments = FXCollections.observableArrayList();
         String sqlStatement = "SELECT * FROM Appointments";
-        try (PreparedStatement preparedStatement = JDBC.getConnection().prepareStatement(sqlStatement);
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement preparedStatement = conn.prepareStatement(sqlStatement);
              ResultSet result = preparedStatement.executeQuery()) {
-            while (result.next()) {
-                int appointmentId = result.getInt("Appointment_ID");
-                String title = result.getString("Title");
-                String description = result.getString("Description");
-                String location = result.getString("Location");
-                String type = result.getString("Type");
-                LocalDateTime start = result.getTimestamp("Start").toLocalDateTime();
-                LocalDateTime end = result.getTimestamp("End").toLocalDateTime();
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int customerId = result.getInt("Customer_ID");
-                int userId = result.getInt("User_ID");
-                int contactId = result.getInt("Contact_ID");
-
-                Appointment appointment = new Appointment(appointmentId, title, description, location, type,
-                        start, end, createDate, createdBy, lastUpdate,
-                        lastUpdatedBy, customerId, userId, contactId);
-                allAppointments.add(appointment);
-            }
+            RowMappers.APPOINTMENT.mapAll(result, allAppointments);
         } catch (SQLException e) {
             e.printStackTrace();
             throw e;
@@ -140,6 +126,106 @@ public class AppointmentDaoImpl {
     }
 
 
+    /**
+     * Returns the appointments of a customer that overlap the given time range, other than the appointment being
+     * edited. The range predicate is evaluated by MySQL using the (Customer_ID, Start, End) index, so only the
+     * conflicting rows are sent back.
+     *
+     * @param customerId    the ID of the customer.
+     * @param appointmentId the ID of the appointment being edited, excluded from the check (0 for a new appointment).
+     * @param start         the start of the time range.
+     * @param end           the end of the time range.
+     * @return the appointments of the customer that overlap the time range.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static ObservableList<Appointment> getConflictingAppointments(int customerId, int appointmentId,
+                                                                         LocalDateTime start, LocalDateTime end) throws SQLException {
+        ObservableList<Appointment> conflicts = FXCollections.observableArrayList();
+        String sqlStatement = "SELECT * FROM appointments WHERE Customer_ID = ? AND Start < ? AND End > ? AND Appointment_ID <> ?";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            stmt.setInt(1, customerId);
+            stmt.setTimestamp(2, Timestamp.valueOf(end));
+            stmt.setTimestamp(3, Timestamp.valueOf(start));
+            stmt.setInt(4, appointmentId);
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMappers.APPOINTMENT.mapAll(result, conflicts);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error checking appointment conflicts: " + e.getMessage());
+            throw e;
+        }
+        return conflicts;
+    }
+
+    /**
+     * Returns the page of appointments that follows the given appointment in (Start, Appointment_ID) order. The query
+     * seeks on the index on Start instead of using OFFSET, so every page costs the same no matter how deep it is.
+     *
+     * @param after    the last appointment of the previous page, or null for the first page.
+     * @param pageSize the maximum number of appointments to return.
+     * @return the appointments of the page, ordered by start.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static ObservableList<Appointment> getAppointmentsPageAfter(Appointment after, int pageSize) throws SQLException {
+        String sqlStatement = after == null
+                ? "SELECT * FROM appointments ORDER BY Start, Appointment_ID LIMIT ?"
+                : "SELECT * FROM appointments WHERE Start >= ? AND (Start > ? OR Appointment_ID > ?) " +
+                "ORDER BY Start, Appointment_ID LIMIT ?";
+        return getAppointmentsPage(sqlStatement, after, pageSize, false);
+    }
+
+    /**
+     * Returns the page of appointments that precedes the given appointment in (Start, Appointment_ID) order.
+     *
+     * @param before   the first appointment of the following page.
+     * @param pageSize the maximum number of appointments to return.
+     * @return the appointments of the page, ordered by start.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static ObservableList<Appointment> getAppointmentsPageBefore(Appointment before, int pageSize) throws SQLException {
+        String sqlStatement = "SELECT * FROM appointments WHERE Start <= ? AND (Start < ? OR Appointment_ID < ?) " +
+                "ORDER BY Start DESC, Appointment_ID DESC LIMIT ?";
+        return getAppointmentsPage(sqlStatement, before, pageSize, true);
+    }
+
+    /**
+     * Runs a keyset page query.
+     *
+     * @param sqlStatement the page query; it takes the anchor's start twice and its ID when an anchor is given, then
+     *                     the page size.
+     * @param anchor       the appointment to seek from, or null for the first page.
+     * @param pageSize     the maximum number of appointments to return.
+     * @param descending   true if the query returns rows in reverse order and the page must be flipped.
+     * @return the appointments of the page, ordered by start.
+     * @throws SQLException if a database access error occurs.
+     */
+    private static ObservableList<Appointment> getAppointmentsPage(String sqlStatement, Appointment anchor, int pageSize,
+                                                                   boolean descending) throws SQLException {
+        ObservableList<Appointment> page = FXCollections.observableArrayList();
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            int index = 1;
+            if (anchor != null) {
+                Timestamp anchorStart = Timestamp.valueOf(anchor.getStart());
+                stmt.setTimestamp(index++, anchorStart);
+                stmt.setTimestamp(index++, anchorStart);
+                stmt.setInt(index++, anchor.getAppointmentId());
+            }
+            stmt.setInt(index, pageSize);
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMappers.APPOINTMENT.mapAll(result, page);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error retrieving appointment page: " + e.getMessage());
+            throw e;
+        }
+        if (descending) {
+            FXCollections.reverse(page);
+        }
+        return page;
+    }
+
     /**
      * Adds a new appointment to the database with the specified parameters.
      *
@@ -166,7 +252,7 @@ public class AppointmentDaoImpl {
              PreparedStatement pst = conn.prepareStatement(
                      "INSERT INTO appointments(Title, Description, Location, Type, Start, End, Create_Date, " +
                              "Created_By, Last_Update, Last_Updated_By, Customer_ID, User_ID, Contact_ID) " +
-                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
 
             pst.setString(1, appointmentTitle);
             pst.setString(2, appointmentDescription);
@@ -183,13 +269,94 @@ public class AppointmentDaoImpl {
             pst.setInt(13, contactID);
 
             pst.executeUpdate();
+            try (ResultSet keys = pst.getGeneratedKeys()) {
+                Appointment added = new Appointment(keys.next() ? keys.getInt(1) : 0, appointmentTitle,
+                        appointmentDescription, appointmentLocation, appointmentType, appointmentStart, appointmentEnd,
+                        createDate.toLocalDateTime(), createdBy, lastUpdate.toLocalDateTime(), lastUpdateBy,
+                        customerID, userID, contactID);
+                if (added.getAppointmentId() != 0) {
+                    AppointmentConflictIndex.put(added);
+                    ReminderService.getInstance().appointmentSaved(added);
+                    AppointmentTypeRollup.put(added);
+                    AppointmentChangeBus.publish(AppointmentChangeSet.added(List.of(added)));
+                } else {
+                    AppointmentConflictIndex.invalidate();
+                }
+            }
         } catch (SQLException e) {
             throw new SQLException("Error adding appointment: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Updates an existing appointment in the database with the specified parameters.
+     * Adds many appointments in one transaction with a single batched statement; the driver rewrites the batch into
+     * multi-row INSERTs (rewriteBatchedStatements), so the whole list costs a few round trips instead of one per row.
+     * Either every appointment is added or none is. The appointments are not checked for overlaps here, see
+     * {@link utils.AppointmentImporter}.
+     *
+     * @param appointments the appointments to add; their appointment IDs are set to the generated ones.
+     * @throws SQLException if an error occurs while executing the SQL statement; nothing is added then.
+     */
+    public static void addAppointments(List<Appointment> appointments) throws SQLException {
+        if (appointments.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO appointments(Title, Description, Location, Type, Start, End, Create_Date, " +
+                "Created_By, Last_Update, Last_Updated_By, Customer_ID, User_ID, Contact_ID) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = JDBC.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pst = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (Appointment appointment : appointments) {
+                    pst.setString(1, appointment.getTitle());
+                    pst.setString(2, appointment.getDescription());
+                    pst.setString(3, appointment.getLocation());
+                    pst.setString(4, appointment.getType());
+                    pst.setTimestamp(5, Timestamp.valueOf(appointment.getStart()));
+                    pst.setTimestamp(6, Timestamp.valueOf(appointment.getEnd()));
+                    pst.setTimestamp(7, Timestamp.valueOf(appointment.getCreateDate()));
+                    pst.setString(8, appointment.getCreatedBy());
+                    pst.setTimestamp(9, Timestamp.valueOf(appointment.getLastUpdate()));
+                    pst.setString(10, appointment.getLastUpdatedBy());
+                    pst.setInt(11, appointment.getCustomerId());
+                    pst.setInt(12, appointment.getUserId());
+                    pst.setInt(13, appointment.getContactId());
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                int generated = 0;
+                try (ResultSet keys = pst.getGeneratedKeys()) {
+                    while (keys.next() && generated < appointments.size()) {
+                        appointments.get(generated++).setAppointmentId(keys.getInt(1));
+                    }
+                }
+                conn.commit();
+                for (Appointment added : appointments) {
+                    if (added.getAppointmentId() != 0) {
+                        AppointmentConflictIndex.put(added);
+                        ReminderService.getInstance().appointmentSaved(added);
+                        AppointmentTypeRollup.put(added);
+                    }
+                }
+                if (generated < appointments.size()) {
+                    AppointmentConflictIndex.invalidate();
+                }
+                AppointmentChangeBus.publish(AppointmentChangeSet.added(appointments));
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Error adding appointments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Updates an existing appointment in the database with the specified parameters, if it is still stored at the
+     * version the editor read. Otherwise another user changed or deleted it since, nothing is written and an
+     * {@link OptimisticLockException} is thrown.
      *
      * @param appointmentID          the ID of the appointment to be updated
      * @param appointmentTitle       the updated title for the appointment
@@ -203,18 +370,20 @@ public class AppointmentDaoImpl {
      * @param customerID             the ID of the customer associated with the appointment
      * @param userID                 the ID of the user who created the appointment
      * @param contactID              the ID of the contact associated with the appointment
+     * @param version                the version of the appointment the editor read
+     * @throws OptimisticLockException if the appointment is no longer stored at that version
      * @throws SQLException if an error occurs while executing the SQL statement
      */
     public static void modifyAppointment(int appointmentID, String appointmentTitle, String appointmentDescription,
                                          String appointmentLocation, String appointmentType, LocalDateTime appointmentStart,
                                          LocalDateTime appointmentEnd, Timestamp lastUpdate, String lastUpdateBy,
-                                         int customerID, int userID, int contactID) throws SQLException {
-        try {
-            String sql = "UPDATE appointments SET Title = ?, Description = ?, Location = ?, Type = ?, Start = ?, End = ?, " +
-                    "Last_Update = ?, Last_Updated_By = ?, Customer_ID = ?, User_ID = ?, Contact_ID = ? WHERE Appointment_ID = ?";
-            Connection conn = JDBC.getConnection();
-            PreparedStatement pst = conn.prepareStatement(sql);
-
+                                         int customerID, int userID, int contactID, int version) throws SQLException {
+        String sql = "UPDATE appointments SET Title = ?, Description = ?, Location = ?, Type = ?, Start = ?, End = ?, " +
+                "Last_Update = ?, Last_Updated_By = ?, Customer_ID = ?, User_ID = ?, Contact_ID = ?, " +
+                "Version = Version + 1 WHERE Appointment_ID = ? AND Version = ?";
+        boolean updated;
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
             pst.setString(1, appointmentTitle);
             pst.setString(2, appointmentDescription);
             pst.setString(3, appointmentLocation);
@@ -227,30 +396,73 @@ public class AppointmentDaoImpl {
             pst.setInt(10, userID);
             pst.setInt(11, contactID);
             pst.setInt(12, appointmentID);
-
-            pst.executeUpdate();
-            conn.close();
+            pst.setInt(13, version);
+
+            updated = pst.executeUpdate() > 0;
+            if (updated) {
+                // The update leaves Create_Date and Created_By as they were, so the row is read back for them.
+                Appointment modified;
+                try (PreparedStatement read = conn.prepareStatement(
+                        "SELECT * FROM appointments WHERE Appointment_ID = ?")) {
+                    read.setInt(1, appointmentID);
+                    try (ResultSet result = read.executeQuery()) {
+                        modified = RowMappers.APPOINTMENT.mapFirst(result);
+                    }
+                }
+                // Null if another user deleted it since; the change poller reports the deletion.
+                if (modified != null) {
+                    AppointmentConflictIndex.put(modified);
+                    ReminderService.getInstance().appointmentSaved(modified);
+                    AppointmentTypeRollup.put(modified);
+                    AppointmentChangeBus.publish(AppointmentChangeSet.updated(modified));
+                }
+            }
         } catch (SQLException e) {
             throw new SQLException("Error updating appointment: " + e.getMessage(), e);
         }
+        if (!updated) {
+            throw new OptimisticLockException("appointments", appointmentID, version);
+        }
+    }
+
+    /**
+     * Reads one appointment as it is now stored, e.g. to merge an edit that conflicted with another user's.
+     *
+     * @param appointmentId the ID of the appointment.
+     * @return the appointment, or null if it does not exist.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static Appointment getAppointmentById(int appointmentId) throws SQLException {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM appointments WHERE Appointment_ID = ?")) {
+            stmt.setInt(1, appointmentId);
+            try (ResultSet result = stmt.executeQuery()) {
+                return RowMappers.APPOINTMENT.mapFirst(result);
+            }
+        }
     }
 
     /**
      * This method deletes an appointment from the database based on the appointment ID.
      *
      * @param appointmentID The appointment ID of the appointment you want to delete.
+     * @throws SQLException if an error occurs while executing the SQL statement.
      */
-    public static void deleteAppointmentByApptId(int appointmentID) {
-        try {
-            String sql = "DELETE FROM appointments WHERE Appointment_ID = ?";
-            Connection conn = JDBC.getConnection();
-            PreparedStatement pst = conn.prepareStatement(sql);
-
+    public static void deleteAppointmentByApptId(int appointmentID) throws SQLException {
+        String sql = "DELETE FROM appointments WHERE Appointment_ID = ?";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
             pst.setInt(1, appointmentID);
 
             pst.execute();
+            AppointmentConflictIndex.remove(appointmentID);
+            ReminderService.getInstance().appointmentDeleted(appointmentID);
+            if (pst.getUpdateCount() > 0) {
+                AppointmentTypeRollup.remove(appointmentID);
+                AppointmentChangeBus.publish(AppointmentChangeSet.removed(List.of(appointmentID)));
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new SQLException("Error deleting appointment: " + e.getMessage(), e);
         }
     }
 
@@ -263,9 +475,16 @@ public class AppointmentDaoImpl {
      */
     public static void deleteAppointment(Appointment appointment) throws SQLException {
         String sqlStatement = "DELETE FROM appointments WHERE Appointment_ID = ?";
-        try (PreparedStatement ps = JDBC.getConnection().prepareStatement(sqlStatement)) {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sqlStatement)) {
             ps.setInt(1, appointment.getAppointmentId());
-            ps.executeUpdate();
+            int deleted = ps.executeUpdate();
+            AppointmentConflictIndex.remove(appointment.getAppointmentId());
+            ReminderService.getInstance().appointmentDeleted(appointment.getAppointmentId());
+            if (deleted > 0) {
+                AppointmentTypeRollup.remove(appointment.getAppointmentId());
+                AppointmentChangeBus.publish(AppointmentChangeSet.removed(List.of(appointment.getAppointmentId())));
+            }
         } catch (SQLException ex) {
             System.out.println(ex.getMessage());
         }
@@ -287,28 +506,29 @@ public class AppointmentDaoImpl {
             psti.setInt(2, appointmentID);
 
             psti.execute();
+            if (psti.getUpdateCount() > 0) {
+                AppointmentConflictIndex.remove(appointmentID);
+                ReminderService.getInstance().appointmentDeleted(appointmentID);
+                AppointmentTypeRollup.remove(appointmentID);
+                AppointmentChangeBus.publish(AppointmentChangeSet.removed(List.of(appointmentID)));
+            }
         } catch (SQLException throwables) {
             throwables.printStackTrace();
         }
     }
 
     /**
-     * This is the method to create the ObservableList typeAppt with only the distinct appointment types. The method
-     * executes an SQL query to select only the distinct Type strings from the Appointments table.
+     * This is the method to create the ObservableList typeAppt with only the distinct appointment types. The types are
+     * read from the {@link AppointmentTypeRollup}.
      *
      * @return the ObservableList typeAppt with only the distinct appointment types
      * @throws SQLException if an error occurs while executing the SQL statement.
      */
     public static ObservableList<AppointmentType> typeAppt() throws SQLException {
         ObservableList<AppointmentType> typeAppt = FXCollections.observableArrayList();
-        String sqlStatement = "select distinct Type from appointments";
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sqlStatement);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                String type = rs.getString("Type");
-                AppointmentType appointmentTypeResult = new AppointmentType(type);
-                typeAppt.add(appointmentTypeResult);
+        try {
+            for (String type : AppointmentTypeRollup.getTypes()) {
+                typeAppt.add(new AppointmentType(type));
             }
         } catch (SQLException ex) {
             ex.printStackTrace();
@@ -318,25 +538,18 @@ public class AppointmentDaoImpl {
 
     /**
      * This method takes in a selected appointment type and a month and returns the number of appointments of that type
-     * in that month
+     * in that month, in any year. The count is read from the {@link AppointmentTypeRollup}.
      *
      * @param selectedType The type of appointment that is selected from the combo box.
-     * @param month        The month to be counted.
+     * @param month        The month to be counted, by its English name.
      * @return The number of appointments of a certain type in a certain month.
      * @throws SQLException if an error occurs while executing the SQL statement.
      */
     public static int countMonthType(AppointmentType selectedType, String month) throws SQLException {
-        String sqlStatement = "SELECT COUNT(*) AS monthType FROM appointments WHERE Type = ? AND MONTHNAME(Start) = ?";
         int countMonthTypeResult = 0;
-
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sqlStatement)) {
-            pstmt.setString(1, selectedType.getType());
-            pstmt.setString(2, month);
-            ResultSet result = pstmt.executeQuery();
-            if (result.next()) {
-                countMonthTypeResult = result.getInt("monthType");
-            }
+        try {
+            countMonthTypeResult = AppointmentTypeRollup.getCount(selectedType.getType(),
+                    Month.valueOf(month.toUpperCase(Locale.ROOT)));
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
@@ -359,26 +572,7 @@ public class AppointmentDaoImpl {
 
             preparedStatement.setInt(1, selectedContactID);
             ResultSet result = preparedStatement.executeQuery();
-            while (result.next()) {
-                int appointmentId = result.getInt("Appointment_ID");
-                String title = result.getString("Title");
-                String description = result.getString("Description");
-                String location = result.getString("Location");
-                String type = result.getString("Type");
-                LocalDateTime start = result.getTimestamp("Start").toLocalDateTime();
-                LocalDateTime end = result.getTimestamp("End").toLocalDateTime();
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdateBy = result.getString("Last_Updated_By");
-                int customerId = result.getInt("Customer_ID");
-                int userId = result.getInt("User_ID");
-                int contactId = result.getInt("Contact_ID");
-
-                Appointment appointmentResult = new Appointment(appointmentId, title, description, location, type, start,
-                        end, createDate, createdBy, lastUpdate, lastUpdateBy, customerId, userId, contactId);
-                contactList.add(appointmentResult);
-            }
+            RowMappers.APPOINTMENT.mapAll(result, contactList);
         } catch (SQLException e) {
             e.printStackTrace();
             throw e;
@@ -387,91 +581,79 @@ public class AppointmentDaoImpl {
     }
 
     /**
-     * This method returns an ObservableList of Appointment objects that are scheduled for the current month.
+     * This method returns an ObservableList of Appointment objects that are scheduled for the current month. The month
+     * is the calendar month of the current date in the user's time zone.
      *
      * @return A list of all appointments that are scheduled for the current month.
      * @throws SQLException if an error occurs while executing the SQL statement.
      */
     public static ObservableList<Appointment> getCurrentMonthAppointments() throws SQLException {
-        ObservableList<Appointment> currentMonthAppointments = FXCollections.observableArrayList();
-        String sqlStatement = "SELECT * FROM appointments WHERE MONTH(Start) = MONTH(CURDATE())";
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sqlStatement);
-             ResultSet result = stmt.executeQuery()) {
-            while (result.next()) {
-                int Appointment_ID = result.getInt("Appointment_ID");
-                String Title = result.getString("Title");
-                String Description = result.getString("Description");
-                String Location = result.getString("Location");
-                String Type = result.getString("Type");
-                LocalDateTime Start = result.getTimestamp("Start").toLocalDateTime();
-                LocalDateTime End = result.getTimestamp("End").toLocalDateTime();
-                LocalDateTime Create_Date = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int Customer_ID = result.getInt("Customer_ID");
-                int userId = result.getInt("User_ID");
-                int contactId = result.getInt("Contact_ID");
-
-                Appointment appointmentResult = new Appointment(Appointment_ID, Title, Description, Location, Type,
-                        Start, End, Create_Date, createdBy, lastUpdate, lastUpdatedBy,
-                        Customer_ID, userId, contactId);
-                currentMonthAppointments.add(appointmentResult);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return currentMonthAppointments;
+        LocalDateTime monthStart = getCurrentMonthStart();
+        return getAppointmentsBetween(monthStart, monthStart.plusMonths(1));
+    }
+
+    /**
+     * @return the start of the current calendar month in the user's time zone.
+     */
+    public static LocalDateTime getCurrentMonthStart() {
+        return LocalDate.now().withDayOfMonth(1).atStartOfDay();
     }
 
 
     /**
-     * This function returns an ObservableList of Appointment objects that are scheduled for the current week
+     * This function returns an ObservableList of Appointment objects that are scheduled for the current week. The week
+     * starts on the first day of the week of the user's locale, e.g. Sunday in the United States and Monday in France.
      *
      * @return A list of all appointments that are scheduled for the current week.
      * @throws SQLException if an error occurs while executing the SQL statement.
-     * @throws NullPointerException if the result set is empty.
      */
-    public static ObservableList<Appointment> getCurrentWeekAppointments() throws NullPointerException, SQLException {
-        ObservableList<Appointment> currentWeekAppointments = FXCollections.observableArrayList();
-        String sqlStatement = "SELECT * FROM appointments WHERE WEEK(Start) = WEEK(CURDATE())";
-        Connection conn = JDBC.getConnection();
-        try (Statement statement = conn.createStatement();
-             ResultSet result = statement.executeQuery(sqlStatement)) {
-            while (result.next()) {
-                int Appointment_ID = result.getInt("Appointment_ID");
-                String Title = result.getString("Title");
-                String Description = result.getString("Description");
-                String Location = result.getString("Location");
-                String Type = result.getString("Type");
-                LocalDateTime start = result.getTimestamp("Start").toLocalDateTime();
-                LocalDateTime end = result.getTimestamp("End").toLocalDateTime();
-                Timestamp createDate = result.getTimestamp("Create_Date");
-                LocalDateTime Create_Date = null;
-                if (createDate != null) {
-                    Create_Date = createDate.toLocalDateTime();
-                }
-                String Created_By = result.getString("Created_By");
-                Timestamp lastUpdate = result.getTimestamp("Last_Update");
-                LocalDateTime Last_Update = null;
-                if (lastUpdate != null) {
-                    Last_Update = lastUpdate.toLocalDateTime();
+    public static ObservableList<Appointment> getCurrentWeekAppointments() throws SQLException {
+        LocalDateTime weekStart = getCurrentWeekStart();
+        return getAppointmentsBetween(weekStart, weekStart.plusWeeks(1));
+    }
+
+    /**
+     * @return the start of the current week in the user's time zone, on the first day of the week of the user's
+     * locale.
+     */
+    public static LocalDateTime getCurrentWeekStart() {
+        DayOfWeek firstDayOfWeek = WeekFields.of(Locale.getDefault()).getFirstDayOfWeek();
+        return LocalDate.now().with(TemporalAdjusters.previousOrSame(firstDayOfWeek)).atStartOfDay();
+    }
+
+    /**
+     * Returns the appointments that start in the half-open window [from, to), ordered by start. The bounds are local
+     * date and times of the user's time zone; the driver converts them to UTC, so the comparison runs directly on the
+     * stored Start column and MySQL answers it with a range scan of the index on Start.<br>
+     * The occurrences of recurring series that start in the window are expanded and merged in; they have appointment
+     * ID 0 and their series ID set.
+     *
+     * @param from the inclusive start of the window.
+     * @param to   the exclusive end of the window.
+     * @return the appointments that start in the window.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static ObservableList<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) throws SQLException {
+        ObservableList<Appointment> appointments = FXCollections.observableArrayList();
+        String sqlStatement = "SELECT * FROM appointments WHERE Start >= ? AND Start < ? ORDER BY Start, Appointment_ID";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(from));
+            stmt.setTimestamp(2, Timestamp.valueOf(to));
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMappers.APPOINTMENT.mapAll(result, appointments);
+            }
+            for (Appointment occurrence : AppointmentSeriesDaoImpl.getOccurrencesBetween(from, to)) {
+                if (!occurrence.getStart().isBefore(from)) {
+                    appointments.add(occurrence);
                 }
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int customerId = result.getInt("Customer_ID");
-                int userId = result.getInt("User_ID");
-                int contactId = result.getInt("Contact_ID");
-
-                Appointment appointmentResult = new Appointment(Appointment_ID, Title, Description, Location, Type,
-                        start, end, Create_Date, Created_By, Last_Update, lastUpdatedBy,
-                        customerId, userId, contactId);
-                currentWeekAppointments.add(appointmentResult);
             }
-        } catch (NullPointerException e) {
-            System.out.println(e.getMessage());
+            FXCollections.sort(appointments, AppointmentChangeSet.START_ORDER);
+        } catch (SQLException e) {
+            System.out.println("Error retrieving appointments between " + from + " and " + to + ": " + e.getMessage());
+            throw e;
         }
-        return currentWeekAppointments;
+        return appointments;
     }
 
     /**
@@ -495,4 +677,55 @@ public class AppointmentDaoImpl {
         }
         return countCustApptResult;
     }
+
+    /**
+     * Counts the appointments of a set of customers with one query.
+     *
+     * @param customerIds the IDs of the customers.
+     * @return the number of appointments the customers have together.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static int countAppointmentsByCustomerIds(Collection<Integer> customerIds) throws SQLException {
+        if (customerIds.isEmpty()) {
+            return 0;
+        }
+        String sqlStatement = "SELECT COUNT(*) FROM appointments WHERE Customer_ID IN (" +
+                String.join(", ", Collections.nCopies(customerIds.size(), "?")) + ")";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            int index = 1;
+            for (int customerId : customerIds) {
+                stmt.setInt(index++, customerId);
+            }
+            try (ResultSet result = stmt.executeQuery()) {
+                return result.next() ? result.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the type and the calendar month of the start of every appointment, without the other columns. The months
+     * are those of the Start column as stored, i.e. in UTC.
+     *
+     * @return the type and month of each appointment, by appointment ID.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static Map<Integer, AppointmentTypeRollup.TypeMonth> getAppointmentTypeMonths() throws SQLException {
+        Map<Integer, AppointmentTypeRollup.TypeMonth> typeMonths = new HashMap<>();
+        String sqlStatement = "SELECT Appointment_ID, Type, YEAR(Start) AS Year, MONTH(Start) AS Month " +
+                "FROM appointments";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement);
+             ResultSet result = stmt.executeQuery()) {
+            int id = result.findColumn("Appointment_ID");
+            int type = result.findColumn("Type");
+            int year = result.findColumn("Year");
+            int month = result.findColumn("Month");
+            while (result.next()) {
+                typeMonths.put(result.getInt(id), new AppointmentTypeRollup.TypeMonth(result.getString(type),
+                        YearMonth.of(result.getInt(year), result.getInt(month))));
+            }
+        }
+        return typeMonths;
+    }
 }
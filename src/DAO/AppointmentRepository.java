@@ -0,0 +1,182 @@
+package DAO;
+
+import Model.Appointment;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This interface is the storage of appointments, implemented against MySQL by {@link JdbcRepository} and in process
+ * by {@link EmbeddedStore}; {@link Repositories} returns the one selected. Every implementation keeps the
+ * {@link AppointmentConflictIndex}, the {@link AppointmentTypeRollup}, the reminders and the
+ * {@link AppointmentChangeBus} up to date with the writes it makes, and returns model objects the caller may modify.
+ */
+public interface AppointmentRepository {
+    /**
+     * @param userId the ID of the user.
+     * @param from   the inclusive start of the window, in the user's time zone.
+     * @param to     the inclusive end of the window, in the user's time zone.
+     * @return the user's appointments that start in the window, ordered by start.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getUpcomingAppointmentsByUserId(int userId, LocalDateTime from, LocalDateTime to)
+            throws SQLException;
+
+    /**
+     * @return every stored appointment.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getAllAppointments() throws SQLException;
+
+    /**
+     * @param customerId    the ID of the customer.
+     * @param appointmentId the ID of the appointment being edited, excluded from the check (0 for a new appointment).
+     * @param start         the start of the time range.
+     * @param end           the end of the time range.
+     * @return the appointments of the customer that overlap the time range.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getConflictingAppointments(int customerId, int appointmentId, LocalDateTime start,
+                                                           LocalDateTime end) throws SQLException;
+
+    /**
+     * @param after    the last appointment of the previous page, or null for the first page.
+     * @param pageSize the maximum number of appointments to return.
+     * @return the page of appointments that follows the given one in (Start, Appointment_ID) order.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getAppointmentsPageAfter(Appointment after, int pageSize) throws SQLException;
+
+    /**
+     * @param before   the first appointment of the following page.
+     * @param pageSize the maximum number of appointments to return.
+     * @return the page of appointments that precedes the given one in (Start, Appointment_ID) order.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getAppointmentsPageBefore(Appointment before, int pageSize) throws SQLException;
+
+    /**
+     * Adds a new appointment.
+     *
+     * @param appointmentTitle       the title for the new appointment
+     * @param appointmentDescription the description for the new appointment
+     * @param appointmentLocation    the location for the new appointment
+     * @param appointmentType        the type for the new appointment
+     * @param appointmentStart       the start time for the new appointment
+     * @param appointmentEnd         the end time for the new appointment
+     * @param createDate             the timestamp of when the appointment was created
+     * @param createdBy              the username of the user who created the appointment
+     * @param lastUpdate             the timestamp of when the appointment was last updated
+     * @param lastUpdateBy           the username of the user who last updated the appointment
+     * @param customerID             the ID of the customer associated with the appointment
+     * @param userID                 the ID of the user who created the appointment
+     * @param contactID              the ID of the contact associated with the appointment
+     * @throws SQLException if the appointment cannot be added.
+     */
+    void addAppointment(String appointmentTitle, String appointmentDescription, String appointmentLocation,
+                        String appointmentType, LocalDateTime appointmentStart, LocalDateTime appointmentEnd,
+                        Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                        int customerID, int userID, int contactID) throws SQLException;
+
+    /**
+     * Adds many appointments; either every appointment is added or none is.
+     *
+     * @param appointments the appointments to add; their appointment IDs are set to the generated ones.
+     * @throws SQLException if the appointments cannot be added; nothing is added then.
+     */
+    void addAppointments(List<Appointment> appointments) throws SQLException;
+
+    /**
+     * Updates an appointment if it is still stored at the version the editor read.
+     *
+     * @param appointmentID          the ID of the appointment to be updated
+     * @param appointmentTitle       the updated title for the appointment
+     * @param appointmentDescription the updated description for the appointment
+     * @param appointmentLocation    the updated location for the appointment
+     * @param appointmentType        the updated type for the appointment
+     * @param appointmentStart       the updated start time for the appointment
+     * @param appointmentEnd         the updated end time for the appointment
+     * @param lastUpdate             the timestamp of when the appointment was last updated
+     * @param lastUpdateBy           the username of the user who last updated the appointment
+     * @param customerID             the ID of the customer associated with the appointment
+     * @param userID                 the ID of the user who created the appointment
+     * @param contactID              the ID of the contact associated with the appointment
+     * @param version                the version of the appointment the editor read
+     * @throws OptimisticLockException if the appointment is no longer stored at that version
+     * @throws SQLException if the appointment cannot be updated
+     */
+    void modifyAppointment(int appointmentID, String appointmentTitle, String appointmentDescription,
+                           String appointmentLocation, String appointmentType, LocalDateTime appointmentStart,
+                           LocalDateTime appointmentEnd, Timestamp lastUpdate, String lastUpdateBy,
+                           int customerID, int userID, int contactID, int version) throws SQLException;
+
+    /**
+     * @param appointmentId the ID of the appointment.
+     * @return the appointment as it is now stored, or null if it does not exist.
+     * @throws SQLException if the appointment cannot be read.
+     */
+    Appointment getAppointmentById(int appointmentId) throws SQLException;
+
+    /**
+     * Deletes an appointment.
+     *
+     * @param appointmentID the ID of the appointment.
+     * @throws SQLException if the appointment cannot be deleted.
+     */
+    void deleteAppointmentByApptId(int appointmentID) throws SQLException;
+
+    /**
+     * @param contactId the ID of the contact.
+     * @return the appointments of the contact.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getAppointmentsByContactId(int contactId) throws SQLException;
+
+    /**
+     * @param from the inclusive start of the window.
+     * @param to   the exclusive end of the window.
+     * @return the appointments, and the occurrences of recurring series, that start in the window, in
+     * {@link AppointmentChangeSet#START_ORDER}.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    ObservableList<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) throws SQLException;
+
+    /**
+     * @return the appointments that start in the current calendar month, see {@link #getAppointmentsBetween}.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    default ObservableList<Appointment> getCurrentMonthAppointments() throws SQLException {
+        LocalDateTime monthStart = AppointmentDaoImpl.getCurrentMonthStart();
+        return getAppointmentsBetween(monthStart, monthStart.plusMonths(1));
+    }
+
+    /**
+     * @return the appointments that start in the current week, see {@link #getAppointmentsBetween}.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    default ObservableList<Appointment> getCurrentWeekAppointments() throws SQLException {
+        LocalDateTime weekStart = AppointmentDaoImpl.getCurrentWeekStart();
+        return getAppointmentsBetween(weekStart, weekStart.plusWeeks(1));
+    }
+
+    /**
+     * @param customerIds the IDs of the customers.
+     * @return the number of appointments the customers have together.
+     * @throws SQLException if the appointments cannot be counted.
+     */
+    int countAppointmentsByCustomerIds(Collection<Integer> customerIds) throws SQLException;
+
+    /**
+     * Reads the type and the calendar month of the start in UTC of every appointment. Used to load the
+     * {@link AppointmentTypeRollup}.
+     *
+     * @return the type and month of each appointment, by appointment ID.
+     * @throws SQLException if the appointments cannot be read.
+     */
+    Map<Integer, AppointmentTypeRollup.TypeMonth> getAppointmentTypeMonths() throws SQLException;
+}
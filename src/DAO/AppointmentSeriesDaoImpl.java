@@ -0,0 +1,373 @@
+package DAO;
+
+import Model.Appointment;
+import Model.AppointmentSeries;
+import Model.RecurrenceRule;
+import utils.JDBC;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class creates the appointment series database methods. A series is stored as one row of appointment_series,
+ * its first occurrence and recurrence rule, plus one row of appointment_series_exceptions per cancelled occurrence.
+ * Occurrences are never stored: they are expanded for the window being shown, and conflicts are checked against the
+ * rule of each series, see {@link RecurrenceRule}.<br>
+ * Series are only stored in MySQL. On the embedded store there are none to read, and adding, cancelling or deleting
+ * one fails, see {@link Repositories}.
+ *
+ * @author Mehdi Rahimi
+ */
+public class AppointmentSeriesDaoImpl {
+    /**
+     * How far ahead conflicts with a series that repeats indefinitely are checked, in years.
+     */
+    public static final int UNBOUNDED_CHECK_YEARS = 2;
+    /**
+     * The condition that keeps only the series still running after a time, the parameter. Last_End is the end of the
+     * last occurrence, or NULL for a series that repeats indefinitely; see V8__appointment_series_last_end.sql.
+     */
+    private static final String RUNNING_AFTER = " AND (Last_End IS NULL OR Last_End > ?)";
+
+    /**
+     * Inserts a new series and its cancelled occurrences, if any, in one transaction.
+     *
+     * @param series the series; its series ID is set to the generated one.
+     * @return the generated series ID.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static int addSeries(AppointmentSeries series) throws SQLException {
+        checkSupported();
+        String sql = "INSERT INTO appointment_series(Title, Description, Location, Type, Start, End, Frequency, " +
+                "Interval_Count, Until, Occurrence_Count, Create_Date, Created_By, Last_Update, Last_Updated_By, " +
+                "Customer_ID, User_ID, Contact_ID, Last_End) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        RecurrenceRule rule = series.getRule();
+        try (Connection conn = JDBC.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pst = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pst.setString(1, series.getTitle());
+                pst.setString(2, series.getDescription());
+                pst.setString(3, series.getLocation());
+                pst.setString(4, series.getType());
+                pst.setTimestamp(5, Timestamp.valueOf(series.getStart()));
+                pst.setTimestamp(6, Timestamp.valueOf(series.getEnd()));
+                pst.setString(7, rule.getFrequency().name());
+                pst.setInt(8, rule.getInterval());
+                pst.setTimestamp(9, rule.getUntil() == null ? null : Timestamp.valueOf(rule.getUntil()));
+                pst.setObject(10, rule.getCount());
+                pst.setTimestamp(11, series.getCreateDate() == null ? null : Timestamp.valueOf(series.getCreateDate()));
+                pst.setString(12, series.getCreatedBy());
+                pst.setTimestamp(13, series.getLastUpdate() == null ? null : Timestamp.valueOf(series.getLastUpdate()));
+                pst.setString(14, series.getLastUpdatedBy());
+                pst.setInt(15, series.getCustomerId());
+                pst.setInt(16, series.getUserId());
+                pst.setInt(17, series.getContactId());
+                LocalDateTime lastEnd = series.getLastEnd();
+                pst.setTimestamp(18, lastEnd == null ? null : Timestamp.valueOf(lastEnd));
+                pst.executeUpdate();
+                try (ResultSet keys = pst.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No series ID was generated");
+                    }
+                    series.setSeriesId(keys.getInt(1));
+                }
+                insertExceptions(conn, series.getSeriesId(), rule.getExceptions());
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Error adding appointment series: " + e.getMessage(), e);
+        }
+        return series.getSeriesId();
+    }
+
+    /**
+     * Deletes a series with all its occurrences.
+     *
+     * @param seriesId the ID of the series.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static void deleteSeries(int seriesId) throws SQLException {
+        checkSupported();
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement pst = conn.prepareStatement("DELETE FROM appointment_series WHERE Series_ID = ?")) {
+            pst.setInt(1, seriesId);
+            if (pst.executeUpdate() > 0) {
+                AppointmentChangeBus.publish(AppointmentChangeSet.seriesRemoved(List.of(seriesId)));
+            }
+        }
+    }
+
+    /**
+     * Cancels one occurrence of a series; the other occurrences are kept.
+     *
+     * @param seriesId        the ID of the series.
+     * @param occurrenceStart the start of the occurrence.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static void cancelOccurrence(int seriesId, LocalDateTime occurrenceStart) throws SQLException {
+        checkSupported();
+        try (Connection conn = JDBC.getConnection()) {
+            insertExceptions(conn, seriesId, List.of(occurrenceStart));
+        }
+        AppointmentChangeBus.publish(AppointmentChangeSet.occurrenceRemoved(seriesId, occurrenceStart));
+    }
+
+    /**
+     * Returns the occurrences of every series that overlap a time range.
+     *
+     * @param from the start of the range.
+     * @param to   the end of the range, exclusive.
+     * @return the occurrences, ordered by start.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static List<Appointment> getOccurrencesBetween(LocalDateTime from, LocalDateTime to) throws SQLException {
+        return expand(getSeries("Start < ?" + RUNNING_AFTER, to, from), from, to);
+    }
+
+    /**
+     * Returns the occurrences of a contact's series that overlap a time range.
+     *
+     * @param contactId the ID of the contact.
+     * @param from      the start of the range.
+     * @param to        the end of the range, exclusive.
+     * @return the occurrences, ordered by start.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static List<Appointment> getContactOccurrencesBetween(int contactId, LocalDateTime from, LocalDateTime to) throws SQLException {
+        return expand(getSeries("Contact_ID = ? AND Start < ?" + RUNNING_AFTER, contactId, to, from), from, to);
+    }
+
+    /**
+     * Returns the occurrences of a customer's series that overlap a time range.
+     *
+     * @param customerId the ID of the customer.
+     * @param from       the start of the range.
+     * @param to         the end of the range, exclusive.
+     * @return the occurrences, ordered by start.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static List<Appointment> getCustomerOccurrencesBetween(int customerId, LocalDateTime from, LocalDateTime to) throws SQLException {
+        return expand(getSeries("Customer_ID = ? AND Start < ?" + RUNNING_AFTER, customerId, to, from), from, to);
+    }
+
+    /**
+     * Returns the occurrences of a user's series that overlap a time range.
+     *
+     * @param userId the ID of the user.
+     * @param from   the start of the range.
+     * @param to     the end of the range, exclusive.
+     * @return the occurrences, ordered by start.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static List<Appointment> getUserOccurrencesBetween(int userId, LocalDateTime from, LocalDateTime to) throws SQLException {
+        return expand(getSeries("User_ID = ? AND Start < ?" + RUNNING_AFTER, userId, to, from), from, to);
+    }
+
+    /**
+     * Checks whether an occurrence of one of a customer's series overlaps a time range. Only the occurrences that
+     * could overlap the range are looked at.
+     *
+     * @param customerId the ID of the customer.
+     * @param start      the start of the range.
+     * @param end        the end of the range.
+     * @return true if the customer has an occurrence during the range.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static boolean hasCustomerConflict(int customerId, LocalDateTime start, LocalDateTime end) throws SQLException {
+        for (AppointmentSeries series : getSeries("Customer_ID = ? AND Start < ?" + RUNNING_AFTER, customerId, end, start)) {
+            if (series.overlaps(start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the series of a set of customers, which {@link CustomerDaoImpl#deleteCustomers} deletes with them; none
+     * on the embedded store.
+     *
+     * @param customerIds the IDs of the customers.
+     * @return the number of series.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static int countSeriesByCustomerIds(Collection<Integer> customerIds) throws SQLException {
+        if (customerIds.isEmpty() || Repositories.isEmbedded()) {
+            return 0;
+        }
+        String sql = "SELECT COUNT(*) FROM appointment_series WHERE Customer_ID IN ("
+                + String.join(", ", Collections.nCopies(customerIds.size(), "?")) + ")";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, customerIds.toArray());
+            try (ResultSet result = stmt.executeQuery()) {
+                return result.next() ? result.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Finds the customer's appointments and series occurrences that a new series would overlap. Each stored
+     * appointment is checked against the rule of the new series, and each occurrence of the new series against the
+     * rule of every other series, so neither side is listed in full. A series that repeats indefinitely is checked
+     * for the next {@value #UNBOUNDED_CHECK_YEARS} years.
+     *
+     * @param candidate the new series.
+     * @return the overlapping appointments and the first overlapping occurrence of each series, ordered by start.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static List<Appointment> findConflicts(AppointmentSeries candidate) throws SQLException {
+        LocalDateTime from = candidate.getStart();
+        LocalDateTime to = candidate.getLastEnd();
+        if (to == null) {
+            to = from.plusYears(UNBOUNDED_CHECK_YEARS);
+        }
+        List<Appointment> conflicts = new ArrayList<>();
+        for (Appointment appointment : AppointmentConflictIndex.getCustomerAppointments(candidate.getCustomerId(), from, to)) {
+            if (candidate.overlaps(appointment.getStart(), appointment.getEnd())) {
+                conflicts.add(appointment);
+            }
+        }
+        for (AppointmentSeries other : getSeries("Customer_ID = ? AND Start < ?" + RUNNING_AFTER,
+                candidate.getCustomerId(), to, from)) {
+            if (other.getSeriesId() == candidate.getSeriesId()) {
+                continue;
+            }
+            LocalDateTime otherEnd = other.getLastEnd();
+            LocalDateTime until = otherEnd != null && otherEnd.isBefore(to) ? otherEnd : to;
+            for (LocalDateTime start : candidate.getRule().startsBetween(candidate.getStart(), candidate.getLength(), from, until)) {
+                List<Appointment> overlapping = other.expand(start, start.plus(candidate.getLength()));
+                if (!overlapping.isEmpty()) {
+                    conflicts.add(overlapping.get(0));
+                    break;
+                }
+            }
+        }
+        conflicts.sort(Comparator.comparing(Appointment::getStart));
+        return conflicts;
+    }
+
+    /**
+     * Refuses a write when the application runs on the embedded store, which has no series.
+     *
+     * @throws SQLException if the embedded store is selected.
+     */
+    private static void checkSupported() throws SQLException {
+        if (Repositories.isEmbedded()) {
+            throw new SQLException("Recurring series are not supported by the embedded store");
+        }
+    }
+
+    /**
+     * Reads the series matching a condition, with their cancelled occurrences; none on the embedded store.
+     *
+     * @param where      the condition on the appointment_series columns, with ? parameters.
+     * @param parameters the parameters, ints or local date and times.
+     * @return the series, in the order read.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    private static List<AppointmentSeries> getSeries(String where, Object... parameters) throws SQLException {
+        if (Repositories.isEmbedded()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, AppointmentSeries> series = new LinkedHashMap<>();
+        try (Connection conn = JDBC.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM appointment_series WHERE " + where)) {
+                bind(stmt, parameters);
+                try (ResultSet result = stmt.executeQuery()) {
+                    for (AppointmentSeries row : RowMappers.SERIES.mapAll(result)) {
+                        series.put(row.getSeriesId(), row);
+                    }
+                }
+            }
+            if (series.isEmpty()) {
+                return new ArrayList<>();
+            }
+            String sql = "SELECT e.Series_ID, e.Occurrence_Start FROM appointment_series_exceptions e " +
+                    "JOIN appointment_series s ON s.Series_ID = e.Series_ID WHERE " + where;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                bind(stmt, parameters);
+                try (ResultSet result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        AppointmentSeries owner = series.get(result.getInt(1));
+                        if (owner != null) {
+                            owner.getRule().addException(RowMapper.getLocalDateTime(result, 2));
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(series.values());
+    }
+
+    /**
+     * Expands series into their occurrences in a time range.
+     *
+     * @param series the series.
+     * @param from   the start of the range.
+     * @param to     the end of the range, exclusive.
+     * @return the occurrences, ordered by start.
+     */
+    private static List<Appointment> expand(List<AppointmentSeries> series, LocalDateTime from, LocalDateTime to) {
+        List<Appointment> occurrences = new ArrayList<>();
+        for (AppointmentSeries s : series) {
+            occurrences.addAll(s.expand(from, to));
+        }
+        occurrences.sort(Comparator.comparing(Appointment::getStart));
+        return occurrences;
+    }
+
+    /**
+     * Inserts cancelled occurrences of a series, ignoring ones already cancelled.
+     *
+     * @param conn             the connection to use.
+     * @param seriesId         the ID of the series.
+     * @param occurrenceStarts the starts of the cancelled occurrences.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    private static void insertExceptions(Connection conn, int seriesId, Iterable<LocalDateTime> occurrenceStarts) throws SQLException {
+        String sql = "INSERT IGNORE INTO appointment_series_exceptions(Series_ID, Occurrence_Start) VALUES (?, ?)";
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (LocalDateTime occurrenceStart : occurrenceStarts) {
+                pst.setInt(1, seriesId);
+                pst.setTimestamp(2, Timestamp.valueOf(occurrenceStart));
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+    }
+
+    /**
+     * Binds query parameters in order.
+     *
+     * @param stmt       the statement.
+     * @param parameters the parameters, ints or local date and times.
+     * @throws SQLException if a parameter cannot be bound.
+     */
+    private static void bind(PreparedStatement stmt, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            if (parameter instanceof LocalDateTime) {
+                stmt.setTimestamp(i + 1, Timestamp.valueOf((LocalDateTime) parameter));
+            } else {
+                stmt.setObject(i + 1, parameter);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package DAO;
+
+import Model.Appointment;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps the number of appointments of each type in each month, so the type and month report is answered
+ * from memory instead of with a COUNT(*) over the appointments table on every selection. The type and month of every
+ * appointment are read once, see {@link AppointmentRepository#getAppointmentTypeMonths}, and are then kept up to date
+ * by the write methods of the {@link AppointmentRepository}. They are kept by appointment ID, so a modified or deleted
+ * appointment is uncounted from what was counted for it, without reading the row back or loading the
+ * {@link AppointmentConflictIndex}. Writes made while the counts are being read are recorded and replayed over them,
+ * as the conflict index does, so none is lost.<br>
+ * Months are calendar months of the Start column as stored in the database, i.e. in UTC, which is how the report
+ * query counted them before.
+ */
+public class AppointmentTypeRollup {
+    /**
+     * Guards the counts; queries share the read lock, updates take the write lock.
+     */
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * The type and month counted for each appointment, by appointment ID.
+     */
+    private static final Map<Integer, TypeMonth> typeMonths = new HashMap<>();
+    /**
+     * The number of appointments of each type in each month, by type and then by month.
+     */
+    private static final Map<String, Map<YearMonth, Integer>> counts = new HashMap<>();
+    /**
+     * True once the counts have been loaded from the database.
+     */
+    private static volatile boolean loaded;
+    /**
+     * The writes made while the counts are being loaded, by appointment ID (null for a deletion). The read of a load
+     * may or may not see them, so they are replayed over what it read. Null when no load is running. Guarded by the
+     * write lock.
+     */
+    private static Map<Integer, TypeMonth> pendingChanges;
+    /**
+     * The number of loads in progress. Guarded by the write lock.
+     */
+    private static int loadsInProgress;
+    /**
+     * Incremented by {@link #invalidate()}, so a load that started before the counts were dropped does not install
+     * what it read before the drop. Guarded by the write lock.
+     */
+    private static long generation;
+
+    /**
+     * The type of an appointment and the month of its start as stored, i.e. in UTC.
+     */
+    public static final class TypeMonth {
+        /**
+         * The appointment type.
+         */
+        private final String type;
+        /**
+         * The month of the start, in UTC.
+         */
+        private final YearMonth month;
+
+        /**
+         * @param type  the appointment type.
+         * @param month the month of the start, in UTC.
+         */
+        public TypeMonth(String type, YearMonth month) {
+            this.type = type;
+            this.month = month;
+        }
+
+        /**
+         * @param appointment an appointment, with its start in the user's time zone.
+         * @return its type and the month of its start in UTC.
+         */
+        public static TypeMonth of(Appointment appointment) {
+            return new TypeMonth(appointment.getType(), toStoredMonth(appointment.getStart()));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TypeMonth && Objects.equals(type, ((TypeMonth) other).type)
+                    && month.equals(((TypeMonth) other).month);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type) * 31 + month.hashCode();
+        }
+    }
+
+    /**
+     * @return true if the counts have been loaded and are being kept up to date.
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads the counts from the database if they have not been loaded yet. The appointments are read without holding
+     * the lock; writes made in the meantime are recorded and replayed over them, so none is lost.
+     *
+     * @throws SQLException if the appointments cannot be read.
+     */
+    public static void ensureLoaded() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        long loadGeneration;
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (loadsInProgress++ == 0) {
+                pendingChanges = new LinkedHashMap<>();
+            }
+            loadGeneration = generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Integer, TypeMonth> read = null;
+        try {
+            read = Repositories.appointments().getAppointmentTypeMonths();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (read != null && !loaded && loadGeneration == generation) {
+                    clear();
+                    for (Map.Entry<Integer, TypeMonth> entry : read.entrySet()) {
+                        count(entry.getKey(), entry.getValue());
+                    }
+                    for (Map.Entry<Integer, TypeMonth> change : pendingChanges.entrySet()) {
+                        count(change.getKey(), change.getValue());
+                    }
+                    loaded = true;
+                }
+                if (--loadsInProgress == 0) {
+                    pendingChanges = null;
+                } else if (loaded) {
+                    pendingChanges.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (!loaded) {
+            // The counts were dropped while this load was reading; read them again.
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Drops the counts. They are reloaded from the database the next time they are needed.
+     */
+    public static void invalidate() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            loaded = false;
+            clear();
+            if (pendingChanges != null) {
+                pendingChanges.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts a new appointment, or a modified one in place of what was counted for it. While the counts are being
+     * loaded the change is recorded and replayed after the load; otherwise nothing is done if they are not loaded.
+     *
+     * @param appointment the appointment as it is now stored.
+     */
+    public static void put(Appointment appointment) {
+        change(appointment.getAppointmentId(), TypeMonth.of(appointment));
+    }
+
+    /**
+     * Uncounts a deleted appointment. While the counts are being loaded the change is recorded and replayed after the
+     * load; otherwise nothing is done if they are not loaded.
+     *
+     * @param appointmentId the ID of the appointment deleted.
+     */
+    public static void remove(int appointmentId) {
+        change(appointmentId, null);
+    }
+
+    /**
+     * Returns the number of appointments of a type in one month of one year.
+     *
+     * @param type      the appointment type.
+     * @param yearMonth the month.
+     * @return the number of appointments.
+     * @throws SQLException if the counts have to be loaded and cannot be.
+     */
+    public static int getCount(String type, YearMonth yearMonth) throws SQLException {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<YearMonth, Integer> byMonth = counts.get(type);
+            return byMonth == null ? 0 : byMonth.getOrDefault(yearMonth, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of appointments of a type in a calendar month, added up over every year.
+     *
+     * @param type  the appointment type.
+     * @param month the month.
+     * @return the number of appointments.
+     * @throws SQLException if the counts have to be loaded and cannot be.
+     */
+    public static int getCount(String type, Month month) throws SQLException {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<YearMonth, Integer> byMonth = counts.get(type);
+            int total = 0;
+            if (byMonth != null) {
+                for (Map.Entry<YearMonth, Integer> entry : byMonth.entrySet()) {
+                    if (entry.getKey().getMonth() == month) {
+                        total += entry.getValue();
+                    }
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the appointment types that have at least one appointment, in alphabetical order.
+     * @throws SQLException if the counts have to be loaded and cannot be.
+     */
+    public static List<String> getTypes() throws SQLException {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            List<String> types = new ArrayList<>(counts.keySet());
+            types.sort(null);
+            return types;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a write to the counts if they are loaded, or records it if they are being loaded.
+     *
+     * @param appointmentId the ID of the appointment written.
+     * @param typeMonth     its type and month as now stored, or null if it was deleted.
+     */
+    private static void change(int appointmentId, TypeMonth typeMonth) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                count(appointmentId, typeMonth);
+            } else if (pendingChanges != null) {
+                pendingChanges.put(appointmentId, typeMonth);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Uncounts what was counted for an appointment and counts what it is now. Called with the write lock held.
+     *
+     * @param appointmentId the ID of the appointment.
+     * @param typeMonth     its type and month as now stored, or null if it was deleted.
+     */
+    private static void count(int appointmentId, TypeMonth typeMonth) {
+        TypeMonth previous = typeMonth == null ? typeMonths.remove(appointmentId)
+                : typeMonths.put(appointmentId, typeMonth);
+        if (previous != null) {
+            adjust(previous, -1);
+        }
+        if (typeMonth != null) {
+            adjust(typeMonth, 1);
+        }
+    }
+
+    /**
+     * Adds to the count of a type and month, dropping counts that fall to zero. Called with the write lock held.
+     *
+     * @param typeMonth the type and month.
+     * @param delta     1 to count an appointment, -1 to uncount it.
+     */
+    private static void adjust(TypeMonth typeMonth, int delta) {
+        Map<YearMonth, Integer> byMonth = counts.computeIfAbsent(typeMonth.type, t -> new TreeMap<>());
+        int count = byMonth.getOrDefault(typeMonth.month, 0) + delta;
+        if (count > 0) {
+            byMonth.put(typeMonth.month, count);
+        } else {
+            byMonth.remove(typeMonth.month);
+            if (byMonth.isEmpty()) {
+                counts.remove(typeMonth.type);
+            }
+        }
+    }
+
+    /**
+     * Empties the counts. Called with the write lock held.
+     */
+    private static void clear() {
+        typeMonths.clear();
+        counts.clear();
+    }
+
+    /**
+     * Converts an appointment start in the user's time zone to the month it is stored in.
+     *
+     * @param start the start in the user's time zone.
+     * @return the UTC month of the start.
+     */
+    private static YearMonth toStoredMonth(LocalDateTime start) {
+        return YearMonth.from(start.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,277 @@
+package DAO;
+
+import Model.Appointment;
+import Model.Customer;
+import utils.JDBC;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads the change feed: the appointments and customers whose Last_Update is after a watermark, and the
+ * tombstones the delete triggers record in deleted_rows. All three are read with one UNION ALL query, each part a
+ * range scan of an index, so a poll that finds nothing costs one round trip and a few index pages.<br>
+ * The rows of the three parts share the columns of the appointments table; a customer row carries its columns in
+ * the appointment columns of the same position, and a tombstone its table name in Title and its row ID in
+ * Appointment_ID.<br>
+ * Each polling client also reports its tombstone watermark with {@link #keepAlive}, which deletes the tombstones no live
+ * client will read again, so deleted_rows only holds the last few minutes of deletes.
+ *
+ * @author Mehdi Rahimi
+ */
+public class ChangeFeedDaoImpl {
+    /**
+     * The poll query.
+     */
+    private static final String POLL_SQL =
+            "SELECT 'A' AS Kind, 0 AS Tombstone_ID, Appointment_ID, Title, Description, Location, Type, Start, End, " +
+                    "Create_Date, Created_By, Last_Update, Last_Updated_By, Customer_ID, User_ID, Contact_ID, Version " +
+                    "FROM appointments WHERE Last_Update > ? " +
+                    "UNION ALL SELECT 'C', 0, Customer_ID, Customer_Name, Address, Postal_Code, Phone, NULL, NULL, " +
+                    "Create_Date, Created_By, Last_Update, Last_Updated_By, Division_ID, NULL, NULL, Version " +
+                    "FROM customers WHERE Last_Update > ? " +
+                    "UNION ALL SELECT 'D', Tombstone_ID, Row_ID, Table_Name, NULL, NULL, NULL, NULL, NULL, " +
+                    "NULL, NULL, Deleted_At, NULL, NULL, NULL, NULL, NULL " +
+                    "FROM deleted_rows WHERE Tombstone_ID > ?";
+
+    /**
+     * What one poll read.
+     */
+    public static class Changes {
+        /**
+         * The appointments changed, as they are now stored.
+         */
+        private final List<Appointment> appointments = new ArrayList<>();
+        /**
+         * The customers changed, as they are now stored.
+         */
+        private final List<Customer> customers = new ArrayList<>();
+        /**
+         * The deleted appointments, as pairs of tombstone ID and appointment ID.
+         */
+        private final List<long[]> deletedAppointments = new ArrayList<>();
+        /**
+         * The deleted customers, as pairs of tombstone ID and customer ID.
+         */
+        private final List<long[]> deletedCustomers = new ArrayList<>();
+
+        /**
+         * @return the appointments changed, as they are now stored.
+         */
+        public List<Appointment> getAppointments() {
+            return appointments;
+        }
+
+        /**
+         * @return the customers changed, as they are now stored.
+         */
+        public List<Customer> getCustomers() {
+            return customers;
+        }
+
+        /**
+         * @return the deleted appointments, as pairs of tombstone ID and appointment ID.
+         */
+        public List<long[]> getDeletedAppointments() {
+            return deletedAppointments;
+        }
+
+        /**
+         * @return the deleted customers, as pairs of tombstone ID and customer ID.
+         */
+        public List<long[]> getDeletedCustomers() {
+            return deletedCustomers;
+        }
+
+        /**
+         * @return true if the poll read nothing.
+         */
+        public boolean isEmpty() {
+            return appointments.isEmpty() && customers.isEmpty() && deletedAppointments.isEmpty()
+                    && deletedCustomers.isEmpty();
+        }
+    }
+
+    /**
+     * The starting point of the feed.
+     */
+    public static class Watermark {
+        /**
+         * The latest Last_Update of the appointments, or null if there are none.
+         */
+        private final LocalDateTime appointments;
+        /**
+         * The latest Last_Update of the customers, or null if there are none.
+         */
+        private final LocalDateTime customers;
+        /**
+         * The latest tombstone ID, or 0 if there are none.
+         */
+        private final long tombstone;
+
+        /**
+         * @param appointments the latest Last_Update of the appointments, or null.
+         * @param customers    the latest Last_Update of the customers, or null.
+         * @param tombstone    the latest tombstone ID, or 0.
+         */
+        Watermark(LocalDateTime appointments, LocalDateTime customers, long tombstone) {
+            this.appointments = appointments;
+            this.customers = customers;
+            this.tombstone = tombstone;
+        }
+
+        /**
+         * @return the latest Last_Update of the appointments, or null if there are none.
+         */
+        public LocalDateTime getAppointments() {
+            return appointments;
+        }
+
+        /**
+         * @return the latest Last_Update of the customers, or null if there are none.
+         */
+        public LocalDateTime getCustomers() {
+            return customers;
+        }
+
+        /**
+         * @return the latest tombstone ID, or 0 if there are none.
+         */
+        public long getTombstone() {
+            return tombstone;
+        }
+    }
+
+    /**
+     * Reads the starting point of the feed, so a client only sees the changes made after it started.
+     *
+     * @return the latest Last_Update of the appointments and of the customers, and the latest tombstone ID.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static Watermark getWatermark() throws SQLException {
+        String sql = "SELECT (SELECT MAX(Last_Update) FROM appointments), (SELECT MAX(Last_Update) FROM customers), " +
+                "(SELECT COALESCE(MAX(Tombstone_ID), 0) FROM deleted_rows)";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet result = stmt.executeQuery()) {
+            result.next();
+            return new Watermark(RowMapper.getLocalDateTime(result, 1), RowMapper.getLocalDateTime(result, 2),
+                    result.getLong(3));
+        }
+    }
+
+    /**
+     * Reads the changes after a watermark with one query.
+     *
+     * @param appointmentsAfter the appointments updated after this time are read.
+     * @param customersAfter    the customers updated after this time are read.
+     * @param tombstoneAfter    the tombstones with a greater ID are read.
+     * @return the changes.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static Changes poll(LocalDateTime appointmentsAfter, LocalDateTime customersAfter, long tombstoneAfter)
+            throws SQLException {
+        Changes changes = new Changes();
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(POLL_SQL)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(appointmentsAfter));
+            stmt.setTimestamp(2, Timestamp.valueOf(customersAfter));
+            stmt.setLong(3, tombstoneAfter);
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMapper.Row<Appointment> appointment = RowMappers.APPOINTMENT.bind(result);
+                while (result.next()) {
+                    switch (result.getString(1)) {
+                        case "A":
+                            changes.appointments.add(appointment.map(result));
+                            break;
+                        case "C":
+                            Customer customer = new Customer(result.getInt(3), result.getString(4),
+                                    result.getString(5), result.getString(6), result.getString(7),
+                                    RowMapper.getLocalDateTime(result, 10), result.getString(11),
+                                    RowMapper.getLocalDateTime(result, 12), result.getString(13), result.getInt(14));
+                            customer.setVersion(result.getInt(17));
+                            changes.customers.add(customer);
+                            break;
+                        default:
+                            long[] tombstone = {result.getLong(2), result.getInt(3)};
+                            if ("customers".equals(result.getString(4))) {
+                                changes.deletedCustomers.add(tombstone);
+                            } else {
+                                changes.deletedAppointments.add(tombstone);
+                            }
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Records a client's tombstone watermark, then deletes the clients that have not reported within the timeout and
+     * the tombstones below the oldest watermark of the live clients, minus the lookback, in one transaction.
+     *
+     * @param clientId           the ID the client chose when it started.
+     * @param tombstoneWatermark the latest tombstone ID the client has read.
+     * @param timeoutSeconds     how long a client that does not report stays live.
+     * @param lookback           how many tombstone IDs below its watermark a client reads again.
+     * @return true if the client was live already, false if it was not registered or had timed out, in which case it
+     * may have missed tombstones deleted meanwhile.
+     * @throws SQLException if an error occurs while executing the SQL statements.
+     */
+    public static boolean keepAlive(String clientId, long tombstoneWatermark, int timeoutSeconds, long lookback)
+            throws SQLException {
+        String report = "INSERT INTO change_feed_clients (Client_ID, Tombstone_Watermark, Last_Seen) " +
+                "VALUES (?, ?, UTC_TIMESTAMP()) ON DUPLICATE KEY UPDATE " +
+                "Tombstone_Watermark = VALUES(Tombstone_Watermark), Last_Seen = VALUES(Last_Seen)";
+        String expire = "DELETE FROM change_feed_clients WHERE Last_Seen < UTC_TIMESTAMP() - INTERVAL ? SECOND";
+        String prune = "DELETE FROM deleted_rows WHERE Tombstone_ID <= (SELECT MIN(Tombstone_Watermark) " +
+                "FROM change_feed_clients) - ?";
+        boolean live;
+        try (Connection conn = JDBC.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(expire)) {
+                    stmt.setInt(1, timeoutSeconds);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(report)) {
+                    stmt.setString(1, clientId);
+                    stmt.setLong(2, tombstoneWatermark);
+                    // MySQL counts 1 for a row inserted, 2 for a row updated and 0 for a row left unchanged.
+                    live = stmt.executeUpdate() != 1;
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(prune)) {
+                    stmt.setLong(1, lookback);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Removes a client that stops polling, so its watermark no longer holds tombstones back.
+     *
+     * @param clientId the ID of the client.
+     * @throws SQLException if an error occurs while executing the SQL statement.
+     */
+    public static void unregister(String clientId) throws SQLException {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM change_feed_clients WHERE Client_ID = ?")) {
+            stmt.setString(1, clientId);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package DAO;
+
+import Model.Contact;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+
+/**
+ * This interface is the storage of contacts, implemented against MySQL by {@link JdbcRepository} and in process by
+ * {@link EmbeddedStore}; {@link Repositories} returns the one selected. The contacts returned are shared and must be
+ * treated as read-only.
+ */
+public interface ContactRepository {
+    /**
+     * @return every contact.
+     * @throws SQLException if the contacts cannot be read.
+     */
+    ObservableList<Contact> getAllContacts() throws SQLException;
+
+    /**
+     * @param contactId the ID of the contact.
+     * @return the contact, or null if there is none with that ID.
+     * @throws SQLException if the contacts cannot be read.
+     */
+    Contact getContactFromContactID(int contactId) throws SQLException;
+}
@@ -6,7 +6,7 @@ import javafx.collections.ObservableList;
 import utils.JDBC;
 
 import java.sql.*;
-import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * This class creates the Country database methods.
@@ -16,13 +16,22 @@ import java.time.LocalDateTime;
 public class CountryDaoImpl {
 
     /**
-     * Returns an ObservableList containing all countries from the database.
+     * Returns an ObservableList containing all countries, served from the {@link ReferenceDataCache}.
      *
      * @return the ObservableList containing all countries
      * @throws SQLException if a database access error occurs
-     * @throws Exception    for any other errors
      */
-    public static ObservableList<Country> getAllCountries() throws SQLException, Exception {
+    public static ObservableList<Country> getAllCountries() throws SQLException {
+        return FXCollections.observableArrayList(ReferenceDataCache.getCountries());
+    }
+
+    /**
+     * Reads all countries from the database. Used by {@link ReferenceDataCache}.
+     *
+     * @return the list containing all countries
+     * @throws SQLException if a database access error occurs
+     */
+    static List<Country> loadAllCountries() throws SQLException {
         ObservableList<Country> allCountries = FXCollections.observableArrayList();
         // Get a connection from the database connection pool
         Connection connection = JDBC.getConnection();
@@ -33,16 +42,7 @@ public class CountryDaoImpl {
             // Execute the SQL statement and get the result set
             ResultSet result = statement.executeQuery();
             // Process each row in the result set
-            while (result.next()) {
-                int countryID = result.getInt("Country_ID");
-                String countryName = result.getString("Country");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                Country country = new Country(countryID, countryName, createDate, createdBy, lastUpdate, lastUpdatedBy);
-                allCountries.add(country);
-            }
+            RowMappers.COUNTRY.mapAll(result, allCountries);
         } finally {
             // Close the connection
             if (connection != null) {
@@ -53,37 +53,13 @@ public class CountryDaoImpl {
     }
 
     /**
-     * This method etrieves a Country object from the database with the specified Country ID.
+     * This method etrieves a Country object with the specified Country ID from the {@link ReferenceDataCache}.
      *
      * @param countryId The ID of the Country to retrieve.
      * @return The Country object if it exists, null otherwise.
      * @throws SQLException if a database access error occurs
-     * @throws Exception    for any other errors
      */
-    public static Country getCountryFromCountryID(int countryId) throws SQLException, Exception {
-        String sqlStatement = "SELECT * FROM countries WHERE Country_ID = ?";
-        try {
-            Connection conn = JDBC.getConnection();
-            PreparedStatement preparedStatement = conn.prepareStatement(sqlStatement);
-            preparedStatement.setInt(1, countryId);
-            ResultSet result = preparedStatement.executeQuery();
-            while (result.next()) {
-                int id = result.getInt("Country_ID");
-                String country = result.getString("Country");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                return new Country(id, country, createDate, createdBy, lastUpdate, lastUpdatedBy);
-            }
-            return null;
-        } catch (SQLException ex) {
-            System.out.println("Error retrieving country with ID " + countryId + ": " + ex.getMessage());
-            throw ex;
-        } catch (Exception ex) {
-            System.out.println("Error retrieving country with ID " + countryId + ": " + ex.getMessage());
-            throw ex;
-        }
+    public static Country getCountryFromCountryID(int countryId) throws SQLException {
+        return ReferenceDataCache.getCountry(countryId);
     }
 }
-
@@ -0,0 +1,26 @@
+package DAO;
+
+import Model.Country;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+
+/**
+ * This interface is the storage of countries, implemented against MySQL by {@link JdbcRepository} and in process by
+ * {@link EmbeddedStore}; {@link Repositories} returns the one selected. The countries returned are shared and must be
+ * treated as read-only.
+ */
+public interface CountryRepository {
+    /**
+     * @return every country.
+     * @throws SQLException if the countries cannot be read.
+     */
+    ObservableList<Country> getAllCountries() throws SQLException;
+
+    /**
+     * @param countryId the ID of the country.
+     * @return the country, or null if there is none with that ID.
+     * @throws SQLException if the countries cannot be read.
+     */
+    Country getCountryFromCountryID(int countryId) throws SQLException;
+}
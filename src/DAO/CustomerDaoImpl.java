@@ -1,11 +1,18 @@
 package DAO;
 
+import Model.Appointment;
 import Model.Customer;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import utils.JDBC;
+import utils.ReminderService;
 import java.sql.*;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class creates the Customer database methods.
@@ -19,29 +26,14 @@ public class CustomerDaoImpl {
      *
      * @return A list of all customers in the database.
      * @throws SQLException If there is an error with the SQL statement.
-     * @throws Exception    If there is an error with the connection.
      */
-    public static ObservableList<Customer> getAllCustomers() throws SQLException, Exception {
+    public static ObservableList<Customer> getAllCustomers() throws SQLException {
         ObservableList<Customer> allCustomers = FXCollections.observableArrayList();
         String sqlStatement = "select * from Customers";
         try (Connection conn = JDBC.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sqlStatement);
              ResultSet result = stmt.executeQuery()) {
-            while (result.next()) {
-                int customerId = result.getInt("Customer_ID");
-                String customerName = result.getString("Customer_Name");
-                String address = result.getString("Address");
-                String postalCode = result.getString("Postal_Code");
-                String phone = result.getString("Phone");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int Division_ID = result.getInt("Division_ID");
-                Customer customerResult = new Customer(customerId, customerName, address, postalCode, phone, createDate,
-                        createdBy, lastUpdate, lastUpdatedBy, Division_ID);
-                allCustomers.add(customerResult);
-            }
+            RowMappers.CUSTOMER.mapAll(result, allCustomers);
         } catch (SQLException e) {
             System.out.println("Error retrieving all customers: " + e.getMessage());
             throw e;
@@ -49,6 +41,63 @@ public class CustomerDaoImpl {
         return allCustomers;
     }
 
+    /**
+     * Returns the page of customers that follows the given customer in Customer_ID order. The query seeks on the
+     * primary key instead of using OFFSET, so every page costs the same no matter how deep it is.
+     *
+     * @param after    the last customer of the previous page, or null for the first page.
+     * @param pageSize the maximum number of customers to return.
+     * @return the customers of the page, ordered by ID.
+     * @throws SQLException If there is an error with the SQL statement.
+     */
+    public static ObservableList<Customer> getCustomersPageAfter(Customer after, int pageSize) throws SQLException {
+        String sqlStatement = "SELECT * FROM customers WHERE Customer_ID > ? ORDER BY Customer_ID LIMIT ?";
+        return getCustomersPage(sqlStatement, after == null ? 0 : after.getCustomerId(), pageSize, false);
+    }
+
+    /**
+     * Returns the page of customers that precedes the given customer in Customer_ID order.
+     *
+     * @param before   the first customer of the following page.
+     * @param pageSize the maximum number of customers to return.
+     * @return the customers of the page, ordered by ID.
+     * @throws SQLException If there is an error with the SQL statement.
+     */
+    public static ObservableList<Customer> getCustomersPageBefore(Customer before, int pageSize) throws SQLException {
+        String sqlStatement = "SELECT * FROM customers WHERE Customer_ID < ? ORDER BY Customer_ID DESC LIMIT ?";
+        return getCustomersPage(sqlStatement, before.getCustomerId(), pageSize, true);
+    }
+
+    /**
+     * Runs a keyset page query.
+     *
+     * @param sqlStatement the page query; it takes the anchor customer ID and the page size.
+     * @param anchorId     the customer ID to seek from.
+     * @param pageSize     the maximum number of customers to return.
+     * @param descending   true if the query returns rows in reverse order and the page must be flipped.
+     * @return the customers of the page, ordered by ID.
+     * @throws SQLException If there is an error with the SQL statement.
+     */
+    private static ObservableList<Customer> getCustomersPage(String sqlStatement, int anchorId, int pageSize,
+                                                             boolean descending) throws SQLException {
+        ObservableList<Customer> page = FXCollections.observableArrayList();
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
+            stmt.setInt(1, anchorId);
+            stmt.setInt(2, pageSize);
+            try (ResultSet result = stmt.executeQuery()) {
+                RowMappers.CUSTOMER.mapAll(result, page);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error retrieving customer page: " + e.getMessage());
+            throw e;
+        }
+        if (descending) {
+            FXCollections.reverse(page);
+        }
+        return page;
+    }
+
     /**
      * This method adds a new customer to the database.
      *
@@ -61,9 +110,11 @@ public class CustomerDaoImpl {
      * @param lastUpdate      the last update date of the customer
      * @param lastUpdateBy    the name of the user who last updated the customer
      * @param divisionId      the ID of the division that the customer belongs to
+     * @throws SQLException if there is an error executing the SQL statement
      */
     public static void addCustomer(String customerName, String customerAddress, String postalCode, String customerPhone,
-                                   Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy, int divisionId) {
+                                   Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                                   int divisionId) throws SQLException {
         try (Connection conn = JDBC.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                      "INSERT INTO customers(Customer_Name, Address, Postal_Code, Phone, Create_Date, Created_By," +
@@ -81,12 +132,14 @@ public class CustomerDaoImpl {
 
             pstmt.executeUpdate();
         } catch (SQLException ex) {
-            ex.printStackTrace();
+            throw new SQLException("Error adding customer: " + ex.getMessage(), ex);
         }
     }
 
     /**
-     * This method modifies a customer record in the database with the given data.
+     * This method modifies a customer record in the database with the given data, if it is still stored at the version
+     * the editor read. Otherwise another user changed or deleted it since, nothing is written and an
+     * {@link OptimisticLockException} is thrown.
      *
      * @param customerId      the ID of the customer to modify
      * @param customerName    the new name for the customer
@@ -96,12 +149,17 @@ public class CustomerDaoImpl {
      * @param lastUpdate      the new last update timestamp for the customer
      * @param lastUpdateBy    the user who last updated the record
      * @param divisionId      the division ID for the customer's location
+     * @param version         the version of the customer the editor read
+     * @throws OptimisticLockException if the customer is no longer stored at that version
      * @throws SQLException if there is an error executing the SQL statement
      */
     public static void modifyCustomer(int customerId, String customerName, String customerAddress, String postalCode,
-                                      String customerPhone, Timestamp lastUpdate, String lastUpdateBy, int divisionId) throws SQLException {
+                                      String customerPhone, Timestamp lastUpdate, String lastUpdateBy, int divisionId,
+                                      int version) throws SQLException {
         String sqlcm = "UPDATE customers SET Customer_Name = ?, Address = ?, Postal_Code = ?, Phone = ?, " +
-                "Last_Update = ?, Last_Updated_By = ?, Division_ID = ? WHERE Customer_ID = ?";
+                "Last_Update = ?, Last_Updated_By = ?, Division_ID = ?, Version = Version + 1 " +
+                "WHERE Customer_ID = ? AND Version = ?";
+        int updateCount;
         try (Connection conn = JDBC.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sqlcm)) {
             pstmt.setString(1, customerName);
@@ -112,9 +170,13 @@ public class CustomerDaoImpl {
             pstmt.setString(6, lastUpdateBy);
             pstmt.setInt(7, divisionId);
             pstmt.setInt(8, customerId);
-            pstmt.executeUpdate();
-        } catch (SQLException throwables) {
-            throwables.printStackTrace();
+            pstmt.setInt(9, version);
+            updateCount = pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLException("Error updating customer: " + e.getMessage(), e);
+        }
+        if (updateCount == 0) {
+            throw new OptimisticLockException("customers", customerId, version);
         }
     }
 
@@ -152,6 +214,86 @@ public class CustomerDaoImpl {
         }
     }
 
+    /**
+     * Deletes customers with all their appointments and recurring series in one transaction. Each table is cleared
+     * with a single statement over the set of customer IDs, so the cost does not grow with the number of
+     * appointments, and a failure leaves every customer and appointment in place.<br>
+     * The appointments are read inside the transaction before they are deleted, so the
+     * {@link AppointmentConflictIndex}, the {@link AppointmentTypeRollup} and the reminders can drop them once the
+     * transaction commits.
+     *
+     * @param customerIds the IDs of the customers to delete.
+     * @return the number of appointments deleted.
+     * @throws SQLException if there is an error executing the SQL statements; nothing is deleted then.
+     */
+    public static int deleteCustomers(Collection<Integer> customerIds) throws SQLException {
+        if (customerIds.isEmpty()) {
+            return 0;
+        }
+        String in = " WHERE Customer_ID IN (" + String.join(", ", Collections.nCopies(customerIds.size(), "?")) + ")";
+        List<Appointment> appointments = new ArrayList<>();
+        List<Integer> seriesIds = new ArrayList<>();
+        try (Connection conn = JDBC.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM appointments" + in + " FOR UPDATE")) {
+                    bindIds(stmt, customerIds);
+                    try (ResultSet result = stmt.executeQuery()) {
+                        RowMappers.APPOINTMENT.mapAll(result, appointments);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT Series_ID FROM appointment_series" + in)) {
+                    bindIds(stmt, customerIds);
+                    try (ResultSet result = stmt.executeQuery()) {
+                        while (result.next()) {
+                            seriesIds.add(result.getInt(1));
+                        }
+                    }
+                }
+                for (String table : new String[]{"appointments", "appointment_series", "customers"}) {
+                    try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + in)) {
+                        bindIds(stmt, customerIds);
+                        stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Error deleting customers: " + e.getMessage(), e);
+        }
+        List<Integer> appointmentIds = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            appointmentIds.add(appointment.getAppointmentId());
+            AppointmentConflictIndex.remove(appointment.getAppointmentId());
+            ReminderService.getInstance().appointmentDeleted(appointment.getAppointmentId());
+            AppointmentTypeRollup.remove(appointment.getAppointmentId());
+        }
+        AppointmentChangeBus.publish(AppointmentChangeSet.removed(appointmentIds));
+        if (!seriesIds.isEmpty()) {
+            AppointmentChangeBus.publish(AppointmentChangeSet.seriesRemoved(seriesIds));
+        }
+        return appointments.size();
+    }
+
+    /**
+     * Binds customer IDs as the parameters of a statement, in order.
+     *
+     * @param stmt        the statement.
+     * @param customerIds the customer IDs.
+     * @throws SQLException if a parameter cannot be bound.
+     */
+    private static void bindIds(PreparedStatement stmt, Collection<Integer> customerIds) throws SQLException {
+        int index = 1;
+        for (int customerId : customerIds) {
+            stmt.setInt(index++, customerId);
+        }
+    }
+
     /**
      * Retrieves a customer with the given customer ID from the database.
      *
@@ -164,24 +306,28 @@ public class CustomerDaoImpl {
         try (Connection conn = JDBC.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
             stmt.setInt(1, customerID);
-            ResultSet result = stmt.executeQuery();
-            if (result.next()) {
-                int customerId = result.getInt("Customer_ID");
-                String Customer_Name = result.getString("Customer_Name");
-                String Address = result.getString("Address");
-                String postalCode = result.getString("Postal_Code");
-                String Phone = result.getString("Phone");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int divisionId = result.getInt("Division_ID");
-
-                return new Customer(customerId, Customer_Name, Address, postalCode, Phone, createDate,
-                        createdBy, lastUpdate, lastUpdatedBy, divisionId);
+            try (ResultSet result = stmt.executeQuery()) {
+                return RowMappers.CUSTOMER.mapFirst(result);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of every customer, read from the primary key only.
+     *
+     * @return the customer IDs.
+     * @throws SQLException if there is an error executing the SQL statement
+     */
+    public static Set<Integer> getCustomerIds() throws SQLException {
+        Set<Integer> customerIds = new HashSet<>();
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT Customer_ID FROM customers");
+             ResultSet result = stmt.executeQuery()) {
+            while (result.next()) {
+                customerIds.add(result.getInt(1));
             }
         }
-        return null;
+        return customerIds;
     }
 
     /**
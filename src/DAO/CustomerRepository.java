@@ -0,0 +1,103 @@
+package DAO;
+
+import Model.Customer;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * This interface is the storage of customers, implemented against MySQL by {@link JdbcRepository} and in process by
+ * {@link EmbeddedStore}; {@link Repositories} returns the one selected.
+ */
+public interface CustomerRepository {
+    /**
+     * @return every customer.
+     * @throws SQLException if the customers cannot be read.
+     */
+    ObservableList<Customer> getAllCustomers() throws SQLException;
+
+    /**
+     * @param after    the last customer of the previous page, or null for the first page.
+     * @param pageSize the maximum number of customers to return.
+     * @return the page of customers that follows the given one in Customer_ID order.
+     * @throws SQLException if the customers cannot be read.
+     */
+    ObservableList<Customer> getCustomersPageAfter(Customer after, int pageSize) throws SQLException;
+
+    /**
+     * @param before   the first customer of the following page.
+     * @param pageSize the maximum number of customers to return.
+     * @return the page of customers that precedes the given one in Customer_ID order.
+     * @throws SQLException if the customers cannot be read.
+     */
+    ObservableList<Customer> getCustomersPageBefore(Customer before, int pageSize) throws SQLException;
+
+    /**
+     * Adds a new customer.
+     *
+     * @param customerName    the name of the customer
+     * @param customerAddress the address of the customer
+     * @param postalCode      the postal code of the customer
+     * @param customerPhone   the phone number of the customer
+     * @param createDate      the create date of the customer
+     * @param createdBy       the name of the user who created the customer
+     * @param lastUpdate      the last update date of the customer
+     * @param lastUpdateBy    the name of the user who last updated the customer
+     * @param divisionId      the ID of the division that the customer belongs to
+     * @throws SQLException if the customer cannot be added.
+     */
+    void addCustomer(String customerName, String customerAddress, String postalCode, String customerPhone,
+                     Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                     int divisionId) throws SQLException;
+
+    /**
+     * Updates a customer if it is still stored at the version the editor read.
+     *
+     * @param customerId      the ID of the customer to modify
+     * @param customerName    the new name for the customer
+     * @param customerAddress the new address for the customer
+     * @param postalCode      the new postal code for the customer
+     * @param customerPhone   the new phone number for the customer
+     * @param lastUpdate      the new last update timestamp for the customer
+     * @param lastUpdateBy    the user who last updated the record
+     * @param divisionId      the division ID for the customer's location
+     * @param version         the version of the customer the editor read
+     * @throws OptimisticLockException if the customer is no longer stored at that version
+     * @throws SQLException if the customer cannot be updated
+     */
+    void modifyCustomer(int customerId, String customerName, String customerAddress, String postalCode,
+                        String customerPhone, Timestamp lastUpdate, String lastUpdateBy, int divisionId, int version)
+            throws SQLException;
+
+    /**
+     * Deletes customers with all their appointments and recurring series; either everything is deleted or nothing.
+     *
+     * @param customerIds the IDs of the customers to delete.
+     * @return the number of appointments deleted.
+     * @throws SQLException if the customers cannot be deleted; nothing is deleted then.
+     */
+    int deleteCustomers(Collection<Integer> customerIds) throws SQLException;
+
+    /**
+     * @param customerId the ID of the customer.
+     * @return the customer as it is now stored, or null if it does not exist.
+     * @throws SQLException if the customer cannot be read.
+     */
+    Customer getCustomerByCustomerId(int customerId) throws SQLException;
+
+    /**
+     * @return the IDs of every customer.
+     * @throws SQLException if the customers cannot be read.
+     */
+    Set<Integer> getCustomerIds() throws SQLException;
+
+    /**
+     * @param countryId the ID of the country.
+     * @return the number of customers in the country.
+     * @throws SQLException if the customers cannot be counted.
+     */
+    int countCustomers(int countryId) throws SQLException;
+}
@@ -0,0 +1,505 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * This class holds the binary encoding of the records of the {@link EmbeddedJournal} and its snapshots. Numbers are
+ * written big-endian at fixed width, so they are read with single buffer reads. A string is its UTF-8 length then
+ * its bytes, or -1 for null.<br>
+ * Strings that repeat across rows, like types, locations and user names, can be written as shared strings: the first
+ * time a value is written it is added to a dictionary, and later it is written as its four-byte dictionary index.
+ * The dictionary lives as long as the writer, so a whole snapshot shares one and each journal transaction has its
+ * own; the reader rebuilds it in the same order, and shares the String instances, too.<br>
+ * Date and times are written as the wall-clock seconds and nanoseconds of the user's time zone; the zone is written
+ * once in the file header, and a reader in another zone converts them through the instant. Appointments share few
+ * distinct dates and times of day, so a reader shares those immutable parts between the date and times it reads
+ * instead of allocating three objects for each.
+ */
+final class EmbeddedCodec {
+    /**
+     * The marker of a null string.
+     */
+    private static final int NULL_STRING = -1;
+    /**
+     * The marker of a shared string written in full and added to the dictionary.
+     */
+    private static final int NEW_SHARED = -2;
+    /**
+     * The marker of a shared string written in full after the dictionary was full.
+     */
+    private static final int INLINE_SHARED = -3;
+    /**
+     * The most strings a dictionary holds.
+     */
+    private static final int MAXIMUM_DICTIONARY = 1 << 16;
+    /**
+     * The marker of a null date and time.
+     */
+    private static final byte NULL_TIME = 0;
+    /**
+     * The marker of a date and time in whole seconds.
+     */
+    private static final byte SECONDS = 1;
+    /**
+     * The marker of a date and time with nanoseconds.
+     */
+    private static final byte NANOS = 2;
+    /**
+     * The first second a date and time can be written as.
+     */
+    private static final long MINIMUM_SECONDS = LocalDateTime.MIN.toEpochSecond(ZoneOffset.UTC);
+    /**
+     * The last second a date and time can be written as.
+     */
+    private static final long MAXIMUM_SECONDS = LocalDateTime.MAX.toEpochSecond(ZoneOffset.UTC);
+    /**
+     * The number of dates and of times of day a reader keeps to share; a power of two.
+     */
+    private static final int TIME_CACHE = 4096;
+    /**
+     * The number of whole-second date and times a reader keeps to share; a power of two.
+     */
+    private static final int DATE_TIME_CACHE = 256;
+
+    /**
+     * Not instantiated.
+     */
+    private EmbeddedCodec() {
+    }
+
+    /**
+     * Writes records into a growing byte array.
+     */
+    static final class Writer {
+        /**
+         * The bytes written.
+         */
+        private byte[] bytes;
+        /**
+         * The number of bytes written.
+         */
+        private int size;
+        /**
+         * The index of each shared string written.
+         */
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        /**
+         * @param capacity the initial capacity, in bytes.
+         */
+        Writer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        /**
+         * @param value the byte.
+         */
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * @param value the int.
+         */
+        void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * @param value the long.
+         */
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        /**
+         * @param value the string, or null.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(NULL_STRING);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+            writeBytes(utf8);
+        }
+
+        /**
+         * Writes a string that is likely to repeat, through the dictionary.
+         *
+         * @param value the string, or null.
+         */
+        void writeSharedString(String value) {
+            if (value == null) {
+                writeInt(NULL_STRING);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            if (dictionary.size() < MAXIMUM_DICTIONARY) {
+                dictionary.put(value, dictionary.size());
+                writeInt(NEW_SHARED);
+            } else {
+                writeInt(INLINE_SHARED);
+            }
+            writeString(value);
+        }
+
+        /**
+         * @param value the date and time in the user's time zone, or null.
+         */
+        void writeTime(LocalDateTime value) {
+            if (value == null) {
+                writeByte(NULL_TIME);
+            } else if (value.getNano() == 0) {
+                writeByte(SECONDS);
+                writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            } else {
+                writeByte(NANOS);
+                writeLong(value.toEpochSecond(ZoneOffset.UTC));
+                writeInt(value.getNano());
+            }
+        }
+
+        /**
+         * @param value the bytes.
+         */
+        void writeBytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        /**
+         * @return the number of bytes written.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the bytes written, wrapped without copying.
+         */
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        /**
+         * @return a copy of the bytes written.
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        /**
+         * Forgets the bytes written, but not the dictionary.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Writes the bytes written so far to a channel and forgets them, but not the dictionary, so a long file can be
+         * written in chunks.
+         *
+         * @param channel the channel.
+         * @throws IOException if the channel cannot be written.
+         */
+        void drainTo(WritableByteChannel channel) throws IOException {
+            ByteBuffer written = toBuffer();
+            while (written.hasRemaining()) {
+                channel.write(written);
+            }
+            size = 0;
+        }
+
+        /**
+         * @param needed the number of bytes about to be written.
+         */
+        private void ensure(int needed) {
+            if (size + needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + needed));
+            }
+        }
+    }
+
+    /**
+     * Reads records from a buffer, e.g. one journal transaction, or streams them from a channel, e.g. a snapshot, in
+     * chunks that are checksummed as they are consumed.
+     */
+    static final class Reader {
+        /**
+         * The channel the buffer is refilled from, or null if the buffer holds everything.
+         */
+        private final ReadableByteChannel channel;
+        /**
+         * The checksum of the bytes consumed from the channel, or null.
+         */
+        private final CRC32C checksum;
+        /**
+         * The shared strings read, by index.
+         */
+        private final List<String> dictionary = new ArrayList<>();
+        /**
+         * The buffer read.
+         */
+        private ByteBuffer buffer;
+        /**
+         * The position in the buffer up to which the checksum has been updated.
+         */
+        private int checksummed;
+        /**
+         * The time zone the date and times were written in.
+         */
+        private ZoneId writtenZone = ZoneId.systemDefault();
+        /**
+         * True if the date and times were written in the user's time zone and need no conversion.
+         */
+        private boolean sameZone = true;
+        /**
+         * The buffer strings are decoded from.
+         */
+        private byte[] scratch = new byte[256];
+        /**
+         * The dates read, by epoch day modulo the cache size.
+         */
+        private final LocalDate[] dates = new LocalDate[TIME_CACHE];
+        /**
+         * The times of day in whole seconds read, by second of the day modulo the cache size.
+         */
+        private final LocalTime[] times = new LocalTime[TIME_CACHE];
+        /**
+         * The date and times read recently, by epoch second modulo the cache size, so equal ones are shared, e.g. the
+         * create and update times of the rows written by one batch.
+         */
+        private final LocalDateTime[] dateTimes = new LocalDateTime[DATE_TIME_CACHE];
+        /**
+         * The epoch second of each date and time in {@link #dateTimes}.
+         */
+        private final long[] dateTimeSeconds = new long[DATE_TIME_CACHE];
+
+        /**
+         * @param buffer the buffer, positioned at the first record.
+         */
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.channel = null;
+            this.checksum = null;
+        }
+
+        /**
+         * @param channel    the channel, positioned at the first record.
+         * @param bufferSize the size of the chunks read.
+         */
+        Reader(ReadableByteChannel channel, int bufferSize) {
+            this.buffer = ByteBuffer.allocate(bufferSize).flip();
+            this.channel = channel;
+            this.checksum = new CRC32C();
+        }
+
+        /**
+         * @param writtenZone the time zone the date and times were written in.
+         */
+        void setWrittenZone(ZoneId writtenZone) {
+            this.writtenZone = writtenZone;
+            this.sameZone = writtenZone.equals(ZoneId.systemDefault());
+        }
+
+        /**
+         * @return true if there is more to read.
+         * @throws IOException if the channel cannot be read.
+         */
+        boolean hasRemaining() throws IOException {
+            return buffer.hasRemaining() || (channel != null && fill(1));
+        }
+
+        /**
+         * @return the checksum of the bytes read from the channel so far.
+         */
+        int checksum() {
+            checksum.update(buffer.array(), checksummed, buffer.position() - checksummed);
+            checksummed = buffer.position();
+            return (int) checksum.getValue();
+        }
+
+        /**
+         * @return the next byte.
+         * @throws IOException if the input ends.
+         */
+        byte readByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        /**
+         * @return the next int.
+         * @throws IOException if the input ends.
+         */
+        int readInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        /**
+         * @return the next long.
+         * @throws IOException if the input ends.
+         */
+        long readLong() throws IOException {
+            require(8);
+            return buffer.getLong();
+        }
+
+        /**
+         * @return the next string, or null.
+         * @throws IOException if the input ends or the length is invalid.
+         */
+        String readString() throws IOException {
+            int length = readInt();
+            if (length == NULL_STRING) {
+                return null;
+            }
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length);
+            }
+            require(length);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the next shared string, or null.
+         * @throws IOException if the input ends or the dictionary index is invalid.
+         */
+        String readSharedString() throws IOException {
+            int index = readInt();
+            switch (index) {
+                case NULL_STRING:
+                    return null;
+                case NEW_SHARED:
+                    String value = readString();
+                    dictionary.add(value);
+                    return value;
+                case INLINE_SHARED:
+                    return readString();
+                default:
+                    if (index < 0 || index >= dictionary.size()) {
+                        throw new IOException("Invalid dictionary index " + index);
+                    }
+                    return dictionary.get(index);
+            }
+        }
+
+        /**
+         * @return the next date and time in the user's time zone, or null.
+         * @throws IOException if the input ends or the marker is invalid.
+         */
+        LocalDateTime readTime() throws IOException {
+            byte marker = readByte();
+            if (marker == NULL_TIME) {
+                return null;
+            }
+            if (marker != SECONDS && marker != NANOS) {
+                throw new IOException("Invalid time marker " + marker);
+            }
+            long seconds = readLong();
+            int nanos = marker == NANOS ? readInt() : 0;
+            if (seconds < MINIMUM_SECONDS || seconds > MAXIMUM_SECONDS || nanos < 0 || nanos > 999_999_999) {
+                throw new IOException("Invalid date and time " + seconds + "." + nanos);
+            }
+            if (!sameZone) {
+                return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC).atZone(writtenZone)
+                        .withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            }
+            int dateTimeSlot = (int) seconds & (DATE_TIME_CACHE - 1);
+            if (nanos == 0 && dateTimes[dateTimeSlot] != null && dateTimeSeconds[dateTimeSlot] == seconds) {
+                return dateTimes[dateTimeSlot];
+            }
+            long epochDay = Math.floorDiv(seconds, 86_400);
+            int secondOfDay = Math.floorMod(seconds, 86_400);
+            int daySlot = (int) epochDay & (TIME_CACHE - 1);
+            LocalDate date = dates[daySlot];
+            if (date == null || date.toEpochDay() != epochDay) {
+                date = LocalDate.ofEpochDay(epochDay);
+                dates[daySlot] = date;
+            }
+            if (nanos != 0) {
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(secondOfDay * 1_000_000_000L + nanos));
+            }
+            int timeSlot = secondOfDay & (TIME_CACHE - 1);
+            LocalTime time = times[timeSlot];
+            if (time == null || time.toSecondOfDay() != secondOfDay) {
+                time = LocalTime.ofSecondOfDay(secondOfDay);
+                times[timeSlot] = time;
+            }
+            LocalDateTime dateTime = LocalDateTime.of(date, time);
+            dateTimes[dateTimeSlot] = dateTime;
+            dateTimeSeconds[dateTimeSlot] = seconds;
+            return dateTime;
+        }
+
+        /**
+         * @param needed the number of bytes about to be read.
+         * @throws IOException if the input ends first.
+         */
+        private void require(int needed) throws IOException {
+            if (buffer.remaining() < needed && (channel == null || !fill(needed))) {
+                throw new IOException("Record is truncated");
+            }
+        }
+
+        /**
+         * Refills the buffer from the channel, growing it if needed.
+         *
+         * @param needed the number of bytes needed in the buffer.
+         * @return false if the channel ended first.
+         * @throws IOException if the channel cannot be read.
+         */
+        private boolean fill(int needed) throws IOException {
+            checksum();
+            if (buffer.capacity() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            checksummed = 0;
+            while (buffer.position() < needed) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+    }
+}
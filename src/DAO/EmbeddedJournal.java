@@ -0,0 +1,745 @@
+package DAO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * This class makes the {@link EmbeddedStore} durable with a binary write-ahead journal and a compacted snapshot in one
+ * directory. The store decides what the records mean and encodes them with {@link EmbeddedCodec}; this class frames,
+ * writes and reads them back.<br>
+ * The journal is a series of segment files, journal-N.wal. Each write of the store is appended to the current segment
+ * as one frame: its length, its CRC32C checksum, then its records. Appends only copy the frame to a buffer; a writer
+ * then waits in {@link #awaitDurable} until the buffer is written and forced to disk. The first writer to wait
+ * writes and forces everything appended so far, including the frames of writers that arrived meanwhile, so many
+ * concurrent writes share one force (group commit).<br>
+ * To take a snapshot the store {@link #rotate rotates} to a new segment, then writes every row it held at that moment
+ * to snapshot.bin, which records the last segment it covers. The snapshot is written to a temporary file, forced and
+ * moved over the old one, and only then are the segments it covers deleted, so a crash at any point leaves a snapshot
+ * and the segments after it. The directory is forced after a file is created, moved or deleted in it, so those
+ * changes survive a crash too.<br>
+ * On load the snapshot is streamed to the store, then the frames of the later segments. A frame that is cut short or
+ * fails its checksum at the end of the last segment was being written when the process stopped: it and anything after
+ * it are cut off. Anywhere else it means the files are damaged, and loading fails.<br>
+ * The first version of the embedded store kept a text snapshot.txt and journal.txt instead; this class reads them
+ * once so the store can import them, see {@link #readTextFile}.
+ */
+class EmbeddedJournal implements Closeable {
+    /**
+     * The logger used to report what is cut off or ignored when loading.
+     */
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedJournal.class.getName());
+    /**
+     * The byte that ends the records of a snapshot.
+     */
+    static final byte END = '.';
+    /**
+     * The first bytes of a segment, "SCHJ".
+     */
+    private static final int SEGMENT_MAGIC = 0x5343484A;
+    /**
+     * The first bytes of a snapshot, "SCHS".
+     */
+    private static final int SNAPSHOT_MAGIC = 0x53434853;
+    /**
+     * The version of the file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * The snapshot file.
+     */
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    /**
+     * The start of the name of a segment file.
+     */
+    private static final String SEGMENT_PREFIX = "journal-";
+    /**
+     * The end of the name of a segment file.
+     */
+    private static final String SEGMENT_SUFFIX = ".wal";
+    /**
+     * The text snapshot of the first version of the embedded store.
+     */
+    static final String TEXT_SNAPSHOT_FILE = "snapshot.txt";
+    /**
+     * The text journal of the first version of the embedded store.
+     */
+    static final String TEXT_JOURNAL_FILE = "journal.txt";
+    /**
+     * The line that ends a committed transaction in the text files.
+     */
+    private static final String TEXT_COMMIT = ".";
+    /**
+     * The size of the length and checksum in front of a frame.
+     */
+    private static final int FRAME_HEADER = 8;
+    /**
+     * The size of the chunks a snapshot is written and read in.
+     */
+    private static final int CHUNK = 1 << 20;
+
+    /**
+     * Applies what is read back.
+     */
+    interface Loader {
+        /**
+         * Reads the rows of a snapshot, up to and including the {@link #END} byte.
+         *
+         * @param snapshot the snapshot, positioned at the first record.
+         * @throws IOException if a record cannot be read or understood.
+         */
+        void loadSnapshot(EmbeddedCodec.Reader snapshot) throws IOException;
+
+        /**
+         * Applies the records of one frame.
+         *
+         * @param frame the frame.
+         * @throws IOException if a record cannot be read or understood.
+         */
+        void replay(EmbeddedCodec.Reader frame) throws IOException;
+    }
+
+    /**
+     * Writes the rows of a snapshot.
+     */
+    @FunctionalInterface
+    interface SnapshotSource {
+        /**
+         * @param records the writer to encode the rows with; drained to the file by the flush.
+         * @param flush   writes the rows encoded so far to the file; called every so often.
+         * @throws IOException if the file cannot be written.
+         */
+        void write(EmbeddedCodec.Writer records, Flush flush) throws IOException;
+    }
+
+    /**
+     * Writes what a {@link SnapshotSource} encoded so far to the snapshot file.
+     */
+    @FunctionalInterface
+    interface Flush {
+        /**
+         * @throws IOException if the file cannot be written.
+         */
+        void flush() throws IOException;
+    }
+
+    /**
+     * The directory of the files.
+     */
+    private final Path directory;
+    /**
+     * Guards the fields below, and is waited on for flushes.
+     */
+    private final Object monitor = new Object();
+    /**
+     * The current segment, open for appending once loaded.
+     */
+    private FileChannel segment;
+    /**
+     * The number of the current segment.
+     */
+    private long segmentNumber;
+    /**
+     * The number of frames in the current segment.
+     */
+    private int framesInSegment;
+    /**
+     * The number of frames in the segment replayed last.
+     */
+    private int framesReplayed;
+    /**
+     * The frames appended and not yet written.
+     */
+    private EmbeddedCodec.Writer pending = new EmbeddedCodec.Writer(64 * 1024);
+    /**
+     * The buffer pending is swapped with while a flush writes it.
+     */
+    private EmbeddedCodec.Writer spare = new EmbeddedCodec.Writer(64 * 1024);
+    /**
+     * The number of frames appended.
+     */
+    private long appended;
+    /**
+     * The number of frames forced to disk.
+     */
+    private long durable;
+    /**
+     * True while a writer is writing and forcing frames.
+     */
+    private boolean flushing;
+    /**
+     * The error of a flush that failed; after it nothing more is written.
+     */
+    private IOException failure;
+
+    /**
+     * @param directory the directory of the files; created if it does not exist.
+     */
+    EmbeddedJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Streams the snapshot, then the frames of the later segments, and opens the last segment for appending.
+     *
+     * @param loader applies what is read.
+     * @return true if the directory held neither a snapshot nor a frame, i.e. the store is new.
+     * @throws IOException if a file cannot be read, is damaged, or holds a record the loader does not understand.
+     */
+    boolean load(Loader loader) throws IOException {
+        Files.createDirectories(directory);
+        boolean found = false;
+        long covered = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            found = true;
+            covered = readSnapshot(snapshot, loader);
+        }
+        List<Long> numbers = segmentNumbers();
+        long last = 0;
+        ZoneId lastZone = null;
+        boolean deleted = false;
+        for (int i = 0; i < numbers.size(); i++) {
+            long number = numbers.get(i);
+            if (number <= covered) {
+                // left over from a snapshot that stopped before deleting the segments it covers
+                Files.delete(segmentFile(number));
+                deleted = true;
+                continue;
+            }
+            last = number;
+            lastZone = replaySegment(number, loader, i == numbers.size() - 1);
+            found |= framesReplayed > 0;
+        }
+        if (deleted) {
+            forceDirectory();
+        }
+        if (last > 0 && ZoneId.systemDefault().equals(lastZone)) {
+            segment = FileChannel.open(segmentFile(last), StandardOpenOption.WRITE);
+            segment.position(segment.size());
+            segmentNumber = last;
+            framesInSegment = framesReplayed;
+        } else {
+            openSegment(Math.max(covered, last) + 1);
+        }
+        return !found;
+    }
+
+    /**
+     * Appends one frame. It is only buffered: call {@link #awaitDurable} with the returned sequence number to wait
+     * until it is on disk. Frames are written in the order they are appended.
+     *
+     * @param records the records of the frame.
+     * @return the sequence number of the frame.
+     * @throws IOException if an earlier flush failed.
+     */
+    long append(EmbeddedCodec.Writer records) throws IOException {
+        byte[] payload = records.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        synchronized (monitor) {
+            checkFailure();
+            pending.writeInt(payload.length);
+            pending.writeInt((int) crc.getValue());
+            pending.writeBytes(payload);
+            framesInSegment++;
+            return ++appended;
+        }
+    }
+
+    /**
+     * Waits until a frame is forced to disk. If no other writer is flushing, this one writes and forces every frame
+     * appended so far; otherwise it waits for that flush, and flushes the frames appended during it if they are
+     * still pending then.
+     *
+     * @param sequence the sequence number of the frame.
+     * @throws IOException if the frame cannot be written; the journal accepts no more frames then.
+     */
+    void awaitDurable(long sequence) throws IOException {
+        while (true) {
+            EmbeddedCodec.Writer batch;
+            long batchEnd;
+            synchronized (monitor) {
+                while (durable < sequence && flushing && failure == null) {
+                    waitForFlush();
+                }
+                if (durable >= sequence) {
+                    return;
+                }
+                checkFailure();
+                flushing = true;
+                batch = pending;
+                pending = spare;
+                batchEnd = appended;
+            }
+            IOException error = null;
+            try {
+                batch.drainTo(segment);
+                segment.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.clear();
+            synchronized (monitor) {
+                spare = batch;
+                flushing = false;
+                if (error == null) {
+                    durable = batchEnd;
+                } else {
+                    failure = error;
+                }
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the sequence number of the last frame forced to disk.
+     */
+    long getDurable() {
+        synchronized (monitor) {
+            return durable;
+        }
+    }
+
+    /**
+     * @return the number of frames in the current segment, i.e. appended since the last rotation.
+     */
+    int getFrameCount() {
+        synchronized (monitor) {
+            return framesInSegment;
+        }
+    }
+
+    /**
+     * Forces every frame appended so far to the current segment and starts a new one, for a snapshot of the rows as
+     * they are now to cover. Called with no frame being appended, i.e. with the store's write lock held.
+     *
+     * @return the number of the last segment the snapshot covers.
+     * @throws IOException if the frames cannot be written or the new segment created.
+     */
+    long rotate() throws IOException {
+        synchronized (monitor) {
+            while (flushing) {
+                waitForFlush();
+            }
+            checkFailure();
+            try {
+                pending.drainTo(segment);
+                segment.force(false);
+                durable = appended;
+                segment.close();
+                openSegment(segmentNumber + 1);
+            } catch (IOException e) {
+                failure = e;
+                monitor.notifyAll();
+                throw e;
+            }
+            framesInSegment = 0;
+            monitor.notifyAll();
+            return segmentNumber - 1;
+        }
+    }
+
+    /**
+     * Writes a snapshot and deletes the segments it covers. The snapshot is written to a temporary file, forced to
+     * disk and then moved over the old one, so a crash leaves either the old snapshot and every segment after it or
+     * the new one. Does not touch the current segment, so it runs while frames are appended.
+     *
+     * @param covered the number of the last segment the snapshot covers, from {@link #rotate}.
+     * @param source  writes the rows.
+     * @throws IOException if the snapshot cannot be written; the old snapshot and the segments are kept then.
+     */
+    void writeSnapshot(long covered, SnapshotSource source) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(2 * CHUNK);
+            Flush flush = () -> {
+                if (records.size() >= CHUNK) {
+                    crc.update(records.toBuffer());
+                    records.drainTo(channel);
+                }
+            };
+            records.writeInt(SNAPSHOT_MAGIC);
+            records.writeInt(FORMAT_VERSION);
+            records.writeLong(covered);
+            records.writeString(ZoneId.systemDefault().getId());
+            source.write(records, flush);
+            records.writeByte(END);
+            crc.update(records.toBuffer());
+            records.writeInt((int) crc.getValue());
+            records.drainTo(channel);
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // the segments may only go once the move is on disk, or a crash could leave the old snapshot without them
+        forceDirectory();
+        boolean deleted = false;
+        for (long number : segmentNumbers()) {
+            if (number <= covered) {
+                deleted |= Files.deleteIfExists(segmentFile(number));
+            }
+        }
+        if (deleted) {
+            forceDirectory();
+        }
+    }
+
+    /**
+     * @return true if the directory holds the text snapshot or journal of the first version of the embedded store.
+     */
+    boolean hasTextFiles() {
+        return Files.exists(directory.resolve(TEXT_SNAPSHOT_FILE))
+                || Files.exists(directory.resolve(TEXT_JOURNAL_FILE));
+    }
+
+    /**
+     * Reads the committed records of a text file of the first version of the embedded store: one record per line,
+     * tab-separated, with tab, line break and backslash escaped by a backslash and \N for null, and a line holding
+     * only a dot after each committed transaction. Records after the last such line were not committed.
+     *
+     * @param name the name of the file, {@link #TEXT_SNAPSHOT_FILE} or {@link #TEXT_JOURNAL_FILE}.
+     * @return the records, each the kind then its values, or null if there is no such file.
+     * @throws IOException if the file cannot be read.
+     */
+    List<String[]> readTextFile(String name) throws IOException {
+        Path file = directory.resolve(name);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        List<String[]> records = new ArrayList<>();
+        List<String[]> pending = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.equals(TEXT_COMMIT)) {
+                records.addAll(pending);
+                pending.clear();
+            } else if (!line.isEmpty()) {
+                pending.add(parseTextLine(line));
+            }
+        }
+        if (!pending.isEmpty()) {
+            LOGGER.warning("Ignoring " + pending.size() + " uncommitted records at the end of " + file);
+        }
+        return records;
+    }
+
+    /**
+     * Renames the text files of the first version of the embedded store once their rows are journaled, so they are
+     * not read again but are kept.
+     *
+     * @throws IOException if a file cannot be renamed.
+     */
+    void retireTextFiles() throws IOException {
+        for (String name : new String[]{TEXT_SNAPSHOT_FILE, TEXT_JOURNAL_FILE}) {
+            Path file = directory.resolve(name);
+            if (Files.exists(file)) {
+                Files.move(file, directory.resolve(name + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        forceDirectory();
+    }
+
+    /**
+     * Writes and forces the frames still pending, and closes the current segment.
+     *
+     * @throws IOException if the frames cannot be written or the segment closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (monitor) {
+            while (flushing) {
+                waitForFlush();
+            }
+            if (segment == null) {
+                return;
+            }
+            try {
+                if (failure == null && pending.size() > 0) {
+                    pending.drainTo(segment);
+                    segment.force(false);
+                    durable = appended;
+                }
+            } finally {
+                segment.close();
+                segment = null;
+                failure = failure == null ? new IOException("The journal is closed") : failure;
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Streams a snapshot to the loader and checks its checksum.
+     *
+     * @param file   the snapshot.
+     * @param loader applies the rows.
+     * @return the number of the last segment the snapshot covers.
+     * @throws IOException if the snapshot cannot be read or is damaged.
+     */
+    private static long readSnapshot(Path file, Loader loader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            EmbeddedCodec.Reader reader = new EmbeddedCodec.Reader(channel, CHUNK);
+            if (reader.readInt() != SNAPSHOT_MAGIC || reader.readInt() != FORMAT_VERSION) {
+                throw new IOException("not a snapshot of this version");
+            }
+            long covered = reader.readLong();
+            reader.setWrittenZone(zone(reader.readString(), file));
+            loader.loadSnapshot(reader);
+            int expected = reader.checksum();
+            if (reader.readInt() != expected || reader.hasRemaining()) {
+                throw new IOException("checksum mismatch");
+            }
+            return covered;
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Error reading snapshot " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replays the frames of a segment. A damaged frame at the end of the last segment is cut off.
+     *
+     * @param number the number of the segment.
+     * @param loader applies the frames.
+     * @param isLast true if it is the last segment.
+     * @return the time zone the segment was written in.
+     * @throws IOException if the segment cannot be read or is damaged before its end.
+     */
+    private ZoneId replaySegment(long number, Loader loader, boolean isLast) throws IOException {
+        Path file = segmentFile(number);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        ZoneId zone;
+        try {
+            EmbeddedCodec.Reader header = new EmbeddedCodec.Reader(content);
+            if (header.readInt() != SEGMENT_MAGIC || header.readInt() != FORMAT_VERSION
+                    || header.readLong() != number) {
+                throw new IOException(file + " is not journal segment " + number + " of this version");
+            }
+            zone = zone(header.readString(), file);
+        } catch (IOException e) {
+            if (!isLast || content.limit() > 1024) {
+                throw e;
+            }
+            // created, but the process stopped before its header was on disk
+            LOGGER.warning("Deleting " + file + ", whose header was not finished");
+            Files.delete(file);
+            forceDirectory();
+            framesReplayed = 0;
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        framesReplayed = 0;
+        while (content.hasRemaining()) {
+            int frameStart = content.position();
+            String damage;
+            if (content.remaining() < FRAME_HEADER) {
+                damage = "cut short";
+            } else {
+                int length = content.getInt();
+                int checksum = content.getInt();
+                if (length < 0 || length > content.remaining()) {
+                    damage = "cut short";
+                } else {
+                    crc.reset();
+                    crc.update(content.array(), content.position(), length);
+                    if ((int) crc.getValue() == checksum) {
+                        EmbeddedCodec.Reader frame = new EmbeddedCodec.Reader(content.slice(content.position(),
+                                length));
+                        frame.setWrittenZone(zone);
+                        try {
+                            loader.replay(frame);
+                        } catch (IOException | RuntimeException e) {
+                            throw new IOException("Error replaying " + file + " at byte " + frameStart + ": "
+                                    + e.getMessage(), e);
+                        }
+                        content.position(content.position() + length);
+                        framesReplayed++;
+                        continue;
+                    }
+                    damage = "checksum mismatch";
+                }
+            }
+            if (!isLast) {
+                throw new IOException("Journal segment " + file + " is damaged at byte " + frameStart + ": " + damage);
+            }
+            LOGGER.warning("Cutting off " + (content.limit() - frameStart) + " bytes of an unfinished write at "
+                    + "the end of " + file + " (" + damage + ")");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(frameStart);
+                channel.force(true);
+            }
+            break;
+        }
+        return zone;
+    }
+
+    /**
+     * Creates a segment, writes its header and makes it the current one.
+     *
+     * @param number the number of the segment.
+     * @throws IOException if the segment cannot be created.
+     */
+    private void openSegment(long number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(number), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        try {
+            EmbeddedCodec.Writer header = new EmbeddedCodec.Writer(64);
+            header.writeInt(SEGMENT_MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeLong(number);
+            header.writeString(ZoneId.systemDefault().getId());
+            header.drainTo(channel);
+            channel.force(true);
+            forceDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        segment = channel;
+        segmentNumber = number;
+    }
+
+    /**
+     * @return the numbers of the segment files in the directory, in ascending order.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private List<Long> segmentNumbers() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignoring " + file + ", not a journal segment");
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Forces the directory to disk, so the files created, moved or deleted in it stay that way after a crash. Some
+     * systems, Windows among them, cannot open a directory; they make such changes durable on their own.
+     *
+     * @throws IOException if the directory cannot be forced.
+     */
+    private void forceDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Parses a line of a text file into a record.
+     *
+     * @param line the line, without its line break.
+     * @return the kind of the record, then its values.
+     */
+    private static String[] parseTextLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean isNull = false;
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : '\t';
+            if (c == '\t') {
+                values.add(isNull ? null : value.toString());
+                value.setLength(0);
+                isNull = false;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'N':
+                        isNull = true;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * @param number the number of a segment.
+     * @return its file.
+     */
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @param id   a time zone ID read from a header.
+     * @param file the file, for the exception.
+     * @return the time zone.
+     * @throws IOException if the ID is not a time zone.
+     */
+    private static ZoneId zone(String id, Path file) throws IOException {
+        try {
+            return ZoneId.of(id);
+        } catch (DateTimeException | NullPointerException e) {
+            throw new IOException(file + " names an unknown time zone " + id, e);
+        }
+    }
+
+    /**
+     * Waits for the flush in progress. Called holding the monitor.
+     *
+     * @throws IOException if the thread is interrupted.
+     */
+    private void waitForFlush() throws IOException {
+        try {
+            monitor.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the journal", e);
+        }
+    }
+
+    /**
+     * Called holding the monitor.
+     *
+     * @throws IOException if an earlier flush failed or the journal is closed.
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("The journal accepts no more writes: " + failure.getMessage(), failure);
+        }
+    }
+}
@@ -0,0 +1,1772 @@
+package DAO;
+
+import Model.Appointment;
+import Model.Contact;
+import Model.Country;
+import Model.Customer;
+import Model.FirstLevelDivision;
+import Model.User;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import utils.PasswordHasher;
+import utils.ReminderService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is the embedded storage: the whole schedule is kept in memory, in collections indexed for the queries
+ * the screens make, and made durable by an {@link EmbeddedJournal}, so the application runs with no database server.
+ * It is selected with -Dscheduler.storage=embedded, see {@link Repositories}.<br>
+ * The appointments are kept by ID and sorted in {@link AppointmentChangeSet#START_ORDER}, overall and per user,
+ * contact and customer, so a window, a page or a conflict check reads a range of one sorted set instead of scanning.
+ * Customers are kept sorted by ID for the keyset pages. Every write is appended to the journal as it changes the
+ * collections, and returns once the journal has forced it to disk; concurrent writes share that force, so a crash
+ * can only lose writes that had not returned yet. If the force fails, the writes not on disk are undone in the
+ * collections before the exception is thrown, and the store accepts no more writes; as with a database, a write that
+ * failed this way may still have reached the disk and be there once the store is opened again. A write then has the
+ * same effect on the {@link AppointmentConflictIndex}, the {@link AppointmentTypeRollup}, the reminders and the
+ * {@link AppointmentChangeBus} as the MySQL DAOs, and references to missing customers, users, contacts or divisions
+ * are refused as the foreign keys of the database would refuse them.<br>
+ * Once enough writes are journaled, the rows are captured under the write lock, which only copies references since
+ * stored rows are never modified, and written to a snapshot by a background thread while writes go on. A start loads
+ * the snapshot, then replays the journal written after it. The sets by user, contact and customer are built after
+ * that, in the background or by the first query that needs them, so the start does not wait for them.<br>
+ * Appointments and customers are copied in and out, so callers may modify what they are given. Recurring series and
+ * the change feed need the database and are not available here. The text files of the first version of this store
+ * are imported the first time it is opened.
+ */
+public class EmbeddedStore implements AppointmentRepository, CustomerRepository, ContactRepository,
+        CountryRepository, FirstLevelDivisionRepository, UserRepository {
+    /**
+     * The logger used to report snapshots that fail and files imported.
+     */
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedStore.class.getName());
+    /**
+     * The SQL state of a write refused by a foreign or unique key.
+     */
+    private static final String INTEGRITY_VIOLATION = "23000";
+    /**
+     * The system property with the number of journal transactions after which a snapshot is written.
+     */
+    public static final String SNAPSHOT_EVERY_PROPERTY = "scheduler.embedded.snapshotEvery";
+    /**
+     * The number of journal transactions after which a snapshot is written, by default.
+     */
+    public static final int DEFAULT_SNAPSHOT_EVERY = 10_000;
+    /**
+     * The resource loaded into a new store: the countries, divisions, contacts and users of a new schedule.
+     */
+    private static final String SEED_RESOURCE = "embedded_seed.txt";
+
+    /**
+     * Guards the collections; reads share the read lock, writes take the write lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * The journal the writes are made durable in.
+     */
+    private final EmbeddedJournal journal;
+    /**
+     * The number of journal transactions after which a snapshot is written.
+     */
+    private final int snapshotEvery;
+    /**
+     * Writes the snapshots in the background.
+     */
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "embedded-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The snapshot being written, or null.
+     */
+    private Future<?> snapshotting;
+    /**
+     * The writes applied to the collections that may not be on disk yet, oldest first, each with what undoes it.
+     * Guarded by the write lock.
+     */
+    private final Deque<Undo> undoLog = new ArrayDeque<>();
+
+    /**
+     * The appointments by ID.
+     */
+    private final AppointmentTable appointments = new AppointmentTable();
+    /**
+     * The appointments in start order.
+     */
+    private final NavigableSet<Appointment> appointmentsByStart = new TreeSet<>(AppointmentChangeSet.START_ORDER);
+    /**
+     * The appointments of each user, in start order. Empty until {@link #indexByOwner} builds it after a snapshot is
+     * loaded.
+     */
+    private final Map<Integer, NavigableSet<Appointment>> appointmentsByUser = new HashMap<>();
+    /**
+     * The appointments of each contact, in start order. Empty until {@link #indexByOwner} builds it after a snapshot
+     * is loaded.
+     */
+    private final Map<Integer, NavigableSet<Appointment>> appointmentsByContact = new HashMap<>();
+    /**
+     * The appointments of each customer, in start order. Empty until {@link #indexByOwner} builds it after a snapshot
+     * is loaded.
+     */
+    private final Map<Integer, NavigableSet<Appointment>> appointmentsByCustomer = new HashMap<>();
+    /**
+     * True once the appointments by user, contact and customer hold every appointment and are kept up to date. Set
+     * under the write lock.
+     */
+    private volatile boolean indexedByOwner = true;
+    /**
+     * The customers by ID, in ID order.
+     */
+    private final NavigableMap<Integer, Customer> customers = new TreeMap<>();
+    /**
+     * The countries by ID, in the order they were added.
+     */
+    private final Map<Integer, Country> countries = new LinkedHashMap<>();
+    /**
+     * The first-level divisions by ID, in the order they were added.
+     */
+    private final Map<Integer, FirstLevelDivision> divisions = new LinkedHashMap<>();
+    /**
+     * The contacts by ID, in the order they were added.
+     */
+    private final Map<Integer, Contact> contacts = new LinkedHashMap<>();
+    /**
+     * The users by ID, in the order they were added.
+     */
+    private final Map<Integer, User> users = new LinkedHashMap<>();
+    /**
+     * The ID the next appointment added gets.
+     */
+    private int nextAppointmentId = 1;
+    /**
+     * The ID the next customer added gets.
+     */
+    private int nextCustomerId = 1;
+    /**
+     * The length of the longest appointment stored since the store was opened, in seconds. An appointment that
+     * overlaps a range starts at most this long before the range, so the conflict check only reads from there.
+     */
+    private long longestAppointmentSeconds;
+
+    /**
+     * @param journal       the journal the writes are made durable in.
+     * @param snapshotEvery the number of journal transactions after which a snapshot is written.
+     */
+    private EmbeddedStore(EmbeddedJournal journal, int snapshotEvery) {
+        this.journal = journal;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Opens the store kept in a directory, loading its snapshot and replaying its journal. A new directory starts with
+     * the seed countries, divisions, contacts and users.
+     *
+     * @param directory the directory of the snapshot and journal.
+     * @return the store.
+     * @throws IOException if the snapshot or journal cannot be read.
+     */
+    static EmbeddedStore open(Path directory) throws IOException {
+        EmbeddedJournal journal = new EmbeddedJournal(directory);
+        EmbeddedStore store = new EmbeddedStore(journal,
+                Math.max(1, Integer.getInteger(SNAPSHOT_EVERY_PROPERTY, DEFAULT_SNAPSHOT_EVERY)));
+        try {
+            boolean isNew = journal.load(new EmbeddedJournal.Loader() {
+                @Override
+                public void loadSnapshot(EmbeddedCodec.Reader snapshot) throws IOException {
+                    store.loadSnapshot(snapshot);
+                }
+
+                @Override
+                public void replay(EmbeddedCodec.Reader frame) throws IOException {
+                    store.replay(frame);
+                }
+            });
+            if (isNew && journal.hasTextFiles()) {
+                store.importTextFiles();
+            } else if (isNew) {
+                store.seed();
+            }
+            if (!store.indexedByOwner) {
+                store.snapshotter.execute(store::indexByOwner);
+            }
+        } catch (IOException | RuntimeException e) {
+            store.snapshotter.shutdown();
+            journal.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Waits for the snapshot being written, writes a final one, so the next start has no journal to replay, and
+     * closes the journal. The wait does not hold the write lock, so writes still in progress finish meanwhile; no
+     * snapshot is started after it.
+     *
+     * @throws IOException if the snapshot cannot be written or the journal closed.
+     */
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            snapshotter.shutdown();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            while (!snapshotter.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.info("Waiting for the snapshot to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (journal.getFrameCount() > 0) {
+                Image image = image();
+                journal.writeSnapshot(journal.rotate(), image::write);
+            }
+        } finally {
+            try {
+                journal.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public ObservableList<Appointment> getUpcomingAppointmentsByUserId(int userId, LocalDateTime from, LocalDateTime to) {
+        indexByOwner();
+        lock.readLock().lock();
+        try {
+            NavigableSet<Appointment> byUser = appointmentsByUser.get(userId);
+            if (byUser == null || from.isAfter(to)) {
+                return FXCollections.observableArrayList();
+            }
+            return copies(byUser.subSet(probe(from, Integer.MIN_VALUE), true, probe(to, Integer.MAX_VALUE), true),
+                    Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Appointment> getAllAppointments() {
+        lock.readLock().lock();
+        try {
+            return copies(appointmentsByStart, Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Appointment> getConflictingAppointments(int customerId, int appointmentId,
+                                                                  LocalDateTime start, LocalDateTime end) {
+        indexByOwner();
+        ObservableList<Appointment> conflicts = FXCollections.observableArrayList();
+        lock.readLock().lock();
+        try {
+            NavigableSet<Appointment> byCustomer = appointmentsByCustomer.get(customerId);
+            LocalDateTime earliest = start.minusSeconds(longestAppointmentSeconds);
+            if (byCustomer != null && !end.isBefore(earliest)) {
+                for (Appointment appointment : byCustomer.subSet(probe(earliest, Integer.MIN_VALUE), true,
+                        probe(end, Integer.MIN_VALUE), false)) {
+                    if (appointment.getEnd().isAfter(start) && appointment.getAppointmentId() != appointmentId) {
+                        conflicts.add(copy(appointment));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return conflicts;
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsPageAfter(Appointment after, int pageSize) {
+        lock.readLock().lock();
+        try {
+            return copies(after == null ? appointmentsByStart : appointmentsByStart.tailSet(after, false), pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsPageBefore(Appointment before, int pageSize) {
+        ObservableList<Appointment> page;
+        lock.readLock().lock();
+        try {
+            page = copies(appointmentsByStart.headSet(before, false).descendingSet(), pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+        FXCollections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public void addAppointment(String appointmentTitle, String appointmentDescription, String appointmentLocation,
+                               String appointmentType, LocalDateTime appointmentStart, LocalDateTime appointmentEnd,
+                               Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                               int customerID, int userID, int contactID) throws SQLException {
+        Appointment appointment = new Appointment(0, appointmentTitle, appointmentDescription, appointmentLocation,
+                appointmentType, appointmentStart, appointmentEnd, toLocal(createDate), createdBy,
+                toLocal(lastUpdate), lastUpdateBy, customerID, userID, contactID);
+        addAppointments(List.of(appointment));
+    }
+
+    @Override
+    public void addAppointments(List<Appointment> appointments) throws SQLException {
+        if (appointments.isEmpty()) {
+            return;
+        }
+        List<Appointment> added = new ArrayList<>(appointments.size());
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            for (Appointment appointment : appointments) {
+                checkReferences(appointment);
+            }
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(128 * appointments.size());
+            int id = nextAppointmentId;
+            for (Appointment appointment : appointments) {
+                Appointment stored = copy(appointment);
+                stored.setAppointmentId(id++);
+                stored.setVersion(0);
+                added.add(stored);
+                writeAppointment(records, stored);
+            }
+            sequence = append(records, "Error adding appointments");
+            nextAppointmentId = id;
+            for (Appointment appointment : added) {
+                index(appointment);
+            }
+            remember(sequence, () -> added.forEach(this::unindex));
+            snapshotIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error adding appointments");
+        for (int i = 0; i < added.size(); i++) {
+            appointments.get(i).setAppointmentId(added.get(i).getAppointmentId());
+            appointments.get(i).setVersion(0);
+        }
+        List<Appointment> published = new ArrayList<>(added.size());
+        for (Appointment appointment : added) {
+            AppointmentConflictIndex.put(copy(appointment));
+            ReminderService.getInstance().appointmentSaved(copy(appointment));
+            AppointmentTypeRollup.put(appointment);
+            published.add(copy(appointment));
+        }
+        AppointmentChangeBus.publish(AppointmentChangeSet.added(published));
+    }
+
+    @Override
+    public void modifyAppointment(int appointmentID, String appointmentTitle, String appointmentDescription,
+                                  String appointmentLocation, String appointmentType, LocalDateTime appointmentStart,
+                                  LocalDateTime appointmentEnd, Timestamp lastUpdate, String lastUpdateBy,
+                                  int customerID, int userID, int contactID, int version) throws SQLException {
+        Appointment previous;
+        Appointment modified;
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            previous = appointments.get(appointmentID);
+            if (previous == null || previous.getVersion() != version) {
+                throw new OptimisticLockException("appointments", appointmentID, version);
+            }
+            modified = new Appointment(appointmentID, appointmentTitle, appointmentDescription, appointmentLocation,
+                    appointmentType, appointmentStart, appointmentEnd, previous.getCreateDate(),
+                    previous.getCreatedBy(), toLocal(lastUpdate), lastUpdateBy, customerID, userID, contactID);
+            modified.setVersion(version + 1);
+            checkReferences(modified);
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(256);
+            writeAppointment(records, modified);
+            sequence = append(records, "Error updating appointment");
+            unindex(previous);
+            index(modified);
+            Appointment before = previous;
+            Appointment after = modified;
+            remember(sequence, () -> {
+                unindex(after);
+                index(before);
+            });
+            snapshotIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error updating appointment");
+        AppointmentConflictIndex.put(copy(modified));
+        ReminderService.getInstance().appointmentSaved(copy(modified));
+        AppointmentTypeRollup.put(modified);
+        AppointmentChangeBus.publish(AppointmentChangeSet.updated(copy(modified)));
+    }
+
+    @Override
+    public Appointment getAppointmentById(int appointmentId) {
+        lock.readLock().lock();
+        try {
+            Appointment appointment = appointments.get(appointmentId);
+            return appointment == null ? null : copy(appointment);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteAppointmentByApptId(int appointmentID) throws SQLException {
+        Appointment previous;
+        long sequence = 0;
+        lock.writeLock().lock();
+        try {
+            previous = appointments.get(appointmentID);
+            if (previous != null) {
+                EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(16);
+                records.writeByte('a');
+                records.writeInt(appointmentID);
+                sequence = append(records, "Error deleting appointment");
+                unindex(previous);
+                Appointment before = previous;
+                remember(sequence, () -> index(before));
+                snapshotIfDue();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error deleting appointment");
+        AppointmentConflictIndex.remove(appointmentID);
+        ReminderService.getInstance().appointmentDeleted(appointmentID);
+        if (previous != null) {
+            AppointmentTypeRollup.remove(appointmentID);
+            AppointmentChangeBus.publish(AppointmentChangeSet.removed(List.of(appointmentID)));
+        }
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsByContactId(int contactId) {
+        indexByOwner();
+        lock.readLock().lock();
+        try {
+            NavigableSet<Appointment> byContact = appointmentsByContact.get(contactId);
+            return byContact == null ? FXCollections.observableArrayList() : copies(byContact, Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * The embedded store has no recurring series, so only stored appointments are returned.
+     */
+    @Override
+    public ObservableList<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            if (!from.isBefore(to)) {
+                return FXCollections.observableArrayList();
+            }
+            return copies(appointmentsByStart.subSet(probe(from, Integer.MIN_VALUE), true,
+                    probe(to, Integer.MIN_VALUE), false), Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countAppointmentsByCustomerIds(Collection<Integer> customerIds) {
+        indexByOwner();
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            for (int customerId : new HashSet<>(customerIds)) {
+                NavigableSet<Appointment> byCustomer = appointmentsByCustomer.get(customerId);
+                count += byCustomer == null ? 0 : byCustomer.size();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
+    @Override
+    public Map<Integer, AppointmentTypeRollup.TypeMonth> getAppointmentTypeMonths() {
+        Map<Integer, AppointmentTypeRollup.TypeMonth> typeMonths = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Appointment appointment : appointmentsByStart) {
+                typeMonths.put(appointment.getAppointmentId(), AppointmentTypeRollup.TypeMonth.of(appointment));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return typeMonths;
+    }
+
+    @Override
+    public ObservableList<Customer> getAllCustomers() {
+        lock.readLock().lock();
+        try {
+            return customerCopies(customers.values(), Integer.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Customer> getCustomersPageAfter(Customer after, int pageSize) {
+        lock.readLock().lock();
+        try {
+            return customerCopies(after == null ? customers.values()
+                    : customers.tailMap(after.getCustomerId(), false).values(), pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Customer> getCustomersPageBefore(Customer before, int pageSize) {
+        ObservableList<Customer> page;
+        lock.readLock().lock();
+        try {
+            page = customerCopies(customers.headMap(before.getCustomerId(), false).descendingMap().values(), pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+        FXCollections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public void addCustomer(String customerName, String customerAddress, String postalCode, String customerPhone,
+                            Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                            int divisionId) throws SQLException {
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            checkDivision(divisionId);
+            Customer customer = new Customer(nextCustomerId, customerName, customerAddress, postalCode, customerPhone,
+                    toLocal(createDate), createdBy, toLocal(lastUpdate), lastUpdateBy, divisionId);
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(256);
+            writeCustomer(records, customer);
+            sequence = append(records, "Error adding customer");
+            nextCustomerId++;
+            customers.put(customer.getCustomerId(), customer);
+            remember(sequence, () -> customers.remove(customer.getCustomerId()));
+            snapshotIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error adding customer");
+    }
+
+    @Override
+    public void modifyCustomer(int customerId, String customerName, String customerAddress, String postalCode,
+                               String customerPhone, Timestamp lastUpdate, String lastUpdateBy, int divisionId,
+                               int version) throws SQLException {
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            Customer previous = customers.get(customerId);
+            if (previous == null || previous.getVersion() != version) {
+                throw new OptimisticLockException("customers", customerId, version);
+            }
+            checkDivision(divisionId);
+            Customer modified = new Customer(customerId, customerName, customerAddress, postalCode, customerPhone,
+                    previous.getCreateDate(), previous.getCreatedBy(), toLocal(lastUpdate), lastUpdateBy, divisionId);
+            modified.setVersion(version + 1);
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(256);
+            writeCustomer(records, modified);
+            sequence = append(records, "Error updating customer");
+            customers.put(customerId, modified);
+            remember(sequence, () -> customers.put(customerId, previous));
+            snapshotIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error updating customer");
+    }
+
+    @Override
+    public int deleteCustomers(Collection<Integer> customerIds) throws SQLException {
+        indexByOwner();
+        List<Appointment> deleted = new ArrayList<>();
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(256);
+            List<Customer> deletedCustomers = new ArrayList<>();
+            for (int customerId : new HashSet<>(customerIds)) {
+                Customer customer = customers.get(customerId);
+                if (customer == null) {
+                    continue;
+                }
+                NavigableSet<Appointment> byCustomer = appointmentsByCustomer.get(customerId);
+                if (byCustomer != null) {
+                    for (Appointment appointment : byCustomer) {
+                        deleted.add(appointment);
+                        records.writeByte('a');
+                        records.writeInt(appointment.getAppointmentId());
+                    }
+                }
+                deletedCustomers.add(customer);
+                records.writeByte('c');
+                records.writeInt(customerId);
+            }
+            if (deletedCustomers.isEmpty()) {
+                return 0;
+            }
+            sequence = append(records, "Error deleting customers");
+            for (Appointment appointment : deleted) {
+                unindex(appointment);
+            }
+            for (Customer customer : deletedCustomers) {
+                customers.remove(customer.getCustomerId());
+            }
+            remember(sequence, () -> {
+                for (Customer customer : deletedCustomers) {
+                    customers.put(customer.getCustomerId(), customer);
+                }
+                deleted.forEach(this::index);
+            });
+            snapshotIfDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence, "Error deleting customers");
+        List<Integer> appointmentIds = new ArrayList<>(deleted.size());
+        for (Appointment appointment : deleted) {
+            appointmentIds.add(appointment.getAppointmentId());
+            AppointmentConflictIndex.remove(appointment.getAppointmentId());
+            ReminderService.getInstance().appointmentDeleted(appointment.getAppointmentId());
+            AppointmentTypeRollup.remove(appointment.getAppointmentId());
+        }
+        AppointmentChangeBus.publish(AppointmentChangeSet.removed(appointmentIds));
+        return deleted.size();
+    }
+
+    @Override
+    public Customer getCustomerByCustomerId(int customerId) {
+        lock.readLock().lock();
+        try {
+            Customer customer = customers.get(customerId);
+            return customer == null ? null : copy(customer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<Integer> getCustomerIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(customers.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countCustomers(int countryId) {
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            for (Customer customer : customers.values()) {
+                FirstLevelDivision division = divisions.get(customer.getDivisionId());
+                if (division != null && division.getCountryId() == countryId) {
+                    count++;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
+    @Override
+    public ObservableList<Contact> getAllContacts() {
+        lock.readLock().lock();
+        try {
+            return FXCollections.observableArrayList(contacts.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Contact getContactFromContactID(int contactId) {
+        lock.readLock().lock();
+        try {
+            return contacts.get(contactId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<Country> getAllCountries() {
+        lock.readLock().lock();
+        try {
+            return FXCollections.observableArrayList(countries.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Country getCountryFromCountryID(int countryId) {
+        lock.readLock().lock();
+        try {
+            return countries.get(countryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public FirstLevelDivision getDivision(FirstLevelDivision firstLevelDivision) {
+        if (firstLevelDivision == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            for (FirstLevelDivision division : divisions.values()) {
+                if (division.getDivision().equals(firstLevelDivision.getDivision())) {
+                    return division;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ObservableList<FirstLevelDivision> getDiv(int countryId) {
+        ObservableList<FirstLevelDivision> div = FXCollections.observableArrayList();
+        lock.readLock().lock();
+        try {
+            for (FirstLevelDivision division : divisions.values()) {
+                if (division.getCountryId() == countryId) {
+                    div.add(division);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return div;
+    }
+
+    @Override
+    public FirstLevelDivision getFirstLvlDivByDivID(int divisionId) {
+        lock.readLock().lock();
+        try {
+            return divisions.get(divisionId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User authenticate(String userName, String password) throws SQLException {
+        User user = null;
+        lock.readLock().lock();
+        try {
+            for (User candidate : users.values()) {
+                if (candidate.getUserName().equals(userName)) {
+                    user = candidate;
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (user == null) {
+            PasswordHasher.verifyUnknownUser(password);
+            return null;
+        }
+        if (!PasswordHasher.verify(password, user.getPassword())) {
+            return null;
+        }
+        if (PasswordHasher.needsRehash(user.getPassword())) {
+            String hash = PasswordHasher.hash(password);
+            long sequence = 0;
+            lock.writeLock().lock();
+            try {
+                if (users.get(user.getUserId()) == user) {
+                    User rehashed = new User(user.getUserId(), user.getUserName(), hash, user.getCreateDate(),
+                            user.getCreatedBy(), user.getLastUpdate(), user.getLastUpdateBy());
+                    EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(256);
+                    writeUser(records, rehashed);
+                    sequence = append(records, "Error updating password");
+                    users.put(rehashed.getUserId(), rehashed);
+                    User before = user;
+                    remember(sequence, () -> users.put(before.getUserId(), before));
+                    user = rehashed;
+                    snapshotIfDue();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            awaitDurable(sequence, "Error updating password");
+        }
+        return user;
+    }
+
+    @Override
+    public ObservableList<User> getAllUsers() {
+        lock.readLock().lock();
+        try {
+            return FXCollections.observableArrayList(users.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserFromUserID(int userId) {
+        lock.readLock().lock();
+        try {
+            return users.get(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends one transaction to the journal. Called with the write lock held, before the collections are changed.
+     *
+     * @param records the records of the transaction.
+     * @param message what the write was, for the exception.
+     * @return the sequence number to pass to {@link #awaitDurable} once the write lock is released.
+     * @throws SQLException if the journal accepts no more writes; the write must not be applied then.
+     */
+    private long append(EmbeddedCodec.Writer records, String message) throws SQLException {
+        try {
+            return journal.append(records);
+        } catch (IOException e) {
+            throw new SQLException(message + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits until a transaction is on disk. Called after the write lock is released, so other writes can join the
+     * same force.
+     *
+     * @param sequence the sequence number from {@link #append}, or 0 if nothing was appended.
+     * @param message  what the write was, for the exception.
+     * @throws SQLException if the transaction cannot be written; the writes not on disk are undone, and the store
+     *                      accepts no more writes until it is opened again.
+     */
+    private void awaitDurable(long sequence, String message) throws SQLException {
+        try {
+            journal.awaitDurable(sequence);
+        } catch (IOException e) {
+            rollBack();
+            throw new SQLException(message + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Records how to undo a write just applied to the collections, should the journal fail to force it, and forgets
+     * the writes already forced. Called with the write lock held.
+     *
+     * @param sequence the sequence number of the write, from {@link #append}.
+     * @param undo     restores the collections as they were before the write.
+     */
+    private void remember(long sequence, Runnable undo) {
+        long durable = journal.getDurable();
+        while (!undoLog.isEmpty() && undoLog.peekFirst().sequence <= durable) {
+            undoLog.pollFirst();
+        }
+        undoLog.addLast(new Undo(sequence, undo));
+    }
+
+    /**
+     * Undoes, newest first, the writes applied to the collections that the journal did not force before it failed.
+     * Since the journal accepts nothing after a failure, no write is applied after them.
+     */
+    private void rollBack() {
+        lock.writeLock().lock();
+        try {
+            long durable = journal.getDurable();
+            while (!undoLog.isEmpty() && undoLog.peekLast().sequence > durable) {
+                undoLog.pollLast().action.run();
+            }
+            undoLog.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts writing a snapshot in the background once enough transactions have been journaled since the last one,
+     * unless one is still being written. Called with the write lock held, after the collections are changed.
+     */
+    private void snapshotIfDue() {
+        if (journal.getFrameCount() < snapshotEvery || (snapshotting != null && !snapshotting.isDone())
+                || snapshotter.isShutdown()) {
+            return;
+        }
+        try {
+            Image image = image();
+            long covered = journal.rotate();
+            snapshotting = snapshotter.submit(() -> {
+                try {
+                    journal.writeSnapshot(covered, image::write);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Error writing snapshot, the journal is kept", e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error starting a snapshot, the store accepts no more writes", e);
+        }
+    }
+
+    /**
+     * Captures every row for a snapshot. Called with the write lock held.
+     *
+     * @return the rows.
+     */
+    private Image image() {
+        return new Image(nextAppointmentId, nextCustomerId, new ArrayList<>(countries.values()),
+                new ArrayList<>(divisions.values()), new ArrayList<>(contacts.values()),
+                new ArrayList<>(users.values()), new ArrayList<>(customers.values()),
+                appointmentsByStart.toArray(new Appointment[0]));
+    }
+
+    /**
+     * Loads the rows of a snapshot into the empty store. The appointments are collected first, then put in the map by
+     * ID and the sorted set; the sets by user, contact and customer are left to {@link #indexByOwner}.
+     *
+     * @param snapshot the snapshot, positioned at its first record.
+     * @throws IOException if a record cannot be read or understood.
+     */
+    private void loadSnapshot(EmbeddedCodec.Reader snapshot) throws IOException {
+        List<Appointment> loaded = new ArrayList<>();
+        byte kind;
+        while ((kind = snapshot.readByte()) != EmbeddedJournal.END) {
+            if (kind == 'A') {
+                loaded.add(readAppointment(snapshot));
+            } else {
+                apply(kind, snapshot);
+            }
+        }
+        appointments.ensureCapacity(nextAppointmentId);
+        for (Appointment appointment : loaded) {
+            appointments.put(appointment);
+            longestAppointmentSeconds = Math.max(longestAppointmentSeconds, lengthSeconds(appointment));
+            nextAppointmentId = Math.max(nextAppointmentId, appointment.getAppointmentId() + 1);
+        }
+        if (appointments.size() != loaded.size()) {
+            throw new IOException("The snapshot lists an appointment twice");
+        }
+        appointmentsByStart.addAll(loaded);
+        indexedByOwner = loaded.isEmpty();
+    }
+
+    /**
+     * Builds the sets of appointments by user, contact and customer if they are not built yet, in one pass over the
+     * appointments in start order. Called with no lock held, or with the write lock held.
+     */
+    private void indexByOwner() {
+        if (indexedByOwner) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (indexedByOwner) {
+                return;
+            }
+            Map<Integer, List<Appointment>> byUser = new HashMap<>();
+            Map<Integer, List<Appointment>> byContact = new HashMap<>();
+            Map<Integer, List<Appointment>> byCustomer = new HashMap<>();
+            for (Appointment appointment : appointmentsByStart) {
+                byUser.computeIfAbsent(appointment.getUserId(), k -> new ArrayList<>()).add(appointment);
+                byContact.computeIfAbsent(appointment.getContactId(), k -> new ArrayList<>()).add(appointment);
+                byCustomer.computeIfAbsent(appointment.getCustomerId(), k -> new ArrayList<>()).add(appointment);
+            }
+            buildSets(appointmentsByUser, byUser);
+            buildSets(appointmentsByContact, byContact);
+            buildSets(appointmentsByCustomer, byCustomer);
+            indexedByOwner = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param index the index to fill.
+     * @param lists the appointments of each key, in start order.
+     */
+    private static void buildSets(Map<Integer, NavigableSet<Appointment>> index,
+                                  Map<Integer, List<Appointment>> lists) {
+        for (Map.Entry<Integer, List<Appointment>> entry : lists.entrySet()) {
+            NavigableSet<Appointment> set = new TreeSet<>(AppointmentChangeSet.START_ORDER);
+            set.addAll(entry.getValue());
+            index.put(entry.getKey(), set);
+        }
+    }
+
+    /**
+     * Applies the records of a journal transaction.
+     *
+     * @param frame the transaction.
+     * @throws IOException if a record cannot be read or understood.
+     */
+    private void replay(EmbeddedCodec.Reader frame) throws IOException {
+        while (frame.hasRemaining()) {
+            apply(frame.readByte(), frame);
+        }
+    }
+
+    /**
+     * Applies a record read back from the snapshot or the journal.
+     *
+     * @param kind   the kind of the record.
+     * @param reader the reader, positioned after the kind.
+     * @throws IOException if the record cannot be read or the kind is not understood.
+     */
+    private void apply(byte kind, EmbeddedCodec.Reader reader) throws IOException {
+        switch (kind) {
+            case 'A': {
+                Appointment appointment = readAppointment(reader);
+                Appointment previous = appointments.get(appointment.getAppointmentId());
+                if (previous != null) {
+                    unindex(previous);
+                }
+                index(appointment);
+                nextAppointmentId = Math.max(nextAppointmentId, appointment.getAppointmentId() + 1);
+                break;
+            }
+            case 'a': {
+                Appointment previous = appointments.get(reader.readInt());
+                if (previous != null) {
+                    unindex(previous);
+                }
+                break;
+            }
+            case 'C': {
+                Customer customer = new Customer(reader.readInt(), reader.readString(), reader.readString(),
+                        reader.readString(), reader.readString(), reader.readTime(), reader.readSharedString(),
+                        reader.readTime(), reader.readSharedString(), reader.readInt());
+                customer.setVersion(reader.readInt());
+                customers.put(customer.getCustomerId(), customer);
+                nextCustomerId = Math.max(nextCustomerId, customer.getCustomerId() + 1);
+                break;
+            }
+            case 'c':
+                customers.remove(reader.readInt());
+                break;
+            case 'U': {
+                User user = new User(reader.readInt(), reader.readSharedString(), reader.readString(),
+                        reader.readTime(), reader.readSharedString(), reader.readTime(), reader.readSharedString());
+                users.put(user.getUserId(), user);
+                break;
+            }
+            case 'N': {
+                Country country = new Country(reader.readInt(), reader.readSharedString(), reader.readTime(),
+                        reader.readSharedString(), reader.readTime(), reader.readSharedString());
+                countries.put(country.getCountryId(), country);
+                break;
+            }
+            case 'D': {
+                FirstLevelDivision division = new FirstLevelDivision(reader.readInt(), reader.readSharedString(),
+                        reader.readTime(), reader.readSharedString(), reader.readTime(), reader.readSharedString(),
+                        reader.readInt());
+                divisions.put(division.getDivisionId(), division);
+                break;
+            }
+            case 'K': {
+                Contact contact = new Contact(reader.readInt(), reader.readSharedString(), reader.readString());
+                contacts.put(contact.getContactId(), contact);
+                break;
+            }
+            case 'S':
+                nextAppointmentId = Math.max(nextAppointmentId, reader.readInt());
+                nextCustomerId = Math.max(nextCustomerId, reader.readInt());
+                break;
+            default:
+                throw new IOException("Unknown record kind " + kind);
+        }
+    }
+
+    /**
+     * Loads the seed rows into a new store and journals them as its first transaction. The seed has one row per line:
+     * the kind, then the tab-separated values, with \N for null.
+     *
+     * @throws IOException if the seed cannot be read or journaled.
+     */
+    private void seed() throws IOException {
+        String content;
+        try (InputStream seed = EmbeddedStore.class.getResourceAsStream(SEED_RESOURCE)) {
+            if (seed == null) {
+                return;
+            }
+            content = new String(seed.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        EmbeddedCodec.Writer records = new EmbeddedCodec.Writer(8 * 1024);
+        for (String line : content.split("\\R")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] values = line.split("\t", -1);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i].equals("\\N") ? null : values[i];
+            }
+            try {
+                switch (values[0]) {
+                    case "N": {
+                        Country country = new Country(Integer.parseInt(values[1]), values[2],
+                                seedTime(values[3]), values[4], seedTime(values[5]), values[6]);
+                        countries.put(country.getCountryId(), country);
+                        writeCountry(records, country);
+                        break;
+                    }
+                    case "D": {
+                        FirstLevelDivision division = new FirstLevelDivision(Integer.parseInt(values[1]), values[2],
+                                seedTime(values[3]), values[4], seedTime(values[5]), values[6],
+                                Integer.parseInt(values[7]));
+                        divisions.put(division.getDivisionId(), division);
+                        writeDivision(records, division);
+                        break;
+                    }
+                    case "K": {
+                        Contact contact = new Contact(Integer.parseInt(values[1]), values[2], values[3]);
+                        contacts.put(contact.getContactId(), contact);
+                        writeContact(records, contact);
+                        break;
+                    }
+                    case "U": {
+                        User user = new User(Integer.parseInt(values[1]), values[2], values[3], seedTime(values[4]),
+                                values[5], seedTime(values[6]), values[7]);
+                        users.put(user.getUserId(), user);
+                        writeUser(records, user);
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown seed row kind " + values[0]);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed seed row " + line + ": " + e.getMessage(), e);
+            }
+        }
+        journal.awaitDurable(journal.append(records));
+    }
+
+    /**
+     * @param text a date and time of the seed, or null.
+     * @return the date and time, or null.
+     */
+    private static LocalDateTime seedTime(String text) {
+        return text == null ? null : LocalDateTime.parse(text);
+    }
+
+    /**
+     * Imports the text snapshot and journal of the first version of this store into a new store, as its first
+     * transaction, and renames them so they are not imported again. Like that version, the seed is loaded first when
+     * there is no text snapshot.
+     *
+     * @throws IOException if the files cannot be read or renamed, hold a record that is not understood, or the rows
+     *                     cannot be journaled.
+     */
+    private void importTextFiles() throws IOException {
+        List<String[]> records = journal.readTextFile(EmbeddedJournal.TEXT_SNAPSHOT_FILE);
+        if (records == null) {
+            seed();
+            records = new ArrayList<>();
+        }
+        List<String[]> journaled = journal.readTextFile(EmbeddedJournal.TEXT_JOURNAL_FILE);
+        if (journaled != null) {
+            records.addAll(journaled);
+        }
+        EmbeddedCodec.Writer frame = new EmbeddedCodec.Writer(128 * records.size() + 64);
+        for (String[] record : records) {
+            writeTextRecord(frame, record);
+        }
+        replay(new EmbeddedCodec.Reader(frame.toBuffer()));
+        journal.awaitDurable(journal.append(frame));
+        journal.retireTextFiles();
+        LOGGER.info("Imported " + records.size() + " records from the text files of the first embedded store");
+    }
+
+    /**
+     * Encodes a record of the text files of the first version of this store. Its values are those of the binary
+     * record of the same kind, with the dates and times as instants.
+     *
+     * @param records the writer.
+     * @param record  the kind of the record, then its values.
+     * @throws IOException if the record is not understood.
+     */
+    private static void writeTextRecord(EmbeddedCodec.Writer records, String[] record) throws IOException {
+        try {
+            switch (record[0]) {
+                case "A": {
+                    Appointment appointment = new Appointment(Integer.parseInt(record[1]), record[2], record[3],
+                            record[4], record[5], textTime(record[6]), textTime(record[7]), textTime(record[8]),
+                            record[9], textTime(record[10]), record[11], Integer.parseInt(record[12]),
+                            Integer.parseInt(record[13]), Integer.parseInt(record[14]));
+                    appointment.setVersion(Integer.parseInt(record[15]));
+                    writeAppointment(records, appointment);
+                    break;
+                }
+                case "a":
+                case "c":
+                    records.writeByte(record[0].charAt(0));
+                    records.writeInt(Integer.parseInt(record[1]));
+                    break;
+                case "C": {
+                    Customer customer = new Customer(Integer.parseInt(record[1]), record[2], record[3], record[4],
+                            record[5], textTime(record[6]), record[7], textTime(record[8]), record[9],
+                            Integer.parseInt(record[10]));
+                    customer.setVersion(Integer.parseInt(record[11]));
+                    writeCustomer(records, customer);
+                    break;
+                }
+                case "U":
+                    writeUser(records, new User(Integer.parseInt(record[1]), record[2], record[3],
+                            textTime(record[4]), record[5], textTime(record[6]), record[7]));
+                    break;
+                case "N":
+                    writeCountry(records, new Country(Integer.parseInt(record[1]), record[2], textTime(record[3]),
+                            record[4], textTime(record[5]), record[6]));
+                    break;
+                case "D":
+                    writeDivision(records, new FirstLevelDivision(Integer.parseInt(record[1]), record[2],
+                            textTime(record[3]), record[4], textTime(record[5]), record[6],
+                            Integer.parseInt(record[7])));
+                    break;
+                case "K":
+                    writeContact(records, new Contact(Integer.parseInt(record[1]), record[2], record[3]));
+                    break;
+                case "S":
+                    records.writeByte('S');
+                    records.writeInt(Integer.parseInt(record[1]));
+                    records.writeInt(Integer.parseInt(record[2]));
+                    break;
+                default:
+                    throw new IOException("Unknown record kind " + record[0]);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed " + record[0] + " record: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param text an instant of the text files, or null.
+     * @return the date and time in the user's time zone, or null.
+     */
+    private static LocalDateTime textTime(String text) {
+        return text == null ? null : LocalDateTime.ofInstant(Instant.parse(text), ZoneId.systemDefault());
+    }
+
+    /**
+     * @param records     the writer.
+     * @param appointment the appointment to write as an A record.
+     */
+    private static void writeAppointment(EmbeddedCodec.Writer records, Appointment appointment) {
+        records.writeByte('A');
+        records.writeInt(appointment.getAppointmentId());
+        records.writeString(appointment.getTitle());
+        records.writeString(appointment.getDescription());
+        records.writeSharedString(appointment.getLocation());
+        records.writeSharedString(appointment.getType());
+        records.writeTime(appointment.getStart());
+        records.writeTime(appointment.getEnd());
+        records.writeTime(appointment.getCreateDate());
+        records.writeSharedString(appointment.getCreatedBy());
+        records.writeTime(appointment.getLastUpdate());
+        records.writeSharedString(appointment.getLastUpdatedBy());
+        records.writeInt(appointment.getCustomerId());
+        records.writeInt(appointment.getUserId());
+        records.writeInt(appointment.getContactId());
+        records.writeInt(appointment.getVersion());
+    }
+
+    /**
+     * @param reader the reader, positioned after the kind of an A record.
+     * @return the appointment.
+     * @throws IOException if the record cannot be read.
+     */
+    private static Appointment readAppointment(EmbeddedCodec.Reader reader) throws IOException {
+        Appointment appointment = new Appointment(reader.readInt(), reader.readString(), reader.readString(),
+                reader.readSharedString(), reader.readSharedString(), reader.readTime(), reader.readTime(),
+                reader.readTime(), reader.readSharedString(), reader.readTime(), reader.readSharedString(),
+                reader.readInt(), reader.readInt(), reader.readInt());
+        appointment.setVersion(reader.readInt());
+        return appointment;
+    }
+
+    /**
+     * @param records  the writer.
+     * @param customer the customer to write as a C record.
+     */
+    private static void writeCustomer(EmbeddedCodec.Writer records, Customer customer) {
+        records.writeByte('C');
+        records.writeInt(customer.getCustomerId());
+        records.writeString(customer.getCustomerName());
+        records.writeString(customer.getCustomerAddress());
+        records.writeString(customer.getPostalCode());
+        records.writeString(customer.getCustomerPhone());
+        records.writeTime(customer.getCreateDate());
+        records.writeSharedString(customer.getCreatedBy());
+        records.writeTime(customer.getLastUpdate());
+        records.writeSharedString(customer.getLastUpdateBy());
+        records.writeInt(customer.getDivisionId());
+        records.writeInt(customer.getVersion());
+    }
+
+    /**
+     * @param records the writer.
+     * @param user    the user to write as a U record.
+     */
+    private static void writeUser(EmbeddedCodec.Writer records, User user) {
+        records.writeByte('U');
+        records.writeInt(user.getUserId());
+        records.writeSharedString(user.getUserName());
+        records.writeString(user.getPassword());
+        records.writeTime(user.getCreateDate());
+        records.writeSharedString(user.getCreatedBy());
+        records.writeTime(user.getLastUpdate());
+        records.writeSharedString(user.getLastUpdateBy());
+    }
+
+    /**
+     * @param records the writer.
+     * @param country the country to write as an N record.
+     */
+    private static void writeCountry(EmbeddedCodec.Writer records, Country country) {
+        records.writeByte('N');
+        records.writeInt(country.getCountryId());
+        records.writeSharedString(country.getCountry());
+        records.writeTime(country.getCreateDate());
+        records.writeSharedString(country.getCreatedBy());
+        records.writeTime(country.getLastUpdate());
+        records.writeSharedString(country.getLastUpdatedBy());
+    }
+
+    /**
+     * @param records  the writer.
+     * @param division the division to write as a D record.
+     */
+    private static void writeDivision(EmbeddedCodec.Writer records, FirstLevelDivision division) {
+        records.writeByte('D');
+        records.writeInt(division.getDivisionId());
+        records.writeSharedString(division.getDivision());
+        records.writeTime(division.getCreateDate());
+        records.writeSharedString(division.getCreatedBy());
+        records.writeTime(division.getLastUpdate());
+        records.writeSharedString(division.getLastUpdatedBy());
+        records.writeInt(division.getCountryId());
+    }
+
+    /**
+     * @param records the writer.
+     * @param contact the contact to write as a K record.
+     */
+    private static void writeContact(EmbeddedCodec.Writer records, Contact contact) {
+        records.writeByte('K');
+        records.writeInt(contact.getContactId());
+        records.writeSharedString(contact.getContactName());
+        records.writeString(contact.getEmail());
+    }
+
+    /**
+     * Adds an appointment to every collection, leaving out the sets by user, contact and customer until they are
+     * built. Called with the write lock held.
+     *
+     * @param appointment the appointment, owned by the store from now on.
+     */
+    private void index(Appointment appointment) {
+        appointments.put(appointment);
+        appointmentsByStart.add(appointment);
+        if (indexedByOwner) {
+            byKey(appointmentsByUser, appointment.getUserId()).add(appointment);
+            byKey(appointmentsByContact, appointment.getContactId()).add(appointment);
+            byKey(appointmentsByCustomer, appointment.getCustomerId()).add(appointment);
+        }
+        longestAppointmentSeconds = Math.max(longestAppointmentSeconds, lengthSeconds(appointment));
+    }
+
+    /**
+     * @param appointment an appointment.
+     * @return its length in seconds.
+     */
+    private static long lengthSeconds(Appointment appointment) {
+        return appointment.getEnd().toEpochSecond(ZoneOffset.UTC)
+                - appointment.getStart().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Removes an appointment from every collection, leaving out the sets by user, contact and customer until they are
+     * built. Called with the write lock held.
+     *
+     * @param appointment the appointment as it is stored.
+     */
+    private void unindex(Appointment appointment) {
+        appointments.remove(appointment.getAppointmentId());
+        appointmentsByStart.remove(appointment);
+        if (indexedByOwner) {
+            removeByKey(appointmentsByUser, appointment.getUserId(), appointment);
+            removeByKey(appointmentsByContact, appointment.getContactId(), appointment);
+            removeByKey(appointmentsByCustomer, appointment.getCustomerId(), appointment);
+        }
+    }
+
+    /**
+     * @param index the index.
+     * @param key   the user, contact or customer ID.
+     * @return the appointments of the key, created if there were none.
+     */
+    private static NavigableSet<Appointment> byKey(Map<Integer, NavigableSet<Appointment>> index, int key) {
+        return index.computeIfAbsent(key, k -> new TreeSet<>(AppointmentChangeSet.START_ORDER));
+    }
+
+    /**
+     * Removes an appointment from the set of its key, and the set once it is empty.
+     *
+     * @param index       the index.
+     * @param key         the user, contact or customer ID.
+     * @param appointment the appointment.
+     */
+    private static void removeByKey(Map<Integer, NavigableSet<Appointment>> index, int key, Appointment appointment) {
+        NavigableSet<Appointment> set = index.get(key);
+        if (set != null && set.remove(appointment) && set.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Refuses an appointment whose customer, user or contact does not exist. Called with the write lock held.
+     *
+     * @param appointment the appointment.
+     * @throws SQLException if a reference is missing.
+     */
+    private void checkReferences(Appointment appointment) throws SQLException {
+        if (!customers.containsKey(appointment.getCustomerId())) {
+            throw new SQLException("Customer " + appointment.getCustomerId() + " does not exist", INTEGRITY_VIOLATION);
+        }
+        if (!users.containsKey(appointment.getUserId())) {
+            throw new SQLException("User " + appointment.getUserId() + " does not exist", INTEGRITY_VIOLATION);
+        }
+        if (!contacts.containsKey(appointment.getContactId())) {
+            throw new SQLException("Contact " + appointment.getContactId() + " does not exist", INTEGRITY_VIOLATION);
+        }
+        if (appointment.getStart() == null || appointment.getEnd() == null) {
+            throw new SQLException("An appointment needs a start and an end", INTEGRITY_VIOLATION);
+        }
+    }
+
+    /**
+     * Refuses a customer whose division does not exist. Called with the write lock held.
+     *
+     * @param divisionId the ID of the division.
+     * @throws SQLException if the division is missing.
+     */
+    private void checkDivision(int divisionId) throws SQLException {
+        if (!divisions.containsKey(divisionId)) {
+            throw new SQLException("Division " + divisionId + " does not exist", INTEGRITY_VIOLATION);
+        }
+    }
+
+    /**
+     * @param appointments appointments in the store.
+     * @param limit        the maximum number to copy.
+     * @return copies of the first appointments, in iteration order.
+     */
+    private static ObservableList<Appointment> copies(Iterable<Appointment> appointments, int limit) {
+        List<Appointment> copies = new ArrayList<>();
+        Iterator<Appointment> iterator = appointments.iterator();
+        while (copies.size() < limit && iterator.hasNext()) {
+            copies.add(copy(iterator.next()));
+        }
+        return FXCollections.observableArrayList(copies);
+    }
+
+    /**
+     * @param customers customers in the store.
+     * @param limit     the maximum number to copy.
+     * @return copies of the first customers, in iteration order.
+     */
+    private static ObservableList<Customer> customerCopies(Iterable<Customer> customers, int limit) {
+        List<Customer> copies = new ArrayList<>();
+        Iterator<Customer> iterator = customers.iterator();
+        while (copies.size() < limit && iterator.hasNext()) {
+            copies.add(copy(iterator.next()));
+        }
+        return FXCollections.observableArrayList(copies);
+    }
+
+    /**
+     * @param appointment an appointment.
+     * @return a copy of it.
+     */
+    private static Appointment copy(Appointment appointment) {
+        Appointment copy = new Appointment(appointment.getAppointmentId(), appointment.getTitle(),
+                appointment.getDescription(), appointment.getLocation(), appointment.getType(),
+                appointment.getStart(), appointment.getEnd(), appointment.getCreateDate(), appointment.getCreatedBy(),
+                appointment.getLastUpdate(), appointment.getLastUpdatedBy(), appointment.getCustomerId(),
+                appointment.getUserId(), appointment.getContactId());
+        copy.setVersion(appointment.getVersion());
+        return copy;
+    }
+
+    /**
+     * @param customer a customer.
+     * @return a copy of it.
+     */
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer(customer.getCustomerId(), customer.getCustomerName(),
+                customer.getCustomerAddress(), customer.getPostalCode(), customer.getCustomerPhone(),
+                customer.getCreateDate(), customer.getCreatedBy(), customer.getLastUpdate(), customer.getLastUpdateBy(),
+                customer.getDivisionId());
+        copy.setVersion(customer.getVersion());
+        return copy;
+    }
+
+    /**
+     * @param start the start to seek to.
+     * @param id    the appointment ID to seek to, e.g. Integer.MIN_VALUE for the first appointment at the start.
+     * @return an appointment to seek a set in {@link AppointmentChangeSet#START_ORDER} with.
+     */
+    private static Appointment probe(LocalDateTime start, int id) {
+        return new Appointment(id, null, null, null, null, start, start, null, null, null, null, 0, 0, 0);
+    }
+
+    /**
+     * @param timestamp a timestamp, or null.
+     * @return the local date and time, or null.
+     */
+    private static LocalDateTime toLocal(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    /**
+     * The appointments by ID, in an array indexed by ID. IDs are handed out in sequence, so the array is about as long
+     * as the number of appointments, and a lookup reads one slot instead of hashing a boxed key into a map of entries.
+     */
+    private static final class AppointmentTable {
+        /**
+         * The appointment of each ID, or null.
+         */
+        private Appointment[] slots = new Appointment[1024];
+        /**
+         * The number of appointments.
+         */
+        private int size;
+
+        /**
+         * @param id an appointment ID.
+         * @return the appointment, or null if there is none with this ID.
+         */
+        private Appointment get(int id) {
+            return id >= 0 && id < slots.length ? slots[id] : null;
+        }
+
+        /**
+         * Adds an appointment, replacing the one with the same ID.
+         *
+         * @param appointment the appointment.
+         * @return the appointment replaced, or null.
+         */
+        private Appointment put(Appointment appointment) {
+            int id = appointment.getAppointmentId();
+            if (id < 0) {
+                throw new IllegalArgumentException("Invalid appointment ID " + id);
+            }
+            if (id >= slots.length) {
+                ensureCapacity((int) Math.min(Integer.MAX_VALUE - 8, Math.max(id + 1L, 2L * slots.length)));
+            }
+            Appointment previous = slots[id];
+            slots[id] = appointment;
+            if (previous == null) {
+                size++;
+            }
+            return previous;
+        }
+
+        /**
+         * @param id an appointment ID.
+         * @return the appointment removed, or null if there was none with this ID.
+         */
+        private Appointment remove(int id) {
+            Appointment previous = get(id);
+            if (previous != null) {
+                slots[id] = null;
+                size--;
+            }
+            return previous;
+        }
+
+        /**
+         * @return the number of appointments.
+         */
+        private int size() {
+            return size;
+        }
+
+        /**
+         * Grows the array so IDs below a bound need no further growth.
+         *
+         * @param ids the bound.
+         */
+        private void ensureCapacity(int ids) {
+            if (ids > slots.length) {
+                slots = Arrays.copyOf(slots, ids);
+            }
+        }
+    }
+
+    /**
+     * A write applied to the collections, with what undoes it.
+     */
+    private static final class Undo {
+        /**
+         * The sequence number of the write in the journal.
+         */
+        private final long sequence;
+        /**
+         * Restores the collections as they were before the write.
+         */
+        private final Runnable action;
+
+        /**
+         * @param sequence the sequence number of the write in the journal.
+         * @param action   restores the collections as they were before the write.
+         */
+        private Undo(long sequence, Runnable action) {
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Every row of the store at one moment, written to a snapshot while the store goes on.
+     */
+    private static final class Image {
+        /**
+         * The ID the next appointment added gets.
+         */
+        private final int nextAppointmentId;
+        /**
+         * The ID the next customer added gets.
+         */
+        private final int nextCustomerId;
+        /**
+         * The countries.
+         */
+        private final List<Country> countries;
+        /**
+         * The first-level divisions.
+         */
+        private final List<FirstLevelDivision> divisions;
+        /**
+         * The contacts.
+         */
+        private final List<Contact> contacts;
+        /**
+         * The users.
+         */
+        private final List<User> users;
+        /**
+         * The customers, in ID order.
+         */
+        private final List<Customer> customers;
+        /**
+         * The appointments, in start order.
+         */
+        private final Appointment[] appointments;
+
+        /**
+         * @param nextAppointmentId the ID the next appointment added gets.
+         * @param nextCustomerId    the ID the next customer added gets.
+         * @param countries         the countries.
+         * @param divisions         the first-level divisions.
+         * @param contacts          the contacts.
+         * @param users             the users.
+         * @param customers         the customers, in ID order.
+         * @param appointments      the appointments, in start order.
+         */
+        private Image(int nextAppointmentId, int nextCustomerId, List<Country> countries,
+                      List<FirstLevelDivision> divisions, List<Contact> contacts, List<User> users,
+                      List<Customer> customers, Appointment[] appointments) {
+            this.nextAppointmentId = nextAppointmentId;
+            this.nextCustomerId = nextCustomerId;
+            this.countries = countries;
+            this.divisions = divisions;
+            this.contacts = contacts;
+            this.users = users;
+            this.customers = customers;
+            this.appointments = appointments;
+        }
+
+        /**
+         * Writes the rows: the ID counters, the reference data, the customers, then the appointments.
+         *
+         * @param records the writer.
+         * @param flush   writes the records encoded so far to the file.
+         * @throws IOException if the file cannot be written.
+         */
+        private void write(EmbeddedCodec.Writer records, EmbeddedJournal.Flush flush) throws IOException {
+            records.writeByte('S');
+            records.writeInt(nextAppointmentId);
+            records.writeInt(nextCustomerId);
+            for (Country country : countries) {
+                writeCountry(records, country);
+            }
+            for (FirstLevelDivision division : divisions) {
+                writeDivision(records, division);
+            }
+            for (Contact contact : contacts) {
+                writeContact(records, contact);
+            }
+            for (User user : users) {
+                writeUser(records, user);
+            }
+            for (Customer customer : customers) {
+                writeCustomer(records, customer);
+                flush.flush();
+            }
+            for (Appointment appointment : appointments) {
+                writeAppointment(records, appointment);
+                flush.flush();
+            }
+        }
+    }
+}
@@ -6,7 +6,8 @@ import javafx.collections.ObservableList;
 import utils.JDBC;
 
 import java.sql.*;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class creates the FirstLevelDivision database methods.
@@ -16,31 +17,15 @@ import java.time.LocalDateTime;
 public class FirstLevelDivisionDaoImpl {
     /**
      * This method gets the FirstLevelDivision from the getValue of the divisionCombo combobox in
-     * CustomersModify.
+     * CustomersModify. The division is looked up by name in the {@link ReferenceDataCache}.
      *
      * @param firstLevelDivision the FirstLevelDivision to get the FirstLevelDivision for
      * @return the FirstLevelDivision divisionResult
      * @throws SQLException if an error occurs while retrieving data from the database.
      */
     public static FirstLevelDivision getDivision(FirstLevelDivision firstLevelDivision) throws SQLException {
-        String sqlStatement = "SELECT * FROM first_level_divisions WHERE Division=?";
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement pst = conn.prepareStatement(sqlStatement)) {
-
-            pst.setString(1, firstLevelDivision.getDivision());
-            ResultSet result = pst.executeQuery();
-
-            if (result.next()) {
-                int divisionId = result.getInt("Division_ID");
-                String divisionName = result.getString("Division");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int countryId = result.getInt("COUNTRY_ID");
-
-                return new FirstLevelDivision(divisionId, divisionName, createDate, createdBy, lastUpdate, lastUpdatedBy, countryId);
-            }
+        try {
+            return ReferenceDataCache.getDivisionByName(firstLevelDivision.getDivision());
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
@@ -48,7 +33,8 @@ public class FirstLevelDivisionDaoImpl {
     }
 
     /**
-     * Returns an ObservableList of FirstLevelDivision objects for a specified country ID
+     * Returns an ObservableList of FirstLevelDivision objects for a specified country ID, served from the
+     * {@link ReferenceDataCache}.
      *
      * @param countryId The country ID to filter the FirstLevelDivision objects by
      * @return ObservableList of FirstLevelDivision objects
@@ -56,23 +42,8 @@ public class FirstLevelDivisionDaoImpl {
      */
     public static ObservableList<FirstLevelDivision> getDiv(int countryId) throws SQLException {
         ObservableList<FirstLevelDivision> div = FXCollections.observableArrayList();
-        String sqlStatement = "select * from first_level_divisions where COUNTRY_ID = ?";
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
-            stmt.setInt(1, countryId);
-            ResultSet result = stmt.executeQuery();
-            while (result.next()) {
-                int divisionId = result.getInt("Division_ID");
-                String Division = result.getString("Division");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int country_ID = result.getInt("COUNTRY_ID");
-
-                FirstLevelDivision divResult = new FirstLevelDivision(divisionId, Division, createDate, createdBy, lastUpdate, lastUpdatedBy, country_ID);
-                div.add(divResult);
-            }
+        try {
+            div.addAll(ReferenceDataCache.getDivisions(countryId));
         } catch (SQLException ex) {
             System.out.println("Error getting divisions from database: " + ex.getMessage());
         }
@@ -80,34 +51,36 @@ public class FirstLevelDivisionDaoImpl {
     }
 
     /**
-     * This method retrieves a FirstLevelDivision based on division ID.
+     * This method retrieves a FirstLevelDivision based on division ID from the {@link ReferenceDataCache}.
      *
      * @param divisionId The ID of the division to retrieve.
      * @return A FirstLevelDivision object representing the retrieved division.
      * @throws SQLException If an error occurs while executing the SQL statement.
      */
     public static FirstLevelDivision getFirstLvlDivByDivID(int divisionId) throws SQLException {
-        String sqlStatement = "SELECT * FROM first_level_divisions WHERE DIVISION_ID = ?";
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sqlStatement)) {
-            stmt.setInt(1, divisionId);
-            ResultSet result = stmt.executeQuery();
-            while (result.next()) {
-                int division_ID = result.getInt("Division_ID");
-                String Division = result.getString("Division");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                int countryId = result.getInt("COUNTRY_ID");
-
-                return new FirstLevelDivision(division_ID, Division, createDate, createdBy, lastUpdate, lastUpdatedBy, countryId);
-            }
+        try {
+            return ReferenceDataCache.getDivision(divisionId);
         } catch (SQLException ex) {
             System.out.println("Error getting division from division ID: " + ex.getMessage());
             throw ex;
         }
-        return null;
+    }
+
+    /**
+     * Reads all first-level divisions from the database. Used by {@link ReferenceDataCache}.
+     *
+     * @return the list of all FirstLevelDivision objects
+     * @throws SQLException if an error occurs while retrieving data from the database
+     */
+    static List<FirstLevelDivision> loadAllDivisions() throws SQLException {
+        List<FirstLevelDivision> divisions = new ArrayList<>();
+        String sqlStatement = "SELECT * FROM first_level_divisions";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sqlStatement);
+             ResultSet result = stmt.executeQuery()) {
+            RowMappers.DIVISION.mapAll(result, divisions);
+        }
+        return divisions;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package DAO;
+
+import Model.FirstLevelDivision;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+
+/**
+ * This interface is the storage of first-level divisions, implemented against MySQL by {@link JdbcRepository} and in
+ * process by {@link EmbeddedStore}; {@link Repositories} returns the one selected. The divisions returned are shared
+ * and must be treated as read-only.
+ */
+public interface FirstLevelDivisionRepository {
+    /**
+     * @param firstLevelDivision a division, e.g. the value of a combo box.
+     * @return the stored division with the same name, or null if there is none.
+     * @throws SQLException if the divisions cannot be read.
+     */
+    FirstLevelDivision getDivision(FirstLevelDivision firstLevelDivision) throws SQLException;
+
+    /**
+     * @param countryId the ID of the country.
+     * @return the divisions of the country.
+     * @throws SQLException if the divisions cannot be read.
+     */
+    ObservableList<FirstLevelDivision> getDiv(int countryId) throws SQLException;
+
+    /**
+     * @param divisionId the ID of the division.
+     * @return the division, or null if there is none with that ID.
+     * @throws SQLException if the divisions cannot be read.
+     */
+    FirstLevelDivision getFirstLvlDivByDivID(int divisionId) throws SQLException;
+}
@@ -0,0 +1,216 @@
+package DAO;
+
+import Model.Appointment;
+import Model.Contact;
+import Model.Country;
+import Model.Customer;
+import Model.FirstLevelDivision;
+import Model.User;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is the MySQL storage: it implements every repository by calling the static methods of the DAO classes,
+ * which run their SQL on a pooled connection from {@link utils.JDBC}.
+ */
+public class JdbcRepository implements AppointmentRepository, CustomerRepository, ContactRepository,
+        CountryRepository, FirstLevelDivisionRepository, UserRepository {
+
+    /**
+     * Created by {@link Repositories} only.
+     */
+    JdbcRepository() {
+    }
+
+    @Override
+    public ObservableList<Appointment> getUpcomingAppointmentsByUserId(int userId, LocalDateTime from, LocalDateTime to)
+            throws SQLException {
+        return AppointmentDaoImpl.getUpcomingAppointmentsByUserId(userId, from, to);
+    }
+
+    @Override
+    public ObservableList<Appointment> getAllAppointments() throws SQLException {
+        return AppointmentDaoImpl.getAllAppointments();
+    }
+
+    @Override
+    public ObservableList<Appointment> getConflictingAppointments(int customerId, int appointmentId,
+                                                                  LocalDateTime start, LocalDateTime end)
+            throws SQLException {
+        return AppointmentDaoImpl.getConflictingAppointments(customerId, appointmentId, start, end);
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsPageAfter(Appointment after, int pageSize) throws SQLException {
+        return AppointmentDaoImpl.getAppointmentsPageAfter(after, pageSize);
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsPageBefore(Appointment before, int pageSize) throws SQLException {
+        return AppointmentDaoImpl.getAppointmentsPageBefore(before, pageSize);
+    }
+
+    @Override
+    public void addAppointment(String appointmentTitle, String appointmentDescription, String appointmentLocation,
+                               String appointmentType, LocalDateTime appointmentStart, LocalDateTime appointmentEnd,
+                               Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                               int customerID, int userID, int contactID) throws SQLException {
+        AppointmentDaoImpl.addAppointment(appointmentTitle, appointmentDescription, appointmentLocation,
+                appointmentType, appointmentStart, appointmentEnd, createDate, createdBy, lastUpdate, lastUpdateBy,
+                customerID, userID, contactID);
+    }
+
+    @Override
+    public void addAppointments(List<Appointment> appointments) throws SQLException {
+        AppointmentDaoImpl.addAppointments(appointments);
+    }
+
+    @Override
+    public void modifyAppointment(int appointmentID, String appointmentTitle, String appointmentDescription,
+                                  String appointmentLocation, String appointmentType, LocalDateTime appointmentStart,
+                                  LocalDateTime appointmentEnd, Timestamp lastUpdate, String lastUpdateBy,
+                                  int customerID, int userID, int contactID, int version) throws SQLException {
+        AppointmentDaoImpl.modifyAppointment(appointmentID, appointmentTitle, appointmentDescription,
+                appointmentLocation, appointmentType, appointmentStart, appointmentEnd, lastUpdate, lastUpdateBy,
+                customerID, userID, contactID, version);
+    }
+
+    @Override
+    public Appointment getAppointmentById(int appointmentId) throws SQLException {
+        return AppointmentDaoImpl.getAppointmentById(appointmentId);
+    }
+
+    @Override
+    public void deleteAppointmentByApptId(int appointmentID) throws SQLException {
+        AppointmentDaoImpl.deleteAppointmentByApptId(appointmentID);
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsByContactId(int contactId) throws SQLException {
+        return AppointmentDaoImpl.getAppointmentsByContactId(contactId);
+    }
+
+    @Override
+    public ObservableList<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to)
+            throws SQLException {
+        return AppointmentDaoImpl.getAppointmentsBetween(from, to);
+    }
+
+    @Override
+    public int countAppointmentsByCustomerIds(Collection<Integer> customerIds) throws SQLException {
+        return AppointmentDaoImpl.countAppointmentsByCustomerIds(customerIds);
+    }
+
+    @Override
+    public Map<Integer, AppointmentTypeRollup.TypeMonth> getAppointmentTypeMonths() throws SQLException {
+        return AppointmentDaoImpl.getAppointmentTypeMonths();
+    }
+
+    @Override
+    public ObservableList<Customer> getAllCustomers() throws SQLException {
+        return CustomerDaoImpl.getAllCustomers();
+    }
+
+    @Override
+    public ObservableList<Customer> getCustomersPageAfter(Customer after, int pageSize) throws SQLException {
+        return CustomerDaoImpl.getCustomersPageAfter(after, pageSize);
+    }
+
+    @Override
+    public ObservableList<Customer> getCustomersPageBefore(Customer before, int pageSize) throws SQLException {
+        return CustomerDaoImpl.getCustomersPageBefore(before, pageSize);
+    }
+
+    @Override
+    public void addCustomer(String customerName, String customerAddress, String postalCode, String customerPhone,
+                            Timestamp createDate, String createdBy, Timestamp lastUpdate, String lastUpdateBy,
+                            int divisionId) throws SQLException {
+        CustomerDaoImpl.addCustomer(customerName, customerAddress, postalCode, customerPhone, createDate, createdBy,
+                lastUpdate, lastUpdateBy, divisionId);
+    }
+
+    @Override
+    public void modifyCustomer(int customerId, String customerName, String customerAddress, String postalCode,
+                               String customerPhone, Timestamp lastUpdate, String lastUpdateBy, int divisionId,
+                               int version) throws SQLException {
+        CustomerDaoImpl.modifyCustomer(customerId, customerName, customerAddress, postalCode, customerPhone,
+                lastUpdate, lastUpdateBy, divisionId, version);
+    }
+
+    @Override
+    public int deleteCustomers(Collection<Integer> customerIds) throws SQLException {
+        return CustomerDaoImpl.deleteCustomers(customerIds);
+    }
+
+    @Override
+    public Customer getCustomerByCustomerId(int customerId) throws SQLException {
+        return CustomerDaoImpl.getCustomerByCustomerId(customerId);
+    }
+
+    @Override
+    public Set<Integer> getCustomerIds() throws SQLException {
+        return CustomerDaoImpl.getCustomerIds();
+    }
+
+    @Override
+    public int countCustomers(int countryId) throws SQLException {
+        return CustomerDaoImpl.countCustomers(countryId);
+    }
+
+    @Override
+    public ObservableList<Contact> getAllContacts() throws SQLException {
+        return ContactDaoImpl.getAllContacts();
+    }
+
+    @Override
+    public Contact getContactFromContactID(int contactId) throws SQLException {
+        return ContactDaoImpl.getContactFromContactID(contactId);
+    }
+
+    @Override
+    public ObservableList<Country> getAllCountries() throws SQLException {
+        return CountryDaoImpl.getAllCountries();
+    }
+
+    @Override
+    public Country getCountryFromCountryID(int countryId) throws SQLException {
+        return CountryDaoImpl.getCountryFromCountryID(countryId);
+    }
+
+    @Override
+    public FirstLevelDivision getDivision(FirstLevelDivision firstLevelDivision) throws SQLException {
+        return FirstLevelDivisionDaoImpl.getDivision(firstLevelDivision);
+    }
+
+    @Override
+    public ObservableList<FirstLevelDivision> getDiv(int countryId) throws SQLException {
+        return FirstLevelDivisionDaoImpl.getDiv(countryId);
+    }
+
+    @Override
+    public FirstLevelDivision getFirstLvlDivByDivID(int divisionId) throws SQLException {
+        return FirstLevelDivisionDaoImpl.getFirstLvlDivByDivID(divisionId);
+    }
+
+    @Override
+    public User authenticate(String userName, String password) throws SQLException {
+        return UserDaoImpl.authenticate(userName, password);
+    }
+
+    @Override
+    public ObservableList<User> getAllUsers() throws SQLException {
+        return UserDaoImpl.getAllUsers();
+    }
+
+    @Override
+    public User getUserFromUserID(int userId) throws SQLException {
+        return UserDaoImpl.getUserFromUserID(userId);
+    }
+}
@@ -0,0 +1,66 @@
+package DAO;
+
+import java.sql.SQLException;
+
+/**
+ * This exception is thrown when an update is made from a stale copy of a row: another user updated or deleted the row
+ * after it was read, so the version the update expected is no longer stored and no row was changed. The caller reads
+ * the row again and lets the user merge their edit into it, or discard it.
+ */
+public class OptimisticLockException extends SQLException {
+    /**
+     * The serialization version of this class.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The SQL state of a transaction that could not be serialized with a concurrent one.
+     */
+    private static final String SQL_STATE = "40001";
+
+    /**
+     * The table of the row.
+     */
+    private final String table;
+    /**
+     * The ID of the row.
+     */
+    private final int rowId;
+    /**
+     * The version the update expected.
+     */
+    private final int expectedVersion;
+
+    /**
+     * @param table           the table of the row.
+     * @param rowId           the ID of the row.
+     * @param expectedVersion the version the update expected.
+     */
+    public OptimisticLockException(String table, int rowId, int expectedVersion) {
+        super("Row " + rowId + " of " + table + " was changed or deleted by another user after version "
+                + expectedVersion + " was read", SQL_STATE);
+        this.table = table;
+        this.rowId = rowId;
+        this.expectedVersion = expectedVersion;
+    }
+
+    /**
+     * @return the table of the row.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the ID of the row.
+     */
+    public int getRowId() {
+        return rowId;
+    }
+
+    /**
+     * @return the version the update expected.
+     */
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
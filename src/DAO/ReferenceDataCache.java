@@ -0,0 +1,297 @@
+package DAO;
+
+import Model.Contact;
+import Model.Country;
+import Model.FirstLevelDivision;
+import Model.User;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class is a read-through cache of the reference tables: countries, first-level divisions, contacts and users.
+ * These tables almost never change, yet every form used to read them again when it opened. Each table is now read
+ * once with a single query, indexed by ID, and served from memory until its time to live expires or it is
+ * invalidated.<br>
+ * The cached model objects are shared by every caller and must be treated as read-only; the lists returned are new
+ * lists, so callers may hand them to a ComboBox.
+ */
+public class ReferenceDataCache {
+    /**
+     * How long a table is served from memory before it is read again.
+     */
+    private static final long TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    /**
+     * The number of lookups served from memory.
+     */
+    private static final AtomicLong hits = new AtomicLong();
+    /**
+     * The number of lookups that had to read a table from the database.
+     */
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The countries, by Country_ID.
+     */
+    private static final Table<Country> countries = new Table<>(CountryDaoImpl::loadAllCountries, Country::getCountryId);
+    /**
+     * The first-level divisions, by Division_ID.
+     */
+    private static final Table<FirstLevelDivision> divisions = new Table<>(FirstLevelDivisionDaoImpl::loadAllDivisions,
+            FirstLevelDivision::getDivisionId);
+    /**
+     * The contacts, by Contact_ID.
+     */
+    private static final Table<Contact> contacts = new Table<>(ContactDaoImpl::loadAllContacts, Contact::getContactId);
+    /**
+     * The users, by User_ID.
+     */
+    private static final Table<User> users = new Table<>(UserDaoImpl::loadAllUsers, User::getUserId);
+
+    /**
+     * The divisions of each country, rebuilt whenever the divisions table is reloaded.
+     */
+    private static Map<Integer, List<FirstLevelDivision>> divisionsByCountry = Collections.emptyMap();
+    /**
+     * The divisions by name, rebuilt whenever the divisions table is reloaded.
+     */
+    private static Map<String, FirstLevelDivision> divisionsByName = Collections.emptyMap();
+    /**
+     * The divisions snapshot the two maps above were built from.
+     */
+    private static Map<Integer, FirstLevelDivision> divisionsIndexed;
+
+    /**
+     * @return all countries, in database order.
+     * @throws SQLException if the countries have to be read and cannot be.
+     */
+    public static List<Country> getCountries() throws SQLException {
+        return new ArrayList<>(countries.rows().values());
+    }
+
+    /**
+     * @param countryId the ID of the country.
+     * @return the country, or null if there is none with that ID.
+     * @throws SQLException if the countries have to be read and cannot be.
+     */
+    public static Country getCountry(int countryId) throws SQLException {
+        return countries.rows().get(countryId);
+    }
+
+    /**
+     * @param countryId the ID of the country.
+     * @return the first-level divisions of the country, in database order.
+     * @throws SQLException if the divisions have to be read and cannot be.
+     */
+    public static List<FirstLevelDivision> getDivisions(int countryId) throws SQLException {
+        indexDivisions();
+        return new ArrayList<>(divisionsByCountry.getOrDefault(countryId, Collections.emptyList()));
+    }
+
+    /**
+     * @param divisionId the ID of the division.
+     * @return the division, or null if there is none with that ID.
+     * @throws SQLException if the divisions have to be read and cannot be.
+     */
+    public static FirstLevelDivision getDivision(int divisionId) throws SQLException {
+        return divisions.rows().get(divisionId);
+    }
+
+    /**
+     * @param divisionName the name of the division.
+     * @return the division, or null if there is none with that name.
+     * @throws SQLException if the divisions have to be read and cannot be.
+     */
+    public static FirstLevelDivision getDivisionByName(String divisionName) throws SQLException {
+        indexDivisions();
+        return divisionsByName.get(divisionName);
+    }
+
+    /**
+     * @return all contacts, in database order.
+     * @throws SQLException if the contacts have to be read and cannot be.
+     */
+    public static List<Contact> getContacts() throws SQLException {
+        return new ArrayList<>(contacts.rows().values());
+    }
+
+    /**
+     * @param contactId the ID of the contact.
+     * @return the contact, or null if there is none with that ID.
+     * @throws SQLException if the contacts have to be read and cannot be.
+     */
+    public static Contact getContact(int contactId) throws SQLException {
+        return contacts.rows().get(contactId);
+    }
+
+    /**
+     * @return all users, in database order.
+     * @throws SQLException if the users have to be read and cannot be.
+     */
+    public static List<User> getUsers() throws SQLException {
+        return new ArrayList<>(users.rows().values());
+    }
+
+    /**
+     * @param userId the ID of the user.
+     * @return the user, or null if there is none with that ID.
+     * @throws SQLException if the users have to be read and cannot be.
+     */
+    public static User getUser(int userId) throws SQLException {
+        return users.rows().get(userId);
+    }
+
+    /**
+     * Drops every cached table. Each one is read again the next time it is needed.
+     */
+    public static void invalidate() {
+        countries.invalidate();
+        divisions.invalidate();
+        contacts.invalidate();
+        users.invalidate();
+    }
+
+    /**
+     * Drops the cached users, e.g. after a user was added or changed.
+     */
+    public static void invalidateUsers() {
+        users.invalidate();
+    }
+
+    /**
+     * @return the number of lookups served from memory.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to read a table from the database.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups served from memory.
+     */
+    public static double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Rebuilds the by-country and by-name division maps if the divisions table was reloaded since they were built.
+     *
+     * @throws SQLException if the divisions have to be read and cannot be.
+     */
+    private static synchronized void indexDivisions() throws SQLException {
+        Map<Integer, FirstLevelDivision> rows = divisions.rows();
+        if (rows == divisionsIndexed) {
+            return;
+        }
+        Map<Integer, List<FirstLevelDivision>> byCountry = new HashMap<>();
+        Map<String, FirstLevelDivision> byName = new HashMap<>();
+        for (FirstLevelDivision division : rows.values()) {
+            byCountry.computeIfAbsent(division.getCountryId(), id -> new ArrayList<>()).add(division);
+            byName.putIfAbsent(division.getDivision(), division);
+        }
+        divisionsByCountry = byCountry;
+        divisionsByName = byName;
+        divisionsIndexed = rows;
+    }
+
+    /**
+     * Reads every row of a reference table.
+     *
+     * @param <T> the type of the rows.
+     */
+    @FunctionalInterface
+    interface TableLoader<T> {
+        /**
+         * @return every row of the table, in database order.
+         * @throws SQLException if the table cannot be read.
+         */
+        List<T> load() throws SQLException;
+    }
+
+    /**
+     * One cached reference table: its rows by ID, and when they were read.
+     *
+     * @param <T> the type of the rows.
+     */
+    private static class Table<T> {
+        /**
+         * Reads the table.
+         */
+        private final TableLoader<T> loader;
+        /**
+         * Returns the ID of a row.
+         */
+        private final ToIntFunction<T> id;
+        /**
+         * The rows by ID in database order, or null if the table has not been read or was invalidated. Replaced as a
+         * whole, never modified.
+         */
+        private volatile Map<Integer, T> rows;
+        /**
+         * The System.nanoTime() at which the rows were read.
+         */
+        private volatile long loadedAt;
+
+        /**
+         * @param loader reads the table.
+         * @param id     returns the ID of a row.
+         */
+        private Table(TableLoader<T> loader, ToIntFunction<T> id) {
+            this.loader = loader;
+            this.id = id;
+        }
+
+        /**
+         * Returns the cached rows, reading the table first if it has not been read, was invalidated, or has expired.
+         *
+         * @return the rows by ID, in database order.
+         * @throws SQLException if the table has to be read and cannot be.
+         */
+        private Map<Integer, T> rows() throws SQLException {
+            Map<Integer, T> current = rows;
+            if (current != null && System.nanoTime() - loadedAt < TIME_TO_LIVE_NANOS) {
+                hits.incrementAndGet();
+                return current;
+            }
+            synchronized (this) {
+                current = rows;
+                if (current != null && System.nanoTime() - loadedAt < TIME_TO_LIVE_NANOS) {
+                    hits.incrementAndGet();
+                    return current;
+                }
+                misses.incrementAndGet();
+                Map<Integer, T> loaded = new LinkedHashMap<>();
+                for (T row : loader.load()) {
+                    loaded.put(id.applyAsInt(row), row);
+                }
+                current = Collections.unmodifiableMap(loaded);
+                loadedAt = System.nanoTime();
+                rows = current;
+                return current;
+            }
+        }
+
+        /**
+         * Drops the cached rows.
+         */
+        private void invalidate() {
+            rows = null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class selects the storage the application runs on and hands out its repositories. The storage is chosen with
+ * the system property scheduler.storage: "mysql", the default, runs on the MySQL database through the DAO classes,
+ * and "embedded" runs on an {@link EmbeddedStore} kept in the directory named by scheduler.embedded.dir, with no
+ * database server.<br>
+ * Recurring series and the change feed need MySQL: with the embedded store no series are read, adding or cancelling
+ * one fails, and the change poller does not run, which a single process does not need.
+ */
+public class Repositories {
+    /**
+     * The logger used to report how the store was opened and errors closing it.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Repositories.class.getName());
+    /**
+     * The system property that selects the storage.
+     */
+    public static final String STORAGE_PROPERTY = "scheduler.storage";
+    /**
+     * The system property with the directory of the embedded store.
+     */
+    public static final String EMBEDDED_DIRECTORY_PROPERTY = "scheduler.embedded.dir";
+    /**
+     * The directory of the embedded store, by default.
+     */
+    public static final String DEFAULT_EMBEDDED_DIRECTORY = "data";
+
+    /**
+     * True if the embedded store is selected.
+     */
+    private static final boolean embedded = "embedded".equalsIgnoreCase(System.getProperty(STORAGE_PROPERTY, "mysql"));
+    /**
+     * The MySQL storage.
+     */
+    private static final JdbcRepository jdbc = new JdbcRepository();
+    /**
+     * The embedded store, once opened.
+     */
+    private static volatile EmbeddedStore store;
+
+    /**
+     * @return true if the application runs on the embedded store.
+     */
+    public static boolean isEmbedded() {
+        return embedded;
+    }
+
+    /**
+     * Opens the embedded store if it is selected and not open yet. Does nothing for MySQL, whose connection pool is
+     * started with {@link utils.JDBC#startConnection}.
+     *
+     * @throws IOException if the store cannot be read.
+     */
+    public static synchronized void open() throws IOException {
+        if (embedded && store == null) {
+            Path directory = Paths.get(System.getProperty(EMBEDDED_DIRECTORY_PROPERTY, DEFAULT_EMBEDDED_DIRECTORY));
+            long started = System.nanoTime();
+            store = EmbeddedStore.open(directory);
+            LOGGER.info("Opened the embedded store in " + directory.toAbsolutePath() + " in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * Closes the embedded store, if it is open, writing a final snapshot.
+     */
+    public static synchronized void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error closing the embedded store", e);
+            }
+            store = null;
+        }
+    }
+
+    /**
+     * @return the appointments.
+     */
+    public static AppointmentRepository appointments() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the customers.
+     */
+    public static CustomerRepository customers() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the contacts.
+     */
+    public static ContactRepository contacts() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the countries.
+     */
+    public static CountryRepository countries() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the first-level divisions.
+     */
+    public static FirstLevelDivisionRepository divisions() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the users.
+     */
+    public static UserRepository users() {
+        return embedded ? store() : jdbc;
+    }
+
+    /**
+     * @return the embedded store.
+     * @throws IllegalStateException if it has not been opened.
+     */
+    private static EmbeddedStore store() {
+        EmbeddedStore current = store;
+        if (current == null) {
+            throw new IllegalStateException("The embedded store is not open");
+        }
+        return current;
+    }
+}
@@ -0,0 +1,102 @@
+package DAO;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * This interface maps the rows of a ResultSet to model objects. A mapper looks up the index of every column it reads
+ * once per result set, in {@link #bind}, and then reads each row by index, so the driver does not have to resolve a
+ * column label for every cell of every row.<br>
+ * The mappers shared by the DAO classes are in {@link RowMappers}.
+ *
+ * @param <T> the type of the model objects.
+ */
+@FunctionalInterface
+interface RowMapper<T> {
+
+    /**
+     * Resolves the column indexes of a result set and returns the row reader that uses them.
+     *
+     * @param result the result set to map.
+     * @return a reader for the rows of the result set.
+     * @throws SQLException if a column the mapper needs is missing.
+     */
+    Row<T> bind(ResultSet result) throws SQLException;
+
+    /**
+     * Reads one row of a result set whose column indexes have been resolved.
+     *
+     * @param <T> the type of the model objects.
+     */
+    @FunctionalInterface
+    interface Row<T> {
+        /**
+         * Maps the current row.
+         *
+         * @param result the result set, positioned on a row.
+         * @return the model object.
+         * @throws SQLException if a column cannot be read.
+         */
+        T map(ResultSet result) throws SQLException;
+    }
+
+    /**
+     * Maps every remaining row of a result set.
+     *
+     * @param result the result set to map.
+     * @return the model objects, in result set order.
+     * @throws SQLException if the rows cannot be read.
+     */
+    default ObservableList<T> mapAll(ResultSet result) throws SQLException {
+        ObservableList<T> rows = FXCollections.observableArrayList();
+        mapAll(result, rows);
+        return rows;
+    }
+
+    /**
+     * Maps every remaining row of a result set into a list.
+     *
+     * @param result the result set to map.
+     * @param out    the list the model objects are added to.
+     * @throws SQLException if the rows cannot be read.
+     */
+    default void mapAll(ResultSet result, List<? super T> out) throws SQLException {
+        Row<T> row = bind(result);
+        while (result.next()) {
+            out.add(row.map(result));
+        }
+    }
+
+    /**
+     * Maps the first row of a result set.
+     *
+     * @param result the result set to map.
+     * @return the model object, or null if the result set is empty.
+     * @throws SQLException if the row cannot be read.
+     */
+    default T mapFirst(ResultSet result) throws SQLException {
+        Row<T> row = bind(result);
+        return result.next() ? row.map(result) : null;
+    }
+
+    /**
+     * Reads a DATETIME column as a LocalDateTime in the JVM time zone.<br>
+     * getTimestamp is kept on purpose: the driver converts the stored UTC value to the JVM time zone there, while
+     * getObject(index, LocalDateTime.class) would return the stored value unconverted.
+     *
+     * @param result the result set, positioned on a row.
+     * @param column the index of the column.
+     * @return the date and time, or null if the column is NULL.
+     * @throws SQLException if the column cannot be read.
+     */
+    static LocalDateTime getLocalDateTime(ResultSet result, int column) throws SQLException {
+        Timestamp timestamp = result.getTimestamp(column);
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
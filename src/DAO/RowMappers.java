@@ -0,0 +1,171 @@
+package DAO;
+
+import Model.Appointment;
+import Model.AppointmentSeries;
+import Model.Contact;
+import Model.Country;
+import Model.Customer;
+import Model.FirstLevelDivision;
+import Model.RecurrenceRule;
+import Model.User;
+
+import static DAO.RowMapper.getLocalDateTime;
+
+/**
+ * This class holds the {@link RowMapper} of every table read by the DAO classes, so each table is mapped in exactly
+ * one place. The mappers read the columns of SELECT * queries by the names used in the database schema.
+ */
+final class RowMappers {
+    /**
+     * Maps a row of the appointments table.
+     */
+    static final RowMapper<Appointment> APPOINTMENT = result -> {
+        int appointmentId = result.findColumn("Appointment_ID");
+        int title = result.findColumn("Title");
+        int description = result.findColumn("Description");
+        int location = result.findColumn("Location");
+        int type = result.findColumn("Type");
+        int start = result.findColumn("Start");
+        int end = result.findColumn("End");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        int customerId = result.findColumn("Customer_ID");
+        int userId = result.findColumn("User_ID");
+        int contactId = result.findColumn("Contact_ID");
+        int version = result.findColumn("Version");
+        return row -> {
+            Appointment appointment = new Appointment(row.getInt(appointmentId), row.getString(title),
+                    row.getString(description), row.getString(location), row.getString(type),
+                    getLocalDateTime(row, start), getLocalDateTime(row, end), getLocalDateTime(row, createDate),
+                    row.getString(createdBy), getLocalDateTime(row, lastUpdate), row.getString(lastUpdatedBy),
+                    row.getInt(customerId), row.getInt(userId), row.getInt(contactId));
+            appointment.setVersion(row.getInt(version));
+            return appointment;
+        };
+    };
+
+    /**
+     * Maps a row of the appointment_series table. The cancelled occurrences are in another table and are added by
+     * {@link AppointmentSeriesDaoImpl}.
+     */
+    static final RowMapper<AppointmentSeries> SERIES = result -> {
+        int seriesId = result.findColumn("Series_ID");
+        int title = result.findColumn("Title");
+        int description = result.findColumn("Description");
+        int location = result.findColumn("Location");
+        int type = result.findColumn("Type");
+        int start = result.findColumn("Start");
+        int end = result.findColumn("End");
+        int frequency = result.findColumn("Frequency");
+        int interval = result.findColumn("Interval_Count");
+        int until = result.findColumn("Until");
+        int count = result.findColumn("Occurrence_Count");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        int customerId = result.findColumn("Customer_ID");
+        int userId = result.findColumn("User_ID");
+        int contactId = result.findColumn("Contact_ID");
+        return row -> {
+            int occurrences = row.getInt(count);
+            Integer occurrenceCount = row.wasNull() ? null : occurrences;
+            RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.Frequency.valueOf(row.getString(frequency)),
+                    row.getInt(interval), getLocalDateTime(row, until), occurrenceCount);
+            return new AppointmentSeries(row.getInt(seriesId), row.getString(title), row.getString(description),
+                    row.getString(location), row.getString(type), getLocalDateTime(row, start),
+                    getLocalDateTime(row, end), rule, getLocalDateTime(row, createDate), row.getString(createdBy),
+                    getLocalDateTime(row, lastUpdate), row.getString(lastUpdatedBy), row.getInt(customerId),
+                    row.getInt(userId), row.getInt(contactId));
+        };
+    };
+
+    /**
+     * Maps a row of the customers table.
+     */
+    static final RowMapper<Customer> CUSTOMER = result -> {
+        int customerId = result.findColumn("Customer_ID");
+        int customerName = result.findColumn("Customer_Name");
+        int address = result.findColumn("Address");
+        int postalCode = result.findColumn("Postal_Code");
+        int phone = result.findColumn("Phone");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        int divisionId = result.findColumn("Division_ID");
+        int version = result.findColumn("Version");
+        return row -> {
+            Customer customer = new Customer(row.getInt(customerId), row.getString(customerName),
+                    row.getString(address), row.getString(postalCode), row.getString(phone),
+                    getLocalDateTime(row, createDate), row.getString(createdBy), getLocalDateTime(row, lastUpdate),
+                    row.getString(lastUpdatedBy), row.getInt(divisionId));
+            customer.setVersion(row.getInt(version));
+            return customer;
+        };
+    };
+
+    /**
+     * Maps a row of the countries table.
+     */
+    static final RowMapper<Country> COUNTRY = result -> {
+        int countryId = result.findColumn("Country_ID");
+        int country = result.findColumn("Country");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        return row -> new Country(row.getInt(countryId), row.getString(country), getLocalDateTime(row, createDate),
+                row.getString(createdBy), getLocalDateTime(row, lastUpdate), row.getString(lastUpdatedBy));
+    };
+
+    /**
+     * Maps a row of the first_level_divisions table.
+     */
+    static final RowMapper<FirstLevelDivision> DIVISION = result -> {
+        int divisionId = result.findColumn("Division_ID");
+        int division = result.findColumn("Division");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        int countryId = result.findColumn("COUNTRY_ID");
+        return row -> new FirstLevelDivision(row.getInt(divisionId), row.getString(division),
+                getLocalDateTime(row, createDate), row.getString(createdBy), getLocalDateTime(row, lastUpdate),
+                row.getString(lastUpdatedBy), row.getInt(countryId));
+    };
+
+    /**
+     * Maps a row of the contacts table.
+     */
+    static final RowMapper<Contact> CONTACT = result -> {
+        int contactId = result.findColumn("Contact_ID");
+        int contactName = result.findColumn("Contact_Name");
+        int email = result.findColumn("Email");
+        return row -> new Contact(row.getInt(contactId), row.getString(contactName), row.getString(email));
+    };
+
+    /**
+     * Maps a row of the users table.
+     */
+    static final RowMapper<User> USER = result -> {
+        int userId = result.findColumn("User_ID");
+        int userName = result.findColumn("User_Name");
+        int password = result.findColumn("Password");
+        int createDate = result.findColumn("Create_Date");
+        int createdBy = result.findColumn("Created_By");
+        int lastUpdate = result.findColumn("Last_Update");
+        int lastUpdatedBy = result.findColumn("Last_Updated_By");
+        return row -> new User(row.getInt(userId), row.getString(userName), row.getString(password),
+                getLocalDateTime(row, createDate), row.getString(createdBy), getLocalDateTime(row, lastUpdate),
+                row.getString(lastUpdatedBy));
+    };
+
+    /**
+     * This class only holds constants.
+     */
+    private RowMappers() {
+    }
+}
@@ -4,9 +4,11 @@ import Model.User;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import utils.JDBC;
+import utils.PasswordHasher;
 
 import java.sql.*;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class creates the User database methods.
@@ -14,6 +16,48 @@ import java.time.LocalDateTime;
  * @author Mehdi Rahimi
  */
 public class UserDaoImpl {
+    /**
+     * Authenticates a user with one query: reads the user row by username and checks the password against its salted
+     * hash. A password still stored in plain text, or hashed with a lower work factor than configured, is replaced
+     * with a new hash after a successful check.
+     *
+     * @param userName The username entered by the user.
+     * @param password The password entered by the user.
+     * @return the authenticated User, or null if the username does not exist or the password does not match.
+     * @throws SQLException If an error occurs while querying the database.
+     */
+    public static User authenticate(String userName, String password) throws SQLException {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT * FROM users WHERE User_Name = ?")) {
+            ps.setString(1, userName);
+            User user;
+            try (ResultSet result = ps.executeQuery()) {
+                user = RowMappers.USER.mapFirst(result);
+            }
+            if (user == null) {
+                PasswordHasher.verifyUnknownUser(password);
+                return null;
+            }
+            if (!PasswordHasher.verify(password, user.getPassword())) {
+                return null;
+            }
+            if (PasswordHasher.needsRehash(user.getPassword())) {
+                String hash = PasswordHasher.hash(password);
+                try (PreparedStatement update = conn.prepareStatement(
+                        "UPDATE users SET Password = ? WHERE User_ID = ? AND Password = ?")) {
+                    update.setString(1, hash);
+                    update.setInt(2, user.getUserId());
+                    update.setString(3, user.getPassword());
+                    if (update.executeUpdate() > 0) {
+                        user.setPassword(hash);
+                        ReferenceDataCache.invalidateUsers();
+                    }
+                }
+            }
+            return user;
+        }
+    }
+
     /**
      * Validates a user's login credentials by checking if the provided username and password match
      * with any existing user's credentials in the database.
@@ -22,17 +66,12 @@ public class UserDaoImpl {
      * @param password The password entered by the user.
      * @return true if the username and password match with an existing user's credentials, false otherwise.
      * @throws SQLException If an error occurs while querying the database.
+     * @deprecated Use {@link #authenticate}, which also returns the User.
      */
+    @Deprecated
     public static boolean validateLogIn(String userName, String password) throws SQLException {
-        try (Connection conn = JDBC.getConnection();
-             PreparedStatement ps = conn.prepareStatement("SELECT * FROM Users WHERE User_Name = ? AND Password = ?")) {
-            ps.setString(1, userName);
-            ps.setString(2, password);
-            ResultSet resultSet = ps.executeQuery();
-
-            if (resultSet.next()) {
-                return true;
-            }
+        try {
+            return authenticate(userName, password) != null;
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -69,7 +108,10 @@ public class UserDaoImpl {
      * @param password The password to validate.
      * @return A boolean value.
      * @throws SQLException If an error occurs while querying the database.
+     * @deprecated Passwords are stored as salted hashes, which cannot be looked up by value; this only matches
+     * passwords still stored in plain text. Use {@link #authenticate}.
      */
+    @Deprecated
     public static boolean validatePassword(String password) throws SQLException {
         try (Connection conn = JDBC.getConnection();
              PreparedStatement ps = conn.prepareStatement("SELECT * FROM users WHERE Password = ?")) {
@@ -93,20 +135,11 @@ public class UserDaoImpl {
      */
     public static User getUser(String userName) throws SQLException, Exception {
         String sqlStatement = "SELECT * FROM users WHERE User_Name = ?";
-        try (PreparedStatement ps = JDBC.getConnection().prepareStatement(sqlStatement)) {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sqlStatement)) {
             ps.setString(1, userName);
-            ResultSet result = ps.executeQuery();
-
-            while (result.next()) {
-                int userid = result.getInt("User_ID");
-                String userNameG = result.getString("User_Name");
-                String password = result.getString("Password");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdateby = result.getString("Last_Updated_By");
-
-                return new User(userid, userNameG, password, createDate, createdBy, lastUpdate, lastUpdateby);
+            try (ResultSet result = ps.executeQuery()) {
+                return RowMappers.USER.mapFirst(result);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -115,27 +148,15 @@ public class UserDaoImpl {
     }
 
     /**
-     * This function returns an ObservableList of User objects that are created from the results of the SQL query.
+     * This function returns an ObservableList of all User objects, served from the {@link ReferenceDataCache}.
      *
      * @return A list of all users in the database.
      * @throws SQLException If an error occurs while querying the database.
      */
-    public static ObservableList<User> getAllUsers() throws SQLException, Exception {
+    public static ObservableList<User> getAllUsers() throws SQLException {
         ObservableList<User> allUsers = FXCollections.observableArrayList();
-        String sqlStatement = "SELECT * FROM Users";
-        try (PreparedStatement ps = JDBC.getConnection().prepareStatement(sqlStatement);
-             ResultSet result = ps.executeQuery()) {
-            while (result.next()) {
-                int userid = result.getInt("User_ID");
-                String userNameG = result.getString("User_Name");
-                String password = result.getString("Password");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdateby = result.getString("Last_Updated_By");
-                User userResult = new User(userid, userNameG, password, createDate, createdBy, lastUpdate, lastUpdateby);
-                allUsers.add(userResult);
-            }
+        try {
+            allUsers.addAll(ReferenceDataCache.getUsers());
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -143,33 +164,38 @@ public class UserDaoImpl {
     }
 
     /**
-     * This function takes in a userID and returns a User object if found in the database.
+     * This function takes in a userID and returns a User object from the {@link ReferenceDataCache}.
      *
      * @param userID The userID of the user you want to get.
      * @return A User object.
      * @throws SQLException If an error occurs while querying the database.
      */
     public static User getUserFromUserID(int userID) throws SQLException {
-        String sqlStatement = "SELECT * FROM users WHERE User_ID = ?";
-        try (PreparedStatement ps = JDBC.getConnection().prepareStatement(sqlStatement)) {
-            ps.setInt(1, userID);
-            ResultSet result = ps.executeQuery();
-            while (result.next()) {
-                int User_ID = result.getInt("User_ID");
-                String userName = result.getString("User_Name");
-                String password = result.getString("Password");
-                LocalDateTime createDate = result.getTimestamp("Create_Date").toLocalDateTime();
-                String createdBy = result.getString("Created_By");
-                LocalDateTime lastUpdate = result.getTimestamp("Last_Update").toLocalDateTime();
-                String lastUpdatedBy = result.getString("Last_Updated_By");
-                return new User(User_ID, userName, password, createDate, createdBy, lastUpdate, lastUpdatedBy);
-            }
+        try {
+            return ReferenceDataCache.getUser(userID);
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Reads all users from the database. Used by {@link ReferenceDataCache}.
+     *
+     * @return A list of all users in the database.
+     * @throws SQLException If an error occurs while querying the database.
+     */
+    static List<User> loadAllUsers() throws SQLException {
+        List<User> allUsers = new ArrayList<>();
+        String sqlStatement = "SELECT * FROM Users";
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sqlStatement);
+             ResultSet result = ps.executeQuery()) {
+            RowMappers.USER.mapAll(result, allUsers);
+        }
+        return allUsers;
+    }
+
     /**
      * This function takes in a userName and returns a User_ID if found in the database.
      *
@@ -180,7 +206,8 @@ public class UserDaoImpl {
     public static int getUserIDFromUserName(String userName) throws SQLException {
         int userId = 0;
         String sqlStatement = "SELECT User_ID FROM users WHERE User_Name = ?";
-        try (PreparedStatement ps = JDBC.getConnection().prepareStatement(sqlStatement)) {
+        try (Connection conn = JDBC.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sqlStatement)) {
             ps.setString(1, userName);
             ResultSet result = ps.executeQuery();
             while (result.next()) {
@@ -0,0 +1,37 @@
+package DAO;
+
+import Model.User;
+import javafx.collections.ObservableList;
+
+import java.sql.SQLException;
+
+/**
+ * This interface is the storage of users, implemented against MySQL by {@link JdbcRepository} and in process by
+ * {@link EmbeddedStore}; {@link Repositories} returns the one selected. The users returned are shared and must be
+ * treated as read-only.
+ */
+public interface UserRepository {
+    /**
+     * Checks a user name and password; a password stored in plain text or with a lower work factor than configured is
+     * replaced with a new hash after a successful check.
+     *
+     * @param userName the user name entered.
+     * @param password the password entered.
+     * @return the authenticated user, or null if the user name does not exist or the password does not match.
+     * @throws SQLException if the user cannot be read.
+     */
+    User authenticate(String userName, String password) throws SQLException;
+
+    /**
+     * @return every user.
+     * @throws SQLException if the users cannot be read.
+     */
+    ObservableList<User> getAllUsers() throws SQLException;
+
+    /**
+     * @param userId the ID of the user.
+     * @return the user, or null if there is none with that ID.
+     * @throws SQLException if the users cannot be read.
+     */
+    User getUserFromUserID(int userId) throws SQLException;
+}
@@ -65,6 +65,14 @@ public class Appointment {
      * The contact ID associated with the appointment.
      */
     private int contactId;
+    /**
+     * The ID of the series this appointment is an occurrence of, or 0 for a single appointment.
+     */
+    private int seriesId;
+    /**
+     * The version of the stored appointment, incremented by every update.
+     */
+    private int version;
 
     /**
      * This is the constructor for the Appointment class.
@@ -299,6 +307,41 @@ public class Appointment {
         contactId = ContactID;
     }
 
+    /**
+     * @return the series ID of the Appointment, or 0 if it is not an occurrence of a series
+     */
+    public int getSeriesId() {
+        return seriesId;
+    }
+
+    /**
+     * @param SeriesID Sets the series ID of the Appointment.
+     */
+    public void setSeriesId(int SeriesID) {
+        seriesId = SeriesID;
+    }
+
+    /**
+     * @return the version of the stored Appointment, incremented by every update
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param Version Sets the version of the stored Appointment.
+     */
+    public void setVersion(int Version) {
+        version = Version;
+    }
+
+    /**
+     * @return true if the Appointment is an occurrence of a series rather than a stored appointment
+     */
+    public boolean isOccurrence() {
+        return seriesId != 0;
+    }
+
     /**
      * @return the Appointment String type
      */
@@ -0,0 +1,274 @@
+package Model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a recurring appointment: the details shared by every occurrence, the first occurrence, and the
+ * {@link RecurrenceRule} the others follow. Occurrences are created as {@link Appointment} objects only for the window
+ * asked for, by {@link #expand}.
+ *
+ * @author Mehdi Rahimi
+ */
+public class AppointmentSeries {
+    /**
+     * The series ID.
+     */
+    private int seriesId;
+    /**
+     * The title of every occurrence.
+     */
+    private String title;
+    /**
+     * The description of every occurrence.
+     */
+    private String description;
+    /**
+     * The location of every occurrence.
+     */
+    private String location;
+    /**
+     * The type of every occurrence.
+     */
+    private String type;
+    /**
+     * The start of the first occurrence.
+     */
+    private LocalDateTime start;
+    /**
+     * The end of the first occurrence.
+     */
+    private LocalDateTime end;
+    /**
+     * How the series repeats.
+     */
+    private RecurrenceRule rule;
+    /**
+     * The date the series was created.
+     */
+    private LocalDateTime createDate;
+    /**
+     * The user who created the series.
+     */
+    private String createdBy;
+    /**
+     * The date the series was last updated.
+     */
+    private LocalDateTime lastUpdate;
+    /**
+     * The user who last updated the series.
+     */
+    private String lastUpdatedBy;
+    /**
+     * The customer ID.
+     */
+    private int customerId;
+    /**
+     * The user ID.
+     */
+    private int userId;
+    /**
+     * The contact ID.
+     */
+    private int contactId;
+
+    /**
+     * This is the constructor for the AppointmentSeries class.
+     *
+     * @param seriesId      The series ID, 0 for a series not yet stored.
+     * @param title         The title of every occurrence.
+     * @param description   The description of every occurrence.
+     * @param location      The location of every occurrence.
+     * @param type          The type of every occurrence.
+     * @param start         The start of the first occurrence.
+     * @param end           The end of the first occurrence.
+     * @param rule          How the series repeats.
+     * @param createDate    The date the series was created.
+     * @param createdBy     The user who created the series.
+     * @param lastUpdate    The date the series was last updated.
+     * @param lastUpdatedBy The user who last updated the series.
+     * @param customerId    The customer ID.
+     * @param userId        The user ID.
+     * @param contactId     The contact ID.
+     */
+    public AppointmentSeries(int seriesId, String title, String description, String location, String type,
+                             LocalDateTime start, LocalDateTime end, RecurrenceRule rule, LocalDateTime createDate,
+                             String createdBy, LocalDateTime lastUpdate, String lastUpdatedBy, int customerId,
+                             int userId, int contactId) {
+        this.seriesId = seriesId;
+        this.title = title;
+        this.description = description;
+        this.location = location;
+        this.type = type;
+        this.start = start;
+        this.end = end;
+        this.rule = rule;
+        this.createDate = createDate;
+        this.createdBy = createdBy;
+        this.lastUpdate = lastUpdate;
+        this.lastUpdatedBy = lastUpdatedBy;
+        this.customerId = customerId;
+        this.userId = userId;
+        this.contactId = contactId;
+    }
+
+    /**
+     * Creates the occurrences that overlap a time range, cancelled ones left out.
+     *
+     * @param from the start of the range.
+     * @param to   the end of the range, exclusive.
+     * @return the occurrences, in order, with appointment ID 0 and the series ID set.
+     */
+    public List<Appointment> expand(LocalDateTime from, LocalDateTime to) {
+        Duration length = getLength();
+        List<Appointment> occurrences = new ArrayList<>();
+        for (LocalDateTime occurrenceStart : rule.startsBetween(start, length, from, to)) {
+            Appointment occurrence = new Appointment(0, title, description, location, type, occurrenceStart,
+                    occurrenceStart.plus(length), createDate, createdBy, lastUpdate, lastUpdatedBy, customerId,
+                    userId, contactId);
+            occurrence.setSeriesId(seriesId);
+            occurrences.add(occurrence);
+        }
+        return occurrences;
+    }
+
+    /**
+     * Checks whether any occurrence, cancelled ones left out, overlaps a time range, without creating the occurrences.
+     *
+     * @param from the start of the range.
+     * @param to   the end of the range, exclusive.
+     * @return true if an occurrence overlaps the range.
+     */
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return rule.overlaps(start, getLength(), from, to);
+    }
+
+    /**
+     * @return the length of every occurrence.
+     */
+    public Duration getLength() {
+        return Duration.between(start, end);
+    }
+
+    /**
+     * @return the end of the last occurrence, or null if the series repeats indefinitely.
+     */
+    public LocalDateTime getLastEnd() {
+        LocalDateTime last = rule.lastOccurrence(start);
+        return last == null ? null : last.plus(getLength());
+    }
+
+    /**
+     * @return the series ID
+     */
+    public int getSeriesId() {
+        return seriesId;
+    }
+
+    /**
+     * @param seriesId Sets the series ID.
+     */
+    public void setSeriesId(int seriesId) {
+        this.seriesId = seriesId;
+    }
+
+    /**
+     * @return the title of every occurrence
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the description of every occurrence
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the location of every occurrence
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return the type of every occurrence
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the start of the first occurrence
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the first occurrence
+     */
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    /**
+     * @return how the series repeats
+     */
+    public RecurrenceRule getRule() {
+        return rule;
+    }
+
+    /**
+     * @return the date the series was created
+     */
+    public LocalDateTime getCreateDate() {
+        return createDate;
+    }
+
+    /**
+     * @return the user who created the series
+     */
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    /**
+     * @return the date the series was last updated
+     */
+    public LocalDateTime getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * @return the user who last updated the series
+     */
+    public String getLastUpdatedBy() {
+        return lastUpdatedBy;
+    }
+
+    /**
+     * @return the customer ID
+     */
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * @return the user ID
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the contact ID
+     */
+    public int getContactId() {
+        return contactId;
+    }
+}
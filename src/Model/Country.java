@@ -142,6 +142,14 @@ public class Country {
         this.lastUpdate = lastUpdate;
     }
 
+    /**
+     * Returns the name of the user who last updated the country.
+     * @return the name of the user who last updated the country.
+     */
+    public String getLastUpdatedBy() {
+        return lastUpdatedBy;
+    }
+
     /**
      * Sets the name of the user who last updated the country.
      * @param lastUpdatedBy the name of the user who last updated the country to set.
@@ -48,6 +48,10 @@ public class Customer {
      * The division ID.
      */
     private int divisionId;
+    /**
+     * The version of the stored customer, incremented by every update.
+     */
+    private int version;
 
     /**
      * This is the constructor for the Customer class.
@@ -96,6 +100,20 @@ public class Customer {
         this.customerId = customerID;
     }
 
+    /**
+     * @return the version of the stored Customer, incremented by every update.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param version Sets the version of the stored Customer.
+     */
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     /**
      * This function returns the customerName of the customer.
      *
@@ -0,0 +1,263 @@
+package Model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * This class describes how an appointment series repeats: every n days, weeks or months from its first occurrence,
+ * until a last start or for a number of occurrences, or indefinitely, skipping cancelled occurrences.<br>
+ * Occurrences are never listed in full. The index of the first occurrence of a window is computed from the distance
+ * to the window, so finding the occurrences in a window, or checking whether any overlaps a time range, only visits
+ * the occurrences in that window.
+ *
+ * @author Mehdi Rahimi
+ */
+public class RecurrenceRule {
+    /**
+     * How often a series repeats.
+     */
+    public enum Frequency {
+        /**
+         * Every n days.
+         */
+        DAILY,
+        /**
+         * Every n weeks.
+         */
+        WEEKLY,
+        /**
+         * Every n months, on the day of the month of the first occurrence, or the last day of shorter months.
+         */
+        MONTHLY
+    }
+
+    /**
+     * How often the series repeats.
+     */
+    private final Frequency frequency;
+    /**
+     * Every how many days, weeks or months the series repeats.
+     */
+    private final int interval;
+    /**
+     * The latest start of an occurrence, or null.
+     */
+    private final LocalDateTime until;
+    /**
+     * The number of occurrences, or null.
+     */
+    private final Integer count;
+    /**
+     * The starts of the cancelled occurrences.
+     */
+    private final NavigableSet<LocalDateTime> exceptions = new TreeSet<>();
+
+    /**
+     * This is the constructor for the RecurrenceRule class.
+     *
+     * @param frequency how often the series repeats.
+     * @param interval  every how many days, weeks or months the series repeats; at least 1.
+     * @param until     the latest start of an occurrence, or null.
+     * @param count     the number of occurrences, or null. With until also null the series repeats indefinitely.
+     */
+    public RecurrenceRule(Frequency frequency, int interval, LocalDateTime until, Integer count) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1");
+        }
+        if (count != null && count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.until = until;
+        this.count = count;
+    }
+
+    /**
+     * @return how often the series repeats.
+     */
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return every how many days, weeks or months the series repeats.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the latest start of an occurrence, or null.
+     */
+    public LocalDateTime getUntil() {
+        return until;
+    }
+
+    /**
+     * @return the number of occurrences, or null.
+     */
+    public Integer getCount() {
+        return count;
+    }
+
+    /**
+     * @return the starts of the cancelled occurrences, in order.
+     */
+    public NavigableSet<LocalDateTime> getExceptions() {
+        return Collections.unmodifiableNavigableSet(exceptions);
+    }
+
+    /**
+     * Cancels one occurrence.
+     *
+     * @param occurrenceStart the start of the occurrence.
+     */
+    public void addException(LocalDateTime occurrenceStart) {
+        exceptions.add(occurrenceStart);
+    }
+
+    /**
+     * @return true if the series has a last occurrence.
+     */
+    public boolean isBounded() {
+        return until != null || count != null;
+    }
+
+    /**
+     * Returns the start of an occurrence, whether or not it exists or was cancelled.
+     *
+     * @param first the start of the first occurrence.
+     * @param index the index of the occurrence, 0 for the first.
+     * @return the start of the occurrence.
+     */
+    public LocalDateTime occurrence(LocalDateTime first, long index) {
+        switch (frequency) {
+            case DAILY:
+                return first.plusDays(index * interval);
+            case WEEKLY:
+                return first.plusWeeks(index * interval);
+            default:
+                return first.plusMonths(index * interval);
+        }
+    }
+
+    /**
+     * Returns the start of the last occurrence, cancelled or not.
+     *
+     * @param first the start of the first occurrence.
+     * @return the start of the last occurrence, or null if the series repeats indefinitely.
+     */
+    public LocalDateTime lastOccurrence(LocalDateTime first) {
+        if (!isBounded()) {
+            return null;
+        }
+        long last = count == null ? Long.MAX_VALUE : count - 1;
+        if (until != null) {
+            long index = firstIndexAtOrAfter(first, until);
+            if (occurrence(first, index).isAfter(until)) {
+                index--;
+            }
+            last = Math.min(last, index);
+        }
+        return last < 0 ? null : occurrence(first, last);
+    }
+
+    /**
+     * Returns the starts of the occurrences, cancelled ones left out, that overlap a time range.
+     *
+     * @param first  the start of the first occurrence.
+     * @param length the length of each occurrence.
+     * @param from   the start of the range.
+     * @param to     the end of the range, exclusive.
+     * @return the starts of the overlapping occurrences, in order.
+     */
+    public List<LocalDateTime> startsBetween(LocalDateTime first, Duration length, LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime> starts = new ArrayList<>();
+        forEachOverlapping(first, length, from, to, starts);
+        return starts;
+    }
+
+    /**
+     * Checks whether any occurrence, cancelled ones left out, overlaps a time range.
+     *
+     * @param first  the start of the first occurrence.
+     * @param length the length of each occurrence.
+     * @param from   the start of the range.
+     * @param to     the end of the range, exclusive.
+     * @return true if an occurrence overlaps the range.
+     */
+    public boolean overlaps(LocalDateTime first, Duration length, LocalDateTime from, LocalDateTime to) {
+        return forEachOverlapping(first, length, from, to, null);
+    }
+
+    /**
+     * Walks the occurrences that overlap a time range, starting from the first one that can.
+     *
+     * @param first  the start of the first occurrence.
+     * @param length the length of each occurrence.
+     * @param from   the start of the range.
+     * @param to     the end of the range, exclusive.
+     * @param out    the list the starts are added to, or null to stop at the first one.
+     * @return true if an occurrence overlaps the range.
+     */
+    private boolean forEachOverlapping(LocalDateTime first, Duration length, LocalDateTime from, LocalDateTime to,
+                                       List<LocalDateTime> out) {
+        boolean found = false;
+        LocalDateTime earliest = from.minus(length);
+        for (long index = firstIndexAtOrAfter(first, earliest); ; index++) {
+            if (count != null && index >= count) {
+                break;
+            }
+            LocalDateTime start = occurrence(first, index);
+            if (!start.isBefore(to) || (until != null && start.isAfter(until))) {
+                break;
+            }
+            if (!start.plus(length).isAfter(from) || exceptions.contains(start)) {
+                continue;
+            }
+            found = true;
+            if (out == null) {
+                break;
+            }
+            out.add(start);
+        }
+        return found;
+    }
+
+    /**
+     * Computes the index of the first occurrence that starts at or after a time.
+     *
+     * @param first the start of the first occurrence.
+     * @param time  the time.
+     * @return the index, 0 if the time is before the first occurrence.
+     */
+    private long firstIndexAtOrAfter(LocalDateTime first, LocalDateTime time) {
+        if (!time.isAfter(first)) {
+            return 0;
+        }
+        long units;
+        switch (frequency) {
+            case DAILY:
+                units = ChronoUnit.DAYS.between(first, time);
+                break;
+            case WEEKLY:
+                units = ChronoUnit.WEEKS.between(first, time);
+                break;
+            default:
+                units = ChronoUnit.MONTHS.between(first, time);
+                break;
+        }
+        long index = Math.max(0, units / interval - 1);
+        while (occurrence(first, index).isBefore(time)) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,795 @@
+package utils;
+
+import DAO.AppointmentConflictIndex;
+import DAO.AppointmentRepository;
+import DAO.AppointmentSeriesDaoImpl;
+import DAO.Repositories;
+import Model.Appointment;
+import Model.Contact;
+import Model.User;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class imports appointments in bulk from a CSV or JSON file, e.g. the calendar of a new client.<br>
+ * A CSV file has a header row naming the columns; a JSON file holds an array of flat objects keyed the same way. The
+ * columns are those of the appointments table: Title, Description, Location, Type, Start, End, Customer_ID, User_ID
+ * and Contact_ID, in any order and case, with or without the underscores. Start and End are local times of the
+ * user's time zone, as yyyy-MM-dd HH:mm, with optional seconds and an optional T separator.<br>
+ * The whole file is validated before anything is written. Each row is checked on its own, for missing fields, unknown
+ * customers, users and contacts and business hours; then the overlaps are found for the whole file in one pass per
+ * customer: the customer's stored appointments and series occurrences in the file's time span are read once, sorted
+ * with the customer's rows, and swept in start order, so the check costs O(n log n) instead of one query per row.
+ * Within the file the earlier row wins an overlap. The valid rows are then inserted with
+ * {@link AppointmentRepository#addAppointments} in chunks of the system property {@code scheduler.import.chunkSize}
+ * rows (by default {@value #DEFAULT_CHUNK_SIZE}), one transaction per chunk; a chunk that fails is rolled back and
+ * reported, and the next chunk is still imported.
+ */
+public class AppointmentImporter {
+    /**
+     * The default number of rows inserted per transaction.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    /**
+     * The columns every row must have, normalized.
+     */
+    private static final List<String> COLUMNS = List.of("title", "description", "location", "type", "start", "end",
+            "customerid", "userid", "contactid");
+    /**
+     * The format of the Start and End columns.
+     */
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd[ ]['T']HH:mm[:ss]");
+    /**
+     * The user's time zone.
+     */
+    private static final ZoneId LOCAL_ZONE_ID = ZoneId.systemDefault();
+
+    /**
+     * An error in one row of an import.
+     */
+    public static class RowError {
+        /**
+         * The row number: the line the row starts on in a CSV file, or the position of the object in a JSON file.
+         */
+        private final int row;
+        /**
+         * What is wrong with the row.
+         */
+        private final String message;
+
+        /**
+         * @param row     the row number.
+         * @param message what is wrong with the row.
+         */
+        RowError(int row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        /**
+         * @return the row number: the line the row starts on in a CSV file, or the position of the object in a JSON
+         * file.
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * @return what is wrong with the row.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Row " + row + ": " + message;
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class Report {
+        /**
+         * The number of rows read.
+         */
+        private final int rowCount;
+        /**
+         * The number of appointments added.
+         */
+        private final int importedCount;
+        /**
+         * The rows that were not imported, in row order.
+         */
+        private final List<RowError> errors;
+
+        /**
+         * @param rowCount      the number of rows read.
+         * @param importedCount the number of appointments added.
+         * @param errors        the rows that were not imported.
+         */
+        Report(int rowCount, int importedCount, List<RowError> errors) {
+            this.rowCount = rowCount;
+            this.importedCount = importedCount;
+            this.errors = errors;
+        }
+
+        /**
+         * @return the number of rows read.
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return the number of appointments added.
+         */
+        public int getImportedCount() {
+            return importedCount;
+        }
+
+        /**
+         * @return the rows that were not imported, in row order.
+         */
+        public List<RowError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+    }
+
+    /**
+     * A row read from a file, by normalized column name.
+     */
+    private static class Row {
+        /**
+         * The row number.
+         */
+        final int number;
+        /**
+         * The values, by normalized column name.
+         */
+        final Map<String, String> values;
+
+        /**
+         * @param number the row number.
+         * @param values the values, by normalized column name.
+         */
+        Row(int number, Map<String, String> values) {
+            this.number = number;
+            this.values = values;
+        }
+    }
+
+    /**
+     * A row that passed the checks on its own, with its times as keys for the sweep.
+     */
+    private static class Candidate {
+        /**
+         * The row number.
+         */
+        final int row;
+        /**
+         * The appointment to add.
+         */
+        final Appointment appointment;
+        /**
+         * The start, as a time key.
+         */
+        final long start;
+        /**
+         * The end, as a time key.
+         */
+        final long end;
+
+        /**
+         * @param row         the row number.
+         * @param appointment the appointment to add.
+         */
+        Candidate(int row, Appointment appointment) {
+            this.row = row;
+            this.appointment = appointment;
+            this.start = toKey(appointment.getStart());
+            this.end = toKey(appointment.getEnd());
+        }
+    }
+
+    /**
+     * Imports the appointments of a file, read as JSON if its name ends with .json and as CSV otherwise.
+     *
+     * @param file     the file.
+     * @param userName the name of the user importing, recorded as creator and last updater.
+     * @return the number of rows read and imported, and the errors of the rows not imported.
+     * @throws IOException  if the file cannot be read.
+     * @throws SQLException if the customers, users, contacts or existing appointments cannot be read.
+     */
+    public static Report importFile(Path file, String userName) throws IOException, SQLException {
+        List<RowError> errors = new ArrayList<>();
+        List<Row> rows;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                rows = parseJson(reader, errors);
+            } else {
+                rows = parseCsv(reader, errors);
+            }
+        }
+        return importRows(rows, userName, errors);
+    }
+
+    /**
+     * Validates the rows, then inserts the valid ones in chunks.
+     *
+     * @param rows     the rows read.
+     * @param userName the name of the user importing.
+     * @param errors   the errors found while reading; the others are added.
+     * @return the report.
+     * @throws SQLException if the customers, users, contacts or existing appointments cannot be read.
+     */
+    private static Report importRows(List<Row> rows, String userName, List<RowError> errors) throws SQLException {
+        int rowCount = rows.size() + errors.size();
+        Set<Integer> customerIds = Repositories.customers().getCustomerIds();
+        Set<Integer> userIds = new HashSet<>();
+        for (User user : Repositories.users().getAllUsers()) {
+            userIds.add(user.getUserId());
+        }
+        Set<Integer> contactIds = new HashSet<>();
+        for (Contact contact : Repositories.contacts().getAllContacts()) {
+            contactIds.add(contact.getContactId());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Candidate> candidates = new ArrayList<>();
+        for (Row row : rows) {
+            Appointment appointment = toAppointment(row, customerIds, userIds, contactIds, userName, now, errors);
+            if (appointment != null) {
+                candidates.add(new Candidate(row.number, appointment));
+            }
+        }
+        List<Candidate> accepted = checkOverlaps(candidates, errors);
+        accepted.sort(Comparator.comparingInt(candidate -> candidate.row));
+
+        int chunkSize = Math.max(1, Integer.getInteger("scheduler.import.chunkSize", DEFAULT_CHUNK_SIZE));
+        int imported = 0;
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Candidate> chunk = accepted.subList(from, Math.min(accepted.size(), from + chunkSize));
+            List<Appointment> appointments = new ArrayList<>(chunk.size());
+            for (Candidate candidate : chunk) {
+                appointments.add(candidate.appointment);
+            }
+            try {
+                Repositories.appointments().addAppointments(appointments);
+                imported += appointments.size();
+            } catch (SQLException e) {
+                for (Candidate candidate : chunk) {
+                    errors.add(new RowError(candidate.row, "Not imported, its chunk failed: " + e.getMessage()));
+                }
+            }
+        }
+        errors.sort(Comparator.comparingInt(RowError::getRow));
+        return new Report(rowCount, imported, errors);
+    }
+
+    /**
+     * Checks one row on its own and creates its appointment.
+     *
+     * @param row         the row.
+     * @param customerIds the IDs of the customers.
+     * @param userIds     the IDs of the users.
+     * @param contactIds  the IDs of the contacts.
+     * @param userName    the name of the user importing.
+     * @param now         the creation time.
+     * @param errors      the errors, added to if the row is invalid.
+     * @return the appointment, or null if the row is invalid.
+     */
+    private static Appointment toAppointment(Row row, Set<Integer> customerIds, Set<Integer> userIds,
+                                             Set<Integer> contactIds, String userName, LocalDateTime now,
+                                             List<RowError> errors) {
+        for (String column : COLUMNS) {
+            String value = row.values.get(column);
+            if (value == null || value.isBlank()) {
+                errors.add(new RowError(row.number, "Missing " + column));
+                return null;
+            }
+        }
+        LocalDateTime start;
+        LocalDateTime end;
+        int customerId;
+        int userId;
+        int contactId;
+        try {
+            start = LocalDateTime.parse(row.values.get("start").trim(), DATE_TIME_FORMAT);
+            end = LocalDateTime.parse(row.values.get("end").trim(), DATE_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            errors.add(new RowError(row.number, "Invalid date and time: " + e.getParsedString()));
+            return null;
+        }
+        try {
+            customerId = Integer.parseInt(row.values.get("customerid").trim());
+            userId = Integer.parseInt(row.values.get("userid").trim());
+            contactId = Integer.parseInt(row.values.get("contactid").trim());
+        } catch (NumberFormatException e) {
+            errors.add(new RowError(row.number, "Invalid ID: " + e.getMessage()));
+            return null;
+        }
+        String problem = null;
+        if (!customerIds.contains(customerId)) {
+            problem = "Unknown customer " + customerId;
+        } else if (!userIds.contains(userId)) {
+            problem = "Unknown user " + userId;
+        } else if (!contactIds.contains(contactId)) {
+            problem = "Unknown contact " + contactId;
+        } else if (!end.isAfter(start)) {
+            problem = "The end is not after the start";
+        } else if (!isDuringBusinessHours(start, end)) {
+            problem = "Outside business hours, " + FreeSlotFinder.OPEN + " to " + FreeSlotFinder.CLOSE + " Eastern";
+        }
+        if (problem != null) {
+            errors.add(new RowError(row.number, problem));
+            return null;
+        }
+        return new Appointment(0, row.values.get("title").trim(), row.values.get("description").trim(),
+                row.values.get("location").trim(), row.values.get("type").trim(), start, end, now, userName, now,
+                userName, customerId, userId, contactId);
+    }
+
+    /**
+     * @param start the start, in the user's time zone.
+     * @param end   the end, in the user's time zone.
+     * @return true if both fall within the business hours of the same business day.
+     */
+    private static boolean isDuringBusinessHours(LocalDateTime start, LocalDateTime end) {
+        ZonedDateTime businessStart = start.atZone(LOCAL_ZONE_ID).withZoneSameInstant(FreeSlotFinder.BUSINESS_ZONE);
+        ZonedDateTime businessEnd = end.atZone(LOCAL_ZONE_ID).withZoneSameInstant(FreeSlotFinder.BUSINESS_ZONE);
+        return businessStart.toLocalDate().equals(businessEnd.toLocalDate())
+                && !businessStart.toLocalTime().isBefore(FreeSlotFinder.OPEN)
+                && !businessEnd.toLocalTime().isAfter(FreeSlotFinder.CLOSE);
+    }
+
+    /**
+     * Finds the rows that overlap a stored appointment or series occurrence of their customer, or an earlier row of
+     * the file, in one sweep per customer.
+     *
+     * @param candidates the rows that passed the checks on their own.
+     * @param errors     the errors, added to for each overlapping row.
+     * @return the rows that overlap nothing.
+     * @throws SQLException if the existing appointments cannot be read.
+     */
+    private static List<Candidate> checkOverlaps(List<Candidate> candidates, List<RowError> errors) throws SQLException {
+        List<Candidate> accepted = new ArrayList<>(candidates.size());
+        if (candidates.isEmpty()) {
+            return accepted;
+        }
+        LocalDateTime from = candidates.get(0).appointment.getStart();
+        LocalDateTime to = candidates.get(0).appointment.getEnd();
+        Map<Integer, List<Candidate>> byCustomer = new HashMap<>();
+        for (Candidate candidate : candidates) {
+            byCustomer.computeIfAbsent(candidate.appointment.getCustomerId(), id -> new ArrayList<>()).add(candidate);
+            if (candidate.appointment.getStart().isBefore(from)) {
+                from = candidate.appointment.getStart();
+            }
+            if (candidate.appointment.getEnd().isAfter(to)) {
+                to = candidate.appointment.getEnd();
+            }
+        }
+        Map<Integer, List<Appointment>> occurrences = new HashMap<>();
+        for (Appointment occurrence : AppointmentSeriesDaoImpl.getOccurrencesBetween(from, to)) {
+            occurrences.computeIfAbsent(occurrence.getCustomerId(), id -> new ArrayList<>()).add(occurrence);
+        }
+        for (Map.Entry<Integer, List<Candidate>> entry : byCustomer.entrySet()) {
+            List<Appointment> existing = new ArrayList<>(
+                    AppointmentConflictIndex.getCustomerAppointments(entry.getKey(), from, to));
+            existing.addAll(occurrences.getOrDefault(entry.getKey(), Collections.emptyList()));
+            sweep(entry.getValue(), existing, accepted, errors);
+        }
+        return accepted;
+    }
+
+    /**
+     * Sweeps one customer's rows against the customer's existing appointments, then against each other. The existing
+     * appointments are sorted by start with a running maximum of their ends, so whether a row overlaps any of them is
+     * a binary search: it does if one of those that start before its end ends after its start. The rows left are
+     * swept in start order; a row that starts before the last accepted row ends is rejected.
+     *
+     * @param rows     the customer's rows.
+     * @param existing the customer's stored appointments and series occurrences, in any order.
+     * @param accepted the rows that overlap nothing, added to.
+     * @param errors   the errors, added to for each overlapping row.
+     */
+    private static void sweep(List<Candidate> rows, List<Appointment> existing, List<Candidate> accepted,
+                              List<RowError> errors) {
+        existing.sort(Comparator.comparing(Appointment::getStart));
+        long[] starts = new long[existing.size()];
+        long[] maxEnds = new long[existing.size()];
+        int[] maxEndAt = new int[existing.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = toKey(existing.get(i).getStart());
+            long end = toKey(existing.get(i).getEnd());
+            if (i > 0 && maxEnds[i - 1] >= end) {
+                maxEnds[i] = maxEnds[i - 1];
+                maxEndAt[i] = maxEndAt[i - 1];
+            } else {
+                maxEnds[i] = end;
+                maxEndAt[i] = i;
+            }
+        }
+        rows.sort(Comparator.<Candidate>comparingLong(candidate -> candidate.start)
+                .thenComparingInt(candidate -> candidate.row));
+        Candidate holder = null;
+        for (Candidate row : rows) {
+            int before = countStartingBefore(starts, row.end);
+            if (before > 0 && maxEnds[before - 1] > row.start) {
+                errors.add(new RowError(row.row, "Overlaps " + describe(existing.get(maxEndAt[before - 1]))));
+            } else if (holder != null && row.start < holder.end) {
+                errors.add(new RowError(row.row, "Overlaps row " + holder.row));
+            } else {
+                accepted.add(row);
+                holder = row;
+            }
+        }
+    }
+
+    /**
+     * @param appointment an existing appointment or series occurrence.
+     * @return a description of it for an error message.
+     */
+    private static String describe(Appointment appointment) {
+        if (appointment.isOccurrence()) {
+            return "an occurrence of series " + appointment.getSeriesId() + " on " + appointment.getStart();
+        }
+        return "appointment " + appointment.getAppointmentId() + " on " + appointment.getStart();
+    }
+
+    /**
+     * @param starts sorted time keys.
+     * @param key    a time key.
+     * @return the number of keys less than the key.
+     */
+    private static int countStartingBefore(long[] starts, long key) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reads CSV rows as described in RFC 4180: fields separated by commas, optionally quoted, with doubled quotes
+     * inside quoted fields, which may also span lines. The first row names the columns; blank lines are skipped.
+     *
+     * @param reader the CSV text.
+     * @param errors the errors, added to for rows with the wrong number of fields.
+     * @return the rows, numbered by the line they start on.
+     * @throws IOException if the text cannot be read.
+     */
+    private static List<Row> parseCsv(Reader reader, List<RowError> errors) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        List<String> header = null;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        int line = 1;
+        int rowLine = 1;
+        int c = reader.read();
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    errors.add(new RowError(rowLine, "Unterminated quoted field"));
+                    break;
+                }
+                if (c == '"') {
+                    c = reader.read();
+                    if (c == '"') {
+                        field.append('"');
+                        c = reader.read();
+                    } else {
+                        quoted = false;
+                    }
+                    continue;
+                }
+                if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+                fieldStarted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStarted = true;
+            } else if (c == '\n' || c < 0) {
+                if (fieldStarted || field.length() > 0) {
+                    fields.add(field.toString());
+                    if (header == null) {
+                        header = new ArrayList<>();
+                        for (String name : fields) {
+                            header.add(normalize(name));
+                        }
+                    } else if (fields.size() != header.size()) {
+                        errors.add(new RowError(rowLine, "Expected " + header.size() + " fields, found " + fields.size()));
+                    } else {
+                        Map<String, String> values = new HashMap<>();
+                        for (int i = 0; i < fields.size(); i++) {
+                            values.put(header.get(i), fields.get(i));
+                        }
+                        rows.add(new Row(rowLine, values));
+                    }
+                }
+                if (c < 0) {
+                    break;
+                }
+                fields.clear();
+                field.setLength(0);
+                fieldStarted = false;
+                line++;
+                rowLine = line;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a JSON array of flat objects whose values are strings, numbers, booleans or null.
+     *
+     * @param reader the JSON text.
+     * @param errors the errors, added to for objects with nested values.
+     * @return the rows, numbered by their position in the array from 1.
+     * @throws IOException if the text cannot be read or is not such an array.
+     */
+    private static List<Row> parseJson(Reader reader, List<RowError> errors) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        List<Row> rows = new ArrayList<>();
+        json.expect('[');
+        if (json.peek() == ']') {
+            json.next();
+            return rows;
+        }
+        int number = 0;
+        do {
+            number++;
+            json.expect('{');
+            Map<String, String> values = new HashMap<>();
+            boolean nested = false;
+            if (json.peek() != '}') {
+                do {
+                    String name = json.readString();
+                    json.expect(':');
+                    int next = json.peek();
+                    if (next == '{' || next == '[') {
+                        nested = true;
+                        json.skipValue();
+                    } else {
+                        values.put(normalize(name), json.readScalar());
+                    }
+                } while (json.consumeIf(','));
+            }
+            json.expect('}');
+            if (nested) {
+                errors.add(new RowError(number, "Nested values are not supported"));
+            } else {
+                rows.add(new Row(number, values));
+            }
+        } while (json.consumeIf(','));
+        json.expect(']');
+        return rows;
+    }
+
+    /**
+     * @param name a column name.
+     * @return the name in lower case without underscores, spaces or a byte order mark.
+     */
+    private static String normalize(String name) {
+        return name.replace("\uFEFF", "").replace("_", "").replace(" ", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Converts a local date and time into a key, the way the {@link AppointmentConflictIndex} does.
+     *
+     * @param dateTime the date and time in the user's time zone.
+     * @return the number of seconds since the epoch, reading the date and time as UTC.
+     */
+    private static long toKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * A minimal streaming reader of the JSON the importer accepts.
+     */
+    private static class JsonReader {
+        /**
+         * The JSON text.
+         */
+        private final Reader reader;
+        /**
+         * The character read ahead, or -2 if none is.
+         */
+        private int lookahead = -2;
+
+        /**
+         * @param reader the JSON text.
+         */
+        JsonReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the next character that is not white space, without consuming it; -1 at the end.
+         * @throws IOException if the text cannot be read.
+         */
+        int peek() throws IOException {
+            if (lookahead == -2) {
+                do {
+                    lookahead = reader.read();
+                } while (lookahead == ' ' || lookahead == '\t' || lookahead == '\n' || lookahead == '\r'
+                        || lookahead == '\uFEFF');
+            }
+            return lookahead;
+        }
+
+        /**
+         * @return the next character that is not white space; -1 at the end.
+         * @throws IOException if the text cannot be read.
+         */
+        int next() throws IOException {
+            int c = peek();
+            lookahead = -2;
+            return c;
+        }
+
+        /**
+         * @param expected the character expected next.
+         * @throws IOException if the text cannot be read or another character comes next.
+         */
+        void expect(char expected) throws IOException {
+            int c = next();
+            if (c != expected) {
+                throw new IOException("Invalid JSON: expected '" + expected + "' but found "
+                        + (c < 0 ? "the end" : "'" + (char) c + "'"));
+            }
+        }
+
+        /**
+         * @param c a character.
+         * @return true if it came next and was consumed.
+         * @throws IOException if the text cannot be read.
+         */
+        boolean consumeIf(char c) throws IOException {
+            if (peek() == c) {
+                next();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the string that comes next, unescaped.
+         * @throws IOException if the text cannot be read or no string comes next.
+         */
+        String readString() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                int c = reader.read();
+                if (c < 0) {
+                    throw new IOException("Invalid JSON: unterminated string");
+                }
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    c = reader.read();
+                    switch (c) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            if (reader.read(hex) != 4) {
+                                throw new IOException("Invalid JSON: bad unicode escape");
+                            }
+                            try {
+                                value.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw new IOException("Invalid JSON: bad unicode escape", e);
+                            }
+                            break;
+                        default:
+                            if (c < 0) {
+                                throw new IOException("Invalid JSON: unterminated string");
+                            }
+                            value.append((char) c);
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            }
+        }
+
+        /**
+         * @return the string, number or boolean that comes next as text, or null for null.
+         * @throws IOException if the text cannot be read or no such value comes next.
+         */
+        String readScalar() throws IOException {
+            if (peek() == '"') {
+                return readString();
+            }
+            StringBuilder value = new StringBuilder();
+            int c = next();
+            while (c >= 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                value.append((char) c);
+                c = reader.read();
+            }
+            lookahead = Character.isWhitespace(c) ? -2 : c;
+            String text = value.toString();
+            if (text.isEmpty()) {
+                throw new IOException("Invalid JSON: expected a value");
+            }
+            return text.equals("null") ? null : text;
+        }
+
+        /**
+         * Skips the object or array that comes next.
+         *
+         * @throws IOException if the text cannot be read or ends inside the value.
+         */
+        void skipValue() throws IOException {
+            int depth = 0;
+            do {
+                int c = peek();
+                if (c < 0) {
+                    throw new IOException("Invalid JSON: unexpected end");
+                }
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                next();
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class appends lines to an audit log file without blocking the caller. {@link #append} only adds the line to a
+ * lock-free queue; a background thread drains the queue and writes every queued line with a single write to one
+ * FileChannel that stays open (group commit), so a burst of lines costs one write instead of an open, a write and a
+ * close per line.<br>
+ * How often the file is forced to disk is set by the {@link FsyncPolicy}. The file is rotated, i.e. renamed with a
+ * timestamp suffix and started again, when it would grow past a maximum size or is older than a maximum age; a single
+ * group commit is never split across two files. {@link #closeAll()} writes every queued line and closes the file; it is called when the application exits.
+ */
+public class AuditLogWriter {
+    /**
+     * The logger used to report write errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(AuditLogWriter.class.getName());
+    /**
+     * The file of the login activity log.
+     */
+    private static final String LOGIN_ACTIVITY_FILE = "login_activity.txt";
+    /**
+     * The size at which the login activity log is rotated.
+     */
+    private static final long LOGIN_ACTIVITY_MAX_BYTES = 10L * 1024 * 1024;
+    /**
+     * The age at which the login activity log is rotated.
+     */
+    private static final long LOGIN_ACTIVITY_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    /**
+     * The longest time a queued line waits before it is written.
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    /**
+     * The suffix added to the name of a rotated file.
+     */
+    private static final DateTimeFormatter ROTATION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * The login activity log, created when first used.
+     */
+    private static AuditLogWriter loginActivity;
+
+    /**
+     * When the file is forced to disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * After every group commit; no written line is lost if the machine crashes.
+         */
+        ALWAYS,
+        /**
+         * At most once per flush interval; a crash can lose the lines of the last interval.
+         */
+        INTERVAL,
+        /**
+         * Never; the operating system decides when to write the file to disk.
+         */
+        NEVER
+    }
+
+    /**
+     * The file being written.
+     */
+    private final Path file;
+    /**
+     * When the file is forced to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+    /**
+     * The size at which the file is rotated.
+     */
+    private final long maxBytes;
+    /**
+     * The age at which the file is rotated.
+     */
+    private final long maxAgeMillis;
+    /**
+     * The lines waiting to be written.
+     */
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of lines appended.
+     */
+    private final AtomicLong appended = new AtomicLong();
+    /**
+     * The number of lines written, or dropped after a write error.
+     */
+    private final AtomicLong written = new AtomicLong();
+    /**
+     * The number of group commits.
+     */
+    private final AtomicLong commits = new AtomicLong();
+    /**
+     * The background writer thread.
+     */
+    private final Thread writer;
+    /**
+     * The open file; only used by the writer thread.
+     */
+    private FileChannel channel;
+    /**
+     * When the open file was created, in System.currentTimeMillis() time.
+     */
+    private long openedAt;
+    /**
+     * When the file was last forced to disk, in System.nanoTime() time.
+     */
+    private long lastFsync = System.nanoTime();
+    /**
+     * True if lines were written since the file was last forced to disk.
+     */
+    private boolean dirty;
+    /**
+     * Set by {@link #close()} to stop the writer thread once the queue is empty.
+     */
+    private volatile boolean closing;
+
+    /**
+     * This is the constructor for the AuditLogWriter class. It starts the writer thread.
+     *
+     * @param file         the file to append to.
+     * @param fsyncPolicy  when the file is forced to disk.
+     * @param maxBytes     the size at which the file is rotated.
+     * @param maxAgeMillis the age at which the file is rotated.
+     */
+    public AuditLogWriter(Path file, FsyncPolicy fsyncPolicy, long maxBytes, long maxAgeMillis) {
+        this.file = file;
+        this.fsyncPolicy = fsyncPolicy;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        writer = new Thread(this::run, "audit-log-" + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the login activity log, creating it on first use. The log is closed by {@link #closeAll()}, which is
+     * also registered as a shutdown hook so that lines are not lost when the application calls System.exit.
+     *
+     * @return the login activity log.
+     */
+    public static synchronized AuditLogWriter loginActivity() {
+        if (loginActivity == null) {
+            loginActivity = new AuditLogWriter(Paths.get(LOGIN_ACTIVITY_FILE), FsyncPolicy.INTERVAL,
+                    LOGIN_ACTIVITY_MAX_BYTES, LOGIN_ACTIVITY_MAX_AGE_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(AuditLogWriter::closeAll, "audit-log-shutdown"));
+        }
+        return loginActivity;
+    }
+
+    /**
+     * Writes every queued line and closes the login activity log if it was opened.
+     */
+    public static synchronized void closeAll() {
+        if (loginActivity != null) {
+            loginActivity.close();
+        }
+    }
+
+    /**
+     * Queues a line to be appended to the file. Returns immediately.
+     *
+     * @param line the line, without a line separator.
+     */
+    public void append(String line) {
+        if (closing) {
+            LOGGER.warning("Audit log " + file + " is closed, dropping: " + line);
+            return;
+        }
+        queue.offer(line);
+        appended.incrementAndGet();
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until every line appended so far has been written.
+     *
+     * @param timeoutMillis the longest time to wait.
+     * @return true if the lines were written in time.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = appended.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        LockSupport.unpark(writer);
+        while (written.get() < target) {
+            if (System.nanoTime() >= deadline || !writer.isAlive()) {
+                return written.get() >= target;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Writes every queued line, forces the file to disk and closes it. Lines appended afterwards are dropped.
+     */
+    public void close() {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of lines appended and not yet written.
+     */
+    public long getPendingCount() {
+        return appended.get() - written.get();
+    }
+
+    /**
+     * @return the number of group commits, i.e. writes to the file.
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * The writer thread: waits for lines, then writes everything queued in one go.
+     */
+    private void run() {
+        try {
+            while (true) {
+                if (queue.isEmpty()) {
+                    if (closing) {
+                        break;
+                    }
+                    if (dirty && fsyncPolicy == FsyncPolicy.INTERVAL) {
+                        fsync();
+                    }
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS));
+                    continue;
+                }
+                commit();
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Drains the queue and writes the drained lines with one write, rotating the file first if needed.
+     */
+    private void commit() {
+        StringBuilder batch = new StringBuilder();
+        int lines = 0;
+        String line;
+        while ((line = queue.poll()) != null) {
+            batch.append(line).append(System.lineSeparator());
+            lines++;
+        }
+        ByteBuffer buffer = Charset.defaultCharset().encode(batch.toString());
+        try {
+            openOrRotate(buffer.remaining());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            commits.incrementAndGet();
+            dirty = true;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS || (fsyncPolicy == FsyncPolicy.INTERVAL
+                    && System.nanoTime() - lastFsync >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS))) {
+                fsync();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error writing " + lines + " lines to " + file, e);
+            closeChannel();
+        } finally {
+            written.addAndGet(lines);
+        }
+    }
+
+    /**
+     * Opens the file if it is not open, and rotates it if the next write would make it too large or it is too old.
+     *
+     * @param nextWriteBytes the size of the next write.
+     * @throws IOException if the file cannot be opened or renamed.
+     */
+    private void openOrRotate(int nextWriteBytes) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        long size = channel.size();
+        boolean tooLarge = size > 0 && size + nextWriteBytes > maxBytes;
+        boolean tooOld = size > 0 && System.currentTimeMillis() - openedAt > maxAgeMillis;
+        if (tooLarge || tooOld) {
+            closeChannel();
+            Files.move(file, rotatedName(), StandardCopyOption.ATOMIC_MOVE);
+            open();
+        }
+    }
+
+    /**
+     * Opens the file for appending, creating it if needed, and records when it was started.
+     *
+     * @throws IOException if the file cannot be opened.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        openedAt = channel.size() == 0 ? System.currentTimeMillis()
+                : Files.readAttributes(file, BasicFileAttributes.class).creationTime().toMillis();
+    }
+
+    /**
+     * @return the name the current file is renamed to when it is rotated, e.g. login_activity-20240101-120000.txt.
+     */
+    private Path rotatedName() {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String suffix = "-" + LocalDateTime.now().format(ROTATION_SUFFIX);
+        String rotated = dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot);
+        return file.resolveSibling(rotated);
+    }
+
+    /**
+     * Forces the open file to disk.
+     */
+    private void fsync() {
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+            dirty = false;
+            lastFsync = System.nanoTime();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error forcing " + file + " to disk", e);
+        }
+    }
+
+    /**
+     * Forces the open file to disk, unless the policy is NEVER, and closes it.
+     */
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error closing " + file, e);
+        } finally {
+            channel = null;
+            dirty = false;
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package utils;
+
+import DAO.AppointmentChangeBus;
+import DAO.AppointmentChangeSet;
+import DAO.AppointmentConflictIndex;
+import DAO.AppointmentTypeRollup;
+import DAO.ChangeFeedDaoImpl;
+import DAO.Repositories;
+import Model.Appointment;
+import Model.Customer;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class shows the logged in user the appointments and customers other users change, without reading whole
+ * lists again. A background thread asks {@link ChangeFeedDaoImpl} for the rows changed after a watermark, one query per
+ * tick, and hands them on: appointments to the conflict index, the reminders and, as one {@link AppointmentChangeSet},
+ * to the screens on the {@link AppointmentChangeBus}; customers to the listeners subscribed here.<br>
+ * The interval adapts: it is {@code scheduler.changes.minSeconds} (by default {@value #DEFAULT_MIN_SECONDS}) after a
+ * tick that found changes and doubles with each idle tick up to {@code scheduler.changes.maxSeconds} (by default
+ * {@value #DEFAULT_MAX_SECONDS}), so an idle client costs the database one indexed query every half minute.<br>
+ * Last_Update is written from each client's clock and stored to the second, so a row can be stored with a time before
+ * the watermark of a client that polled after it. Each poll therefore reads back {@code scheduler.changes.overlapSeconds}
+ * (by default {@value #DEFAULT_OVERLAP_SECONDS}) before the watermark, and the Version of every row read in that
+ * window is remembered so a row is only handed on once per change, however many changes fall in the same second.
+ * Tombstone IDs are assigned when a delete runs, not when it commits, so the last {@value #TOMBSTONE_LOOKBACK} are read
+ * again for the same reason. The appointments this client writes are published by the DAOs already; their echoes in
+ * the feed are skipped.<br>
+ * About once a minute the poller reports its tombstone watermark with {@link ChangeFeedDaoImpl#keepAlive}, which
+ * deletes the tombstones no live client will read again. A client that has not reported for
+ * {@code scheduler.changes.clientTimeoutSeconds} (by default {@value #DEFAULT_CLIENT_TIMEOUT_SECONDS}) may have missed
+ * some, so when it reports again it drops the conflict index and the rollup, which are then read again.
+ */
+public class ChangePoller {
+    /**
+     * The logger used to report errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ChangePoller.class.getName());
+    /**
+     * The default shortest interval between polls, in seconds.
+     */
+    public static final int DEFAULT_MIN_SECONDS = 2;
+    /**
+     * The default longest interval between polls, in seconds.
+     */
+    public static final int DEFAULT_MAX_SECONDS = 30;
+    /**
+     * The default number of seconds read back before the watermarks.
+     */
+    public static final int DEFAULT_OVERLAP_SECONDS = 30;
+    /**
+     * The default number of seconds after which a client that has not reported its watermark is no longer live.
+     */
+    public static final int DEFAULT_CLIENT_TIMEOUT_SECONDS = 3600;
+    /**
+     * The number of tombstone IDs read back before the tombstone watermark.
+     */
+    private static final long TOMBSTONE_LOOKBACK = 256;
+    /**
+     * The interval between reports of the tombstone watermark, in nanoseconds.
+     */
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * The only instance.
+     */
+    private static final ChangePoller instance = new ChangePoller(
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("scheduler.changes.minSeconds", DEFAULT_MIN_SECONDS)),
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("scheduler.changes.maxSeconds", DEFAULT_MAX_SECONDS)),
+            Duration.ofSeconds(Integer.getInteger("scheduler.changes.overlapSeconds", DEFAULT_OVERLAP_SECONDS)),
+            Integer.getInteger("scheduler.changes.clientTimeoutSeconds", DEFAULT_CLIENT_TIMEOUT_SECONDS));
+
+    /**
+     * The shortest interval between polls, in milliseconds.
+     */
+    private final long minMillis;
+    /**
+     * The longest interval between polls, in milliseconds.
+     */
+    private final long maxMillis;
+    /**
+     * How far before the watermarks each poll reads.
+     */
+    private final Duration overlap;
+    /**
+     * How long a client that does not report its watermark stays live, in seconds.
+     */
+    private final int clientTimeoutSeconds;
+    /**
+     * The listeners to customer changes, held weakly like those of the {@link AppointmentChangeBus}.
+     */
+    private final List<WeakReference<BiConsumer<List<Customer>, Set<Integer>>>> customerListeners =
+            new CopyOnWriteArrayList<>();
+    /**
+     * Records the appointments this client writes, so their echoes in the feed are skipped.
+     */
+    private final Consumer<AppointmentChangeSet> localChanges = this::recordLocalChanges;
+    /**
+     * The latest Last_Update read from the appointments.
+     */
+    private LocalDateTime appointmentsWatermark;
+    /**
+     * The latest Last_Update read from the customers.
+     */
+    private LocalDateTime customersWatermark;
+    /**
+     * The latest tombstone ID read.
+     */
+    private long tombstoneWatermark;
+    /**
+     * The version of each appointment read or written within the overlap, by appointment ID.
+     */
+    private final Map<Integer, Seen> appointmentVersions = new HashMap<>();
+    /**
+     * The version of each customer read within the overlap, by customer ID.
+     */
+    private final Map<Integer, Seen> customerVersions = new HashMap<>();
+    /**
+     * The tombstone IDs read within the lookback.
+     */
+    private final Set<Long> tombstonesSeen = new HashSet<>();
+    /**
+     * The IDs of the appointments this client deleted whose tombstones have not been read yet.
+     */
+    private final Set<Integer> localDeletes = new HashSet<>();
+    /**
+     * The change set being published by the poller, which {@link #recordLocalChanges} must not take for a local write.
+     */
+    private volatile AppointmentChangeSet publishing;
+    /**
+     * The ID this client reports its tombstone watermark under; a new one for every start.
+     */
+    private String clientId;
+    /**
+     * When the tombstone watermark was last reported, from {@link System#nanoTime()}.
+     */
+    private long lastKeepAliveNanos;
+    /**
+     * The interval before the next poll, in milliseconds.
+     */
+    private long delayMillis;
+    /**
+     * True while the poller is started.
+     */
+    private boolean running;
+    /**
+     * Incremented by every start and stop, so a poll that finishes after either is dropped.
+     */
+    private long generation;
+    /**
+     * The thread that polls.
+     */
+    private ScheduledExecutorService timer;
+    /**
+     * The next poll.
+     */
+    private ScheduledFuture<?> next;
+
+    /**
+     * @param minMillis the shortest interval between polls, in milliseconds.
+     * @param maxMillis the longest interval between polls, in milliseconds.
+     * @param overlap              how far before the watermarks each poll reads.
+     * @param clientTimeoutSeconds how long a client that does not report its watermark stays live, in seconds.
+     */
+    private ChangePoller(long minMillis, long maxMillis, Duration overlap, int clientTimeoutSeconds) {
+        this.minMillis = Math.max(100, minMillis);
+        this.maxMillis = Math.max(this.minMillis, maxMillis);
+        this.overlap = overlap;
+        this.clientTimeoutSeconds = Math.max(clientTimeoutSeconds, (int) TimeUnit.NANOSECONDS.toSeconds(KEEP_ALIVE_NANOS) * 2);
+    }
+
+    /**
+     * @return the change poller.
+     */
+    public static ChangePoller getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribes a listener to the customers other users change from now on. It is called on the polling thread with
+     * the customers added or updated, as they are now stored, and the IDs of the customers deleted.
+     *
+     * @param listener the listener, held weakly.
+     */
+    public void subscribeCustomers(BiConsumer<List<Customer>, Set<Integer>> listener) {
+        customerListeners.add(new WeakReference<>(listener));
+    }
+
+    /**
+     * Starts polling. The watermarks are read in the background first, so only changes made from now on are seen.
+     * Does nothing on the embedded store, which only this process writes to.
+     */
+    public synchronized void start() {
+        if (Repositories.isEmbedded()) {
+            return;
+        }
+        stop();
+        running = true;
+        delayMillis = minMillis;
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "change-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        AppointmentChangeBus.subscribe(localChanges);
+        clientId = UUID.randomUUID().toString();
+        long startGeneration = generation;
+        next = timer.schedule(() -> begin(startGeneration), 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling and forgets the watermarks, e.g. when the user logs out.
+     */
+    public synchronized void stop() {
+        generation++;
+        running = false;
+        AppointmentChangeBus.unsubscribe(localChanges);
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+        if (clientId != null && timer != null) {
+            String stoppedClientId = clientId;
+            timer.execute(() -> {
+                try {
+                    ChangeFeedDaoImpl.unregister(stoppedClientId);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Error unregistering from the change feed", e);
+                }
+            });
+        }
+        clientId = null;
+        appointmentsWatermark = null;
+        customersWatermark = null;
+        appointmentVersions.clear();
+        customerVersions.clear();
+        tombstonesSeen.clear();
+        localDeletes.clear();
+    }
+
+    /**
+     * Stops polling and ends the background thread; called when the application exits.
+     */
+    public synchronized void shutdown() {
+        stop();
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Reads the watermarks and schedules the first poll. Runs on the polling thread.
+     *
+     * @param startGeneration the generation of the start that scheduled it.
+     */
+    private void begin(long startGeneration) {
+        ChangeFeedDaoImpl.Watermark watermark;
+        try {
+            watermark = ChangeFeedDaoImpl.getWatermark();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error reading the change feed watermark", e);
+            reschedule(startGeneration, maxMillis, () -> begin(startGeneration));
+            return;
+        }
+        synchronized (this) {
+            if (generation != startGeneration) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            appointmentsWatermark = watermark.getAppointments() == null ? now : watermark.getAppointments();
+            customersWatermark = watermark.getCustomers() == null ? now : watermark.getCustomers();
+            tombstoneWatermark = watermark.getTombstone();
+        }
+        // The first report registers the client, so it is expected to find it not live.
+        keepAlive(startGeneration);
+        reschedule(startGeneration, minMillis, () -> poll(startGeneration));
+    }
+
+    /**
+     * Reads the changes after the watermarks and hands on those not seen before, then schedules the next poll: soon if
+     * there were changes, later the longer the feed stays idle. Runs on the polling thread.
+     *
+     * @param pollGeneration the generation of the start that scheduled it.
+     */
+    private void poll(long pollGeneration) {
+        LocalDateTime appointmentsAfter;
+        LocalDateTime customersAfter;
+        long tombstoneAfter;
+        synchronized (this) {
+            if (generation != pollGeneration) {
+                return;
+            }
+            appointmentsAfter = appointmentsWatermark.minus(overlap);
+            customersAfter = customersWatermark.minus(overlap);
+            tombstoneAfter = Math.max(0, tombstoneWatermark - TOMBSTONE_LOOKBACK);
+        }
+        ChangeFeedDaoImpl.Changes changes;
+        try {
+            changes = ChangeFeedDaoImpl.poll(appointmentsAfter, customersAfter, tombstoneAfter);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error polling the change feed", e);
+            reschedule(pollGeneration, maxMillis, () -> poll(pollGeneration));
+            return;
+        }
+        List<Appointment> appointments = new ArrayList<>();
+        Set<Integer> deletedAppointments = new HashSet<>();
+        List<Customer> customers = new ArrayList<>();
+        Set<Integer> deletedCustomers = new HashSet<>();
+        long delay;
+        synchronized (this) {
+            if (generation != pollGeneration) {
+                return;
+            }
+            for (Appointment appointment : changes.getAppointments()) {
+                if (isNewVersion(appointmentVersions, appointment.getAppointmentId(), appointment.getVersion(),
+                        appointment.getLastUpdate())) {
+                    appointments.add(appointment);
+                }
+                appointmentsWatermark = max(appointmentsWatermark, appointment.getLastUpdate());
+            }
+            for (Customer customer : changes.getCustomers()) {
+                if (isNewVersion(customerVersions, customer.getCustomerId(), customer.getVersion(),
+                        customer.getLastUpdate())) {
+                    customers.add(customer);
+                }
+                customersWatermark = max(customersWatermark, customer.getLastUpdate());
+            }
+            for (long[] tombstone : changes.getDeletedAppointments()) {
+                if (tombstonesSeen.add(tombstone[0]) && !localDeletes.remove((int) tombstone[1])) {
+                    deletedAppointments.add((int) tombstone[1]);
+                }
+                tombstoneWatermark = Math.max(tombstoneWatermark, tombstone[0]);
+            }
+            for (long[] tombstone : changes.getDeletedCustomers()) {
+                if (tombstonesSeen.add(tombstone[0])) {
+                    deletedCustomers.add((int) tombstone[1]);
+                }
+                tombstoneWatermark = Math.max(tombstoneWatermark, tombstone[0]);
+            }
+            appointments.removeIf(appointment -> deletedAppointments.contains(appointment.getAppointmentId()));
+            customers.removeIf(customer -> deletedCustomers.contains(customer.getCustomerId()));
+            prune();
+            boolean changed = !appointments.isEmpty() || !deletedAppointments.isEmpty() || !customers.isEmpty()
+                    || !deletedCustomers.isEmpty();
+            delayMillis = changed ? minMillis : Math.min(maxMillis, delayMillis * 2);
+            delay = delayMillis;
+        }
+        if (!appointments.isEmpty() || !deletedAppointments.isEmpty()) {
+            applyAppointments(appointments, deletedAppointments);
+        }
+        if (!customers.isEmpty() || !deletedCustomers.isEmpty()) {
+            notifyCustomers(customers, deletedCustomers);
+        }
+        if (System.nanoTime() - lastKeepAliveNanos >= KEEP_ALIVE_NANOS && !keepAlive(pollGeneration)) {
+            LOGGER.warning("The change feed client timed out and may have missed deletes; reloading the appointments");
+            AppointmentConflictIndex.invalidate();
+        }
+        reschedule(pollGeneration, delay, () -> poll(pollGeneration));
+    }
+
+    /**
+     * Reports the tombstone watermark, which lets the tombstones no live client reads again be deleted. Runs on the
+     * polling thread.
+     *
+     * @param taskGeneration the generation of the start that scheduled the caller.
+     * @return false if this client was not live, which after the first report means it timed out and may have missed
+     * tombstones; true otherwise, also when the report failed or the poller was stopped.
+     */
+    private boolean keepAlive(long taskGeneration) {
+        String id;
+        long watermark;
+        synchronized (this) {
+            if (generation != taskGeneration) {
+                return true;
+            }
+            id = clientId;
+            watermark = tombstoneWatermark;
+        }
+        lastKeepAliveNanos = System.nanoTime();
+        try {
+            return ChangeFeedDaoImpl.keepAlive(id, watermark, clientTimeoutSeconds, TOMBSTONE_LOOKBACK);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error reporting the change feed watermark", e);
+            return true;
+        }
+    }
+
+    /**
+     * Reflects appointments other users changed in the conflict index, the rollup and the reminders, and publishes them
+     * to the screens.
+     *
+     * @param appointments the appointments added or updated, as they are now stored.
+     * @param deletedIds   the IDs of the appointments deleted.
+     */
+    private void applyAppointments(List<Appointment> appointments, Set<Integer> deletedIds) {
+        for (Appointment appointment : appointments) {
+            AppointmentConflictIndex.put(appointment);
+            ReminderService.getInstance().appointmentSaved(appointment);
+            AppointmentTypeRollup.put(appointment);
+        }
+        for (Integer appointmentId : deletedIds) {
+            AppointmentConflictIndex.remove(appointmentId);
+            ReminderService.getInstance().appointmentDeleted(appointmentId);
+            AppointmentTypeRollup.remove(appointmentId);
+        }
+        AppointmentChangeSet changes = AppointmentChangeSet.changed(appointments, deletedIds);
+        publishing = changes;
+        try {
+            AppointmentChangeBus.publish(changes);
+        } finally {
+            publishing = null;
+        }
+    }
+
+    /**
+     * Hands customers other users changed to every customer listener. A listener that throws is logged and does not
+     * stop the others.
+     *
+     * @param customers  the customers added or updated, as they are now stored.
+     * @param deletedIds the IDs of the customers deleted.
+     */
+    private void notifyCustomers(List<Customer> customers, Set<Integer> deletedIds) {
+        List<Customer> changed = List.copyOf(customers);
+        Set<Integer> deleted = Set.copyOf(deletedIds);
+        for (WeakReference<BiConsumer<List<Customer>, Set<Integer>>> reference : customerListeners) {
+            BiConsumer<List<Customer>, Set<Integer>> listener = reference.get();
+            if (listener == null) {
+                customerListeners.remove(reference);
+                continue;
+            }
+            try {
+                listener.accept(changed, deleted);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error applying customer changes", e);
+            }
+        }
+    }
+
+    /**
+     * Records the appointments this client wrote, so the poll does not hand them on again. Runs on the thread that
+     * made the write.
+     *
+     * @param changes the changes of one write.
+     */
+    private synchronized void recordLocalChanges(AppointmentChangeSet changes) {
+        if (changes == publishing || !running) {
+            return;
+        }
+        for (List<Appointment> appointments : List.of(changes.getAdded(), changes.getUpdated())) {
+            for (Appointment appointment : appointments) {
+                if (!appointment.isOccurrence() && appointment.getLastUpdate() != null) {
+                    isNewVersion(appointmentVersions, appointment.getAppointmentId(), appointment.getVersion(),
+                            toStored(appointment.getLastUpdate()));
+                }
+            }
+        }
+        for (Object key : changes.getRemovedKeys()) {
+            if (key instanceof Integer) {
+                localDeletes.add((Integer) key);
+            }
+        }
+    }
+
+    /**
+     * Forgets the versions older than the overlap and the tombstones older than the lookback, which no poll reads
+     * again.
+     */
+    private void prune() {
+        if (appointmentsWatermark != null) {
+            LocalDateTime oldest = appointmentsWatermark.minus(overlap);
+            appointmentVersions.values().removeIf(seen -> seen.lastUpdate.isBefore(oldest));
+        }
+        if (customersWatermark != null) {
+            LocalDateTime oldest = customersWatermark.minus(overlap);
+            customerVersions.values().removeIf(seen -> seen.lastUpdate.isBefore(oldest));
+        }
+        long oldestTombstone = tombstoneWatermark - TOMBSTONE_LOOKBACK;
+        tombstonesSeen.removeIf(id -> id <= oldestTombstone);
+    }
+
+    /**
+     * Records the version of a row read or written, unless a later one was recorded already. Versions, unlike
+     * Last_Update, change with every write, so two changes in the same second are both handed on, and a row read
+     * before a write this client made is not handed on after it.
+     *
+     * @param versions   the versions recorded, by row ID.
+     * @param id         the ID of the row.
+     * @param version    the version of the row.
+     * @param lastUpdate the Last_Update of the row, which tells when the version can be forgotten.
+     * @return true if the version is later than any recorded for the row.
+     */
+    private static boolean isNewVersion(Map<Integer, Seen> versions, int id, int version, LocalDateTime lastUpdate) {
+        Seen seen = versions.get(id);
+        if (seen != null && seen.version >= version) {
+            return false;
+        }
+        versions.put(id, new Seen(version, lastUpdate));
+        return true;
+    }
+
+    /**
+     * Schedules a task on the polling thread unless the poller was stopped or started again since.
+     *
+     * @param taskGeneration the generation the task belongs to.
+     * @param delayMillis    the delay, in milliseconds.
+     * @param task           the task.
+     */
+    private synchronized void reschedule(long taskGeneration, long delayMillis, Runnable task) {
+        if (generation == taskGeneration && timer != null) {
+            next = timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param lastUpdate a Last_Update as written by this client.
+     * @return the Last_Update as the database stores it: a DATETIME column rounds to the nearest second.
+     */
+    private static LocalDateTime toStored(LocalDateTime lastUpdate) {
+        LocalDateTime seconds = lastUpdate.truncatedTo(ChronoUnit.SECONDS);
+        return lastUpdate.getNano() >= 500_000_000 ? seconds.plusSeconds(1) : seconds;
+    }
+
+    /**
+     * @param a a date and time.
+     * @param b another date and time.
+     * @return the later of the two.
+     */
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return b.isAfter(a) ? b : a;
+    }
+
+    /**
+     * The version of a row read or written within the overlap.
+     */
+    private static final class Seen {
+        /**
+         * The Version of the row.
+         */
+        private final int version;
+        /**
+         * The Last_Update of the row, as stored.
+         */
+        private final LocalDateTime lastUpdate;
+
+        /**
+         * @param version    the Version of the row.
+         * @param lastUpdate the Last_Update of the row, as stored.
+         */
+        private Seen(int version, LocalDateTime lastUpdate) {
+            this.version = version;
+            this.lastUpdate = lastUpdate;
+        }
+    }
+}
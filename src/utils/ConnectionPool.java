@@ -0,0 +1,725 @@
+package utils;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is a bounded pool of physical database connections exposed as a {@link DataSource}.<br>
+ * The connections handed out by {@link #getConnection()} are proxies; calling close() on them returns the physical
+ * connection to the pool instead of closing the socket, so the DAO classes can keep using try-with-resources without
+ * paying a new TCP/auth handshake on every call. The pool keeps at least the minimum number of idle connections open,
+ * never opens more than the maximum, evicts connections that have been idle for too long, validates connections on
+ * borrow, reports connections that are held longer than the leak detection threshold together with the stack trace of
+ * the borrower, and records how long callers waited to borrow a connection. Each pooled connection keeps a
+ * {@link StatementCache} so repeated DAO calls reuse their prepared statements.
+ */
+public class ConnectionPool implements DataSource {
+    /**
+     * The logger used to report evictions, validation failures and leaks.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    /**
+     * A connection that was used within this many milliseconds is handed out again without a validation round trip.
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    /**
+     * How often the housekeeping thread evicts idle connections, tops the pool up and checks for leaks.
+     */
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    private final String jdbcUrl;
+    /**
+     * The username used to open physical connections.
+     */
+    private final String username;
+    /**
+     * The password used to open physical connections.
+     */
+    private final String password;
+    /**
+     * The number of idle connections the pool tries to keep open.
+     */
+    private final int minimumIdle;
+    /**
+     * The maximum number of physical connections, borrowed and idle together.
+     */
+    private final int maximumPoolSize;
+    /**
+     * How long a caller waits for a connection before getConnection() fails.
+     */
+    private final long borrowTimeoutMillis;
+    /**
+     * How long a connection may stay idle before it is evicted (down to the minimum idle count).
+     */
+    private final long idleTimeoutMillis;
+    /**
+     * The timeout passed to {@link Connection#isValid(int)} when a connection is validated on borrow.
+     */
+    private final int validationTimeoutSeconds;
+    /**
+     * A borrowed connection held longer than this is reported as a leak. Zero disables leak detection.
+     */
+    private final long leakDetectionThresholdMillis;
+    /**
+     * True when leak detection is enabled; only then is the borrower's stack captured on every borrow.
+     */
+    private final boolean leakDetectionEnabled;
+    /**
+     * The number of prepared statements cached per connection. Zero disables the statement cache.
+     */
+    private final int statementCacheSize;
+
+    /**
+     * The idle connections, most recently returned first.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    /**
+     * The connections that are currently borrowed.
+     */
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    /**
+     * One permit per connection that may still be borrowed; bounds the pool at its maximum size.
+     */
+    private final Semaphore permits;
+    /**
+     * The number of open physical connections, plus the connections being opened. A slot is reserved here before a
+     * connection is opened, so concurrent borrows and the housekeeper cannot open more than the maximum.
+     */
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    /**
+     * The thread that evicts idle connections and checks for leaks.
+     */
+    private final ScheduledExecutorService housekeeper;
+    /**
+     * True once the pool has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The number of successful borrows.
+     */
+    private final AtomicLong borrowCount = new AtomicLong();
+    /**
+     * The total time callers spent waiting in getConnection(), in nanoseconds.
+     */
+    private final AtomicLong borrowNanosTotal = new AtomicLong();
+    /**
+     * The longest time a caller spent waiting in getConnection(), in nanoseconds.
+     */
+    private final LongAccumulator borrowNanosMax = new LongAccumulator(Long::max, 0);
+    /**
+     * The number of borrows that timed out.
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    /**
+     * The number of physical connections opened.
+     */
+    private final AtomicLong createdCount = new AtomicLong();
+    /**
+     * The number of idle connections evicted.
+     */
+    private final AtomicLong evictedCount = new AtomicLong();
+    /**
+     * The number of connections that failed validation on borrow.
+     */
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    /**
+     * The number of leaks reported.
+     */
+    private final AtomicLong leakCount = new AtomicLong();
+
+    /**
+     * This is the constructor for the ConnectionPool class. It opens the minimum number of idle connections and starts
+     * the housekeeping thread.
+     *
+     * @param jdbcUrl                      the JDBC URL of the database
+     * @param username                     the username used to open connections
+     * @param password                     the password used to open connections
+     * @param minimumIdle                  the number of idle connections to keep open
+     * @param maximumPoolSize              the maximum number of open connections
+     * @param borrowTimeoutMillis          how long getConnection() waits for a free connection
+     * @param idleTimeoutMillis            how long a connection may stay idle before it is evicted
+     * @param validationTimeoutSeconds     the timeout used when validating a connection on borrow
+     * @param leakDetectionThresholdMillis how long a connection may be held before it is reported as a leak, 0 to disable
+     * @param statementCacheSize           the number of prepared statements cached per connection, 0 to disable
+     */
+    public ConnectionPool(String jdbcUrl, String username, String password, int minimumIdle, int maximumPoolSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+                          long leakDetectionThresholdMillis, int statementCacheSize) {
+        if (maximumPoolSize < 1 || minimumIdle < 0 || minimumIdle > maximumPoolSize) {
+            throw new IllegalArgumentException("Invalid pool size: minimumIdle=" + minimumIdle + ", maximumPoolSize=" + maximumPoolSize);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.minimumIdle = minimumIdle;
+        this.maximumPoolSize = maximumPoolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.leakDetectionEnabled = leakDetectionThresholdMillis > 0;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maximumPoolSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillPool();
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, HOUSEKEEPING_PERIOD_MILLIS, HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new physical connection if no idle one is available and the pool
+     * is below its maximum size. Closing the returned connection gives it back to the pool.
+     *
+     * @return a pooled connection.
+     * @throws SQLException if the pool is closed, no connection becomes available within the borrow timeout, or a new
+     *                      connection cannot be opened.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long startNanos = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (" + borrowedConnections.size() + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            PooledConnection pooled = borrowPhysical(startNanos);
+            pooled.lease(leakDetectionEnabled);
+            borrowedConnections.add(pooled);
+            long waitedNanos = System.nanoTime() - startNanos;
+            borrowCount.incrementAndGet();
+            borrowNanosTotal.addAndGet(waitedNanos);
+            borrowNanosMax.accumulate(waitedNanos);
+            return pooled.getProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a usable idle connection, or opens a new one when a slot below the maximum can be reserved. The caller
+     * holds a permit, so when no slot is free the other slots are idle or being opened by the housekeeper, and the
+     * caller waits for one of them to become idle.
+     *
+     * @param startNanos when the caller started waiting, for the borrow timeout.
+     * @return the connection to lease.
+     * @throws SQLException if no connection becomes available within the borrow timeout, or a new connection cannot
+     *                      be opened.
+     */
+    private PooledConnection borrowPhysical(long startNanos) throws SQLException {
+        while (true) {
+            PooledConnection pooled = idleConnections.pollFirst();
+            if (pooled == null) {
+                if (reserveConnection()) {
+                    return openPhysical();
+                }
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis) - (System.nanoTime() - startNanos);
+                try {
+                    pooled = idleConnections.pollFirst(Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+                if (pooled == null) {
+                    timeoutCount.incrementAndGet();
+                    throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                            + " ms waiting for a database connection (" + borrowedConnections.size() + " in use)");
+                }
+            }
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            validationFailureCount.incrementAndGet();
+            closePhysical(pooled);
+        }
+    }
+
+    /**
+     * Pooled connections are always opened with the credentials the pool was created with.
+     *
+     * @param username ignored.
+     * @param password ignored.
+     * @return never returns normally.
+     * @throws SQLException always.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The connection pool does not support per-call credentials");
+    }
+
+    /**
+     * Closes every idle connection and stops the housekeeping thread. Connections that are still borrowed are closed
+     * when they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            closePhysical(pooled);
+        }
+        System.out.println("Connection pool closed! " + getStatistics());
+    }
+
+    /**
+     * @return true if the pool has been closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Broken connections, and connections returned after the pool was
+     * closed, are closed instead.
+     *
+     * @param pooled the connection being returned.
+     */
+    private void giveBack(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        try {
+            if (closed || !pooled.reset()) {
+                closePhysical(pooled);
+            } else {
+                idleConnections.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Checks whether an idle connection can be handed out. Connections used very recently are trusted; others are
+     * validated with a round trip to the server.
+     *
+     * @param pooled the idle connection.
+     * @return true if the connection is usable.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - pooled.lastReturnedMillis < VALIDATION_BYPASS_MILLIS) {
+                return true;
+            }
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Connection failed validation", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reserves a slot for a new physical connection, unless the pool is already at its maximum size.
+     *
+     * @return true if a slot was reserved; the caller must then call {@link #openPhysical()}.
+     */
+    private boolean reserveConnection() {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= maximumPoolSize) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Opens a new physical connection in a slot reserved with {@link #reserveConnection()}. The slot is released if
+     * the connection cannot be opened.
+     *
+     * @return the new pooled connection.
+     * @throws SQLException if the connection cannot be opened.
+     */
+    private PooledConnection openPhysical() throws SQLException {
+        try {
+            Connection physical = DriverManager.getConnection(jdbcUrl, username, password);
+            createdCount.incrementAndGet();
+            return new PooledConnection(physical);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes a physical connection and forgets about it.
+     *
+     * @param pooled the connection to close.
+     */
+    private void closePhysical(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            if (pooled.statementCache != null) {
+                pooled.statementCache.closeAll();
+            }
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing connection", e);
+        }
+    }
+
+    /**
+     * Opens idle connections until the pool holds the minimum idle count, without exceeding the maximum size.
+     */
+    private void fillPool() {
+        while (!closed && idleConnections.size() < minimumIdle && reserveConnection()) {
+            try {
+                PooledConnection pooled = openPhysical();
+                pooled.lastReturnedMillis = System.currentTimeMillis();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not open an idle connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts connections that have been idle longer than the idle timeout (keeping the minimum idle count), tops the
+     * pool back up, and reports borrowed connections held longer than the leak detection threshold.
+     */
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        for (PooledConnection pooled : idleConnections) {
+            if (now - pooled.lastReturnedMillis > idleTimeoutMillis && idleConnections.size() - expired.size() > minimumIdle) {
+                expired.add(pooled);
+            }
+        }
+        for (PooledConnection pooled : expired) {
+            if (idleConnections.remove(pooled)) {
+                evictedCount.incrementAndGet();
+                closePhysical(pooled);
+            }
+        }
+        fillPool();
+
+        if (leakDetectionEnabled) {
+            for (PooledConnection pooled : borrowedConnections) {
+                if (!pooled.leakReported && now - pooled.borrowedAtMillis > leakDetectionThresholdMillis) {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Connection held for " + (now - pooled.borrowedAtMillis)
+                            + " ms without being closed; possible leak. Borrowed at:", pooled.borrowStack);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    /**
+     * @return the number of idle connections.
+     */
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * @return the number of open physical connections.
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return the number of successful borrows.
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return the average time callers waited in getConnection(), in microseconds.
+     */
+    public double getAverageBorrowMicros() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowNanosTotal.get() / 1_000.0 / count;
+    }
+
+    /**
+     * @return the longest time a caller waited in getConnection(), in microseconds.
+     */
+    public double getMaxBorrowMicros() {
+        return borrowNanosMax.get() / 1_000.0;
+    }
+
+    /**
+     * @return the number of borrows that timed out.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return the number of leaks reported.
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * @return a one-line summary of the pool metrics.
+     */
+    public String getStatistics() {
+        return String.format("active=%d, idle=%d, total=%d, borrows=%d, avgBorrow=%.1fus, maxBorrow=%.1fus, timeouts=%d, "
+                        + "created=%d, evicted=%d, validationFailures=%d, leaks=%d, statementHits=%d, statementMisses=%d",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), getBorrowCount(),
+                getAverageBorrowMicros(), getMaxBorrowMicros(), getTimeoutCount(), createdCount.get(), evictedCount.get(),
+                validationFailureCount.get(), getLeakCount(), StatementCache.getHitCount(), StatementCache.getMissCount());
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("ConnectionPool does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A physical connection owned by the pool, together with the proxy handed to borrowers and the bookkeeping for
+     * the current lease.
+     */
+    private class PooledConnection implements InvocationHandler {
+        /**
+         * The physical connection to the database.
+         */
+        private final Connection physical;
+        /**
+         * The prepared statements cached on this connection, or null when statement caching is disabled.
+         */
+        private final StatementCache statementCache;
+        /**
+         * The statements opened during the current lease; closed when the connection is returned.
+         */
+        private final List<Statement> openStatements = new ArrayList<>();
+        /**
+         * The proxy handed out for the current lease.
+         */
+        private Connection proxy;
+        /**
+         * True once the current lease has been closed by the borrower.
+         */
+        private boolean logicallyClosed;
+        /**
+         * True once the physical connection reported a connection-level error.
+         */
+        private boolean broken;
+        /**
+         * When the current lease started.
+         */
+        private long borrowedAtMillis;
+        /**
+         * When the connection was last returned to the pool.
+         */
+        private volatile long lastReturnedMillis;
+        /**
+         * The stack of the borrower, captured when leak detection is enabled.
+         */
+        private Throwable borrowStack;
+        /**
+         * True once a leak has been reported for the current lease.
+         */
+        private volatile boolean leakReported;
+
+        /**
+         * @param physical the physical connection to the database.
+         */
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize) : null;
+        }
+
+        /**
+         * Starts a new lease with a fresh proxy, so a borrower that keeps a reference after closing cannot use the
+         * connection while someone else holds it.
+         *
+         * @param captureStack true to record the borrower's stack for leak reports.
+         */
+        private void lease(boolean captureStack) {
+            logicallyClosed = false;
+            leakReported = false;
+            borrowedAtMillis = System.currentTimeMillis();
+            borrowStack = captureStack ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null;
+            proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+            if (statementCache != null) {
+                statementCache.setOwner(proxy);
+            }
+        }
+
+        /**
+         * @return the proxy for the current lease.
+         */
+        private Connection getProxy() {
+            return proxy;
+        }
+
+        /**
+         * Closes the statements the borrower left open (cached statements go back to the cache) and restores the default connection state.
+         *
+         * @return true if the connection can go back into the pool.
+         */
+        private boolean reset() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    broken = true;
+                }
+            }
+            openStatements.clear();
+            if (broken) {
+                return false;
+            }
+            try {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                lastReturnedMillis = System.currentTimeMillis();
+                return !physical.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Handles calls made on the proxy. close() returns the connection to the pool, prepareStatement(sql) is served
+         * from the statement cache, statements are tracked so they can be closed on return, and everything else is
+         * forwarded to the physical connection.
+         *
+         * @param proxyInstance the proxy the method was called on.
+         * @param method        the method called.
+         * @param args          the arguments of the call.
+         * @return the result of the call.
+         * @throws Throwable the exception thrown by the physical connection.
+         */
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Pooled" + physical;
+                case "isClosed":
+                    return logicallyClosed || proxyInstance != proxy || physical.isClosed();
+                case "close":
+                    if (!logicallyClosed && proxyInstance == proxy) {
+                        logicallyClosed = true;
+                        giveBack(this);
+                    }
+                    return null;
+                default:
+                    break;
+            }
+            if (logicallyClosed || proxyInstance != proxy) {
+                throw new SQLException("Connection is closed");
+            }
+            if (statementCache != null && name.equals("prepareStatement") && (args.length == 1
+                    || (args.length == 2 && method.getParameterTypes()[1] == int.class))) {
+                PreparedStatement statement = statementCache.prepare((String) args[0], args.length == 1 ? -1 : (Integer) args[1]);
+                openStatements.add(statement);
+                return statement;
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof Statement) {
+                    openStatements.add((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String sqlState = ((SQLException) cause).getSQLState();
+                    if (sqlState != null && sqlState.startsWith("08")) {
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package utils;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This class runs DAO calls on a bounded pool of background threads so JavaFX event handlers never block the JavaFX
+ * Application Thread on JDBC. Calls return a {@link CompletableFuture}; {@link #onFxThread} hands the result back to
+ * the JavaFX Application Thread with Platform.runLater, and {@link LatestRequest} cancels the previous request when
+ * the user switches filters faster than the database answers.<br>
+ * The pool is no larger than the connection pool, so queued calls wait here instead of in the connection pool.
+ */
+public class DaoExecutor {
+    /**
+     * The number of worker threads.
+     */
+    private static final int THREADS = 8;
+    /**
+     * The maximum number of calls waiting for a worker; further calls fail fast instead of piling up.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+    /**
+     * Numbers the worker threads.
+     */
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    /**
+     * The worker threads.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+        Thread thread = new Thread(runnable, "dao-worker-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A DAO call that returns a value and may throw SQLException or any other exception.
+     *
+     * @param <T> the type of the result.
+     */
+    @FunctionalInterface
+    public interface DaoCall<T> {
+        /**
+         * Runs the call.
+         *
+         * @return the result.
+         * @throws Exception if the call fails.
+         */
+        T call() throws Exception;
+    }
+
+    /**
+     * Runs a DAO call on a background thread. Cancelling the returned future skips the call if it has not started and
+     * interrupts the worker if it has.
+     *
+     * @param call the DAO call.
+     * @param <T>  the type of the result.
+     * @return a future completed with the result of the call, or exceptionally with its exception.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(DaoCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Hands the outcome of a future to the JavaFX Application Thread. Nothing is called if the future is cancelled.
+     *
+     * @param future    the future to observe.
+     * @param onSuccess called with the result on the JavaFX Application Thread.
+     * @param onError   called with the cause of the failure on the JavaFX Application Thread.
+     * @param <T>       the type of the result.
+     */
+    public static <T> void onFxThread(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            Platform.runLater(() -> {
+                if (error == null) {
+                    onSuccess.accept(result);
+                } else {
+                    onError.accept(unwrap(error));
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs a DAO call in the background and hands the outcome to the JavaFX Application Thread.
+     *
+     * @param call      the DAO call.
+     * @param onSuccess called with the result on the JavaFX Application Thread.
+     * @param onError   called with the cause of the failure on the JavaFX Application Thread.
+     * @param <T>       the type of the result.
+     * @return the future of the call, which can be cancelled.
+     */
+    public static <T> CompletableFuture<T> run(DaoCall<T> call, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        CompletableFuture<T> future = supplyAsync(call);
+        onFxThread(future, onSuccess, onError);
+        return future;
+    }
+
+    /**
+     * Stops accepting calls and waits briefly for running calls to finish.
+     */
+    public static void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of calls waiting for a worker thread.
+     */
+    public static int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Strips the CompletionException wrapper added by CompletableFuture.
+     *
+     * @param error the failure reported by a future.
+     * @return the exception thrown by the DAO call.
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * This class keeps at most one request of a kind in flight, e.g. the query behind a filter or a combo box. Each
+     * new request cancels the previous one, and a result that arrives after a newer request was made is dropped, so
+     * the screen always shows the answer to the user's latest choice. It is meant to be used from the JavaFX
+     * Application Thread.
+     */
+    public static class LatestRequest {
+        /**
+         * The request in flight, or null.
+         */
+        private CompletableFuture<?> current;
+        /**
+         * Incremented by every request; a result is applied only if its generation is still current.
+         */
+        private long generation;
+
+        /**
+         * Cancels the request in flight, if any, and starts a new one.
+         *
+         * @param call      the DAO call.
+         * @param onSuccess called with the result on the JavaFX Application Thread, unless a newer request was made.
+         * @param onError   called with the cause of the failure on the JavaFX Application Thread, unless a newer
+         *                  request was made.
+         * @param <T>       the type of the result.
+         */
+        public <T> void submit(DaoCall<T> call, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+            cancel();
+            long requestGeneration = generation;
+            current = DaoExecutor.run(call,
+                    result -> {
+                        if (requestGeneration == generation) {
+                            onSuccess.accept(result);
+                        }
+                    },
+                    error -> {
+                        if (requestGeneration == generation) {
+                            onError.accept(error);
+                        }
+                    });
+        }
+
+        /**
+         * Cancels the request in flight, if any; its result will not be applied.
+         */
+        public void cancel() {
+            generation++;
+            if (current != null) {
+                current.cancel(true);
+                current = null;
+            }
+        }
+    }
+}
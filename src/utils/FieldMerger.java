@@ -0,0 +1,182 @@
+package utils;
+
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * This class merges an edit that conflicted with another user's into the row as it is now stored, field by field. It
+ * compares three copies: the base, which the editor read, the editor's copy, and the stored copy. A field only the
+ * editor changed takes the editor's value and a field only the other user changed keeps theirs; a field both changed
+ * to different values is a conflict, which the user resolves in {@link #askResolution}.<br>
+ * Fields that must stay consistent, like the start and end of an appointment, are registered as one field.
+ *
+ * @param <T> the type of the model objects.
+ */
+public class FieldMerger<T> {
+    /**
+     * What the user chose to do with an edit that conflicted with another user's.
+     */
+    public enum Resolution {
+        /**
+         * Save the edit merged into the stored row; the editor's values win the conflicts.
+         */
+        MERGE,
+        /**
+         * Discard the edit and show the stored row.
+         */
+        DISCARD,
+        /**
+         * Keep editing.
+         */
+        CANCEL
+    }
+
+    /**
+     * One field: its name, how it is read and how it is written.
+     *
+     * @param <T> the type of the model objects.
+     * @param <V> the type of the field.
+     */
+    private static class Field<T, V> {
+        /**
+         * The name shown to the user.
+         */
+        private final String name;
+        /**
+         * Reads the field.
+         */
+        private final Function<T, V> getter;
+        /**
+         * Writes the field.
+         */
+        private final BiConsumer<T, V> setter;
+
+        /**
+         * @param name   the name shown to the user.
+         * @param getter reads the field.
+         * @param setter writes the field.
+         */
+        Field(String name, Function<T, V> getter, BiConsumer<T, V> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /**
+         * @param base the copy the editor read.
+         * @param mine the editor's copy.
+         * @return true if the editor changed the field.
+         */
+        boolean isChanged(T base, T mine) {
+            return !Objects.equals(getter.apply(base), getter.apply(mine));
+        }
+
+        /**
+         * Copies the field from one copy to another.
+         *
+         * @param from the copy read.
+         * @param to   the copy written.
+         */
+        void copy(T from, T to) {
+            setter.accept(to, getter.apply(from));
+        }
+    }
+
+    /**
+     * The fields, in the order they are shown.
+     */
+    private final List<Field<T, ?>> fields = new ArrayList<>();
+
+    /**
+     * Registers a field.
+     *
+     * @param name   the name shown to the user.
+     * @param getter reads the field.
+     * @param setter writes the field.
+     * @param <V>    the type of the field.
+     * @return this merger.
+     */
+    public <V> FieldMerger<T> field(String name, Function<T, V> getter, BiConsumer<T, V> setter) {
+        fields.add(new Field<>(name, getter, setter));
+        return this;
+    }
+
+    /**
+     * Describes the fields both the editor and the other user changed, to different values.
+     *
+     * @param base   the copy the editor read.
+     * @param mine   the editor's copy.
+     * @param theirs the copy now stored.
+     * @return one line per conflicting field, with both values.
+     */
+    public List<String> getConflicts(T base, T mine, T theirs) {
+        List<String> conflicts = new ArrayList<>();
+        for (Field<T, ?> field : fields) {
+            if (field.isChanged(base, mine) && field.isChanged(base, theirs) && field.isChanged(mine, theirs)) {
+                conflicts.add(field.name + ": theirs " + field.getter.apply(theirs) + ", yours "
+                        + field.getter.apply(mine));
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Merges the editor's changes into the stored copy: every field the editor changed is copied over it, so the
+     * editor's values win the conflicts. The base and the editor's copy are left alone, so the same edit can be merged
+     * again if the row changes once more.
+     *
+     * @param base   the copy the editor read.
+     * @param mine   the editor's copy.
+     * @param theirs the copy now stored, freshly read; it is modified and returned.
+     * @return the merged copy.
+     */
+    public T merge(T base, T mine, T theirs) {
+        for (Field<T, ?> field : fields) {
+            if (field.isChanged(base, mine)) {
+                field.copy(mine, theirs);
+            }
+        }
+        return theirs;
+    }
+
+    /**
+     * Asks the user what to do with an edit that conflicted with another user's.
+     *
+     * @param what      what was edited, e.g. "appointment".
+     * @param changedBy the user who changed it.
+     * @param conflicts the conflicting fields, from {@link #getConflicts}.
+     * @return the user's choice.
+     */
+    public static Resolution askResolution(String what, String changedBy, List<String> conflicts) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Edit Conflict");
+        alert.setHeaderText(changedBy + " changed this " + what + " while you were editing it.");
+        if (conflicts.isEmpty()) {
+            alert.setContentText("Your changes do not touch the fields they changed, so both can be saved.");
+        } else {
+            alert.setContentText("You both changed these fields; saving the merge keeps your values:\n"
+                    + String.join("\n", conflicts));
+        }
+        ButtonType mergeButton = new ButtonType("Save Merged", ButtonBar.ButtonData.OK_DONE);
+        ButtonType discardButton = new ButtonType("Discard Mine", ButtonBar.ButtonData.OTHER);
+        ButtonType cancelButton = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(cancelButton, discardButton, mergeButton);
+
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isPresent() && result.get() == mergeButton) {
+            return Resolution.MERGE;
+        }
+        if (result.isPresent() && result.get() == discardButton) {
+            return Resolution.DISCARD;
+        }
+        return Resolution.CANCEL;
+    }
+}
@@ -0,0 +1,319 @@
+package utils;
+
+import DAO.AppointmentConflictIndex;
+import DAO.AppointmentSeriesDaoImpl;
+import Model.Appointment;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class finds the times at which a customer, a contact and a user are all free during business hours, 08:00 to
+ * 22:00 Eastern, over a range of days. The appointments of all three are read from the
+ * {@link AppointmentConflictIndex}, and the occurrences of their recurring series from {@link AppointmentSeriesDaoImpl}, once,
+ * sorted by start and merged with a sweep into one list of disjoint busy
+ * intervals; each search is then a single pass over the business days and the merged list together, so searching
+ * several weeks costs time linear in the number of appointments and slots found.<br>
+ * Start times are on the quarter hour grid the time combo boxes use, counted from the opening time.
+ */
+public class FreeSlotFinder {
+    /**
+     * The time zone business hours are defined in.
+     */
+    public static final ZoneId BUSINESS_ZONE = ZoneId.of("America/New_York");
+    /**
+     * The opening time, in the business time zone.
+     */
+    public static final LocalTime OPEN = LocalTime.of(8, 0);
+    /**
+     * The closing time, in the business time zone.
+     */
+    public static final LocalTime CLOSE = LocalTime.of(22, 0);
+    /**
+     * The spacing of the start times offered.
+     */
+    public static final Duration STEP = Duration.ofMinutes(15);
+    /**
+     * The number of days a finder covers by default.
+     */
+    public static final int DEFAULT_HORIZON_DAYS = 28;
+    /**
+     * The user's time zone.
+     */
+    private static final ZoneId LOCAL_ZONE_ID = ZoneId.systemDefault();
+
+    /**
+     * The first business day covered.
+     */
+    private final LocalDate first;
+    /**
+     * The last business day covered.
+     */
+    private final LocalDate last;
+    /**
+     * The starts of the merged busy intervals, sorted.
+     */
+    private final long[] busyStarts;
+    /**
+     * The ends of the merged busy intervals, in the same order.
+     */
+    private final long[] busyEnds;
+
+    /**
+     * This is the constructor for the FreeSlotFinder class.
+     *
+     * @param first the first business day covered.
+     * @param last  the last business day covered.
+     * @param busy  the busy intervals as start and end pairs of the user's local time, in any order and possibly
+     *              overlapping.
+     */
+    public FreeSlotFinder(LocalDate first, LocalDate last, List<LocalDateTime[]> busy) {
+        this.first = first;
+        this.last = last;
+        long[][] intervals = new long[busy.size()][];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = new long[]{toKey(busy.get(i)[0]), toKey(busy.get(i)[1])};
+        }
+        long[][] merged = merge(intervals);
+        busyStarts = new long[merged.length];
+        busyEnds = new long[merged.length];
+        for (int i = 0; i < merged.length; i++) {
+            busyStarts[i] = merged[i][0];
+            busyEnds[i] = merged[i][1];
+        }
+    }
+
+    /**
+     * Creates a finder for the appointments and series occurrences of a customer, a contact and a user. Any of them
+     * may be left out.
+     *
+     * @param customerId           the ID of the customer, or null.
+     * @param contactId            the ID of the contact, or null.
+     * @param userId               the ID of the user, or null.
+     * @param excludeAppointmentId the ID of the appointment being edited, whose own time counts as free; 0 if none.
+     * @param first                the first business day covered.
+     * @param last                 the last business day covered.
+     * @return the finder.
+     * @throws SQLException if the conflict index has to be loaded and the appointments cannot be read, or the series
+     *                      cannot be read.
+     */
+    public static FreeSlotFinder forAttendees(Integer customerId, Integer contactId, Integer userId,
+                                              int excludeAppointmentId, LocalDate first, LocalDate last) throws SQLException {
+        LocalDateTime from = businessOpen(first).toLocalDateTime();
+        LocalDateTime to = businessClose(last).toLocalDateTime();
+        List<Appointment> appointments = new ArrayList<>();
+        if (customerId != null) {
+            appointments.addAll(AppointmentConflictIndex.getCustomerAppointments(customerId, from, to));
+        }
+        if (contactId != null) {
+            appointments.addAll(AppointmentConflictIndex.getContactAppointments(contactId, from, to));
+        }
+        if (userId != null) {
+            appointments.addAll(AppointmentConflictIndex.getUserAppointments(userId, from, to));
+        }
+        List<Appointment> occurrences = new ArrayList<>();
+        if (customerId != null) {
+            occurrences.addAll(AppointmentSeriesDaoImpl.getCustomerOccurrencesBetween(customerId, from, to));
+        }
+        if (contactId != null) {
+            occurrences.addAll(AppointmentSeriesDaoImpl.getContactOccurrencesBetween(contactId, from, to));
+        }
+        if (userId != null) {
+            occurrences.addAll(AppointmentSeriesDaoImpl.getUserOccurrencesBetween(userId, from, to));
+        }
+        List<LocalDateTime[]> busy = new ArrayList<>(appointments.size() + occurrences.size());
+        for (Appointment appointment : appointments) {
+            if (appointment.getAppointmentId() != excludeAppointmentId) {
+                busy.add(new LocalDateTime[]{appointment.getStart(), appointment.getEnd()});
+            }
+        }
+        // Occurrences all have appointment ID 0, so they are never the appointment being edited.
+        for (Appointment occurrence : occurrences) {
+            busy.add(new LocalDateTime[]{occurrence.getStart(), occurrence.getEnd()});
+        }
+        return new FreeSlotFinder(first, last, busy);
+    }
+
+    /**
+     * @param date a business day.
+     * @return true if the finder covers the day.
+     */
+    public boolean covers(LocalDate date) {
+        return !date.isBefore(first) && !date.isAfter(last);
+    }
+
+    /**
+     * Returns the start times on one business day at which everyone is free for the given duration.
+     *
+     * @param date     the business day.
+     * @param duration the length of the appointment.
+     * @return the free start times, in the user's time zone, in order.
+     */
+    public List<ZonedDateTime> getFreeStarts(LocalDate date, Duration duration) {
+        return getFreeStarts(date, date, duration);
+    }
+
+    /**
+     * Returns the start times over a range of business days at which everyone is free for the given duration.
+     *
+     * @param from     the first business day.
+     * @param to       the last business day.
+     * @param duration the length of the appointment.
+     * @return the free start times, in the user's time zone, in order.
+     */
+    public List<ZonedDateTime> getFreeStarts(LocalDate from, LocalDate to, Duration duration) {
+        List<ZonedDateTime> starts = new ArrayList<>();
+        long length = duration.getSeconds();
+        long step = STEP.getSeconds();
+        int busy = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            long open = toKey(businessOpen(date).toLocalDateTime());
+            long close = toKey(businessClose(date).toLocalDateTime());
+            long start = open;
+            while (start + length <= close) {
+                while (busy < busyStarts.length && busyEnds[busy] <= start) {
+                    busy++;
+                }
+                if (busy < busyStarts.length && busyStarts[busy] < start + length) {
+                    start = open + ceilDiv(busyEnds[busy] - open, step) * step;
+                    continue;
+                }
+                starts.add(fromKey(start));
+                start += step;
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the latest end an appointment starting at the given time can have: the closing time of its business
+     * day, or the start of the next busy interval if that is earlier.
+     *
+     * @param start the start of the appointment.
+     * @return the latest end, in the user's time zone.
+     */
+    public ZonedDateTime getLatestEnd(ZonedDateTime start) {
+        LocalDate businessDay = start.withZoneSameInstant(BUSINESS_ZONE).toLocalDate();
+        long key = toKey(start.withZoneSameInstant(LOCAL_ZONE_ID).toLocalDateTime());
+        long end = toKey(businessClose(businessDay).toLocalDateTime());
+        int next = firstEndingAfter(key);
+        if (next < busyStarts.length && busyStarts[next] < end) {
+            end = Math.max(key, busyStarts[next]);
+        }
+        return fromKey(end);
+    }
+
+    /**
+     * @param start the start of the range, in the user's time zone.
+     * @param end   the end of the range, in the user's time zone.
+     * @return true if no one is busy at any time in the range.
+     */
+    public boolean isFree(LocalDateTime start, LocalDateTime end) {
+        int next = firstEndingAfter(toKey(start));
+        return next == busyStarts.length || busyStarts[next] >= toKey(end);
+    }
+
+    /**
+     * @return the number of disjoint busy intervals after merging.
+     */
+    public int getBusyCount() {
+        return busyStarts.length;
+    }
+
+    /**
+     * Merges intervals with a sweep over them in start order: each interval either extends the current run, if it
+     * starts before the run ends, or starts a new one.
+     *
+     * @param intervals start and end pairs, in any order.
+     * @return the disjoint intervals covering the same times, in order.
+     */
+    static long[][] merge(long[][] intervals) {
+        long[][] sorted = intervals.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(interval -> interval[0]));
+        List<long[]> merged = new ArrayList<>();
+        long[] run = null;
+        for (long[] interval : sorted) {
+            if (interval[1] <= interval[0]) {
+                continue;
+            }
+            if (run != null && interval[0] <= run[1]) {
+                run[1] = Math.max(run[1], interval[1]);
+            } else {
+                run = new long[]{interval[0], interval[1]};
+                merged.add(run);
+            }
+        }
+        return merged.toArray(new long[0][]);
+    }
+
+    /**
+     * @param key a time key.
+     * @return the index of the first busy interval that ends after the key, or the number of intervals if none does.
+     */
+    private int firstEndingAfter(long key) {
+        int low = 0;
+        int high = busyEnds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (busyEnds[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param date a business day.
+     * @return the opening time of the day, in the user's time zone.
+     */
+    private static ZonedDateTime businessOpen(LocalDate date) {
+        return ZonedDateTime.of(date, OPEN, BUSINESS_ZONE).withZoneSameInstant(LOCAL_ZONE_ID);
+    }
+
+    /**
+     * @param date a business day.
+     * @return the closing time of the day, in the user's time zone.
+     */
+    private static ZonedDateTime businessClose(LocalDate date) {
+        return ZonedDateTime.of(date, CLOSE, BUSINESS_ZONE).withZoneSameInstant(LOCAL_ZONE_ID);
+    }
+
+    /**
+     * Converts a local date and time into a key, the way the {@link AppointmentConflictIndex} does.
+     *
+     * @param dateTime the date and time in the user's time zone.
+     * @return the number of seconds since the epoch, reading the date and time as UTC.
+     */
+    private static long toKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param key a time key.
+     * @return the date and time in the user's time zone.
+     */
+    private static ZonedDateTime fromKey(long key) {
+        return LocalDateTime.ofEpochSecond(key, 0, ZoneOffset.UTC).atZone(LOCAL_ZONE_ID);
+    }
+
+    /**
+     * @param dividend a non-negative number.
+     * @param divisor  a positive number.
+     * @return the quotient rounded up.
+     */
+    private static long ceilDiv(long dividend, long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+}
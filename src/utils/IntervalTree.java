@@ -0,0 +1,348 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * This class is an augmented interval tree: a balanced (AVL) binary search tree of half-open intervals [start, end)
+ * ordered by start, where every node also stores the largest end in its subtree. That extra value lets an overlap
+ * query skip every subtree that ends before the queried interval begins, so finding the k intervals that overlap a
+ * range costs O(log n + k), and inserts and removals cost O(log n).<br>
+ * Each interval carries a unique id (an appointment ID, for example), which breaks ties between equal starts and
+ * identifies the interval to remove.
+ *
+ * @param <V> the type of the value stored with each interval.
+ */
+public class IntervalTree<V> {
+    /**
+     * The root of the tree.
+     */
+    private Node<V> root;
+    /**
+     * The number of intervals in the tree.
+     */
+    private int size;
+
+    /**
+     * Adds an interval to the tree. The (start, id) pair must not already be in the tree.
+     *
+     * @param start the inclusive start of the interval.
+     * @param end   the exclusive end of the interval.
+     * @param id    the unique id of the interval.
+     * @param value the value stored with the interval.
+     */
+    public void insert(long start, long end, long id, V value) {
+        root = insert(root, new Node<>(start, end, id, value));
+        size++;
+    }
+
+    /**
+     * Removes the interval with the given start and id.
+     *
+     * @param start the start the interval was inserted with.
+     * @param id    the id the interval was inserted with.
+     * @return true if the interval was found and removed.
+     */
+    public boolean remove(long start, long id) {
+        int before = size;
+        root = remove(root, start, id);
+        return size < before;
+    }
+
+    /**
+     * Adds every interval that overlaps [from, to) to the given list, in start order.
+     *
+     * @param from the inclusive start of the range.
+     * @param to   the exclusive end of the range.
+     * @param out  the list the overlapping values are added to.
+     */
+    public void findOverlapping(long from, long to, List<V> out) {
+        collect(root, from, to, out);
+    }
+
+    /**
+     * Checks whether any interval other than the excluded one overlaps [from, to).
+     *
+     * @param from      the inclusive start of the range.
+     * @param to        the exclusive end of the range.
+     * @param excludeId the id of an interval to ignore, e.g. the appointment being edited.
+     * @return true if an overlapping interval exists.
+     */
+    public boolean overlapsAny(long from, long to, long excludeId) {
+        return overlapsAny(root, from, to, excludeId);
+    }
+
+    /**
+     * @return the number of intervals in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the tree holds no intervals.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Collects the overlapping values of a subtree in order.
+     *
+     * @param node the root of the subtree.
+     * @param from the inclusive start of the range.
+     * @param to   the exclusive end of the range.
+     * @param out  the list the overlapping values are added to.
+     */
+    private static <V> void collect(Node<V> node, long from, long to, List<V> out) {
+        if (node == null || node.maxEnd <= from) {
+            return;
+        }
+        collect(node.left, from, to, out);
+        if (node.start < to) {
+            if (node.end > from) {
+                out.add(node.value);
+            }
+            collect(node.right, from, to, out);
+        }
+    }
+
+    /**
+     * Checks a subtree for an overlapping interval, stopping at the first one found.
+     *
+     * @param node      the root of the subtree.
+     * @param from      the inclusive start of the range.
+     * @param to        the exclusive end of the range.
+     * @param excludeId the id of an interval to ignore.
+     * @return true if the subtree holds an overlapping interval.
+     */
+    private static <V> boolean overlapsAny(Node<V> node, long from, long to, long excludeId) {
+        while (node != null && node.maxEnd > from) {
+            if (node.start < to && node.end > from && node.id != excludeId) {
+                return true;
+            }
+            if (overlapsAny(node.left, from, to, excludeId)) {
+                return true;
+            }
+            if (node.start >= to) {
+                return false;
+            }
+            node = node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Compares an interval key with a node.
+     *
+     * @param start the start of the key.
+     * @param id    the id of the key.
+     * @param node  the node to compare with.
+     * @return a negative number, zero, or a positive number as the key sorts before, equal to, or after the node.
+     */
+    private static int compare(long start, long id, Node<?> node) {
+        int byStart = Long.compare(start, node.start);
+        return byStart != 0 ? byStart : Long.compare(id, node.id);
+    }
+
+    /**
+     * Inserts a node into a subtree and rebalances it.
+     *
+     * @param node  the root of the subtree.
+     * @param added the node to insert.
+     * @return the new root of the subtree.
+     */
+    private static <V> Node<V> insert(Node<V> node, Node<V> added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.id, node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return rebalance(node);
+    }
+
+    /**
+     * Removes a node from a subtree and rebalances it.
+     *
+     * @param node  the root of the subtree.
+     * @param start the start of the interval to remove.
+     * @param id    the id of the interval to remove.
+     * @return the new root of the subtree.
+     */
+    private Node<V> remove(Node<V> node, long start, long id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, id, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, start, id);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node<V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return rebalance(successor);
+        }
+        return rebalance(node);
+    }
+
+    /**
+     * Removes the smallest node of a subtree.
+     *
+     * @param node the root of the subtree.
+     * @return the new root of the subtree.
+     */
+    private static <V> Node<V> removeMin(Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return rebalance(node);
+    }
+
+    /**
+     * Restores the AVL balance of a node whose children changed, and recomputes its height and max end.
+     *
+     * @param node the node to rebalance.
+     * @return the new root of the subtree.
+     */
+    private static <V> Node<V> rebalance(Node<V> node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    /**
+     * Rotates a subtree to the right.
+     *
+     * @param node the root of the subtree.
+     * @return the new root of the subtree.
+     */
+    private static <V> Node<V> rotateRight(Node<V> node) {
+        Node<V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Rotates a subtree to the left.
+     *
+     * @param node the root of the subtree.
+     * @return the new root of the subtree.
+     */
+    private static <V> Node<V> rotateLeft(Node<V> node) {
+        Node<V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Recomputes the height and max end of a node from its children.
+     *
+     * @param node the node to update.
+     */
+    private static void update(Node<?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    /**
+     * @param node a node, or null.
+     * @return the height of the node, 0 for null.
+     */
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * A node of the tree: one interval plus the height and max end of its subtree.
+     *
+     * @param <V> the type of the value stored with the interval.
+     */
+    private static class Node<V> {
+        /**
+         * The inclusive start of the interval.
+         */
+        private final long start;
+        /**
+         * The exclusive end of the interval.
+         */
+        private final long end;
+        /**
+         * The unique id of the interval.
+         */
+        private final long id;
+        /**
+         * The value stored with the interval.
+         */
+        private final V value;
+        /**
+         * The largest end in this subtree.
+         */
+        private long maxEnd;
+        /**
+         * The height of this subtree.
+         */
+        private int height = 1;
+        /**
+         * The left child.
+         */
+        private Node<V> left;
+        /**
+         * The right child.
+         */
+        private Node<V> right;
+
+        /**
+         * @param start the inclusive start of the interval.
+         * @param end   the exclusive end of the interval.
+         * @param id    the unique id of the interval.
+         * @param value the value stored with the interval.
+         */
+        private Node(long start, long end, long id, V value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+}
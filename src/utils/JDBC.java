@@ -1,19 +1,18 @@
 package utils;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 /**
- * This class creates a connection to the database using the JDBC driver, and returns the connection.
+ * This class creates the connection pool to the database using the JDBC driver, and hands out pooled connections.
  */
 public class JDBC {
 
     /**
-     * The prepared statement that is used to execute SQL statements.
+     * The prepared statement that is used to execute SQL statements, one per thread.
      */
-    private static PreparedStatement preparedStatement;
+    private static final ThreadLocal<PreparedStatement> preparedStatement = new ThreadLocal<>();
     /**
      * It's a constant that is used to create the JDBC URL.
      */
@@ -43,16 +42,22 @@ public class JDBC {
      * conversion is done by the driver manager on the server side, less coding and processing power is needed to convert the date and time in the application.
      */
     private static final String jdbcUrl = protocol + vendorName + ipAddress + "?connectionTimeZone= UTC";
+    /**
+     * When true, the driver prepares statements on the server (useServerPrepStmts), so a cached statement also skips
+     * the server-side parse and plan. When false, statements are prepared on the client and the cache saves the
+     * client-side parse only.
+     */
+    private static final boolean useServerPreparedStatements = true;
+    /**
+     * When true, the driver sends a batch of INSERTs as multi-row INSERT statements (rewriteBatchedStatements), so a
+     * bulk import costs a few round trips instead of one per row.
+     */
+    private static final boolean rewriteBatchedStatements = true;
     //private static final String jdbcUrl = protocol + vendorName + location + databaseName + "?connectionTimeZone = UTC"; // Setting the timezone to UTC instead of the default server time zone.
     /**
      * The JDBC driver.
      */
     private static final String MYSQLJDBCDriver = "com.mysql.cj.jdbc.Driver";
-    /**
-     * The connection to the database.
-     */
-
-    public static Connection conn;// = null;
     /**
      * The username to connect to the database.
      */
@@ -62,82 +67,113 @@ public class JDBC {
      * The password to connect to the database.
      */
     private static final String password = "Passw0rd!";
+    /**
+     * The number of idle connections the pool keeps open.
+     */
+    private static final int minimumIdle = 2;
+    /**
+     * The maximum number of connections the pool opens.
+     */
+    private static final int maximumPoolSize = 10;
+    /**
+     * How long a caller waits for a free connection, in milliseconds.
+     */
+    private static final long borrowTimeoutMillis = 30_000;
+    /**
+     * How long an idle connection is kept open before it is evicted, in milliseconds.
+     */
+    private static final long idleTimeoutMillis = 10 * 60_000;
+    /**
+     * The timeout used to validate a connection when it is borrowed, in seconds.
+     */
+    private static final int validationTimeoutSeconds = 5;
+    /**
+     * A connection held longer than this is reported as a leak, in milliseconds. Leak detection captures the
+     * borrower's stack on every borrow, so it is off (0) unless the scheduler.pool.leakDetectionMillis property is set.
+     */
+    private static final long leakDetectionThresholdMillis = Long.getLong("scheduler.pool.leakDetectionMillis", 0L);
+    /**
+     * The number of prepared statements cached per pooled connection. Zero disables the statement cache.
+     */
+    private static final int statementCacheSize = 64;
+    /**
+     * The connection pool that hands out connections to the database.
+     */
+    private static ConnectionPool dataSource;
 
 
     /**
-     * It creates a connection to the database using the JDBC driver, and returns the connection
+     * It loads the JDBC driver and starts the connection pool, opening the minimum number of idle connections.
+     */
+    public static void startConnection() {
+        getDataSource();
+        System.out.println("Connection pool started!");
+    }
+
+    /**
+     * It returns the connection pool, creating it the first time it is needed or after it has been closed.
      *
-     * @return A connection to the database.
-     * @throws ClassNotFoundException if the JDBC driver is not found.
-     * @throws SQLException           if an error occurs while connecting to the database..
-     */
-    public static Connection startConnection() {
-        try {
-            Class.forName(MYSQLJDBCDriver);
-            if (conn == null || conn.isClosed()) {
-                conn = DriverManager.getConnection(jdbcUrl, username, password);
+     * @return The pooled data source.
+     */
+    public static synchronized ConnectionPool getDataSource() {
+        if (dataSource == null || dataSource.isClosed()) {
+            try {
+                Class.forName(MYSQLJDBCDriver);
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
             }
-            System.out.println("Connection successful!");
-        } catch (ClassNotFoundException | SQLException e) {
-            e.printStackTrace();
+            String url = jdbcUrl + "&useServerPrepStmts=" + useServerPreparedStatements
+                    + "&rewriteBatchedStatements=" + rewriteBatchedStatements;
+            dataSource = new ConnectionPool(url, username, password, minimumIdle, maximumPoolSize, borrowTimeoutMillis,
+                    idleTimeoutMillis, validationTimeoutSeconds, leakDetectionThresholdMillis, statementCacheSize);
         }
-        return conn;
+        return dataSource;
     }
 
-
     /**
-     * It checks if the connection is null or closed, if it is, it creates a new connection and returns it. If it's not, it
-     * returns the existing connection
+     * It borrows a connection from the connection pool. Closing the connection returns it to the pool, so callers
+     * should keep closing it with try-with-resources.
      *
      * @return A connection to the database.
+     * @throws SQLException if no connection can be borrowed from the pool.
      */
-    public static Connection getConnection() {
-
-        try {
-            Class.forName(MYSQLJDBCDriver);
-            if (conn == null || conn.isClosed()) {
-                conn = DriverManager.getConnection(jdbcUrl, username, password);
-            } else {
-                System.out.println("Connection already exists!");
-                return conn;
-            }
-            System.out.println("Get Connection successful!");
-        } catch (ClassNotFoundException | SQLException e) {
-            e.printStackTrace();
-        }
-        System.out.println("GET CONNECTION successful!");
-        return conn;
+    public static Connection getConnection() throws SQLException {
+        return getDataSource().getConnection();
     }
 
     /**
-     * Close the connection.
+     * Close the connection pool and every idle connection in it.
      */
-    public static void closeConnection() {
-        try {
-            conn.close();
-            System.out.println("Connection closed!");
-        } catch (SQLException throwables) {
-            throwables.printStackTrace();
+    public static synchronized void closeConnection() {
+        if (dataSource != null) {
+            dataSource.close();
         }
     }
 
     /**
-     * This function sets the prepared statement to the connection and the sql statement
+     * This function sets the prepared statement to the connection and the sql statement. On a pooled connection the
+     * statement comes from the connection's statement cache; the previous statement set by this thread is closed,
+     * which returns it to its cache.
      *
      * @param conn         The connection to the database.
      * @param sqlStatement The SQL statement to be executed.
+     * @throws SQLException if the statement cannot be prepared.
      */
     public static void setPreparedStatement(Connection conn, String sqlStatement) throws SQLException {
-        preparedStatement = conn.prepareStatement(sqlStatement);
+        PreparedStatement previous = preparedStatement.get();
+        if (previous != null) {
+            previous.close();
+        }
+        preparedStatement.set(conn.prepareStatement(sqlStatement));
     }
 
     /**
-     * It returns the prepared statement
+     * It returns the prepared statement set by this thread.
      *
      * @return The preparedStatement object.
      */
     public static PreparedStatement getPreparedStatement() {
-        return preparedStatement;
+        return preparedStatement.get();
     }
 
 }
\ No newline at end of file
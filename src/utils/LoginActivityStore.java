@@ -0,0 +1,623 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is a queryable store of login attempts. Attempts are appended to a compact binary file, one fixed-layout
+ * record each, and indexed in memory when the store is opened: a time index (the attempts sorted by time, searched by
+ * binary search) and a per-user index (the positions of each user's attempts in time order). Security questions such
+ * as "failed attempts per user per hour" or "first and last login of a user" are answered from the indexes instead
+ * of by scanning the text log.<br>
+ * The first time the store is opened, the existing login_activity.txt is imported into it. The text log is still
+ * written, for people to read.
+ * <p>
+ * File layout: the 4-byte magic "LGA1", then one record per attempt: the epoch second (8 bytes), the nanosecond
+ * (4 bytes), the {@link Outcome} ordinal (1 byte), the length of the UTF-8 username (2 bytes) and the username.
+ */
+public class LoginActivityStore {
+    /**
+     * The logger used to report file errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(LoginActivityStore.class.getName());
+    /**
+     * The binary file of the login activity store.
+     */
+    private static final String STORE_FILE = "login_activity.dat";
+    /**
+     * The text log imported when the store is created.
+     */
+    private static final String TEXT_LOG_FILE = "login_activity.txt";
+    /**
+     * The first bytes of a store file.
+     */
+    private static final byte[] MAGIC = {'L', 'G', 'A', '1'};
+    /**
+     * The size of a record without its username.
+     */
+    private static final int RECORD_HEADER_BYTES = 8 + 4 + 1 + 2;
+
+    /**
+     * The login activity store, opened when first used.
+     */
+    private static LoginActivityStore instance;
+
+    /**
+     * The outcome of a login attempt.
+     */
+    public enum Outcome {
+        /**
+         * The user logged in.
+         */
+        SUCCESS,
+        /**
+         * The username or password was wrong.
+         */
+        FAILURE,
+        /**
+         * No username was entered.
+         */
+        NO_USERNAME
+    }
+
+    /**
+     * One login attempt.
+     */
+    public static class Attempt {
+        /**
+         * When the attempt was made.
+         */
+        private final Instant time;
+        /**
+         * The username entered, empty if none.
+         */
+        private final String userName;
+        /**
+         * The outcome of the attempt.
+         */
+        private final Outcome outcome;
+
+        /**
+         * @param time     when the attempt was made.
+         * @param userName the username entered, empty if none.
+         * @param outcome  the outcome of the attempt.
+         */
+        public Attempt(Instant time, String userName, Outcome outcome) {
+            this.time = time;
+            this.userName = userName;
+            this.outcome = outcome;
+        }
+
+        /**
+         * @return when the attempt was made.
+         */
+        public Instant getTime() {
+            return time;
+        }
+
+        /**
+         * @return the username entered, empty if none.
+         */
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * @return the outcome of the attempt.
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public String toString() {
+            return outcome + " " + userName + " " + time;
+        }
+    }
+
+    /**
+     * The store file.
+     */
+    private final Path file;
+    /**
+     * The open store file.
+     */
+    private final FileChannel channel;
+    /**
+     * The attempts, sorted by time; the time index.
+     */
+    private final List<Attempt> attempts = new ArrayList<>();
+    /**
+     * The epoch milliseconds of the attempts, parallel to {@link #attempts}, for binary search.
+     */
+    private long[] times = new long[256];
+    /**
+     * The positions in {@link #attempts} of each user's attempts, in time order; the per-user index.
+     */
+    private final Map<String, IntList> byUser = new HashMap<>();
+
+    /**
+     * Opens a store file, creating it if needed, and indexes its records.
+     *
+     * @param file the store file.
+     * @throws IOException if the file cannot be read or is not a store file.
+     */
+    public LoginActivityStore(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            channel.write(ByteBuffer.wrap(MAGIC));
+        } else {
+            load();
+        }
+    }
+
+    /**
+     * Returns the login activity store, opening it on first use. If the store file does not exist yet, it is created
+     * and the existing text log is imported into it. The new store is written to a temporary file that is renamed to
+     * the store file only once the import has succeeded, so an import that fails is tried again the next time.
+     *
+     * @return the login activity store.
+     * @throws IOException if the store cannot be opened or the text log cannot be imported.
+     */
+    public static synchronized LoginActivityStore getInstance() throws IOException {
+        if (instance == null) {
+            Path storeFile = Paths.get(STORE_FILE);
+            if (!Files.exists(storeFile)) {
+                create(storeFile, Paths.get(TEXT_LOG_FILE));
+            }
+            instance = new LoginActivityStore(storeFile);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a store file holding the attempts of a text log, if there is one.
+     *
+     * @param storeFile the store file to create.
+     * @param textLog   the text log to import.
+     * @throws IOException if the store file cannot be written or the text log cannot be imported; no store file is
+     *                     created then.
+     */
+    private static void create(Path storeFile, Path textLog) throws IOException {
+        Path temporary = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try {
+            LoginActivityStore store = new LoginActivityStore(temporary);
+            try {
+                if (Files.exists(textLog)) {
+                    int imported = store.importTextLog(textLog);
+                    LOGGER.info("Imported " + imported + " login attempts from " + textLog);
+                }
+            } finally {
+                store.close();
+            }
+            Files.move(temporary, storeFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Records a login attempt, appending it to the file and to the indexes.
+     *
+     * @param userName the username entered, empty if none.
+     * @param outcome  the outcome of the attempt.
+     * @param time     when the attempt was made.
+     * @throws IOException if the attempt cannot be written.
+     */
+    public synchronized void record(String userName, Outcome outcome, Instant time) throws IOException {
+        Attempt attempt = new Attempt(time, userName == null ? "" : userName, outcome);
+        ByteBuffer buffer = encode(attempt);
+        channel.position(channel.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        index(attempt);
+    }
+
+    /**
+     * Imports the lines of a text login activity log written by the Login screen. Lines that cannot be parsed are
+     * skipped.
+     *
+     * @param textLog the text log.
+     * @return the number of attempts imported.
+     * @throws IOException if the log cannot be read or the attempts cannot be written.
+     */
+    public synchronized int importTextLog(Path textLog) throws IOException {
+        List<Attempt> parsed = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(textLog, Charset.defaultCharset())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Attempt attempt = parseTextLine(line);
+                if (attempt != null) {
+                    parsed.add(attempt);
+                } else if (!line.isBlank()) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.warning("Skipped " + skipped + " unreadable lines of " + textLog);
+        }
+        parsed.sort((a, b) -> a.getTime().compareTo(b.getTime()));
+        int size = 0;
+        for (Attempt attempt : parsed) {
+            size += RECORD_HEADER_BYTES + attempt.getUserName().getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Attempt attempt : parsed) {
+            buffer.put(encode(attempt));
+        }
+        buffer.flip();
+        channel.position(channel.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        for (Attempt attempt : parsed) {
+            index(attempt);
+        }
+        return parsed.size();
+    }
+
+    /**
+     * Returns the attempts made in the half-open range [from, to), in time order.
+     *
+     * @param from the inclusive start of the range.
+     * @param to   the exclusive end of the range.
+     * @return the attempts.
+     */
+    public synchronized List<Attempt> getAttempts(Instant from, Instant to) {
+        int first = lowerBound(from.toEpochMilli());
+        int last = lowerBound(to.toEpochMilli());
+        return new ArrayList<>(attempts.subList(first, last));
+    }
+
+    /**
+     * Returns a user's attempts made in the half-open range [from, to), in time order.
+     *
+     * @param userName the username.
+     * @param from     the inclusive start of the range.
+     * @param to       the exclusive end of the range.
+     * @return the attempts.
+     */
+    public synchronized List<Attempt> getAttempts(String userName, Instant from, Instant to) {
+        List<Attempt> result = new ArrayList<>();
+        IntList positions = byUser.get(userName);
+        if (positions != null) {
+            for (int i = 0; i < positions.size; i++) {
+                Attempt attempt = attempts.get(positions.values[i]);
+                if (!attempt.getTime().isBefore(from) && attempt.getTime().isBefore(to)) {
+                    result.add(attempt);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts a user's failed attempts in each hour of the half-open range [from, to).
+     *
+     * @param userName the username.
+     * @param from     the inclusive start of the range.
+     * @param to       the exclusive end of the range.
+     * @return the number of failed attempts by the start of each hour that has any, in time order.
+     */
+    public synchronized SortedMap<Instant, Integer> getFailedAttemptsPerHour(String userName, Instant from, Instant to) {
+        SortedMap<Instant, Integer> perHour = new TreeMap<>();
+        for (Attempt attempt : getAttempts(userName, from, to)) {
+            if (attempt.getOutcome() == Outcome.FAILURE) {
+                perHour.merge(attempt.getTime().truncatedTo(ChronoUnit.HOURS), 1, Integer::sum);
+            }
+        }
+        return perHour;
+    }
+
+    /**
+     * Counts the failed attempts of every user in each hour of the half-open range [from, to).
+     *
+     * @param from the inclusive start of the range.
+     * @param to   the exclusive end of the range.
+     * @return for each username with failed attempts, the number of failed attempts by the start of each hour.
+     */
+    public synchronized Map<String, SortedMap<Instant, Integer>> getFailedAttemptsPerUserPerHour(Instant from, Instant to) {
+        Map<String, SortedMap<Instant, Integer>> perUser = new TreeMap<>();
+        for (Attempt attempt : getAttempts(from, to)) {
+            if (attempt.getOutcome() == Outcome.FAILURE) {
+                perUser.computeIfAbsent(attempt.getUserName(), user -> new TreeMap<>())
+                        .merge(attempt.getTime().truncatedTo(ChronoUnit.HOURS), 1, Integer::sum);
+            }
+        }
+        return perUser;
+    }
+
+    /**
+     * @param userName the username.
+     * @return the time of the user's first successful login, or null if there is none.
+     */
+    public synchronized Instant getFirstLogin(String userName) {
+        IntList positions = byUser.get(userName);
+        if (positions != null) {
+            for (int i = 0; i < positions.size; i++) {
+                Attempt attempt = attempts.get(positions.values[i]);
+                if (attempt.getOutcome() == Outcome.SUCCESS) {
+                    return attempt.getTime();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param userName the username.
+     * @return the time of the user's last successful login, or null if there is none.
+     */
+    public synchronized Instant getLastLogin(String userName) {
+        IntList positions = byUser.get(userName);
+        if (positions != null) {
+            for (int i = positions.size - 1; i >= 0; i--) {
+                Attempt attempt = attempts.get(positions.values[i]);
+                if (attempt.getOutcome() == Outcome.SUCCESS) {
+                    return attempt.getTime();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of attempts in the store.
+     */
+    public synchronized int size() {
+        return attempts.size();
+    }
+
+    /**
+     * Forces the store file to disk and closes it.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the login activity store if it was opened.
+     */
+    public static synchronized void closeInstance() {
+        if (instance != null) {
+            try {
+                instance.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error closing " + instance.file, e);
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     * Parses a line of the text log, e.g. "User admin successfully logged in at 2023-02-17T01:43:56.18Z[Etc/UTC]".
+     *
+     * @param line the line.
+     * @return the attempt, or null if the line is not in a known format.
+     */
+    static Attempt parseTextLine(String line) {
+        String[][] formats = {
+                {"User ", " successfully logged in at ", "SUCCESS"},
+                {"User ", " failed login at ", "FAILURE"},
+                {"No username", " provided at ", "NO_USERNAME"}
+        };
+        for (String[] format : formats) {
+            int separator = line.indexOf(format[1]);
+            if (line.startsWith(format[0]) && separator >= format[0].length() - 1) {
+                String userName = format[2].equals("NO_USERNAME") ? "" : line.substring(format[0].length(), separator);
+                try {
+                    Instant time = ZonedDateTime.parse(line.substring(separator + format[1].length()).trim()).toInstant();
+                    return new Attempt(time, userName, Outcome.valueOf(format[2]));
+                } catch (DateTimeParseException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads and indexes every record of the file. An incomplete last record, left by a write that was cut short, is
+     * cut off the file. A complete record with an unknown outcome is skipped and left in the file, so the attempts
+     * after it are still loaded.
+     *
+     * @throws IOException if the file cannot be read or is not a store file.
+     */
+    private void load() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read the whole file
+        }
+        buffer.flip();
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() < MAGIC.length) {
+            throw new IOException(file + " is not a login activity store");
+        }
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(file + " is not a login activity store");
+        }
+        List<Attempt> loaded = new ArrayList<>();
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int recordStart = buffer.position();
+            long epochSecond = buffer.getLong();
+            int nano = buffer.getInt();
+            int outcome = buffer.get();
+            int length = Short.toUnsignedInt(buffer.getShort());
+            if (buffer.remaining() < length) {
+                buffer.position(recordStart);
+                break;
+            }
+            byte[] userName = new byte[length];
+            buffer.get(userName);
+            if (outcome < 0 || outcome >= Outcome.values().length) {
+                LOGGER.warning("Skipping a record with unknown outcome " + outcome + " at offset " + recordStart
+                        + " of " + file);
+                continue;
+            }
+            loaded.add(new Attempt(Instant.ofEpochSecond(epochSecond, nano), new String(userName, StandardCharsets.UTF_8),
+                    Outcome.values()[outcome]));
+        }
+        if (buffer.hasRemaining()) {
+            LOGGER.warning("Cutting off an incomplete record of " + buffer.remaining() + " bytes at offset "
+                    + buffer.position() + " of " + file);
+            channel.truncate(buffer.position());
+        }
+        loaded.sort((a, b) -> a.getTime().compareTo(b.getTime()));
+        for (Attempt attempt : loaded) {
+            index(attempt);
+        }
+    }
+
+    /**
+     * Encodes an attempt as a record.
+     *
+     * @param attempt the attempt.
+     * @return the record, ready to be written.
+     */
+    private static ByteBuffer encode(Attempt attempt) {
+        byte[] userName = attempt.getUserName().getBytes(StandardCharsets.UTF_8);
+        if (userName.length > 0xFFFF) {
+            userName = Arrays.copyOf(userName, 0xFFFF);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + userName.length);
+        buffer.putLong(attempt.getTime().getEpochSecond());
+        buffer.putInt(attempt.getTime().getNano());
+        buffer.put((byte) attempt.getOutcome().ordinal());
+        buffer.putShort((short) userName.length);
+        buffer.put(userName);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Adds an attempt to the time index and the per-user index, keeping both in time order.
+     *
+     * @param attempt the attempt.
+     */
+    private void index(Attempt attempt) {
+        long millis = attempt.getTime().toEpochMilli();
+        int position = attempts.size();
+        if (position > 0 && millis < times[position - 1]) {
+            // Out of order, e.g. after a clock change: insert it in place and rebuild the per-user positions.
+            position = upperBound(millis);
+            attempts.add(position, attempt);
+            rebuildIndexes();
+            return;
+        }
+        if (position == times.length) {
+            times = Arrays.copyOf(times, position * 2);
+        }
+        times[position] = millis;
+        attempts.add(attempt);
+        byUser.computeIfAbsent(attempt.getUserName(), user -> new IntList()).add(position);
+    }
+
+    /**
+     * Rebuilds the time array and the per-user index from the attempts list.
+     */
+    private void rebuildIndexes() {
+        times = Arrays.copyOf(times, Math.max(times.length, attempts.size() * 2));
+        byUser.clear();
+        for (int i = 0; i < attempts.size(); i++) {
+            Attempt attempt = attempts.get(i);
+            times[i] = attempt.getTime().toEpochMilli();
+            byUser.computeIfAbsent(attempt.getUserName(), user -> new IntList()).add(i);
+        }
+    }
+
+    /**
+     * @param millis an epoch millisecond.
+     * @return the position of the first attempt at or after the time.
+     */
+    private int lowerBound(long millis) {
+        int low = 0;
+        int high = attempts.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param millis an epoch millisecond.
+     * @return the position of the first attempt after the time.
+     */
+    private int upperBound(long millis) {
+        int low = 0;
+        int high = attempts.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        /**
+         * The values; only the first {@link #size} are used.
+         */
+        private int[] values = new int[8];
+        /**
+         * The number of values.
+         */
+        private int size;
+
+        /**
+         * @param value the value to append.
+         */
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
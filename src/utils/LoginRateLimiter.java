@@ -0,0 +1,520 @@
+package utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class throttles log in attempts in memory, before they reach the database. Two limits are kept, each over a
+ * sliding window:
+ * <ul>
+ *     <li>per username, the number of failed attempts; reaching the limit locks the username out for a while, and each
+ *     further lockout before a successful log in doubles the time, up to a maximum;</li>
+ *     <li>per source, the number of attempts; over the limit, attempts from the source are rejected until the window
+ *     has moved on.</li>
+ * </ul>
+ * A window is a ring buffer of a fixed number of time buckets holding counts, so each tracked key costs a few hundred
+ * bytes however many attempts it makes, and a check or update is a pass over the buckets. Keys that have been idle
+ * for longer than their window, and are not locked out, are dropped once too many keys are tracked.<br>
+ * Usernames are compared ignoring case, as the users table does.
+ */
+public class LoginRateLimiter {
+    /**
+     * The number of buckets in each window.
+     */
+    private static final int BUCKETS = 30;
+    /**
+     * The number of tracked keys above which idle keys are dropped.
+     */
+    private static final int MAX_TRACKED_KEYS = 10_000;
+
+    /**
+     * The limiter used by the log in screen.
+     */
+    private static final LoginRateLimiter instance = new LoginRateLimiter(Clock.systemUTC(),
+            5, Duration.ofMinutes(15), 20, Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMinutes(30));
+
+    /**
+     * Why an attempt was rejected.
+     */
+    public enum Reason {
+        /**
+         * The attempt is allowed.
+         */
+        NONE,
+        /**
+         * The username is locked out after too many failed attempts.
+         */
+        USER_LOCKED,
+        /**
+         * The source has made too many attempts.
+         */
+        SOURCE_THROTTLED
+    }
+
+    /**
+     * The answer to {@link #tryAcquire}.
+     */
+    public static class Decision {
+        /**
+         * The decision for an allowed attempt.
+         */
+        private static final Decision ALLOWED = new Decision(Reason.NONE, Duration.ZERO);
+
+        /**
+         * Why the attempt was rejected, or NONE.
+         */
+        private final Reason reason;
+        /**
+         * How long to wait before trying again.
+         */
+        private final Duration retryAfter;
+
+        /**
+         * @param reason     why the attempt was rejected, or NONE.
+         * @param retryAfter how long to wait before trying again.
+         */
+        private Decision(Reason reason, Duration retryAfter) {
+            this.reason = reason;
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @return true if the attempt may go ahead.
+         */
+        public boolean isAllowed() {
+            return reason == Reason.NONE;
+        }
+
+        /**
+         * @return why the attempt was rejected, or NONE.
+         */
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return how long to wait before trying again; zero if the attempt is allowed.
+         */
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * The clock the windows are measured with.
+     */
+    private final Clock clock;
+    /**
+     * The number of failed attempts per username that locks the username out.
+     */
+    private final int userMaxFailures;
+    /**
+     * The window failed attempts per username are counted over, in milliseconds.
+     */
+    private final long userWindowMillis;
+    /**
+     * The number of attempts per source above which the source is throttled.
+     */
+    private final int sourceMaxAttempts;
+    /**
+     * The window attempts per source are counted over, in milliseconds.
+     */
+    private final long sourceWindowMillis;
+    /**
+     * The length of the first lockout, in milliseconds.
+     */
+    private final long baseLockoutMillis;
+    /**
+     * The longest lockout, in milliseconds.
+     */
+    private final long maxLockoutMillis;
+    /**
+     * The failed attempts and lockout of each username, by lower case username.
+     */
+    private final Map<String, KeyState> users = new ConcurrentHashMap<>();
+    /**
+     * The attempts of each source.
+     */
+    private final Map<String, KeyState> sources = new ConcurrentHashMap<>();
+    /**
+     * The number of attempts allowed.
+     */
+    private final AtomicLong allowedCount = new AtomicLong();
+    /**
+     * The number of attempts rejected because the username was locked out.
+     */
+    private final AtomicLong userRejectedCount = new AtomicLong();
+    /**
+     * The number of attempts rejected because the source was throttled.
+     */
+    private final AtomicLong sourceRejectedCount = new AtomicLong();
+    /**
+     * The number of lockouts started.
+     */
+    private final AtomicLong lockoutCount = new AtomicLong();
+
+    /**
+     * This is the constructor for the LoginRateLimiter class.
+     *
+     * @param clock             the clock the windows are measured with.
+     * @param userMaxFailures   the number of failed attempts per username that locks the username out.
+     * @param userWindow        the window failed attempts per username are counted over.
+     * @param sourceMaxAttempts the number of attempts per source above which the source is throttled.
+     * @param sourceWindow      the window attempts per source are counted over.
+     * @param baseLockout       the length of the first lockout.
+     * @param maxLockout        the longest lockout.
+     */
+    public LoginRateLimiter(Clock clock, int userMaxFailures, Duration userWindow, int sourceMaxAttempts,
+                            Duration sourceWindow, Duration baseLockout, Duration maxLockout) {
+        this.clock = clock;
+        this.userMaxFailures = userMaxFailures;
+        this.userWindowMillis = userWindow.toMillis();
+        this.sourceMaxAttempts = sourceMaxAttempts;
+        this.sourceWindowMillis = sourceWindow.toMillis();
+        this.baseLockoutMillis = baseLockout.toMillis();
+        this.maxLockoutMillis = maxLockout.toMillis();
+    }
+
+    /**
+     * @return the limiter used by the log in screen: 5 failures per username in 15 minutes lock the username out for
+     * 1 minute, doubling up to 30 minutes, and a source may make 20 attempts a minute.
+     */
+    public static LoginRateLimiter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Decides whether a log in attempt may go ahead, and counts it against the source if it may. Call before checking
+     * the credentials, then report the outcome with {@link #recordFailure} or {@link #recordSuccess}.
+     *
+     * @param userName the username entered, or null or empty if none.
+     * @param source   where the attempt comes from.
+     * @return the decision.
+     */
+    public Decision tryAcquire(String userName, String source) {
+        long now = clock.millis();
+        KeyState user = hasUserName(userName) ? users.get(key(userName)) : null;
+        if (user != null) {
+            long remaining = user.lockoutRemaining(now);
+            if (remaining > 0) {
+                userRejectedCount.incrementAndGet();
+                return new Decision(Reason.USER_LOCKED, Duration.ofMillis(remaining));
+            }
+        }
+        KeyState state = state(sources, source, sourceWindowMillis, now);
+        long wait = state.tryAdd(now, sourceMaxAttempts);
+        if (wait > 0) {
+            sourceRejectedCount.incrementAndGet();
+            return new Decision(Reason.SOURCE_THROTTLED, Duration.ofMillis(wait));
+        }
+        allowedCount.incrementAndGet();
+        return Decision.ALLOWED;
+    }
+
+    /**
+     * Counts a failed attempt against a username, locking the username out if it reached the limit.
+     *
+     * @param userName the username entered; ignored if null or empty.
+     * @return how long the username is now locked out for; zero if it is not.
+     */
+    public Duration recordFailure(String userName) {
+        if (!hasUserName(userName)) {
+            return Duration.ZERO;
+        }
+        long now = clock.millis();
+        KeyState state = state(users, key(userName), userWindowMillis, now);
+        long lockout = state.addFailure(now, userMaxFailures, baseLockoutMillis, maxLockoutMillis);
+        if (lockout > 0) {
+            lockoutCount.incrementAndGet();
+        }
+        return Duration.ofMillis(lockout);
+    }
+
+    /**
+     * Clears the failed attempts and lockout history of a username after a successful log in.
+     *
+     * @param userName the username logged in.
+     */
+    public void recordSuccess(String userName) {
+        if (hasUserName(userName)) {
+            users.remove(key(userName));
+        }
+    }
+
+    /**
+     * @param userName the username.
+     * @return true if the username is locked out.
+     */
+    public boolean isLockedOut(String userName) {
+        return !getLockoutRemaining(userName).isZero();
+    }
+
+    /**
+     * @param userName the username.
+     * @return how long the username is still locked out for; zero if it is not.
+     */
+    public Duration getLockoutRemaining(String userName) {
+        KeyState state = hasUserName(userName) ? users.get(key(userName)) : null;
+        return state == null ? Duration.ZERO : Duration.ofMillis(state.lockoutRemaining(clock.millis()));
+    }
+
+    /**
+     * Lifts the lockout of a username and forgets its failed attempts.
+     *
+     * @param userName the username.
+     */
+    public void unlock(String userName) {
+        recordSuccess(userName);
+    }
+
+    /**
+     * @return the number of usernames locked out now.
+     */
+    public int getLockedOutCount() {
+        long now = clock.millis();
+        int locked = 0;
+        for (KeyState state : users.values()) {
+            if (state.lockoutRemaining(now) > 0) {
+                locked++;
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * @return the number of usernames and sources being tracked.
+     */
+    public int getTrackedKeyCount() {
+        return users.size() + sources.size();
+    }
+
+    /**
+     * @return the number of attempts allowed.
+     */
+    public long getAllowedCount() {
+        return allowedCount.get();
+    }
+
+    /**
+     * @return the number of attempts rejected because the username was locked out.
+     */
+    public long getUserRejectedCount() {
+        return userRejectedCount.get();
+    }
+
+    /**
+     * @return the number of attempts rejected because the source was throttled.
+     */
+    public long getSourceRejectedCount() {
+        return sourceRejectedCount.get();
+    }
+
+    /**
+     * @return the number of lockouts started.
+     */
+    public long getLockoutCount() {
+        return lockoutCount.get();
+    }
+
+    /**
+     * @param userName the username entered.
+     * @return true if a username was entered.
+     */
+    private static boolean hasUserName(String userName) {
+        return userName != null && !userName.isEmpty();
+    }
+
+    /**
+     * @param userName the username.
+     * @return the key the username is tracked under.
+     */
+    private static String key(String userName) {
+        return userName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the state of a key, creating it if needed, after dropping idle keys if too many are tracked.
+     *
+     * @param states       the states of the keys of one kind.
+     * @param key          the key.
+     * @param windowMillis the window of the key.
+     * @param now          the current time.
+     * @return the state of the key.
+     */
+    private static KeyState state(Map<String, KeyState> states, String key, long windowMillis, long now) {
+        KeyState state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (states.size() >= MAX_TRACKED_KEYS) {
+            evictIdle(states, now);
+        }
+        return states.computeIfAbsent(key, k -> new KeyState(windowMillis));
+    }
+
+    /**
+     * Drops the keys that have nothing left in their window and are not locked out.
+     *
+     * @param states the states of the keys of one kind.
+     * @param now    the current time.
+     */
+    private static void evictIdle(Map<String, KeyState> states, long now) {
+        Iterator<KeyState> it = states.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isIdle(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The sliding window, and for usernames the lockout, of one key.
+     */
+    private static class KeyState {
+        /**
+         * The length of one bucket, in milliseconds.
+         */
+        private final long bucketMillis;
+        /**
+         * The count of each bucket of the ring.
+         */
+        private final int[] counts = new int[BUCKETS];
+        /**
+         * The bucket number, i.e. time / bucketMillis, each slot of the ring currently counts.
+         */
+        private final long[] bucketIds = new long[BUCKETS];
+        /**
+         * The time the lockout ends; 0 if none was started.
+         */
+        private long lockedUntil;
+        /**
+         * The number of lockouts since the last successful log in.
+         */
+        private int lockouts;
+        /**
+         * The time of the last count.
+         */
+        private long lastSeen;
+
+        /**
+         * @param windowMillis the length of the window, in milliseconds.
+         */
+        private KeyState(long windowMillis) {
+            this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+            Arrays.fill(bucketIds, Long.MIN_VALUE);
+        }
+
+        /**
+         * Counts one event if the window holds fewer than the limit.
+         *
+         * @param now   the current time.
+         * @param limit the most events the window may hold.
+         * @return 0 if the event was counted, otherwise how long until the window holds fewer than the limit.
+         */
+        private synchronized long tryAdd(long now, int limit) {
+            long bucket = now / bucketMillis;
+            if (count(bucket) >= limit) {
+                return waitBelow(bucket, limit, now);
+            }
+            add(bucket, now);
+            return 0;
+        }
+
+        /**
+         * Counts one failed attempt and starts a lockout if the window reached the limit.
+         *
+         * @param now         the current time.
+         * @param limit       the number of failures that starts a lockout.
+         * @param baseMillis  the length of the first lockout.
+         * @param maxMillis   the longest lockout.
+         * @return the length of the lockout started, or 0.
+         */
+        private synchronized long addFailure(long now, int limit, long baseMillis, long maxMillis) {
+            long bucket = now / bucketMillis;
+            add(bucket, now);
+            if (count(bucket) < limit) {
+                return 0;
+            }
+            long lockout = baseMillis << Math.min(lockouts, 30);
+            lockout = lockout <= 0 ? maxMillis : Math.min(lockout, maxMillis);
+            lockouts++;
+            lockedUntil = now + lockout;
+            Arrays.fill(counts, 0);
+            return lockout;
+        }
+
+        /**
+         * @param now the current time.
+         * @return how long the lockout still lasts; 0 if there is none.
+         */
+        private synchronized long lockoutRemaining(long now) {
+            return Math.max(0, lockedUntil - now);
+        }
+
+        /**
+         * @param now the current time.
+         * @return true if the window is empty and there is no lockout.
+         */
+        private synchronized boolean isIdle(long now) {
+            return now - lastSeen >= bucketMillis * BUCKETS && lockedUntil <= now;
+        }
+
+        /**
+         * Adds one to the current bucket, clearing the slot first if it still counts an expired bucket.
+         *
+         * @param bucket the current bucket number.
+         * @param now    the current time.
+         */
+        private void add(long bucket, long now) {
+            int slot = (int) Math.floorMod(bucket, (long) BUCKETS);
+            if (bucketIds[slot] != bucket) {
+                bucketIds[slot] = bucket;
+                counts[slot] = 0;
+            }
+            counts[slot]++;
+            lastSeen = now;
+        }
+
+        /**
+         * @param bucket the current bucket number.
+         * @return the number of events in the window ending with the current bucket.
+         */
+        private int count(long bucket) {
+            int total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (bucket - bucketIds[i] < BUCKETS && bucketIds[i] <= bucket) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Finds how long until enough of the oldest buckets have left the window for it to hold fewer than the limit.
+         *
+         * @param bucket the current bucket number.
+         * @param limit  the most events the window may hold.
+         * @param now    the current time.
+         * @return the wait, at least one millisecond.
+         */
+        private long waitBelow(long bucket, int limit, long now) {
+            int total = count(bucket);
+            for (long oldest = bucket - BUCKETS + 1; oldest <= bucket; oldest++) {
+                int slot = (int) Math.floorMod(oldest, (long) BUCKETS);
+                if (bucketIds[slot] == oldest) {
+                    total -= counts[slot];
+                }
+                if (total < limit) {
+                    return Math.max(1, (oldest + BUCKETS) * bucketMillis - now);
+                }
+            }
+            return Math.max(1, (bucket + 1) * bucketMillis - now);
+        }
+    }
+}
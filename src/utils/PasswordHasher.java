@@ -0,0 +1,158 @@
+package utils;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * This class hashes and verifies passwords with PBKDF2-HMAC-SHA256 and a random salt per password. A stored hash has
+ * the form {@code pbkdf2$<iterations>$<salt>$<hash>} with Base64 salt and hash, so the work factor can be raised
+ * later without invalidating existing hashes: {@link #needsRehash} tells the caller to store a new hash after the
+ * next successful login.<br>
+ * Passwords stored before hashing was introduced are kept in plain text; {@link #verify} still accepts them, and
+ * {@link #needsRehash} reports them so they are upgraded on the next successful login. Every comparison is
+ * constant-time.<br>
+ * The work factor is the system property {@code scheduler.password.iterations}, by default {@value #DEFAULT_ITERATIONS}.
+ */
+public class PasswordHasher {
+    /**
+     * The prefix of a hashed password.
+     */
+    private static final String PREFIX = "pbkdf2$";
+    /**
+     * The key derivation algorithm.
+     */
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    /**
+     * The default number of PBKDF2 iterations.
+     */
+    public static final int DEFAULT_ITERATIONS = 210_000;
+    /**
+     * The length of the salt, in bytes.
+     */
+    private static final int SALT_BYTES = 16;
+    /**
+     * The length of the derived hash, in bits.
+     */
+    private static final int HASH_BITS = 256;
+    /**
+     * The number of PBKDF2 iterations used for new hashes.
+     */
+    private static final int iterations = Integer.getInteger("scheduler.password.iterations", DEFAULT_ITERATIONS);
+    /**
+     * The source of salts.
+     */
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * Hashes a password with a new random salt and the configured work factor.
+     *
+     * @param password the password.
+     * @return the hash to store.
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored hash or, for passwords stored before hashing, a stored plain-text password.
+     *
+     * @param password the password entered.
+     * @param stored   the stored hash or plain-text password.
+     * @return true if the password matches.
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[1]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[2]);
+            byte[] expected = decoder.decode(parts[3]);
+            return MessageDigest.isEqual(derive(password, salt, storedIterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Does the same work as {@link #verify} for a username that does not exist, so the time a failed login takes
+     * does not reveal whether the username is known.
+     *
+     * @param password the password entered.
+     * @return false.
+     */
+    public static boolean verifyUnknownUser(String password) {
+        verify(password == null ? "" : password, UnknownUserHash.HASH);
+        return false;
+    }
+
+    /**
+     * @param stored the stored hash or plain-text password.
+     * @return true if the stored value is a plain-text password or a hash with a lower work factor than configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @param stored the stored hash or plain-text password.
+     * @return true if the stored value is a hash produced by this class.
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Derives a PBKDF2 hash.
+     *
+     * @param password   the password.
+     * @param salt       the salt.
+     * @param iterations the number of iterations.
+     * @return the hash.
+     */
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Holds the hash checked for unknown usernames, computed on first use.
+     */
+    private static class UnknownUserHash {
+        /**
+         * A hash of a random password with the configured work factor.
+         */
+        private static final String HASH = hash(Long.toHexString(random.nextLong()));
+    }
+}
@@ -0,0 +1,306 @@
+package utils;
+
+import DAO.Repositories;
+import Model.Appointment;
+import javafx.application.Platform;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class reminds the logged in user of their appointments while the application is open. A reminder is due
+ * {@value #LEAD_MINUTES} minutes before an appointment starts, the same window the log in check uses.<br>
+ * The reminders are held in a {@link TimingWheel} with one second ticks, advanced once a second by a background
+ * thread, so the FX thread only runs the reminder itself. Only appointments starting within the next few hours, the
+ * system property {@code scheduler.reminders.hours} (by default {@value #DEFAULT_HORIZON_HOURS}), are held; the
+ * window is read again from storage every quarter of its length. The {@link DAO.AppointmentRepository} reports
+ * every appointment it adds, changes or deletes, so a change is reflected at once without reading the database again.<br>
+ * Reminders that were already due when they were first seen, and not new, are not shown: the log in check covers
+ * the appointments starting soon at log in.
+ */
+public class ReminderService {
+    /**
+     * The logger used to report errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ReminderService.class.getName());
+    /**
+     * How long before an appointment starts its reminder is due.
+     */
+    public static final int LEAD_MINUTES = 15;
+    /**
+     * The default number of hours ahead reminders are held for.
+     */
+    public static final int DEFAULT_HORIZON_HOURS = 8;
+    /**
+     * The width of a tick of the wheel.
+     */
+    private static final long TICK_MILLIS = 1000;
+    /**
+     * The number of buckets in each level of the wheel.
+     */
+    private static final int WHEEL_SIZE = 60;
+
+    /**
+     * The only instance.
+     */
+    private static final ReminderService instance = new ReminderService(
+            TimeUnit.HOURS.toMillis(Integer.getInteger("scheduler.reminders.hours", DEFAULT_HORIZON_HOURS)));
+
+    /**
+     * How far ahead reminders are held, in milliseconds.
+     */
+    private final long horizonMillis;
+    /**
+     * The pending reminders, by appointment ID.
+     */
+    private TimingWheel<Integer, Appointment> wheel;
+    /**
+     * The IDs of the appointments already reminded of, or already due when they were loaded.
+     */
+    private final Set<Integer> reminded = new HashSet<>();
+    /**
+     * The user whose appointments are reminded of, or -1 if the service is stopped.
+     */
+    private int userId = -1;
+    /**
+     * Called on the FX thread with each appointment that is due.
+     */
+    private Consumer<Appointment> onReminder;
+    /**
+     * The end of the window of appointments held, in milliseconds.
+     */
+    private long horizonEnd;
+    /**
+     * Incremented by every start and stop, so a reload that finishes after either is dropped.
+     */
+    private long generation;
+    /**
+     * The thread that advances the wheel and reloads the window.
+     */
+    private ScheduledExecutorService timer;
+    /**
+     * The task that advances the wheel.
+     */
+    private ScheduledFuture<?> tick;
+    /**
+     * The task that reloads the window.
+     */
+    private ScheduledFuture<?> refill;
+
+    /**
+     * @param horizonMillis how far ahead reminders are held, in milliseconds.
+     */
+    private ReminderService(long horizonMillis) {
+        this.horizonMillis = horizonMillis;
+    }
+
+    /**
+     * @return the reminder service.
+     */
+    public static ReminderService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts reminding a user of their appointments, replacing the user reminded of before.
+     *
+     * @param userId     the ID of the user logged in.
+     * @param onReminder called on the FX thread with each appointment whose reminder is due.
+     */
+    public synchronized void start(int userId, Consumer<Appointment> onReminder) {
+        stop();
+        this.userId = userId;
+        this.onReminder = onReminder;
+        long now = System.currentTimeMillis();
+        wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, now);
+        horizonEnd = now;
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "appointment-reminders");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        tick = timer.scheduleAtFixedRate(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        long refillMillis = Math.max(TimeUnit.MINUTES.toMillis(1), horizonMillis / 4);
+        refill = timer.scheduleAtFixedRate(this::reload, 0, refillMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reminding and drops every pending reminder, e.g. when the user logs out.
+     */
+    public synchronized void stop() {
+        generation++;
+        userId = -1;
+        onReminder = null;
+        if (tick != null) {
+            tick.cancel(false);
+            refill.cancel(false);
+            tick = null;
+            refill = null;
+        }
+        if (wheel != null) {
+            wheel.clear();
+        }
+        reminded.clear();
+    }
+
+    /**
+     * Stops reminding and ends the background thread; called when the application exits.
+     */
+    public synchronized void shutdown() {
+        stop();
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Reflects an appointment that was added or changed: schedules, moves or cancels its reminder. A reminder that is
+     * already due is shown at once unless it was shown before.
+     *
+     * @param appointment the appointment as it is now stored.
+     */
+    public synchronized void appointmentSaved(Appointment appointment) {
+        if (userId < 0) {
+            return;
+        }
+        int id = appointment.getAppointmentId();
+        wheel.cancel(id);
+        long now = System.currentTimeMillis();
+        long start = toMillis(appointment.getStart());
+        if (appointment.getUserId() != userId || start <= now || start >= horizonEnd) {
+            return;
+        }
+        long due = start - TimeUnit.MINUTES.toMillis(LEAD_MINUTES);
+        if (due <= now || !wheel.schedule(id, appointment, due)) {
+            if (reminded.add(id)) {
+                fire(appointment);
+            }
+        } else {
+            reminded.remove(id);
+        }
+    }
+
+    /**
+     * Reflects an appointment that was deleted: cancels its reminder.
+     *
+     * @param appointmentId the ID of the appointment.
+     */
+    public synchronized void appointmentDeleted(int appointmentId) {
+        if (wheel != null) {
+            wheel.cancel(appointmentId);
+        }
+        reminded.remove(appointmentId);
+    }
+
+    /**
+     * @return the number of reminders pending.
+     */
+    public synchronized int getPendingCount() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    /**
+     * Advances the wheel to now and shows the reminders that became due. Runs on the timer thread.
+     */
+    private synchronized void advance() {
+        if (userId < 0) {
+            return;
+        }
+        for (Appointment appointment : wheel.advanceTo(System.currentTimeMillis())) {
+            reminded.add(appointment.getAppointmentId());
+            fire(appointment);
+        }
+    }
+
+    /**
+     * Reads the user's appointments in the window from the database and schedules their reminders. Runs on the timer
+     * thread, outside the lock while the database is read.
+     */
+    private void reload() {
+        long loadGeneration;
+        int loadUserId;
+        synchronized (this) {
+            loadGeneration = generation;
+            loadUserId = userId;
+        }
+        if (loadUserId < 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long end = now + horizonMillis;
+        List<Appointment> appointments;
+        try {
+            appointments = Repositories.appointments().getUpcomingAppointmentsByUserId(loadUserId, toLocal(now), toLocal(end));
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error reading appointments for reminders", e);
+            return;
+        }
+        synchronized (this) {
+            if (generation != loadGeneration) {
+                return;
+            }
+            horizonEnd = end;
+            Set<Integer> seen = new HashSet<>();
+            long lead = TimeUnit.MINUTES.toMillis(LEAD_MINUTES);
+            for (Appointment appointment : appointments) {
+                long start = toMillis(appointment.getStart());
+                if (start <= now || start >= end) {
+                    continue;
+                }
+                int id = appointment.getAppointmentId();
+                seen.add(id);
+                if (reminded.contains(id) || !wheel.schedule(id, appointment, start - lead)) {
+                    reminded.add(id);
+                }
+            }
+            reminded.retainAll(seen);
+            for (Integer id : wheel.keys()) {
+                if (!seen.contains(id)) {
+                    wheel.cancel(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows a reminder on the FX thread.
+     *
+     * @param appointment the appointment that is due.
+     */
+    private void fire(Appointment appointment) {
+        Consumer<Appointment> listener = onReminder;
+        if (listener != null) {
+            Platform.runLater(() -> listener.accept(appointment));
+        }
+    }
+
+    /**
+     * @param millis a time in milliseconds.
+     * @return the date and time in the user's time zone.
+     */
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * @param time a date and time in the user's time zone.
+     * @return the time in milliseconds.
+     */
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,297 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a least-recently-used cache of prepared statements for one pooled connection, keyed by SQL text.<br>
+ * The statements it hands out are proxies: closing one closes its result sets, clears its parameters and puts it back
+ * in the cache, so the next DAO call with the same SQL skips the parse/prepare step. When the cache is full the least
+ * recently used statement is closed. A statement that is already in use (for example a nested call with the same SQL
+ * on the same connection) is not shared; the second caller gets an uncached statement instead.
+ */
+public class StatementCache {
+    /**
+     * The number of statements served from a cache, across all connections.
+     */
+    private static final AtomicLong totalHits = new AtomicLong();
+    /**
+     * The number of statements that had to be prepared, across all connections.
+     */
+    private static final AtomicLong totalMisses = new AtomicLong();
+    /**
+     * The number of statements closed because a cache was full, across all connections.
+     */
+    private static final AtomicLong totalEvictions = new AtomicLong();
+
+    /**
+     * The physical connection the statements belong to.
+     */
+    private final Connection physical;
+    /**
+     * The connection proxy returned by {@link Statement#getConnection()} on cached statements.
+     */
+    private Connection owner;
+    /**
+     * The maximum number of statements kept open.
+     */
+    private final int maximumSize;
+    /**
+     * The cached statements in access order, least recently used first.
+     */
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /**
+     * This is the constructor for the StatementCache class.
+     *
+     * @param physical    the physical connection the statements are prepared on
+     * @param maximumSize the maximum number of statements to keep open
+     */
+    public StatementCache(Connection physical, int maximumSize) {
+        this.physical = physical;
+        this.maximumSize = maximumSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maximumSize) {
+                    return false;
+                }
+                totalEvictions.incrementAndGet();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sets the connection proxy that cached statements report as their connection.
+     *
+     * @param owner the connection proxy of the current lease.
+     */
+    void setOwner(Connection owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, reusing a cached one when it is free.
+     *
+     * @param sql               the SQL statement
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS}, {@link Statement#NO_GENERATED_KEYS}, or -1 when
+     *                          the caller did not ask for either
+     * @return a prepared statement whose close() returns it to the cache.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            totalHits.incrementAndGet();
+            return cached.checkOut();
+        }
+        totalMisses.incrementAndGet();
+        PreparedStatement statement = autoGeneratedKeys < 0
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // The cached statement is busy; hand out a plain statement that is closed for real.
+            return statement;
+        }
+        cached = new CachedStatement(statement);
+        statements.put(key, cached);
+        return cached.checkOut();
+    }
+
+    /**
+     * Closes every cached statement. Called when the physical connection is closed.
+     */
+    public void closeAll() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext()) {
+            iterator.next().evict();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the number of statements in this cache.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * @return the number of statements served from a cache, across all connections.
+     */
+    public static long getHitCount() {
+        return totalHits.get();
+    }
+
+    /**
+     * @return the number of statements that had to be prepared, across all connections.
+     */
+    public static long getMissCount() {
+        return totalMisses.get();
+    }
+
+    /**
+     * @return the number of statements closed because a cache was full, across all connections.
+     */
+    public static long getEvictionCount() {
+        return totalEvictions.get();
+    }
+
+    /**
+     * @return the fraction of prepareStatement() calls served from a cache, across all connections.
+     */
+    public static double getHitRate() {
+        long hits = totalHits.get();
+        long total = hits + totalMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * A physical prepared statement held by the cache.
+     */
+    private class CachedStatement implements InvocationHandler {
+        /**
+         * The physical prepared statement.
+         */
+        private final PreparedStatement physicalStatement;
+        /**
+         * The result sets opened through the current checkout.
+         */
+        private final List<ResultSet> openResults = new ArrayList<>();
+        /**
+         * The proxy handed out for the current checkout.
+         */
+        private PreparedStatement proxy;
+        /**
+         * True while the statement is checked out.
+         */
+        private boolean inUse;
+        /**
+         * True once the statement has been dropped from the cache.
+         */
+        private boolean evicted;
+
+        /**
+         * @param physicalStatement the physical prepared statement.
+         */
+        private CachedStatement(PreparedStatement physicalStatement) {
+            this.physicalStatement = physicalStatement;
+        }
+
+        /**
+         * Hands the statement out with a fresh proxy.
+         *
+         * @return the proxy for this checkout.
+         */
+        private PreparedStatement checkOut() {
+            inUse = true;
+            proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+            return proxy;
+        }
+
+        /**
+         * Ends the current checkout: closes its result sets and resets the parameters. The physical statement is only
+         * closed if it was evicted while in use.
+         *
+         * @throws SQLException if the statement cannot be reset.
+         */
+        private void checkIn() throws SQLException {
+            inUse = false;
+            proxy = null;
+            try {
+                for (ResultSet resultSet : openResults) {
+                    resultSet.close();
+                }
+                openResults.clear();
+                if (evicted) {
+                    physicalStatement.close();
+                } else {
+                    physicalStatement.clearParameters();
+                    physicalStatement.clearBatch();
+                }
+            } catch (SQLException e) {
+                evicted = true;
+                statements.values().remove(this);
+                physicalStatement.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Drops the statement from the cache, closing it now unless it is checked out.
+         */
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    physicalStatement.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Handles calls made on the proxy. close() returns the statement to the cache, result sets are tracked so
+         * they can be closed on return, and everything else is forwarded to the physical statement.
+         *
+         * @param proxyInstance the proxy the method was called on.
+         * @param method        the method called.
+         * @param args          the arguments of the call.
+         * @return the result of the call.
+         * @throws Throwable the exception thrown by the physical statement.
+         */
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Cached" + physicalStatement;
+                case "isClosed":
+                    return proxyInstance != proxy;
+                case "close":
+                    if (proxyInstance == proxy) {
+                        checkIn();
+                    }
+                    return null;
+                case "getConnection":
+                    return owner != null ? owner : physical;
+                default:
+                    break;
+            }
+            if (proxyInstance != proxy) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                Object result = method.invoke(physicalStatement, args);
+                if (result instanceof ResultSet) {
+                    openResults.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package utils;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableView;
+import javafx.scene.control.skin.VirtualFlow;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class loads the rows of a TableView one page at a time using keyset (seek) pagination. Each page is fetched
+ * relative to the first or last row already on screen, so the database seeks straight to the page through an index
+ * instead of skipping rows with OFFSET. Pages are fetched as the user scrolls towards either end of the table, and at
+ * most a bounded window of rows is kept in memory: rows that scroll far out of view are dropped and fetched again if
+ * the user scrolls back.<br>
+ * The rows are kept in key order, the order the pages are fetched in, and the first and last of them are the anchors
+ * of the next fetches. The table shows them through a {@link SortedList} that follows the table's column sort, so
+ * sorting a column reorders the view without moving the anchors.<br>
+ * Pages are fetched on a {@link DaoExecutor} thread and added to the table on the JavaFX Application Thread.
+ *
+ * @param <T> the type of the table rows.
+ */
+public class TableViewPager<T> {
+    /**
+     * The logger used to report page loading errors.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TableViewPager.class.getName());
+    /**
+     * A page is fetched when the scroll bar is within this fraction of either end.
+     */
+    private static final double FETCH_THRESHOLD = 0.1;
+
+    /**
+     * Fetches one page of rows relative to an anchor row.
+     *
+     * @param <T> the type of the rows.
+     */
+    @FunctionalInterface
+    public interface PageQuery<T> {
+        /**
+         * Fetches the rows next to the anchor row, in table order.
+         *
+         * @param anchor   the row to seek from, or null to fetch the first page.
+         * @param pageSize the maximum number of rows to fetch.
+         * @return the rows of the page, in table order.
+         * @throws SQLException if the page cannot be read.
+         */
+        List<T> fetch(T anchor, int pageSize) throws SQLException;
+    }
+
+    /**
+     * The table being paged.
+     */
+    private final TableView<T> table;
+    /**
+     * The rows currently in memory, in key order; the first and last rows are the paging anchors.
+     */
+    private final ObservableList<T> rows;
+    /**
+     * Fetches the page after a row.
+     */
+    private final PageQuery<T> nextPage;
+    /**
+     * Fetches the page before a row.
+     */
+    private final PageQuery<T> previousPage;
+    /**
+     * The number of rows fetched per page.
+     */
+    private final int pageSize;
+    /**
+     * The maximum number of rows kept in memory.
+     */
+    private final int maximumRows;
+    /**
+     * True if rows may exist after the last row in memory.
+     */
+    private boolean moreAfter;
+    /**
+     * True if rows were dropped before the first row in memory.
+     */
+    private boolean moreBefore;
+    /**
+     * True while the pager reacts to scrolling.
+     */
+    private boolean active;
+    /**
+     * True while a page is being loaded, so scroll events fired by the load itself are ignored.
+     */
+    private boolean loading;
+    /**
+     * True once the scroll listener has been added.
+     */
+    private boolean scrollBarAttached;
+    /**
+     * The page load in flight; a new load or a reset cancels it.
+     */
+    private final DaoExecutor.LatestRequest request = new DaoExecutor.LatestRequest();
+
+    /**
+     * This is the constructor for the TableViewPager class.
+     *
+     * @param table        the table to page
+     * @param rows         the list the rows are loaded into, in key order; the table shows it sorted by its column sort
+     * @param nextPage     fetches the page after a row
+     * @param previousPage fetches the page before a row
+     * @param pageSize     the number of rows per page
+     * @param maximumRows  the maximum number of rows kept in memory; at least two pages
+     */
+    public TableViewPager(TableView<T> table, ObservableList<T> rows, PageQuery<T> nextPage, PageQuery<T> previousPage,
+                          int pageSize, int maximumRows) {
+        this.table = table;
+        this.rows = rows;
+        this.nextPage = nextPage;
+        this.previousPage = previousPage;
+        this.pageSize = pageSize;
+        this.maximumRows = Math.max(maximumRows, 2 * pageSize);
+        SortedList<T> sortedRows = new SortedList<>(rows);
+        sortedRows.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sortedRows);
+        table.skinProperty().addListener((observable, oldSkin, newSkin) -> Platform.runLater(this::attachScrollBar));
+        if (table.getSkin() != null) {
+            attachScrollBar();
+        }
+    }
+
+    /**
+     * Clears the rows and loads the first page in the background, and starts reacting to scrolling. A page load still
+     * in flight is cancelled.
+     */
+    public void reset() {
+        active = true;
+        loading = true;
+        request.submit(() -> nextPage.fetch(null, pageSize),
+                page -> {
+                    rows.setAll(page);
+                    moreAfter = page.size() == pageSize;
+                    moreBefore = false;
+                    loading = false;
+                    table.scrollTo(0);
+                },
+                this::loadFailed);
+    }
+
+    /**
+     * Stops reacting to scrolling, e.g. while the table shows a filtered list instead of the paged one. A page load
+     * still in flight is cancelled, so it cannot overwrite the filtered list.
+     */
+    public void deactivate() {
+        active = false;
+        loading = false;
+        request.cancel();
+    }
+
+    /**
+     * @return true while the pager reacts to scrolling.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return true if rows may exist after the last row in memory, so a new row that sorts after it belongs to a page
+     * not loaded yet.
+     */
+    public boolean hasMoreAfter() {
+        return moreAfter;
+    }
+
+    /**
+     * @return true if rows were dropped before the first row in memory, so a new row that sorts before it belongs to a
+     * page not loaded.
+     */
+    public boolean hasMoreBefore() {
+        return moreBefore;
+    }
+
+    /**
+     * Appends the page after the last row in memory, dropping rows from the top if the window is full. The page is
+     * fetched in the background.
+     */
+    public void loadNext() {
+        if (!moreAfter || loading) {
+            return;
+        }
+        loading = true;
+        T last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        request.submit(() -> nextPage.fetch(last, pageSize),
+                page -> {
+                    loading = false;
+                    moreAfter = page.size() == pageSize;
+                    if (page.isEmpty()) {
+                        return;
+                    }
+                    int firstVisible = firstVisibleIndex();
+                    rows.addAll(page);
+                    int excess = rows.size() - maximumRows;
+                    if (excess > 0) {
+                        rows.remove(0, excess);
+                        moreBefore = true;
+                        if (isKeyOrdered()) {
+                            table.scrollTo(Math.max(0, firstVisible - excess));
+                        }
+                    }
+                },
+                this::loadFailed);
+    }
+
+    /**
+     * Prepends the page before the first row in memory, dropping rows from the bottom if the window is full. The page
+     * is fetched in the background.
+     */
+    public void loadPrevious() {
+        if (!moreBefore || loading || rows.isEmpty()) {
+            return;
+        }
+        loading = true;
+        T first = rows.get(0);
+        request.submit(() -> previousPage.fetch(first, pageSize),
+                page -> {
+                    loading = false;
+                    moreBefore = page.size() == pageSize;
+                    if (page.isEmpty()) {
+                        return;
+                    }
+                    int firstVisible = firstVisibleIndex();
+                    rows.addAll(0, page);
+                    int excess = rows.size() - maximumRows;
+                    if (excess > 0) {
+                        rows.remove(rows.size() - excess, rows.size());
+                        moreAfter = true;
+                    }
+                    if (isKeyOrdered()) {
+                        table.scrollTo(firstVisible + page.size());
+                    }
+                },
+                this::loadFailed);
+    }
+
+    /**
+     * Reports a page that could not be loaded.
+     *
+     * @param error the cause of the failure.
+     */
+    private void loadFailed(Throwable error) {
+        loading = false;
+        LOGGER.log(Level.SEVERE, "Error loading page", error);
+    }
+
+    /**
+     * Finds the table's vertical scroll bar once the table has a skin and fetches pages as it nears either end.
+     */
+    private void attachScrollBar() {
+        if (scrollBarAttached) {
+            return;
+        }
+        for (Node node : table.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                ScrollBar scrollBar = (ScrollBar) node;
+                scrollBarAttached = true;
+                scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                    if (!active || loading) {
+                        return;
+                    }
+                    double range = scrollBar.getMax() - scrollBar.getMin();
+                    double position = range <= 0 ? 0 : (newValue.doubleValue() - scrollBar.getMin()) / range;
+                    if (position >= 1 - FETCH_THRESHOLD && newValue.doubleValue() > oldValue.doubleValue()) {
+                        loadNext();
+                    } else if (position <= FETCH_THRESHOLD && newValue.doubleValue() < oldValue.doubleValue()) {
+                        loadPrevious();
+                    }
+                });
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the table is not sorted by a column, so its rows are shown in key order and a page added at
+     * either end moves the visible rows by its size.
+     */
+    private boolean isKeyOrdered() {
+        return table.getComparator() == null;
+    }
+
+    /**
+     * @return the index of the first row visible in the table, or 0 if the table is not showing yet.
+     */
+    private int firstVisibleIndex() {
+        Node flow = table.lookup(".virtual-flow");
+        if (flow instanceof VirtualFlow) {
+            IndexedCell<?> cell = ((VirtualFlow<?>) flow).getFirstVisibleCell();
+            if (cell != null) {
+                return cell.getIndex();
+            }
+        }
+        return 0;
+    }
+}
@@ -91,6 +91,43 @@ public class TimeComboBoxUtils {
     }
 
 
+    /**
+     * Initializes a ComboBox with only the start times of a business day at which the attendees of a
+     * {@link FreeSlotFinder} are free for at least one slot. Without a finder every start time is listed.
+     *
+     * @param comboBox     the ComboBox to initialize
+     * @param selectedDate the date for which to generate the start times
+     * @param finder       the free slots of the attendees, covering the date, or null
+     */
+    public static void initializeStartTimeComboBox(ComboBox<ZonedDateTime> comboBox, LocalDate selectedDate,
+                                                   FreeSlotFinder finder) {
+        if (finder == null) {
+            initializeStartTimeComboBox(comboBox, selectedDate);
+            return;
+        }
+        comboBox.getItems().setAll(finder.getFreeStarts(selectedDate, FreeSlotFinder.STEP));
+        comboBox.setConverter(STRING_CONVERTER);
+    }
+
+    /**
+     * Initializes a ComboBox with only the end times that keep an appointment starting at the selected start time
+     * clear of the next appointment of the attendees of a {@link FreeSlotFinder}. Without a finder every end time up
+     * to closing is listed.
+     *
+     * @param comboBox          the ComboBox to initialize
+     * @param selectedDate      the date for which to generate the end times
+     * @param selectedStartTime the selected start time
+     * @param finder            the free slots of the attendees, or null
+     */
+    public static void initializeEndTimeComboBox(ComboBox<ZonedDateTime> comboBox, LocalDate selectedDate,
+                                                 ZonedDateTime selectedStartTime, FreeSlotFinder finder) {
+        initializeEndTimeComboBox(comboBox, selectedDate, selectedStartTime);
+        if (finder != null) {
+            ZonedDateTime latestEnd = finder.getLatestEnd(selectedStartTime);
+            comboBox.getItems().removeIf(endTime -> endTime.isAfter(latestEnd));
+        }
+    }
+
     /**
      * Given a date and time, return a new date and time with the same date and the specified hour in the Eastern time
      * zone.
@@ -0,0 +1,356 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a hierarchical timing wheel: a timer that holds many deadlines and finds the expired ones in constant
+ * time per tick, however many are pending. The lowest level is a ring of buckets one tick wide; each level above it
+ * is a ring of the same size whose buckets are as wide as the whole level below. A deadline is put in the lowest
+ * level that reaches it, and when time reaches a bucket of a higher level its entries are moved down a level, until
+ * they expire from the lowest one. Scheduling and cancelling are constant time; levels are added only when a deadline
+ * is further away than the existing levels reach.<br>
+ * Each entry has a key, so it can be cancelled or rescheduled. Deadlines are rounded up to a whole tick, so an entry
+ * never expires early and at most one tick late.<br>
+ * This class is not thread-safe; the caller synchronizes.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+public class TimingWheel<K, V> {
+    /**
+     * The number of buckets in each level.
+     */
+    private final int wheelSize;
+    /**
+     * The width of a bucket of the lowest level, in milliseconds.
+     */
+    private final long tickMillis;
+    /**
+     * The levels, lowest first.
+     */
+    private final List<Level<K, V>> levels = new ArrayList<>();
+    /**
+     * The entry of each key.
+     */
+    private final Map<K, Entry<K, V>> entries = new HashMap<>();
+    /**
+     * The time up to which the wheel has advanced, a whole number of ticks.
+     */
+    private long currentTime;
+
+    /**
+     * This is the constructor for the TimingWheel class.
+     *
+     * @param tickMillis the width of a bucket of the lowest level, in milliseconds.
+     * @param wheelSize  the number of buckets in each level.
+     * @param startTime  the current time, in milliseconds.
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startTime) {
+        if (tickMillis <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize at least 2");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startTime - Math.floorMod(startTime, tickMillis);
+        levels.add(new Level<>(tickMillis, wheelSize));
+    }
+
+    /**
+     * Schedules a value, replacing the entry already scheduled under its key.
+     *
+     * @param key      the key.
+     * @param value    the value.
+     * @param deadline the time the value expires, in milliseconds.
+     * @return false if the deadline has already passed; nothing is scheduled then.
+     */
+    public boolean schedule(K key, V value, long deadline) {
+        cancel(key);
+        Entry<K, V> entry = new Entry<>(key, value, roundUp(deadline));
+        if (!place(entry)) {
+            return false;
+        }
+        entries.put(key, entry);
+        return true;
+    }
+
+    /**
+     * Cancels the entry scheduled under a key.
+     *
+     * @param key the key.
+     * @return the value that was scheduled, or null if none was.
+     */
+    public V cancel(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.unlink();
+        return entry.value;
+    }
+
+    /**
+     * @param key the key.
+     * @return the value scheduled under the key, or null if none is.
+     */
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @param key the key.
+     * @return the rounded deadline of the entry scheduled under the key, or -1 if none is.
+     */
+    public long getDeadline(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? -1 : entry.deadline;
+    }
+
+    /**
+     * Moves the wheel forward to a time and removes the entries that expired on the way.
+     *
+     * @param now the current time, in milliseconds.
+     * @return the values that expired, in deadline order to within a tick.
+     */
+    public List<V> advanceTo(long now) {
+        List<V> expired = new ArrayList<>();
+        if (entries.isEmpty()) {
+            if (now >= currentTime + tickMillis) {
+                currentTime = now - Math.floorMod(now, tickMillis);
+            }
+            return expired;
+        }
+        while (currentTime + tickMillis <= now && !entries.isEmpty()) {
+            currentTime += tickMillis;
+            for (int i = levels.size() - 1; i >= 1; i--) {
+                Level<K, V> level = levels.get(i);
+                if (currentTime % level.tickMillis == 0) {
+                    for (Entry<K, V> entry : level.bucketAt(currentTime).drain()) {
+                        if (!place(entry)) {
+                            expire(entry, expired);
+                        }
+                    }
+                }
+            }
+            for (Entry<K, V> entry : levels.get(0).bucketAt(currentTime).drain()) {
+                expire(entry, expired);
+            }
+        }
+        if (entries.isEmpty() && now >= currentTime + tickMillis) {
+            currentTime = now - Math.floorMod(now, tickMillis);
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of entries scheduled.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the keys of the entries scheduled.
+     */
+    public List<K> keys() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        for (Entry<K, V> entry : entries.values()) {
+            entry.unlink();
+        }
+        entries.clear();
+    }
+
+    /**
+     * Puts an entry in the lowest level that reaches its deadline, adding levels if none does.
+     *
+     * @param entry the entry.
+     * @return false if the deadline is not after the current time.
+     */
+    private boolean place(Entry<K, V> entry) {
+        if (entry.deadline <= currentTime) {
+            return false;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                Level<K, V> top = levels.get(i - 1);
+                if (top.tickMillis > Long.MAX_VALUE / wheelSize / wheelSize) {
+                    throw new IllegalArgumentException("Deadline too far away: " + entry.deadline);
+                }
+                levels.add(new Level<>(top.tickMillis * wheelSize, wheelSize));
+            }
+            Level<K, V> level = levels.get(i);
+            if (entry.deadline / level.tickMillis - currentTime / level.tickMillis < wheelSize) {
+                level.bucketAt(entry.deadline).add(entry);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes an expired entry and adds its value to the expired values.
+     *
+     * @param entry   the entry.
+     * @param expired the expired values.
+     */
+    private void expire(Entry<K, V> entry, List<V> expired) {
+        entries.remove(entry.key);
+        expired.add(entry.value);
+    }
+
+    /**
+     * @param time a time, in milliseconds.
+     * @return the time rounded up to a whole tick.
+     */
+    private long roundUp(long time) {
+        long remainder = Math.floorMod(time, tickMillis);
+        return remainder == 0 ? time : time - remainder + tickMillis;
+    }
+
+    /**
+     * One level of the wheel.
+     */
+    private static class Level<K, V> {
+        /**
+         * The width of a bucket, in milliseconds.
+         */
+        private final long tickMillis;
+        /**
+         * The buckets.
+         */
+        private final Bucket<K, V>[] buckets;
+
+        /**
+         * @param tickMillis the width of a bucket, in milliseconds.
+         * @param wheelSize  the number of buckets.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Level(long tickMillis, int wheelSize) {
+            this.tickMillis = tickMillis;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+        }
+
+        /**
+         * @param time a time, in milliseconds.
+         * @return the bucket the time falls in.
+         */
+        private Bucket<K, V> bucketAt(long time) {
+            return buckets[(int) Math.floorMod(time / tickMillis, (long) buckets.length)];
+        }
+    }
+
+    /**
+     * A bucket: a doubly linked list of entries, so an entry can be removed without a search.
+     */
+    private static class Bucket<K, V> {
+        /**
+         * The first entry, or null.
+         */
+        private Entry<K, V> head;
+
+        /**
+         * @param entry the entry to add.
+         */
+        private void add(Entry<K, V> entry) {
+            entry.bucket = this;
+            entry.prev = null;
+            entry.next = head;
+            if (head != null) {
+                head.prev = entry;
+            }
+            head = entry;
+        }
+
+        /**
+         * Removes every entry.
+         *
+         * @return the entries removed.
+         */
+        private List<Entry<K, V>> drain() {
+            List<Entry<K, V>> drained = new ArrayList<>();
+            Entry<K, V> entry = head;
+            while (entry != null) {
+                Entry<K, V> next = entry.next;
+                entry.bucket = null;
+                entry.prev = null;
+                entry.next = null;
+                drained.add(entry);
+                entry = next;
+            }
+            head = null;
+            return drained;
+        }
+    }
+
+    /**
+     * A scheduled value.
+     */
+    private static class Entry<K, V> {
+        /**
+         * The key.
+         */
+        private final K key;
+        /**
+         * The value.
+         */
+        private final V value;
+        /**
+         * The deadline, rounded up to a whole tick.
+         */
+        private final long deadline;
+        /**
+         * The bucket holding the entry, or null.
+         */
+        private Bucket<K, V> bucket;
+        /**
+         * The previous entry in the bucket.
+         */
+        private Entry<K, V> prev;
+        /**
+         * The next entry in the bucket.
+         */
+        private Entry<K, V> next;
+
+        /**
+         * @param key      the key.
+         * @param value    the value.
+         * @param deadline the deadline, rounded up to a whole tick.
+         */
+        private Entry(K key, V value, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Removes the entry from its bucket.
+         */
+        private void unlink() {
+            if (bucket == null) {
+                return;
+            }
+            if (prev != null) {
+                prev.next = next;
+            } else {
+                bucket.head = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            }
+            bucket = null;
+            prev = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package DAO;
+
+import Model.Appointment;
+import Model.Country;
+import Model.Customer;
+import Model.FirstLevelDivision;
+import utils.JDBC;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * This class checks that every repository behaves the same: {@link EmbeddedStore} always, and {@link JdbcRepository}
+ * when the system property scheduler.test.mysql is true, against the database configured in {@link JDBC}, which must
+ * have the migrations in db/migration applied. It covers the keyset page anchors, the conflict check, the cascade
+ * delete of customers, the version check of updates and the errors of refused writes.<br>
+ * The rows it writes are dated in 2199 and deleted again at the end. Run it with the classes of src on the class path:
+ * <pre>
+ *     java -cp out:lib/* DAO.RepositoryContractTest
+ * </pre>
+ * It prints one line per check and exits with status 1 if any failed.
+ */
+public class RepositoryContractTest {
+    /**
+     * The start of the time range the test appointments are put in, far from any real appointment.
+     */
+    private static final LocalDateTime BASE = LocalDateTime.of(2199, 1, 1, 0, 0);
+    /**
+     * The user name the test rows are written by.
+     */
+    private static final String AUTHOR = "contract-test";
+
+    /**
+     * The number of checks that failed.
+     */
+    private static int failures;
+
+    /**
+     * Runs the checks against each repository.
+     *
+     * @param args not used.
+     * @throws Exception if a repository cannot be opened or a check cannot be run.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("embedded-contract");
+        try {
+            EmbeddedStore store = EmbeddedStore.open(directory);
+            try {
+                run("embedded", store);
+            } finally {
+                store.close();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (Boolean.getBoolean("scheduler.test.mysql")) {
+            JDBC.startConnection();
+            try {
+                run("mysql", new JdbcRepository());
+            } finally {
+                JDBC.closeConnection();
+            }
+        }
+        System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs every check against one repository.
+     *
+     * @param name       the name printed with the results.
+     * @param repository the repository.
+     * @param <R>        the type of the repository, which stores both appointments and customers.
+     * @throws Exception if a check cannot be run.
+     */
+    private static <R extends AppointmentRepository & CustomerRepository & ContactRepository & CountryRepository
+            & FirstLevelDivisionRepository & UserRepository> void run(String name, R repository) throws Exception {
+        int divisionId = repository.getDiv(repository.getAllCountries().get(0).getCountryId()).get(0).getDivisionId();
+        int contactId = repository.getAllContacts().get(0).getContactId();
+        int userId = repository.getAllUsers().get(0).getUserId();
+        int pagingCustomer = addCustomer(repository, "Paging", divisionId);
+        int conflictCustomer = addCustomer(repository, "Conflicts", divisionId);
+        List<Appointment> added = new ArrayList<>();
+        try {
+            added.addAll(checkPaging(name, repository, pagingCustomer, userId, contactId));
+            added.addAll(checkConflicts(name, repository, conflictCustomer, userId, contactId));
+            checkVersions(name, repository, added.get(0), pagingCustomer, divisionId);
+            checkRefusedWrite(name, repository);
+        } finally {
+            checkCascadeDelete(name, repository, List.of(pagingCustomer, conflictCustomer), added);
+        }
+    }
+
+    /**
+     * Checks that paging forward and backward from an anchor visits every appointment once, in (Start,
+     * Appointment_ID) order, including appointments that start at the same time.
+     *
+     * @return the appointments added.
+     */
+    private static List<Appointment> checkPaging(String name, AppointmentRepository repository, int customerId,
+                                                 int userId, int contactId) throws Exception {
+        LocalDateTime day = BASE.plusDays(1).withHour(9);
+        List<Appointment> appointments = new ArrayList<>();
+        for (LocalDateTime start : List.of(day, day, day, day.plusHours(1), day.minusHours(1))) {
+            appointments.add(appointment(start, start.plusMinutes(30), customerId, userId, contactId));
+        }
+        repository.addAppointments(appointments);
+        Set<Integer> ids = idsOf(appointments);
+        List<Appointment> expected = new ArrayList<>(appointments);
+        expected.sort(AppointmentChangeSet.START_ORDER);
+
+        List<Appointment> forward = new ArrayList<>();
+        Appointment anchor = new Appointment(0, null, null, null, null, BASE, BASE, null, null, null, null, 0, 0, 0);
+        List<Appointment> page;
+        while (!(page = repository.getAppointmentsPageAfter(anchor, 2)).isEmpty() && page.get(0).getStart().isBefore(BASE.plusYears(1))) {
+            for (Appointment appointment : page) {
+                if (ids.contains(appointment.getAppointmentId())) {
+                    forward.add(appointment);
+                }
+            }
+            anchor = page.get(page.size() - 1);
+        }
+        check(name, "pages forward in start order", idsInOrder(forward).equals(idsInOrder(expected)));
+
+        List<Appointment> backward = new ArrayList<>();
+        anchor = forward.isEmpty() ? expected.get(expected.size() - 1) : forward.get(forward.size() - 1);
+        backward.add(anchor);
+        while (!(page = repository.getAppointmentsPageBefore(anchor, 2)).isEmpty() && !page.get(page.size() - 1).getStart().isBefore(BASE)) {
+            for (int i = page.size() - 1; i >= 0; i--) {
+                if (ids.contains(page.get(i).getAppointmentId())) {
+                    backward.add(0, page.get(i));
+                }
+            }
+            anchor = page.get(0);
+        }
+        check(name, "pages backward in start order", idsInOrder(backward).equals(idsInOrder(expected)));
+        return appointments;
+    }
+
+    /**
+     * Checks that the conflict check finds the appointments that overlap a range, and only those, including one that
+     * started long before the range.
+     *
+     * @return the appointments added.
+     */
+    private static List<Appointment> checkConflicts(String name, AppointmentRepository repository, int customerId,
+                                                    int userId, int contactId) throws Exception {
+        LocalDateTime day = BASE.plusDays(10).withHour(10);
+        Appointment short1 = appointment(day, day.plusHours(1), customerId, userId, contactId);
+        Appointment long1 = appointment(day.minusHours(14), day.plusMinutes(30), customerId, userId, contactId);
+        repository.addAppointments(List.of(short1, long1));
+        int shortId = short1.getAppointmentId();
+        int longId = long1.getAppointmentId();
+
+        check(name, "conflict with the appointment in range",
+                idsOf(repository.getConflictingAppointments(customerId, 0, day.plusMinutes(30), day.plusMinutes(45)))
+                        .equals(Set.of(shortId)));
+        check(name, "conflict with a long appointment that started the day before",
+                idsOf(repository.getConflictingAppointments(customerId, 0, day.minusHours(1), day))
+                        .equals(Set.of(longId)));
+        check(name, "conflict check leaves out the appointment being edited",
+                idsOf(repository.getConflictingAppointments(customerId, shortId, day, day.plusMinutes(15)))
+                        .equals(Set.of(longId)));
+        check(name, "no conflict with an appointment that ends when the range starts",
+                repository.getConflictingAppointments(customerId, 0, day.plusHours(1), day.plusHours(2)).isEmpty());
+        check(name, "no conflict for another customer",
+                repository.getConflictingAppointments(customerId + 100_000, 0, day, day.plusHours(1)).isEmpty());
+        return List.of(short1, long1);
+    }
+
+    /**
+     * Checks that an update made from the version read succeeds once and that a second one from the same version is
+     * refused, for an appointment and for a customer.
+     */
+    private static <R extends AppointmentRepository & CustomerRepository> void checkVersions(
+            String name, R repository, Appointment appointment, int customerId, int divisionId) throws Exception {
+        Appointment stored = repository.getAppointmentById(appointment.getAppointmentId());
+        int version = stored.getVersion();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        repository.modifyAppointment(stored.getAppointmentId(), "Edited", stored.getDescription(),
+                stored.getLocation(), stored.getType(), stored.getStart(), stored.getEnd(), now, AUTHOR,
+                stored.getCustomerId(), stored.getUserId(), stored.getContactId(), version);
+        Appointment modified = repository.getAppointmentById(stored.getAppointmentId());
+        check(name, "appointment update increments the version",
+                modified.getVersion() == version + 1 && "Edited".equals(modified.getTitle()));
+        boolean refused = false;
+        try {
+            repository.modifyAppointment(stored.getAppointmentId(), "Stale", stored.getDescription(),
+                    stored.getLocation(), stored.getType(), stored.getStart(), stored.getEnd(), now, AUTHOR,
+                    stored.getCustomerId(), stored.getUserId(), stored.getContactId(), version);
+        } catch (OptimisticLockException e) {
+            refused = true;
+        }
+        check(name, "stale appointment update is refused",
+                refused && "Edited".equals(repository.getAppointmentById(stored.getAppointmentId()).getTitle()));
+
+        Customer customer = repository.getCustomerByCustomerId(customerId);
+        int customerVersion = customer.getVersion();
+        repository.modifyCustomer(customerId, "Edited", customer.getCustomerAddress(), customer.getPostalCode(),
+                customer.getCustomerPhone(), now, AUTHOR, divisionId, customerVersion);
+        check(name, "customer update increments the version",
+                repository.getCustomerByCustomerId(customerId).getVersion() == customerVersion + 1);
+        refused = false;
+        try {
+            repository.modifyCustomer(customerId, "Stale", customer.getCustomerAddress(), customer.getPostalCode(),
+                    customer.getCustomerPhone(), now, AUTHOR, divisionId, customerVersion);
+        } catch (OptimisticLockException e) {
+            refused = true;
+        }
+        check(name, "stale customer update is refused",
+                refused && "Edited".equals(repository.getCustomerByCustomerId(customerId).getCustomerName()));
+    }
+
+    /**
+     * Checks that a write the store refuses is reported to the caller as an {@link SQLException}, so the screens can
+     * show the error, and that nothing is written.
+     */
+    private static <R extends CountryRepository & FirstLevelDivisionRepository & CustomerRepository>
+            void checkRefusedWrite(String name, R repository) throws Exception {
+        Set<Integer> divisionIds = new HashSet<>();
+        for (Country country : repository.getAllCountries()) {
+            for (FirstLevelDivision division : repository.getDiv(country.getCountryId())) {
+                divisionIds.add(division.getDivisionId());
+            }
+        }
+        int missingDivision = 1;
+        while (divisionIds.contains(missingDivision)) {
+            missingDivision++;
+        }
+        Set<Integer> before = new HashSet<>(repository.getCustomerIds());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        boolean refused = false;
+        try {
+            repository.addCustomer(AUTHOR + " Refused", "1 Test Street", "00000", "000-000-0000", now, AUTHOR, now,
+                    AUTHOR, missingDivision);
+        } catch (SQLException e) {
+            refused = true;
+        }
+        check(name, "customer in a division that does not exist is refused with an error",
+                refused && before.equals(new HashSet<>(repository.getCustomerIds())));
+    }
+
+    /**
+     * Checks that deleting customers deletes their appointments with them, and leaves nothing behind.
+     */
+    private static <R extends AppointmentRepository & CustomerRepository> void checkCascadeDelete(
+            String name, R repository, List<Integer> customerIds, List<Appointment> appointments) throws Exception {
+        check(name, "appointments are counted by customer",
+                repository.countAppointmentsByCustomerIds(customerIds) == appointments.size());
+        Map<Integer, AppointmentTypeRollup.TypeMonth> typeMonths = repository.getAppointmentTypeMonths();
+        boolean counted = true;
+        for (Appointment appointment : appointments) {
+            counted &= AppointmentTypeRollup.TypeMonth.of(appointment)
+                    .equals(typeMonths.get(appointment.getAppointmentId()));
+        }
+        check(name, "type and month are read for every appointment", counted);
+        check(name, "deleting customers deletes their appointments",
+                repository.deleteCustomers(customerIds) == appointments.size());
+        boolean gone = repository.countAppointmentsByCustomerIds(customerIds) == 0;
+        for (Appointment appointment : appointments) {
+            gone &= repository.getAppointmentById(appointment.getAppointmentId()) == null;
+        }
+        for (int customerId : customerIds) {
+            gone &= repository.getCustomerByCustomerId(customerId) == null;
+        }
+        check(name, "nothing is left after the cascade delete", gone);
+    }
+
+    /**
+     * Adds a customer and returns its ID.
+     */
+    private static int addCustomer(CustomerRepository repository, String name, int divisionId) throws Exception {
+        Set<Integer> before = new HashSet<>(repository.getCustomerIds());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        repository.addCustomer(AUTHOR + " " + name, "1 Test Street", "00000", "000-000-0000", now, AUTHOR, now,
+                AUTHOR, divisionId);
+        Set<Integer> added = new HashSet<>(repository.getCustomerIds());
+        added.removeAll(before);
+        if (added.size() != 1) {
+            throw new IllegalStateException("Cannot tell which customer was added");
+        }
+        return added.iterator().next();
+    }
+
+    /**
+     * @return a new appointment, not stored yet.
+     */
+    private static Appointment appointment(LocalDateTime start, LocalDateTime end, int customerId, int userId,
+                                           int contactId) {
+        LocalDateTime now = LocalDateTime.now();
+        return new Appointment(0, "Contract test", "Contract test", "Nowhere", "Test", start, end, now, AUTHOR, now,
+                AUTHOR, customerId, userId, contactId);
+    }
+
+    /**
+     * @return the appointment IDs.
+     */
+    private static Set<Integer> idsOf(List<Appointment> appointments) {
+        return new HashSet<>(idsInOrder(appointments));
+    }
+
+    /**
+     * @return the appointment IDs, in the order of the list.
+     */
+    private static List<Integer> idsInOrder(List<Appointment> appointments) {
+        List<Integer> ids = new ArrayList<>();
+        for (Appointment appointment : appointments) {
+            ids.add(appointment.getAppointmentId());
+        }
+        return ids;
+    }
+
+    /**
+     * Prints the result of one check and counts a failure.
+     */
+    private static void check(String name, String description, boolean passed) {
+        System.out.println((passed ? "PASS " : "FAIL ") + name + ": " + description);
+        if (!passed) {
+            failures++;
+        }
+    }
+}